@@ -16,20 +16,26 @@
 
 package com.android.tools.apk.analyzer.internal;
 
-import com.android.SdkConstants;
 import com.android.annotations.NonNull;
 import com.android.tools.apk.analyzer.ApkSizeCalculator;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.CountingOutputStream;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import java.util.zip.*;
 
@@ -37,6 +43,8 @@ public class GzipSizeCalculator implements ApkSizeCalculator {
 
     public static final String VIRTUAL_ENTRY_NAME = "";
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     public GzipSizeCalculator() {}
 
     private static void verify(@NonNull Path apk) {
@@ -50,22 +58,11 @@ public class GzipSizeCalculator implements ApkSizeCalculator {
     @Override
     public long getFullApkDownloadSize(@NonNull Path apk) {
         verify(apk);
-        CountingOutputStream out = new CountingOutputStream(ByteStreams.nullOutputStream());
-
-        // There is a difference between uncompressing the apk, and then compressing again using
-        // "gzip -9", versus just compressing the apk itself using "gzip -9". But the difference
-        // seems to be negligible, and we are only aiming at an estimate of what Play provides, so
-        // this should suffice. This also seems to be the same approach taken by
-        // https://github.com/googlesamples/apk-patch-size-estimator
-
-        try (GZIPOutputStream zos = new MaxGzipOutputStream(out)) {
-            Files.copy(apk, zos);
-            zos.flush();
+        try {
+            return getGzipSize(apk);
         } catch (IOException e) {
             return -1;
         }
-
-        return out.getCount();
     }
 
     @Override
@@ -83,19 +80,78 @@ public class GzipSizeCalculator implements ApkSizeCalculator {
     @NonNull
     @Override
     public Map<String, Long> getDownloadSizePerFile(@NonNull Path apk) {
+        return getDownloadSizes(apk, false).getSizePerFile();
+    }
+
+    /**
+     * Returns both the full download size and the download size per file of the given apk. The
+     * whole apk and each of its entries are compressed concurrently, in memory, so this is
+     * cheaper than calling {@link #getFullApkDownloadSize(Path)} and {@link
+     * #getDownloadSizePerFile(Path)} one after the other.
+     */
+    @NonNull
+    public DownloadSizes getDownloadSizes(@NonNull Path apk) {
+        return getDownloadSizes(apk, true);
+    }
+
+    @NonNull
+    private static DownloadSizes getDownloadSizes(@NonNull Path apk, boolean includeFullSize) {
         verify(apk);
-        try {
-            Path rezippedApk = Files.createTempFile("analyzer", SdkConstants.DOT_ZIP);
-            reCompressWithZip(apk, rezippedApk);
-            Map<String, Long> compressedSizePerFile = getCompressedSizePerFile(rezippedApk);
-            Files.delete(rezippedApk);
-            return compressedSizePerFile;
-        } catch (IOException e) {
+        try (ZipFile zf = new ZipFile(apk.toFile())) {
+            List<ZipEntry> files = new ArrayList<>();
+            Enumeration<? extends ZipEntry> entries = zf.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry zipEntry = entries.nextElement();
+                // In dev mode, zipflinger may generate virtual entries which must be
+                // ignored.
+                if (!isVirtualEntry(zipEntry) && !zipEntry.isDirectory()) {
+                    files.add(zipEntry);
+                }
+            }
+
+            int threads =
+                    Math.max(
+                            1,
+                            Math.min(
+                                    files.size() + (includeFullSize ? 1 : 0),
+                                    Runtime.getRuntime().availableProcessors()));
+            ExecutorService executor =
+                    Executors.newFixedThreadPool(
+                            threads,
+                            new ThreadFactoryBuilder()
+                                    .setNameFormat("apk-size-calculator-%d")
+                                    .setDaemon(true)
+                                    .build());
+            try {
+                // The full apk is the largest single task, start it first.
+                Future<Long> fullSize =
+                        includeFullSize ? executor.submit(() -> getGzipSize(apk)) : null;
+                Map<String, Future<Long>> sizes = new LinkedHashMap<>();
+                for (ZipEntry file : files) {
+                    sizes.put(
+                            "/" + file.getName(),
+                            executor.submit(() -> getDeflatedSize(zf, file)));
+                }
+
+                ImmutableMap.Builder<String, Long> sizePerFile = new ImmutableMap.Builder<>();
+                for (Map.Entry<String, Future<Long>> size : sizes.entrySet()) {
+                    sizePerFile.put(size.getKey(), size.getValue().get());
+                }
+                return new DownloadSizes(
+                        fullSize != null ? fullSize.get() : -1, sizePerFile.build());
+            } finally {
+                executor.shutdownNow();
+            }
+        } catch (IOException | ExecutionException | IllegalArgumentException e) {
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
             String msg =
                     "Error while re-compressing apk to determine file by file download sizes: "
-                            + e.toString();
+                            + cause.toString();
             Logger.getLogger(GzipSizeCalculator.class.getName()).severe(msg);
-            return ImmutableMap.of();
+            return new DownloadSizes(-1, ImmutableMap.of());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new DownloadSizes(-1, ImmutableMap.of());
         }
     }
 
@@ -128,33 +184,48 @@ public class GzipSizeCalculator implements ApkSizeCalculator {
         return sizes.build();
     }
 
+    private static long getGzipSize(@NonNull Path apk) throws IOException {
+        CountingOutputStream out = new CountingOutputStream(ByteStreams.nullOutputStream());
+
+        // There is a difference between uncompressing the apk, and then compressing again using
+        // "gzip -9", versus just compressing the apk itself using "gzip -9". But the difference
+        // seems to be negligible, and we are only aiming at an estimate of what Play provides, so
+        // this should suffice. This also seems to be the same approach taken by
+        // https://github.com/googlesamples/apk-patch-size-estimator
+        try (GZIPOutputStream zos = new MaxGzipOutputStream(out)) {
+            Files.copy(apk, zos);
+            zos.flush();
+        }
+        return out.getCount();
+    }
+
     /**
-     * Provides a zip archive that is compressed at level 9, but still maintains archive
-     * information. This implies that it will be slightly larger than compressing using gzip (which
-     * only compresses a single file, not an archive). But having compression information per file
-     * is useful to get an approximate idea of how well each file compresses.
+     * Returns the size of the given entry once deflated at level 9, which is its compressed size
+     * in a zip archive written at the maximum compression level. Compressing each file separately
+     * means this is slightly larger than compressing the whole apk using gzip, but it gives an
+     * approximate idea of how well each file compresses.
      */
-    private static void reCompressWithZip(@NonNull Path from, @NonNull Path to) throws IOException {
-        // copy entire contents of one zip file to another, where the destination zip is written to
-        // with the maximum compression level
-        try (ZipInputStream zis =
-                        new ZipInputStream(new BufferedInputStream(Files.newInputStream(from)));
-                ZipOutputStream zos =
-                        new MaxZipOutputStream(
-                                new BufferedOutputStream(Files.newOutputStream(to)))) {
-            ZipEntry ze;
-            while ((ze = zis.getNextEntry()) != null) {
-                // In dev mode, zipflinger may generate virtual entries which must be
-                // ignored.
-                if (isVirtualEntry(ze)) {
-                    continue;
+    private static long getDeflatedSize(@NonNull ZipFile zf, @NonNull ZipEntry entry)
+            throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        byte[] input = new byte[BUFFER_SIZE];
+        byte[] output = new byte[BUFFER_SIZE];
+        long size = 0;
+        try (InputStream in = zf.getInputStream(entry)) {
+            int read;
+            while ((read = in.read(input)) != -1) {
+                deflater.setInput(input, 0, read);
+                while (!deflater.needsInput()) {
+                    size += deflater.deflate(output);
                 }
-                ZipEntry compressedZe = new ZipEntry(ze.getName());
-                compressedZe.setMethod(ZipEntry.DEFLATED);
-                compressedZe.setTime(ze.getTime());
-                zos.putNextEntry(compressedZe);
-                ByteStreams.copy(zis, zos);
             }
+            deflater.finish();
+            while (!deflater.finished()) {
+                size += deflater.deflate(output);
+            }
+            return size;
+        } finally {
+            deflater.end();
         }
     }
 
@@ -166,14 +237,29 @@ public class GzipSizeCalculator implements ApkSizeCalculator {
         }
     }
 
-    private static final class MaxZipOutputStream extends ZipOutputStream {
-        public MaxZipOutputStream(OutputStream out) throws IOException {
-            super(out);
-            def.setLevel(Deflater.BEST_COMPRESSION);
-        }
-    }
-
     public static boolean isVirtualEntry(ZipEntry e) {
         return VIRTUAL_ENTRY_NAME.equals(e.getName());
     }
+
+    /** Download size estimates of an apk, see {@link #getDownloadSizes(Path)}. */
+    public static final class DownloadSizes {
+        private final long fullSize;
+        @NonNull private final Map<String, Long> sizePerFile;
+
+        DownloadSizes(long fullSize, @NonNull Map<String, Long> sizePerFile) {
+            this.fullSize = fullSize;
+            this.sizePerFile = sizePerFile;
+        }
+
+        /** Same as {@link ApkSizeCalculator#getFullApkDownloadSize(Path)}. */
+        public long getFullSize() {
+            return fullSize;
+        }
+
+        /** Same as {@link ApkSizeCalculator#getDownloadSizePerFile(Path)}. */
+        @NonNull
+        public Map<String, Long> getSizePerFile() {
+            return sizePerFile;
+        }
+    }
 }
@@ -58,6 +58,15 @@ public class GzipSizeCalculatorTest {
                 .isNull(); // directories should not have any size
     }
 
+    @Test
+    public void getDownloadSizes() {
+        GzipSizeCalculator.DownloadSizes sizes = new GzipSizeCalculator().getDownloadSizes(apk);
+
+        assertThat(sizes.getFullSize()).isEqualTo(calculator.getFullApkDownloadSize(apk));
+        assertThat(sizes.getSizePerFile())
+                .containsExactlyEntriesIn(calculator.getDownloadSizePerFile(apk));
+    }
+
     @Test
     public void getRawSizePerFile() {
         Map<String, Long> rawSizePerFile = calculator.getRawSizePerFile(apk);
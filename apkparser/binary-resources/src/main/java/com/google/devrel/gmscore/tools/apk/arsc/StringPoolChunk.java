@@ -59,10 +59,22 @@ public final class StringPoolChunk extends Chunk {
   private final int styleCount;
 
   /**
-   * The strings ordered as they appear in the arsc file. e.g. strings.get(1234) gets the 1235th
-   * string in the arsc file.
+   * The buffer the strings are decoded from. Strings are only decoded when first requested, so the
+   * backing array of the buffer must not be modified after this chunk is created.
    */
-  private final List<String> strings = new ArrayList<>();
+  private ByteBuffer buffer;
+
+  /**
+   * Offsets in {@code buffer} of the strings, ordered as they appear in the arsc file. e.g.
+   * stringOffsets[1234] is the offset of the 1235th string in the arsc file.
+   */
+  private int[] stringOffsets = new int[0];
+
+  /** The strings decoded so far, with the same indices as {@code stringOffsets}. */
+  private String[] strings = new String[0];
+
+  /** Index of the first occurrence of each string, built by the first call to indexOf. */
+  @Nullable private volatile Map<String, Integer> stringIndices;
 
   /**
    * These styles have a 1:1 relationship with the strings. For example, styles.get(3) refers to
@@ -90,19 +102,38 @@ public final class StringPoolChunk extends Chunk {
   @Override
   protected void init(ByteBuffer buffer) {
     super.init(buffer);
-    strings.addAll(readStrings(buffer, offset + stringsStart, stringCount));
+    readStrings(buffer, offset + stringsStart, stringCount);
     styles.addAll(readStyles(buffer, offset + stylesStart, styleCount));
   }
 
   /**
    * Returns the 0-based index of the first occurrence of the given string, or -1 if the string is
-   * not in the pool. This runs in O(n) time.
+   * not in the pool. The first call decodes and indexes the whole pool in O(n) time, later calls
+   * run in O(1) time.
    *
    * @param string The string to check the pool for.
    * @return Index of the string, or -1 if not found.
    */
   public int indexOf(String string) {
-    return strings.indexOf(string);
+    Integer index = getStringIndices().get(string);
+    return index == null ? -1 : index;
+  }
+
+  private Map<String, Integer> getStringIndices() {
+    Map<String, Integer> indices = stringIndices;
+    if (indices == null) {
+      synchronized (this) {
+        indices = stringIndices;
+        if (indices == null) {
+          indices = new HashMap<>(stringOffsets.length * 4 / 3 + 1);
+          for (int i = 0; i < stringOffsets.length; ++i) {
+            indices.putIfAbsent(getString(i), i);
+          }
+          stringIndices = indices;
+        }
+      }
+    }
+    return indices;
   }
 
   /**
@@ -112,12 +143,22 @@ public final class StringPoolChunk extends Chunk {
    * @throws IndexOutOfBoundsException If the index is out of range (index < 0 || index >= size()).
    */
   public String getString(int index) {
-    return strings.get(index);
+    if (index < 0 || index >= stringOffsets.length) {
+      throw new IndexOutOfBoundsException(
+          "Index: " + index + ", Size: " + stringOffsets.length);
+    }
+    // Strings are immutable, so decoding the same string twice from two threads is harmless.
+    String string = strings[index];
+    if (string == null) {
+      string = BinaryResourceString.decodeString(buffer, stringOffsets[index], getStringType());
+      strings[index] = string;
+    }
+    return string;
   }
 
   /** Returns the number of strings in this pool. */
   public int getStringCount() {
-    return strings.size();
+    return stringOffsets.length;
   }
 
   /**
@@ -145,9 +186,9 @@ public final class StringPoolChunk extends Chunk {
     return Chunk.Type.STRING_POOL;
   }
 
-  /** Returns the number of bytes needed for offsets based on {@code strings} and {@code styles}. */
+  /** Returns the number of bytes needed for offsets based on {@code stringOffsets} and {@code styles}. */
   private int getOffsetSize() {
-    return (strings.size() + styles.size()) * 4;
+    return (stringOffsets.length + styles.size()) * 4;
   }
 
   /**
@@ -168,19 +209,20 @@ public final class StringPoolChunk extends Chunk {
     return (flags & SORTED_FLAG) != 0;
   }
 
-  private List<String> readStrings(ByteBuffer buffer, int offset, int count) {
-    List<String> result = new ArrayList<>();
+  private void readStrings(ByteBuffer buffer, int offset, int count) {
+    this.buffer = buffer;
+    stringOffsets = new int[count];
+    strings = new String[count];
     int previousOffset = -1;
     // After the header, we now have an array of offsets for the strings in this pool.
     for (int i = 0; i < count; ++i) {
       int stringOffset = offset + buffer.getInt();
-      result.add(BinaryResourceString.decodeString(buffer, stringOffset, getStringType()));
+      stringOffsets[i] = stringOffset;
       if (stringOffset <= previousOffset) {
         isOriginalDeduped = true;
       }
       previousOffset = stringOffset;
     }
-    return result;
   }
 
   private List<StringPoolStyle> readStyles(ByteBuffer buffer, int offset, int count) {
@@ -198,7 +240,8 @@ public final class StringPoolChunk extends Chunk {
       throws IOException {
     int stringOffset = 0;
     Map<String, Integer> used = new HashMap<>();  // Keeps track of strings already written
-    for (String string : strings) {
+    for (int i = 0; i < stringOffsets.length; ++i) {
+      String string = getString(i);
       // Dedupe everything except stylized strings, unless shrink is true (then dedupe everything)
       if (used.containsKey(string) && (shrink || isOriginalDeduped)) {
         Integer offset = used.get(string);
@@ -249,10 +292,10 @@ public final class StringPoolChunk extends Chunk {
   @Override
   protected void writeHeader(ByteBuffer output) {
     int stringsStart = getHeaderSize() + getOffsetSize();
-    output.putInt(strings.size());
+    output.putInt(stringOffsets.length);
     output.putInt(styles.size());
     output.putInt(flags);
-    output.putInt(strings.isEmpty() ? 0 : stringsStart);
+    output.putInt(stringOffsets.length == 0 ? 0 : stringsStart);
     output.putInt(0);  // Placeholder. The styles starting offset cannot be computed at this point.
   }
 
@@ -28,8 +28,11 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Enumeration;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.regex.Pattern;
@@ -58,6 +61,39 @@ public final class BinaryResourceFileTest {
     }
   }
 
+  /** Tests that string pool lookups match a linear scan of the pool. */
+  @Test
+  public void testStringPoolIndexOf() throws Exception {
+    File apk = TestResources.getFile(getClass(), "/test.apk");
+    Map<String, byte[]> resourceFiles = getFiles(apk, Pattern.compile(".*?\\.arsc"));
+    List<StringPoolChunk> pools = new ArrayList<>();
+    for (byte[] fileBytes : resourceFiles.values()) {
+      collectStringPools(new BinaryResourceFile(fileBytes).getChunks(), pools);
+    }
+    assertThat(pools).isNotEmpty();
+
+    for (StringPoolChunk pool : pools) {
+      List<String> strings = new ArrayList<>();
+      for (int i = 0; i < pool.getStringCount(); i++) {
+        strings.add(pool.getString(i));
+      }
+      for (String string : strings) {
+        assertThat(pool.indexOf(string)).isEqualTo(strings.indexOf(string));
+      }
+      assertThat(pool.indexOf("not a string in the pool")).isEqualTo(-1);
+    }
+  }
+
+  private static void collectStringPools(Collection<Chunk> chunks, List<StringPoolChunk> pools) {
+    for (Chunk chunk : chunks) {
+      if (chunk instanceof StringPoolChunk) {
+        pools.add((StringPoolChunk) chunk);
+      } else if (chunk instanceof ChunkWithChunks) {
+        collectStringPools(((ChunkWithChunks) chunk).getChunks().values(), pools);
+      }
+    }
+  }
+
   /**
    * Returns all files in an apk that match a given regular expression.
    *
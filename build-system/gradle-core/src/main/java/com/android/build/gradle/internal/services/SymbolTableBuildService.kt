@@ -18,7 +18,7 @@ package com.android.build.gradle.internal.services
 
 import com.android.build.gradle.internal.utils.setDisallowChanges
 import com.android.build.gradle.options.BooleanOption
-import com.android.build.gradle.options.ProjectOptions
+import com.android.build.gradle.options.ProjectOptionService
 import com.android.ide.common.symbols.Symbol
 import com.android.ide.common.symbols.SymbolIo
 import com.android.ide.common.symbols.SymbolTable
@@ -51,13 +51,20 @@ import org.gradle.api.services.BuildServiceParameters
  * Build service for tasks that android resource sybmols from the classpath in to memory.
  *
  * This maintains two separate caches, one of loaders, and one of actual file content.
+ * Loaded tables are also kept in a [SymbolTableDiskCache] shared across builds when
+ * [BooleanOption.ENABLE_SYMBOL_TABLE_DISK_CACHE] is enabled.
  *
  * @param cacheBuilderSpec The configuration of the cache to use. Gradle calls the `@`[Inject]
  * annotated constructor which uses [SOFT_VALUES].
  */
 @ThreadSafe
 abstract class SymbolTableBuildService @VisibleForTesting internal constructor(cacheBuilderSpec: CacheBuilderSpec) :
-    BuildService<BuildServiceParameters.None>, AutoCloseable {
+    BuildService<SymbolTableBuildService.Parameters>, AutoCloseable {
+
+    interface Parameters : BuildServiceParameters {
+        /** The directory of the [SymbolTableDiskCache], not set if it is disabled. */
+        val diskCacheDir: Property<File>
+    }
 
     @Suppress("unused") // Called by Gradle
     @Inject
@@ -119,14 +126,26 @@ abstract class SymbolTableBuildService @VisibleForTesting internal constructor(c
         override fun hashCode(): Int = Objects.hash(key)
     }
 
+    /** Cache of tables shared across builds, or null if it is disabled. */
+    internal open val diskCache: SymbolTableDiskCache? by lazy {
+        parameters.diskCacheDir.orNull?.let {
+            SymbolTableDiskCache(it.toPath(), DISK_CACHE_MAX_SIZE)
+        }
+    }
+
     /** Cache of loaded files */
     private val symbolTableCache: LoadingCache<FileCacheKey, SymbolTable> =
         CacheBuilder.from(cacheBuilderSpec)
             .build(
                 object : CacheLoader<FileCacheKey, SymbolTable>() {
                     override fun load(key: FileCacheKey): SymbolTable {
+                        val symbolIo = SymbolIo(symbolInterner)
                         val result =
-                            SymbolIo(symbolInterner).readSymbolListWithPackageName(key.file)
+                            diskCache?.get(
+                                key.file,
+                                symbolInterner,
+                                symbolIo::readSymbolListWithPackageName
+                            ) ?: symbolIo.readSymbolListWithPackageName(key.file)
                         logger.log(
                             logLevel,
                             "SymbolTableBuildService: cache miss - loaded table '{}' from disk",
@@ -140,8 +159,8 @@ abstract class SymbolTableBuildService @VisibleForTesting internal constructor(c
     /**
      * Loads the given symbol tables using the cache.
      *
-     * [SymbolTable]s will be returned from the in-memory cache if present, and only loaded from
-     * disk if they are not already cached.
+     * [SymbolTable]s will be returned from the in-memory cache if present, then from the disk
+     * cache, and only parsed if they are not already cached.
      * [Symbol] instances will be interned and shared across invocations.
      */
     private fun getSymbolTablesCached(files: Iterable<File>): List<SymbolTable> {
@@ -161,17 +180,29 @@ abstract class SymbolTableBuildService @VisibleForTesting internal constructor(c
     final override fun close() {
         dropSymbolInterner()
         dropSymbolTables()
+        diskCache?.trim()
     }
 
     class RegistrationAction(project: Project) :
-        ServiceRegistrationAction<SymbolTableBuildService, BuildServiceParameters.None>(
+        ServiceRegistrationAction<SymbolTableBuildService, Parameters>(
             project,
             SymbolTableBuildService::class.java
         ) {
-        override fun configure(parameters: BuildServiceParameters.None) {}
+        override fun configure(parameters: Parameters) {
+            val projectOptions =
+                ProjectOptionService.RegistrationAction(project).execute().get().projectOptions
+            if (projectOptions[BooleanOption.ENABLE_SYMBOL_TABLE_DISK_CACHE]) {
+                parameters.diskCacheDir.set(
+                    project.gradle.gradleUserHomeDir.resolve(DISK_CACHE_DIR)
+                )
+            }
+        }
     }
 
     companion object {
         private val SOFT_VALUES = CacheBuilderSpec.parse("softValues")
+
+        private const val DISK_CACHE_DIR = "android/symbol-tables"
+        private const val DISK_CACHE_MAX_SIZE = 256L * 1024 * 1024
     }
 }
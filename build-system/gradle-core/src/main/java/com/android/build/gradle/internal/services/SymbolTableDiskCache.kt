@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.build.gradle.internal.services
+
+import com.android.Version
+import com.android.ide.common.symbols.Symbol
+import com.android.ide.common.symbols.SymbolTable
+import com.android.resources.ResourceType
+import com.android.resources.ResourceVisibility
+import com.google.common.collect.ImmutableList
+import com.google.common.collect.Interner
+import com.google.common.hash.Hashing
+import com.google.common.io.MoreFiles
+import org.gradle.api.logging.Logging
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.NoSuchFileException
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.attribute.BasicFileAttributes
+import java.nio.file.attribute.FileTime
+
+/**
+ * An on-disk cache of symbol tables, shared by builds and projects.
+ *
+ * Tables are keyed by a hash of the content of the symbol file they are loaded from, and stored in
+ * a compact binary form with the strings written once per table. This lets a new daemon load the
+ * symbols of unchanged libraries without parsing their symbol files again.
+ *
+ * Entries are stored per format and plugin version, as the way symbol files are parsed can change
+ * between versions of the plugin. They are marked as used when they are read, and the least
+ * recently used ones of all versions are removed by [trim] once the cache is larger than [maxSize]
+ * bytes.
+ *
+ * Several builds can use the same directory at once: entries are written to a temporary file that
+ * is moved in place, and entries that can't be read are treated as missing. Failing to use the
+ * cache never fails the load.
+ */
+internal class SymbolTableDiskCache(
+    private val cacheDir: Path,
+    private val maxSize: Long,
+    pluginVersion: String = Version.ANDROID_GRADLE_PLUGIN_VERSION
+) {
+
+    private val logger = Logging.getLogger(SymbolTableDiskCache::class.java)
+
+    // Separate directory per version, so that builds using other versions never read the entries.
+    private val entriesDir = cacheDir.resolve("v$VERSION-$pluginVersion")
+
+    /**
+     * Returns the table for the given symbol file from the cache, or loads it with [load] and
+     * adds it to the cache.
+     */
+    fun get(
+        file: Path,
+        symbolInterner: Interner<Symbol>,
+        load: (Path) -> SymbolTable
+    ): SymbolTable {
+        val entry =
+            entriesDir.resolve(MoreFiles.asByteSource(file).hash(Hashing.sha256()).toString())
+        read(entry, symbolInterner)?.let { return it }
+        return load(file).also { write(entry, it) }
+    }
+
+    /**
+     * Removes the least recently used entries of all versions once the cache is larger than
+     * [maxSize], and the directories of other versions once they are empty.
+     */
+    fun trim() {
+        val versionDirs = try {
+            Files.newDirectoryStream(cacheDir).use { dirs -> dirs.filter { Files.isDirectory(it) } }
+        } catch (e: NoSuchFileException) {
+            return
+        }
+        val entries = versionDirs.flatMap { listEntries(it) }
+        var size = entries.sumOf { it.second.size() }
+        if (size > maxSize) {
+            // Leave some room so that the next builds don't have to trim again.
+            val targetSize = maxSize / 4 * 3
+            for ((file, attributes) in entries.sortedBy { it.second.lastModifiedTime() }) {
+                if (size <= targetSize) {
+                    break
+                }
+                try {
+                    Files.deleteIfExists(file)
+                } catch (e: IOException) {
+                    // Still in use on Windows, try again next time.
+                }
+                size -= attributes.size()
+            }
+        }
+        for (dir in versionDirs) {
+            if (dir != entriesDir) {
+                try {
+                    Files.deleteIfExists(dir)
+                } catch (e: IOException) {
+                    // Not empty yet.
+                }
+            }
+        }
+    }
+
+    private fun listEntries(dir: Path): List<Pair<Path, BasicFileAttributes>> =
+        try {
+            Files.newDirectoryStream(dir).use { files ->
+                files.mapNotNull { file ->
+                    try {
+                        file to Files.readAttributes(file, BasicFileAttributes::class.java)
+                    } catch (e: IOException) {
+                        null // Removed by another build.
+                    }
+                }
+            }
+        } catch (e: NoSuchFileException) {
+            emptyList() // Removed by another build.
+        }
+
+    private fun read(entry: Path, symbolInterner: Interner<Symbol>): SymbolTable? {
+        val bytes = try {
+            Files.readAllBytes(entry)
+        } catch (e: IOException) {
+            return null
+        }
+        val table = try {
+            decode(bytes, symbolInterner)
+        } catch (e: Exception) {
+            // Truncated or corrupted.
+            logger.debug("SymbolTableDiskCache: ignoring invalid entry {}", entry, e)
+            deleteQuietly(entry)
+            return null
+        }
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()))
+        } catch (e: IOException) {
+            // Only used for the eviction order.
+        }
+        return table
+    }
+
+    private fun write(entry: Path, table: SymbolTable) {
+        try {
+            Files.createDirectories(entriesDir)
+            val temp = Files.createTempFile(entriesDir, entry.fileName.toString(), ".tmp")
+            try {
+                Files.write(temp, encode(table))
+                Files.move(
+                    temp,
+                    entry,
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING
+                )
+            } finally {
+                deleteQuietly(temp)
+            }
+        } catch (e: IOException) {
+            logger.debug("SymbolTableDiskCache: failed to write {}", entry, e)
+        }
+    }
+
+    private fun deleteQuietly(file: Path) {
+        try {
+            Files.deleteIfExists(file)
+        } catch (e: IOException) {
+            // Left for trim.
+        }
+    }
+
+    companion object {
+
+        private const val MAGIC = 0x53544443 // STDC
+        private const val VERSION = 1
+
+        /**
+         * Writes the table as the header, the string table, then the symbols referencing strings
+         * by index.
+         */
+        fun encode(table: SymbolTable): ByteArray {
+            val strings = LinkedHashMap<String, Int>()
+            fun index(string: String): Int = strings.getOrPut(string) { strings.size }
+
+            val symbolBytes = ByteArrayOutputStream()
+            DataOutputStream(symbolBytes).use { out ->
+                val symbols = table.symbols.values()
+                out.writeInt(symbols.size)
+                for (symbol in symbols) {
+                    out.writeInt(index(symbol.resourceType.getName()))
+                    out.writeInt(index(symbol.name))
+                    out.writeInt(index(symbol.canonicalName))
+                    out.writeInt(index(symbol.resourceVisibility.getName()))
+                    when (symbol) {
+                        is Symbol.StyleableSymbol -> {
+                            out.writeInt(symbol.values.size)
+                            symbol.values.forEach { out.writeInt(it) }
+                            out.writeInt(symbol.children.size)
+                            symbol.children.forEach { out.writeInt(index(it)) }
+                        }
+                        is Symbol.AttributeSymbol -> {
+                            out.writeInt(symbol.intValue)
+                            out.writeBoolean(symbol.isMaybeDefinition)
+                        }
+                        else -> out.writeInt(symbol.intValue)
+                    }
+                }
+            }
+
+            val bytes = ByteArrayOutputStream()
+            DataOutputStream(bytes).use { out ->
+                out.writeInt(MAGIC)
+                out.writeInt(VERSION)
+                out.writeUTF(table.tablePackage)
+                out.writeInt(strings.size)
+                strings.keys.forEach { out.writeUTF(it) }
+                symbolBytes.writeTo(out)
+            }
+            return bytes.toByteArray()
+        }
+
+        fun decode(bytes: ByteArray, symbolInterner: Interner<Symbol>): SymbolTable {
+            DataInputStream(ByteArrayInputStream(bytes)).use { input ->
+                if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                    throw IOException("Unsupported symbol table cache entry")
+                }
+                val table = SymbolTable.FastBuilder(symbolInterner)
+                table.tablePackage(input.readUTF())
+                val strings = Array(input.readInt()) { input.readUTF() }
+
+                repeat(input.readInt()) {
+                    val typeName = strings[input.readInt()]
+                    val resourceType = ResourceType.fromClassName(typeName)
+                        ?: throw IOException("Invalid resource type $typeName")
+                    val name = strings[input.readInt()]
+                    val canonicalName = strings[input.readInt()]
+                    val visibilityName = strings[input.readInt()]
+                    val visibility = ResourceVisibility.getEnum(visibilityName)
+                        ?: throw IOException("Invalid resource visibility $visibilityName")
+                    val symbol = when (resourceType) {
+                        ResourceType.STYLEABLE -> {
+                            val values = ImmutableList.builder<Int>()
+                            repeat(input.readInt()) { values.add(input.readInt()) }
+                            val children = ImmutableList.builder<String>()
+                            repeat(input.readInt()) { children.add(strings[input.readInt()]) }
+                            Symbol.styleableSymbol(
+                                name, values.build(), children.build(), visibility, canonicalName
+                            )
+                        }
+                        ResourceType.ATTR -> {
+                            val intValue = input.readInt()
+                            Symbol.attributeSymbol(
+                                name, intValue, input.readBoolean(), visibility, canonicalName
+                            )
+                        }
+                        else ->
+                            Symbol.normalSymbol(
+                                resourceType, name, input.readInt(), visibility, canonicalName
+                            )
+                    }
+                    table.add(symbol)
+                }
+                if (input.read() != -1) {
+                    throw IOException("Unexpected data at the end of the symbol table cache entry")
+                }
+                return table.build()
+            }
+        }
+    }
+}
@@ -100,6 +100,7 @@ import java.io.File
 import java.io.IOException
 import java.nio.file.Files
 import java.util.Locale
+import java.util.concurrent.ForkJoinPool
 import java.util.function.Supplier
 import java.util.stream.Collectors
 import javax.xml.bind.JAXBException
@@ -240,10 +241,11 @@ abstract class MergeResources : NewIncrementalTask() {
                         GradleBuildProfileSpan.ExecutionType.TASK_EXECUTION_PHASE_1,
                         analyticsService.get()
                     ) {
-                        for (resourceSet in resourceSets) {
-                            resourceSet.loadFromFiles(LoggerWrapper(logger))
-                            merger.addDataSet(resourceSet)
-                        }
+                        merger.loadAndAddDataSets(
+                            resourceSets,
+                            LoggerWrapper(logger),
+                            ForkJoinPool.commonPool()
+                        )
                     }
                     val publicFile = if (publicFile.isPresent) publicFile.get().asFile else null
                     val sourceSetPaths =
@@ -33,7 +33,8 @@ class SymbolTableBuildServiceTest {
     @get:Rule
     val temporaryDirectory = TemporaryFolder()
 
-    class TestCaching() : SymbolTableBuildService(STRONG_KEYED_CACHE) {
+    class TestCaching(override val diskCache: SymbolTableDiskCache? = null) :
+        SymbolTableBuildService(STRONG_KEYED_CACHE) {
         override fun getParameters() = throw UnsupportedOperationException()
     }
 
@@ -134,6 +135,22 @@ class SymbolTableBuildServiceTest {
             .isNotSameInstanceAs(content1.onlySymbol())
     }
 
+    @Test
+    fun checkDiskCachePersistence() {
+        val diskCacheDir = temporaryDirectory.newFolder().toPath()
+        val file1 = fileWithContent("com.example.lib1\nstring foo")
+        val content1 = TestCaching(SymbolTableDiskCache(diskCacheDir, Long.MAX_VALUE))
+            .loadClasspath(listOf(file1)).single()
+
+        // A new service, as in a new daemon, loads the same content from the disk cache.
+        val file2 = fileWithContent("com.example.lib1\nstring foo")
+        val content2 = TestCaching(SymbolTableDiskCache(diskCacheDir, Long.MAX_VALUE))
+            .loadClasspath(listOf(file2)).single()
+
+        assertThat(content2).isEqualTo(content1)
+        assertThat(diskCacheDir.toFile().walk().filter { it.isFile }.toList()).hasSize(1)
+    }
+
     private fun SymbolTable.onlySymbol(): Symbol = symbols.values().single()
     private fun fileWithContent(content: String): File =
         temporaryDirectory.newFile().also { it.writeText(content) }
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.build.gradle.internal.services
+
+import com.android.ide.common.symbols.Symbol
+import com.android.ide.common.symbols.SymbolIo
+import com.android.ide.common.symbols.SymbolTable
+import com.android.resources.ResourceType
+import com.android.resources.ResourceVisibility
+import com.google.common.collect.ImmutableList
+import com.google.common.collect.Interners
+import com.google.common.truth.Truth.assertThat
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+
+/** Unit tests for [SymbolTableDiskCache] */
+class SymbolTableDiskCacheTest {
+
+    @get:Rule
+    val temporaryDirectory = TemporaryFolder()
+
+    @Test
+    fun checkEncoding() {
+        val table = SymbolTable.builder()
+            .tablePackage("com.example.lib")
+            .add(Symbol.normalSymbol(ResourceType.STRING, "foo"))
+            .add(
+                Symbol.normalSymbol(
+                    ResourceType.STRING, "be.ep", 0x7f010001, ResourceVisibility.PUBLIC, "be_ep"
+                )
+            )
+            .add(Symbol.attributeSymbol("maybeAttr", 0, true))
+            .add(Symbol.attributeSymbol("realAttr", 0x7f020001, false, ResourceVisibility.PRIVATE))
+            .add(
+                Symbol.styleableSymbol(
+                    "A.B",
+                    ImmutableList.of(0x7f020001, 0x101),
+                    ImmutableList.of("realAttr", "android:text"),
+                    ResourceVisibility.UNDEFINED,
+                    "A_B"
+                )
+            )
+            .build()
+
+        val interner = Interners.newStrongInterner<Symbol>()
+        val decoded = SymbolTableDiskCache.decode(SymbolTableDiskCache.encode(table), interner)
+
+        assertThat(decoded).isEqualTo(table)
+        val foo = decoded.symbols.get(ResourceType.STRING, "foo")!!
+        assertThat(interner.intern(Symbol.normalSymbol(ResourceType.STRING, "foo")))
+            .isSameInstanceAs(foo)
+        assertThat(foo.canonicalName).isSameInstanceAs(foo.name)
+    }
+
+    @Test
+    fun checkLoadedOnce() {
+        val cache = SymbolTableDiskCache(temporaryDirectory.newFolder().toPath(), Long.MAX_VALUE)
+        val file = fileWithContent("com.example.lib\nstring foo\nstyleable S a b")
+        val table = cache.get(file.toPath(), Interners.newStrongInterner(), ::load)
+
+        val copy = fileWithContent("com.example.lib\nstring foo\nstyleable S a b")
+        val cachedTable = cache.get(copy.toPath(), Interners.newStrongInterner()) {
+            throw AssertionError("Table should be loaded from the disk cache")
+        }
+        assertThat(cachedTable).isEqualTo(table)
+    }
+
+    @Test
+    fun checkInvalidEntryReloaded() {
+        val cacheDir = temporaryDirectory.newFolder()
+        val cache = SymbolTableDiskCache(cacheDir.toPath(), Long.MAX_VALUE)
+        val file = fileWithContent("com.example.lib\nstring foo")
+        val table = cache.get(file.toPath(), Interners.newStrongInterner(), ::load)
+
+        val entry = cacheDir.walk().single { it.isFile }
+        entry.writeBytes(entry.readBytes().copyOf(10))
+
+        var loads = 0
+        val reloaded = cache.get(file.toPath(), Interners.newStrongInterner()) {
+            loads++
+            load(it)
+        }
+        assertThat(reloaded).isEqualTo(table)
+        assertThat(loads).isEqualTo(1)
+        assertThat(SymbolTableDiskCache.decode(entry.readBytes(), Interners.newStrongInterner()))
+            .isEqualTo(table)
+    }
+
+    @Test
+    fun checkTrim() {
+        val cacheDir = temporaryDirectory.newFolder()
+        val file1 = fileWithContent("com.example.lib1\nstring foo")
+        val file2 = fileWithContent("com.example.lib2\nstring foo")
+        val file3 = fileWithContent("com.example.lib3\nstring foo")
+        val cache = SymbolTableDiskCache(cacheDir.toPath(), Long.MAX_VALUE)
+        for (file in listOf(file1, file2, file3)) {
+            cache.get(file.toPath(), Interners.newStrongInterner(), ::load)
+        }
+        val entries = cacheDir.walk().filter { it.isFile }.sortedBy { it.name }.toList()
+        assertThat(entries).hasSize(3)
+        // Mark the entries as used at different times.
+        entries.forEachIndexed { i, entry ->
+            Files.setLastModifiedTime(entry.toPath(), FileTime.fromMillis(1_000_000L * (i + 1)))
+        }
+
+        // Fits two entries, trimmed down to one.
+        val entrySize = entries.maxOf { it.length() }
+        SymbolTableDiskCache(cacheDir.toPath(), entrySize * 2).trim()
+
+        assertThat(cacheDir.walk().filter { it.isFile }.toList()).containsExactly(entries[2])
+    }
+
+    @Test
+    fun checkVersionsTrimmedTogether() {
+        val cacheDir = temporaryDirectory.newFolder()
+        val file = fileWithContent("com.example.lib\nstring foo")
+        val oldCache = SymbolTableDiskCache(cacheDir.toPath(), Long.MAX_VALUE, "1.0.0")
+        oldCache.get(file.toPath(), Interners.newStrongInterner(), ::load)
+        val oldEntry = cacheDir.walk().single { it.isFile }
+        Files.setLastModifiedTime(oldEntry.toPath(), FileTime.fromMillis(1_000_000L))
+
+        // Tables cached by other versions are not used.
+        var loads = 0
+        val newCache = SymbolTableDiskCache(cacheDir.toPath(), oldEntry.length() * 3 / 2, "2.0.0")
+        newCache.get(file.toPath(), Interners.newStrongInterner()) {
+            loads++
+            load(it)
+        }
+        assertThat(loads).isEqualTo(1)
+
+        // Both versions count towards the size, the least recently used entry is removed along
+        // with its version directory.
+        newCache.trim()
+        val entries = cacheDir.walk().filter { it.isFile }.toList()
+        assertThat(entries).hasSize(1)
+        assertThat(entries.single()).isNotEqualTo(oldEntry)
+        assertThat(oldEntry.parentFile.exists()).isFalse()
+    }
+
+    private fun load(file: Path): SymbolTable =
+        SymbolIo().readSymbolListWithPackageName(file)
+
+    private fun fileWithContent(content: String): File =
+        temporaryDirectory.newFile().also { it.writeText(content) }
+}
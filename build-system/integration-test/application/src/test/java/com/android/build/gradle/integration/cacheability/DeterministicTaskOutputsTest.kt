@@ -42,7 +42,7 @@ class DeterministicTaskOutputsTest {
             // The following task outputs need more investigation.
             "app/build/intermediates/incremental/debug-mergeJavaRes/merge-state",
             "app/build/intermediates/incremental/debug-mergeNativeLibs",
-            "app/build/intermediates/incremental/mergeDebugAssets/merger.xml",
+            "app/build/intermediates/incremental/mergeDebugAssets/merger.bin",
             "app/build/intermediates/incremental/mergeDebugJniLibFolders",
             "app/build/intermediates/incremental/debug/mergeDebugResources",
             "app/build/intermediates/incremental/packageDebugResources",
@@ -862,6 +862,19 @@ public class AndroidDebugBridge {
         return -1;
     }
 
+    /**
+     * Returns the histogram of the time from when a debuggable process is known, either because
+     * its device just came online or because it just started, to when its {@link Client} is ready.
+     * Returns null if clients are not monitored.
+     */
+    @Nullable
+    public LatencyHistogram getClientReadyLatency() {
+        if (mDeviceMonitor != null) {
+            return mDeviceMonitor.getClientReadyLatency();
+        }
+        return null;
+    }
+
     /**
      * Creates a new bridge.
      * @param osLocation the location of the command line tool
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ddmlib;
+
+import com.android.annotations.NonNull;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Implementation of {@link IShellOutputReceiver} that splits the raw data coming from the socket
+ * into lines without converting it to {@link String} objects first.
+ *
+ * <p>Unlike {@link MultiLineReceiver}, newlines are found directly in the received bytes and
+ * complete lines are handed over as a range of the packet. Only a line split across two packets is
+ * copied, into a buffer reused for the lifetime of the receiver.
+ *
+ * <p>Classes extending it override either {@link #processLine(byte[], int, int)} to work on the
+ * UTF-8 bytes of each line, or {@link #processLine(CharSequence)} to get each line decoded into a
+ * reused {@link CharSequence}. Neither the bytes nor the {@link CharSequence} can be kept after
+ * the call returns.
+ */
+public abstract class ByteLineReceiver implements IShellOutputReceiver {
+
+    private boolean mTrimLines = true;
+
+    /** unfinished message line, stored for next packet */
+    @NonNull private byte[] mUnfinishedLine = new byte[256];
+
+    private int mUnfinishedLength = 0;
+
+    @NonNull private CharBuffer mChars = CharBuffer.allocate(256);
+
+    @NonNull
+    private final CharsetDecoder mDecoder =
+            StandardCharsets.UTF_8
+                    .newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * Set the trim lines flag.
+     *
+     * @param trim whether the lines are trimmed, or not.
+     */
+    public void setTrimLine(boolean trim) {
+        mTrimLines = trim;
+    }
+
+    @Override
+    public final void addOutput(byte[] data, int offset, int length) {
+        if (isCancelled()) {
+            return;
+        }
+        int end = offset + length;
+        int start = offset;
+        boolean hasLines = false;
+        for (int i = offset; i < end; i++) {
+            if (data[i] != '\n') {
+                continue;
+            }
+            hasLines = true;
+            if (mUnfinishedLength > 0) {
+                appendUnfinished(data, start, i - start);
+                emitLine(mUnfinishedLine, 0, mUnfinishedLength);
+                mUnfinishedLength = 0;
+            } else {
+                emitLine(data, start, i - start);
+            }
+            start = i + 1;
+        }
+        if (start < end) {
+            appendUnfinished(data, start, end - start);
+        }
+        if (hasLines) {
+            linesProcessed();
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (mUnfinishedLength > 0) {
+            emitLine(mUnfinishedLine, 0, mUnfinishedLength);
+            mUnfinishedLength = 0;
+            linesProcessed();
+        }
+
+        done();
+    }
+
+    /**
+     * Terminates the process. This is called after the last lines have been through {@link
+     * #processLine(byte[], int, int)}.
+     */
+    public void done() {
+        // do nothing.
+    }
+
+    /**
+     * Called for each complete line received from the remote process, without its line separator.
+     * The default implementation decodes the line and passes it to {@link
+     * #processLine(CharSequence)}.
+     *
+     * @param data the array holding the line. Its content changes once this method returns.
+     * @param offset the offset at which the line starts.
+     * @param length the length of the line in bytes.
+     */
+    protected void processLine(@NonNull byte[] data, int offset, int length) {
+        processLine(decode(data, offset, length));
+    }
+
+    /**
+     * Called for each complete line received from the remote process, without its line separator,
+     * by the default implementation of {@link #processLine(byte[], int, int)}.
+     *
+     * @param line the decoded line. It is reused for the next line once this method returns.
+     */
+    protected void processLine(@NonNull CharSequence line) {
+        // do nothing.
+    }
+
+    /**
+     * Called after each {@link #addOutput(byte[], int, int)} or {@link #flush()} call that
+     * produced at least one line, once all of its lines have been processed.
+     */
+    protected void linesProcessed() {
+        // do nothing.
+    }
+
+    /** Decodes a UTF-8 line into a {@link CharSequence} reused for each call. */
+    @NonNull
+    protected final CharSequence decode(@NonNull byte[] data, int offset, int length) {
+        if (mChars.capacity() < length) {
+            mChars = CharBuffer.allocate(Math.max(length, mChars.capacity() * 2));
+        }
+        mChars.clear();
+        int end = offset + length;
+        int i = offset;
+        // Most lines are ASCII, which maps one byte to one char.
+        while (i < end && data[i] >= 0) {
+            mChars.put((char) data[i++]);
+        }
+        if (i < end) {
+            // A UTF-8 sequence never has more chars than bytes, so mChars cannot overflow.
+            mDecoder.reset();
+            ByteBuffer bytes = ByteBuffer.wrap(data, i, end - i);
+            mDecoder.decode(bytes, mChars, true);
+            mDecoder.flush(mChars);
+        }
+        mChars.flip();
+        return mChars;
+    }
+
+    private void emitLine(@NonNull byte[] data, int offset, int length) {
+        int end = offset + length;
+        // in older devices, the \n is preceded by a \r
+        if (end > offset && data[end - 1] == '\r') {
+            end--;
+        }
+        if (mTrimLines) {
+            // Same as String.trim(): UTF-8 continuation and lead bytes are all negative.
+            while (offset < end && data[offset] >= 0 && data[offset] <= ' ') {
+                offset++;
+            }
+            while (end > offset && data[end - 1] >= 0 && data[end - 1] <= ' ') {
+                end--;
+            }
+        }
+        processLine(data, offset, end - offset);
+    }
+
+    private void appendUnfinished(@NonNull byte[] data, int offset, int length) {
+        int required = mUnfinishedLength + length;
+        if (required > mUnfinishedLine.length) {
+            mUnfinishedLine =
+                    Arrays.copyOf(mUnfinishedLine, Math.max(required, mUnfinishedLine.length * 2));
+        }
+        System.arraycopy(data, offset, mUnfinishedLine, mUnfinishedLength, length);
+        mUnfinishedLength = required;
+    }
+}
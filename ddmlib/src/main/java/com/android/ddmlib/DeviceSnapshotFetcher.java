@@ -0,0 +1,420 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ddmlib;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fetches and caches several kinds of device state with a single shell command.
+ *
+ * <p>Each {@link Section} is cached with the time it was fetched, so a request only queries the
+ * sections that are older than the age it accepts, all in one round trip. Requests made while a
+ * query is running wait for it if it covers what they need, or are grouped into the next query
+ * otherwise. This keeps the number of shell commands per device bounded when many callers poll
+ * the same devices.
+ */
+public final class DeviceSnapshotFetcher {
+    private static final String LOG_TAG = "DeviceSnapshotFetcher";
+
+    /** Line printed before the output of each section. */
+    private static final String SECTION_MARKER = "@@ddmlib-snapshot@@ ";
+
+    /**
+     * Prints the battery level from sysfs, or the output of "dumpsys battery" if it is not there.
+     * Pixel 3 and Pixel 3 XL report the level shown in the UI in the "maxfg" file, see {@code
+     * BatteryFetcher}.
+     */
+    private static final String BATTERY_COMMAND =
+            "case \"$(getprop ro.product.model)\" in"
+                    + " \"Pixel 3\"|\"Pixel 3 XL\") f=/sys/class/power_supply/maxfg/capacity;;"
+                    + " *) f='/sys/class/power_supply/*/capacity';;"
+                    + " esac;"
+                    + " l=$(cat $f 2>/dev/null);"
+                    + " if [ -n \"$l\" ]; then echo \"$l\"; else dumpsys battery; fi";
+
+    private static final Pattern SYSFS_BATTERY_LEVEL = Pattern.compile("^(\\d+)[.\\s]*");
+    private static final Pattern DUMPSYS_BATTERY_LEVEL = Pattern.compile("\\s*level: (\\d+)");
+    private static final Pattern DUMPSYS_BATTERY_SCALE = Pattern.compile("\\s*scale: (\\d+)");
+
+    private static final String FEATURE_PREFIX = "feature:";
+    private static final String PACKAGE_PREFIX = "package:";
+
+    private static final int SHELL_TIMEOUT_SEC = 2;
+
+    /** {@code pm} can take a while to start before printing anything. */
+    private static final int PM_SHELL_TIMEOUT_SEC = 10;
+
+    /** The kinds of device state that can be fetched. */
+    public enum Section {
+        /** All the system properties, as returned by "getprop". */
+        PROPERTIES("getprop"),
+        /** The battery level in percent, like {@link IDevice#getBattery()}. */
+        BATTERY(BATTERY_COMMAND),
+        /** The system features, as returned by "pm list features". */
+        FEATURES("pm list features"),
+        /** The installed packages, as returned by "pm list packages". */
+        PACKAGES("pm list packages");
+
+        @NonNull private final String mCommand;
+
+        Section(@NonNull String command) {
+            mCommand = command;
+        }
+    }
+
+    /** Device state fetched by a {@link DeviceSnapshotFetcher}. */
+    public static final class Snapshot {
+        @NonNull private final Map<Section, Object> mValues;
+
+        private Snapshot(@NonNull Map<Section, Object> values) {
+            mValues = values;
+        }
+
+        /** Returns true if the snapshot holds the given section. */
+        public boolean has(@NonNull Section section) {
+            return mValues.containsKey(section);
+        }
+
+        /** Returns the system properties, or null if {@link Section#PROPERTIES} wasn't fetched. */
+        @SuppressWarnings("unchecked")
+        @Nullable
+        public Map<String, String> getProperties() {
+            return (Map<String, String>) mValues.get(Section.PROPERTIES);
+        }
+
+        /**
+         * Returns the battery level in percent, or null if {@link Section#BATTERY} wasn't fetched
+         * or the level could not be determined.
+         */
+        @Nullable
+        public Integer getBatteryLevel() {
+            return (Integer) mValues.get(Section.BATTERY);
+        }
+
+        /** Returns the system features, or null if {@link Section#FEATURES} wasn't fetched. */
+        @SuppressWarnings("unchecked")
+        @Nullable
+        public Set<String> getFeatures() {
+            return (Set<String>) mValues.get(Section.FEATURES);
+        }
+
+        /** Returns the installed packages, or null if {@link Section#PACKAGES} wasn't fetched. */
+        @SuppressWarnings("unchecked")
+        @Nullable
+        public Set<String> getPackages() {
+            return (Set<String>) mValues.get(Section.PACKAGES);
+        }
+    }
+
+    /** Shell output parser splitting the output of the combined command into sections. */
+    @VisibleForTesting
+    static class SnapshotReceiver extends MultiLineReceiver {
+
+        private final Map<Section, List<String>> mLines = new EnumMap<>(Section.class);
+
+        @Nullable private List<String> mCurrent;
+
+        @Override
+        public void processNewLines(@NonNull String[] lines) {
+            for (String line : lines) {
+                if (line.startsWith(SECTION_MARKER)) {
+                    Section section = parseSection(line.substring(SECTION_MARKER.length()));
+                    mCurrent = section != null ? new ArrayList<>() : null;
+                    if (section != null) {
+                        mLines.put(section, mCurrent);
+                    }
+                } else if (mCurrent != null) {
+                    mCurrent.add(line);
+                }
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        /** Returns the parsed value of each section found in the output. */
+        @NonNull
+        Map<Section, Object> getValues() {
+            Map<Section, Object> values = new EnumMap<>(Section.class);
+            for (Map.Entry<Section, List<String>> entry : mLines.entrySet()) {
+                List<String> lines = entry.getValue();
+                switch (entry.getKey()) {
+                    case PROPERTIES:
+                        values.put(Section.PROPERTIES, parseProperties(lines));
+                        break;
+                    case BATTERY:
+                        values.put(Section.BATTERY, parseBatteryLevel(lines));
+                        break;
+                    case FEATURES:
+                        values.put(Section.FEATURES, parsePrefixedLines(lines, FEATURE_PREFIX));
+                        break;
+                    case PACKAGES:
+                        values.put(Section.PACKAGES, parsePrefixedLines(lines, PACKAGE_PREFIX));
+                        break;
+                }
+            }
+            return values;
+        }
+
+        @Nullable
+        private static Section parseSection(@NonNull String name) {
+            for (Section section : Section.values()) {
+                if (section.name().equals(name)) {
+                    return section;
+                }
+            }
+            return null;
+        }
+
+        @NonNull
+        private static Map<String, String> parseProperties(@NonNull List<String> lines) {
+            PropertyFetcher.GetPropReceiver receiver = new PropertyFetcher.GetPropReceiver();
+            receiver.processNewLines(lines.toArray(new String[0]));
+            receiver.done();
+            return Collections.unmodifiableMap(receiver.getCollectedProperties());
+        }
+
+        @Nullable
+        private static Integer parseBatteryLevel(@NonNull List<String> lines) {
+            Integer level = null;
+            Integer scale = null;
+            for (String line : lines) {
+                try {
+                    Matcher m = SYSFS_BATTERY_LEVEL.matcher(line);
+                    if (m.matches()) {
+                        // Several batteries may be listed, keep the first one like BatteryFetcher
+                        return Integer.parseInt(m.group(1));
+                    }
+                    m = DUMPSYS_BATTERY_LEVEL.matcher(line);
+                    if (m.matches()) {
+                        level = Integer.parseInt(m.group(1));
+                    }
+                    m = DUMPSYS_BATTERY_SCALE.matcher(line);
+                    if (m.matches()) {
+                        scale = Integer.parseInt(m.group(1));
+                    }
+                } catch (NumberFormatException e) {
+                    Log.w(LOG_TAG, String.format("Failed to parse battery level in %s", line));
+                }
+            }
+            if (level != null && scale != null && scale != 0) {
+                return (level * 100) / scale;
+            }
+            return null;
+        }
+
+        @NonNull
+        private static Set<String> parsePrefixedLines(
+                @NonNull List<String> lines, @NonNull String prefix) {
+            Set<String> values = new LinkedHashSet<>();
+            for (String line : lines) {
+                if (line.startsWith(prefix)) {
+                    values.add(line.substring(prefix.length()));
+                }
+            }
+            return Collections.unmodifiableSet(values);
+        }
+    }
+
+    /** A request waiting for a query. */
+    private static final class Request {
+        @NonNull final Set<Section> mSections;
+        final long mMaxAgeNanos;
+        @NonNull final SettableFuture<Snapshot> mFuture = SettableFuture.create();
+
+        Request(@NonNull Set<Section> sections, long maxAgeNanos) {
+            mSections = sections;
+            mMaxAgeNanos = maxAgeNanos;
+        }
+    }
+
+    private final IDevice mDevice;
+
+    private final Map<Section, Object> mValues = new EnumMap<>(Section.class);
+
+    /** {@link System#nanoTime()} at the start of the query that fetched each cached section. */
+    private final Map<Section, Long> mFetchTimes = new EnumMap<>(Section.class);
+
+    /** Sections being queried, or null if no query is running. */
+    @Nullable private Set<Section> mFetching;
+
+    /** Requests completed by the running query. */
+    private final List<Request> mFetchingRequests = new ArrayList<>();
+
+    /** Requests needing sections the running query doesn't fetch. */
+    private final List<Request> mWaitingRequests = new ArrayList<>();
+
+    public DeviceSnapshotFetcher(@NonNull IDevice device) {
+        mDevice = device;
+    }
+
+    /**
+     * Make a possibly asynchronous request for device state.
+     *
+     * @param sections the sections to include in the snapshot
+     * @param maxAge the maximum age of a cached section to be reused instead of queried again
+     * @param unit the unit of {@code maxAge}
+     * @return a {@link ListenableFuture} holding a snapshot of the requested sections
+     */
+    @NonNull
+    public synchronized ListenableFuture<Snapshot> getSnapshot(
+            @NonNull Set<Section> sections, long maxAge, @NonNull TimeUnit unit) {
+        Request request = new Request(EnumSet.copyOf(sections), unit.toNanos(maxAge));
+        Set<Section> stale = getStaleSections(request, System.nanoTime());
+        if (stale.isEmpty()) {
+            return Futures.immediateFuture(createSnapshot(request.mSections));
+        }
+        if (mFetching == null) {
+            mFetchingRequests.add(request);
+            initiateQuery(stale);
+        } else if (mFetching.containsAll(stale)) {
+            mFetchingRequests.add(request);
+        } else {
+            mWaitingRequests.add(request);
+        }
+        return request.mFuture;
+    }
+
+    @NonNull
+    private Set<Section> getStaleSections(@NonNull Request request, long now) {
+        Set<Section> stale = EnumSet.noneOf(Section.class);
+        for (Section section : request.mSections) {
+            Long fetchTime = mFetchTimes.get(section);
+            if (fetchTime == null || now - fetchTime > request.mMaxAgeNanos) {
+                stale.add(section);
+            }
+        }
+        return stale;
+    }
+
+    @NonNull
+    private Snapshot createSnapshot(@NonNull Set<Section> sections) {
+        Map<Section, Object> values = new EnumMap<>(Section.class);
+        for (Section section : sections) {
+            values.put(section, mValues.get(section));
+        }
+        return new Snapshot(values);
+    }
+
+    @VisibleForTesting
+    @NonNull
+    static String getCommand(@NonNull Set<Section> sections) {
+        StringBuilder command = new StringBuilder();
+        for (Section section : sections) {
+            if (command.length() > 0) {
+                command.append("; ");
+            }
+            command.append("echo '").append(SECTION_MARKER).append(section.name()).append("'; ");
+            command.append(section.mCommand);
+        }
+        return command.toString();
+    }
+
+    private void initiateQuery(@NonNull Set<Section> sections) {
+        mFetching = sections;
+        String threadName = String.format("query-snapshot-%s", mDevice.getSerialNumber());
+        Thread snapshotThread =
+                new Thread(threadName) {
+                    @Override
+                    public void run() {
+                        long startTime = System.nanoTime();
+                        try {
+                            SnapshotReceiver receiver = new SnapshotReceiver();
+                            boolean usesPm =
+                                    sections.contains(Section.FEATURES)
+                                            || sections.contains(Section.PACKAGES);
+                            mDevice.executeShellCommand(
+                                    getCommand(sections),
+                                    receiver,
+                                    usesPm ? PM_SHELL_TIMEOUT_SEC : SHELL_TIMEOUT_SEC,
+                                    TimeUnit.SECONDS);
+                            populateCache(sections, receiver.getValues(), startTime);
+                        } catch (Throwable e) {
+                            handleException(e);
+                        }
+                    }
+                };
+        snapshotThread.setDaemon(true);
+        snapshotThread.start();
+    }
+
+    private synchronized void populateCache(
+            @NonNull Set<Section> sections, @NonNull Map<Section, Object> values, long fetchTime) {
+        for (Section section : sections) {
+            // A section missing from the output is cached as null rather than queried again
+            // right away, so that polling a device that doesn't support it stays cheap.
+            mValues.put(section, values.get(section));
+            mFetchTimes.put(section, fetchTime);
+        }
+        for (Request request : mFetchingRequests) {
+            request.mFuture.set(createSnapshot(request.mSections));
+        }
+        mFetchingRequests.clear();
+        mFetching = null;
+        initiateWaitingQuery();
+    }
+
+    private synchronized void handleException(@NonNull Throwable e) {
+        String msg =
+                String.format(
+                        "%s getting snapshot for device %s",
+                        e.getClass().getSimpleName(), mDevice.getSerialNumber());
+        Log.w(LOG_TAG, new Throwable(msg, e));
+        for (Request request : mFetchingRequests) {
+            request.mFuture.setException(e);
+        }
+        mFetchingRequests.clear();
+        mFetching = null;
+        initiateWaitingQuery();
+    }
+
+    /** Starts a single query for everything the waiting requests still need. */
+    private void initiateWaitingQuery() {
+        long now = System.nanoTime();
+        Set<Section> stale = EnumSet.noneOf(Section.class);
+        for (Request request : mWaitingRequests) {
+            Set<Section> requestStale = getStaleSections(request, now);
+            if (requestStale.isEmpty()) {
+                request.mFuture.set(createSnapshot(request.mSections));
+            } else {
+                stale.addAll(requestStale);
+                mFetchingRequests.add(request);
+            }
+        }
+        mWaitingRequests.clear();
+        if (!stale.isEmpty()) {
+            initiateQuery(stale);
+        }
+    }
+}
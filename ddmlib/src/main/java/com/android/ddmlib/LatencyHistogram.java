@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ddmlib;
+
+import com.android.annotations.NonNull;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe histogram of latencies. Bucket {@code i} counts the latencies below {@code 2^i}
+ * milliseconds that are not in a lower bucket. The last bucket holds everything above.
+ */
+public final class LatencyHistogram {
+
+    public static final int BUCKET_COUNT = 20;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /** Records a latency. Negative values are counted as 0. */
+    public void record(long duration, @NonNull TimeUnit unit) {
+        long millis = Math.max(0, unit.toMillis(duration));
+        // Number of bits needed to write millis, so that millis < 2^bucket.
+        int bucket = 64 - Long.numberOfLeadingZeros(millis);
+        mBuckets.incrementAndGet(Math.min(bucket, BUCKET_COUNT - 1));
+    }
+
+    /** Returns the number of latencies recorded in the given bucket. */
+    public long getBucketCount(int bucket) {
+        return mBuckets.get(bucket);
+    }
+
+    /**
+     * Returns the exclusive upper bound of the latencies in the given bucket, in milliseconds, or
+     * {@link Long#MAX_VALUE} for the last one.
+     */
+    public static long getBucketUpperBoundMillis(int bucket) {
+        return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /** Returns the number of latencies recorded. */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += mBuckets.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the upper bound in milliseconds of the bucket holding the given percentile (between
+     * 0 and 100) of the recorded latencies, or 0 if nothing has been recorded.
+     */
+    public long getPercentileUpperBoundMillis(double percentile) {
+        long[] buckets = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = mBuckets.get(i);
+            count += buckets[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets[i];
+            if (seen >= rank && buckets[i] > 0) {
+                return getBucketUpperBoundMillis(i);
+            }
+        }
+        return getBucketUpperBoundMillis(BUCKET_COUNT - 1);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("LatencyHistogram{");
+        boolean first = true;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = mBuckets.get(i);
+            if (count == 0) {
+                continue;
+            }
+            if (!first) {
+                sb.append(", ");
+            }
+            first = false;
+            if (i == BUCKET_COUNT - 1) {
+                sb.append(">=").append(1L << (i - 1)).append("ms: ");
+            } else {
+                sb.append('<').append(getBucketUpperBoundMillis(i)).append("ms: ");
+            }
+            sb.append(count);
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -83,6 +83,16 @@ public class SyncService implements AutoCloseable {
     private static final int SYNC_DATA_MAX = 64*1024;
     private static final int REMOTE_PATH_MAX_LENGTH = 1024;
 
+    /**
+     * Max number of files a batched transfer sends or requests before waiting for the device to
+     * answer the oldest one. This bounds what the device has to buffer for us (e.g. the OKAY of
+     * each pushed file) so neither side blocks writing while the other is not reading.
+     */
+    private static final int MAX_PENDING_FILES = 128;
+
+    /** Requests of batched transfers are coalesced up to this size before being written. */
+    private static final int BATCH_BUFFER_SIZE = 2 * (SYNC_DATA_MAX + 8);
+
     /**
      * Classes which implement this interface provide methods that deal
      * with displaying transfer progress.
@@ -112,6 +122,15 @@ public class SyncService implements AutoCloseable {
          * @param work the amount of work done.
          */
         void advance(int work);
+        /**
+         * Sent by batched transfers ({@link SyncService#pushFiles}, {@link SyncService#pullFiles})
+         * each time a file completes, with the aggregate progress of the batch.
+         * @param files the number of files transferred so far.
+         * @param bytes the number of bytes transferred so far.
+         * @param elapsedNanos the time since the batch started.
+         */
+        default void batchProgress(int files, long bytes, long elapsedNanos) {
+        }
     }
 
     public static class FileStat {
@@ -170,6 +189,14 @@ public class SyncService implements AutoCloseable {
      */
     private byte[] mBuffer;
 
+    /**
+     * Requests queued by batched transfers but not written to the channel yet. Allocated when
+     * needed and reused afterward.
+     */
+    private byte[] mBatchBuffer;
+
+    private int mBatchLength;
+
     /**
      * Creates a Sync service object.
      *
@@ -441,6 +468,134 @@ public class SyncService implements AutoCloseable {
         monitor.stop();
     }
 
+    /**
+     * Pushes many files over this connection, each to its own remote path.
+     *
+     * <p>Unlike calling {@link #pushFile} for each file, this does not wait for the device to
+     * acknowledge a file before sending the next one, and coalesces the requests of small files
+     * into larger writes. This avoids a round trip per file.
+     *
+     * <p>If a file fails to be pushed, the device closes the connection and the files after it
+     * are not pushed either.
+     *
+     * @param local the local files to push.
+     * @param remote the remote file paths, in the same order as {@code local}.
+     * @param monitor The progress monitor. Cannot be null. Also receives {@link
+     *     ISyncProgressMonitor#batchProgress} calls.
+     * @throws SyncException if a file could not be pushed
+     * @throws IOException in case of I/O error on the connection.
+     * @throws TimeoutException in case of a timeout reading responses from the device.
+     */
+    public void pushFiles(
+            @NonNull String[] local,
+            @NonNull String[] remote,
+            @NonNull ISyncProgressMonitor monitor)
+            throws SyncException, IOException, TimeoutException {
+        if (local.length != remote.length) {
+            throw new IllegalArgumentException("local and remote must have the same length");
+        }
+        long[] sizes = new long[local.length];
+        long total = 0;
+        for (int i = 0; i < local.length; i++) {
+            File f = new File(local[i]);
+            if (!f.exists()) {
+                throw new SyncException(SyncError.NO_LOCAL_FILE);
+            }
+            if (f.isDirectory()) {
+                throw new SyncException(SyncError.LOCAL_IS_DIRECTORY);
+            }
+            sizes[i] = f.length();
+            total += sizes[i];
+        }
+
+        monitor.start((int) Math.min(total, Integer.MAX_VALUE));
+
+        final int timeOut = DdmPreferences.getTimeOut();
+        // Drop what a previous failed batch may have left.
+        mBatchLength = 0;
+        long start = System.nanoTime();
+        long bytesDone = 0;
+        int done = 0;
+        for (int i = 0; i < local.length; i++) {
+            if (monitor.isCanceled()) {
+                throw new SyncException(SyncError.CANCELED);
+            }
+            monitor.startSubTask(remote[i]);
+            queuePushFile(new File(local[i]), remote[i], monitor, timeOut);
+
+            if (i + 1 - done == MAX_PENDING_FILES) {
+                flushBatch(timeOut);
+                readPushResult(timeOut);
+                bytesDone += sizes[done++];
+                monitor.batchProgress(done, bytesDone, System.nanoTime() - start);
+            }
+        }
+        flushBatch(timeOut);
+        while (done < local.length) {
+            readPushResult(timeOut);
+            bytesDone += sizes[done++];
+            monitor.batchProgress(done, bytesDone, System.nanoTime() - start);
+        }
+
+        monitor.stop();
+    }
+
+    /**
+     * Pulls many files over this connection, each to its own local path.
+     *
+     * <p>Unlike calling {@link #pullFile(String, String, ISyncProgressMonitor)} for each file, this
+     * requests the next files before the current one is received, which avoids a round trip per
+     * file. Since the sizes of the files are not known up front, the monitor is started with no
+     * total work.
+     *
+     * @param remote the full paths of the remote files.
+     * @param local the local destinations, in the same order as {@code remote}.
+     * @param monitor The progress monitor. Cannot be null. Also receives {@link
+     *     ISyncProgressMonitor#batchProgress} calls.
+     * @throws SyncException if a file could not be pulled
+     * @throws IOException in case of I/O error on the connection.
+     * @throws TimeoutException in case of a timeout reading responses from the device.
+     */
+    public void pullFiles(
+            @NonNull String[] remote,
+            @NonNull String[] local,
+            @NonNull ISyncProgressMonitor monitor)
+            throws SyncException, IOException, TimeoutException {
+        if (local.length != remote.length) {
+            throw new IllegalArgumentException("local and remote must have the same length");
+        }
+        byte[][] requests = new byte[remote.length][];
+        for (int i = 0; i < remote.length; i++) {
+            byte[] remotePathContent = remote[i].getBytes(AdbHelper.DEFAULT_CHARSET);
+            if (remotePathContent.length > REMOTE_PATH_MAX_LENGTH) {
+                throw new SyncException(SyncError.REMOTE_PATH_LENGTH);
+            }
+            requests[i] = createFileReq(ID_RECV, remotePathContent);
+        }
+
+        monitor.start(0);
+
+        final int timeOut = DdmPreferences.getTimeOut();
+        // Drop what a previous failed batch may have left.
+        mBatchLength = 0;
+        long start = System.nanoTime();
+        long bytesDone = 0;
+        int requested = 0;
+        for (int i = 0; i < remote.length; i++) {
+            while (requested < remote.length && requested - i < MAX_PENDING_FILES) {
+                queue(requests[requested], requests[requested].length, timeOut);
+                requested++;
+            }
+            flushBatch(timeOut);
+
+            monitor.startSubTask(remote[i]);
+            bytesDone += receiveFile(local[i], monitor, timeOut);
+            monitor.batchProgress(i + 1, bytesDone, System.nanoTime() - start);
+        }
+
+        monitor.stop();
+    }
+
     /**
      * compute the recursive file size of all the files in the list. Folder
      * have a weight of 1.
@@ -543,7 +698,6 @@ public class SyncService implements AutoCloseable {
     private void doPullFile(String remotePath, String localPath,
             ISyncProgressMonitor monitor) throws IOException, SyncException, TimeoutException {
         byte[] msg = null;
-        byte[] pullResult = new byte[8];
 
         final int timeOut = DdmPreferences.getTimeOut();
         byte[] remotePathContent = remotePath.getBytes(AdbHelper.DEFAULT_CHARSET);
@@ -558,6 +712,23 @@ public class SyncService implements AutoCloseable {
         // and send it.
         AdbHelper.write(mChannel, msg, -1, timeOut);
 
+        receiveFile(localPath, monitor, timeOut);
+    }
+
+    /**
+     * Receives the content of a remote file requested with a RECV request.
+     * @param localPath the local destination
+     * @param monitor the monitor. The monitor must be started already.
+     * @return the number of bytes received
+     * @throws SyncException if file could not be pulled
+     * @throws IOException in case of I/O error on the connection.
+     * @throws TimeoutException in case of a timeout reading responses from the device.
+     */
+    private long receiveFile(String localPath, ISyncProgressMonitor monitor, int timeOut)
+            throws IOException, SyncException, TimeoutException {
+        byte[] pullResult = new byte[8];
+        long received = 0;
+
         // read the result, in a byte array containing 2 ints (id, size)
         AdbHelper.read(mChannel, pullResult, -1, timeOut);
 
@@ -577,7 +748,7 @@ public class SyncService implements AutoCloseable {
             fos = new FileOutputStream(f);
 
             // the buffer to read the data
-            byte[] data = new byte[SYNC_DATA_MAX];
+            byte[] data = getBuffer();
 
             // loop to get data until we're done.
             while (true) {
@@ -612,6 +783,7 @@ public class SyncService implements AutoCloseable {
                 fos.write(data, 0, length);
 
                 monitor.advance(length);
+                received += length;
             }
 
             fos.flush();
@@ -624,6 +796,7 @@ public class SyncService implements AutoCloseable {
                 fos.close();
             }
         }
+        return received;
     }
 
 
@@ -750,6 +923,93 @@ public class SyncService implements AutoCloseable {
         }
     }
 
+    /**
+     * Queues the SEND, DATA and DONE requests pushing a single file, without waiting for the
+     * result. Must be followed by {@link #readPushResult} once the batch is flushed.
+     * @param f the local file to push
+     * @param remotePath the remote file (length max is 1024)
+     * @param monitor the monitor. The monitor must be started already.
+     *
+     * @throws SyncException if file could not be pushed
+     * @throws IOException in case of I/O error on the connection.
+     * @throws TimeoutException in case of a timeout writing to the device.
+     */
+    private void queuePushFile(File f, String remotePath, ISyncProgressMonitor monitor,
+            int timeOut) throws SyncException, IOException, TimeoutException {
+        byte[] remotePathContent = remotePath.getBytes(AdbHelper.DEFAULT_CHARSET);
+        if (remotePathContent.length > REMOTE_PATH_MAX_LENGTH) {
+            throw new SyncException(SyncError.REMOTE_PATH_LENGTH);
+        }
+
+        try (FileInputStream fis = new FileInputStream(f)) {
+            int permissions = FilePermissionUtil.getFilePosixPermission(f);
+            byte[] msg = createSendFileReq(ID_SEND, remotePathContent, permissions);
+            queue(msg, msg.length, timeOut);
+
+            System.arraycopy(ID_DATA, 0, getBuffer(), 0, ID_DATA.length);
+            while (true) {
+                if (monitor.isCanceled()) {
+                    throw new SyncException(SyncError.CANCELED);
+                }
+                int readCount = fis.read(getBuffer(), 8, SYNC_DATA_MAX);
+                if (readCount == -1) {
+                    break;
+                }
+                ArrayHelper.swap32bitsToArray(readCount, getBuffer(), 4);
+                queue(getBuffer(), readCount + 8, timeOut);
+                monitor.advance(readCount);
+            }
+        }
+
+        long time = f.lastModified() / 1000;
+        byte[] msg = createReq(ID_DONE, (int) time);
+        queue(msg, msg.length, timeOut);
+    }
+
+    /**
+     * Reads the result of the oldest file pushed by {@link #queuePushFile}.
+     * @throws SyncException if the file could not be pushed
+     * @throws IOException in case of I/O error on the connection.
+     * @throws TimeoutException in case of a timeout reading responses from the device.
+     */
+    private void readPushResult(int timeOut) throws SyncException, IOException, TimeoutException {
+        byte[] result = new byte[8];
+        AdbHelper.read(mChannel, result, -1 /* full length */, timeOut);
+
+        if (!checkResult(result, ID_OKAY)) {
+            throw new SyncException(SyncError.TRANSFER_PROTOCOL_ERROR,
+                    readErrorMessage(result, timeOut));
+        }
+    }
+
+    /**
+     * Appends a request to the batch buffer, writing the buffer first if the request does not
+     * fit in it.
+     */
+    private void queue(byte[] request, int length, int timeOut)
+            throws TimeoutException, IOException {
+        if (mBatchBuffer == null) {
+            mBatchBuffer = new byte[BATCH_BUFFER_SIZE];
+        }
+        if (mBatchLength + length > mBatchBuffer.length) {
+            flushBatch(timeOut);
+        }
+        if (length > mBatchBuffer.length) {
+            AdbHelper.write(mChannel, request, length, timeOut);
+            return;
+        }
+        System.arraycopy(request, 0, mBatchBuffer, mBatchLength, length);
+        mBatchLength += length;
+    }
+
+    /** Writes the requests queued in the batch buffer to the channel. */
+    private void flushBatch(int timeOut) throws TimeoutException, IOException {
+        if (mBatchLength > 0) {
+            AdbHelper.write(mChannel, mBatchBuffer, mBatchLength, timeOut);
+            mBatchLength = 0;
+        }
+    }
+
     /**
      * Reads an error message from the opened {@link #mChannel}.
      * @param result the current adb result. Must contain both FAIL and the length of the message.
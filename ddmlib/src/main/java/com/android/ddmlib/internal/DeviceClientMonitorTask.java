@@ -25,6 +25,7 @@ import com.android.ddmlib.Client;
 import com.android.ddmlib.ClientData;
 import com.android.ddmlib.DdmPreferences;
 import com.android.ddmlib.IDevice;
+import com.android.ddmlib.LatencyHistogram;
 import com.android.ddmlib.Log;
 import com.android.ddmlib.TimeoutException;
 import com.android.ddmlib.internal.jdwp.chunkhandler.HandleHello;
@@ -32,7 +33,8 @@ import com.android.sdklib.AndroidVersion;
 import com.android.server.adb.protos.AppProcessesProto;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
-import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.InvalidProtocolBufferException;
 import java.io.IOException;
 import java.net.InetSocketAddress;
@@ -51,7 +53,11 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -73,9 +79,20 @@ import java.util.concurrent.TimeUnit;
  * profileable status are also returned. The VM does NOT send an APNM packet to declare its
  * application ID. This information is retrieved via a separate command sent for each PID "cat
  * /proc/XXX/cmdline".
+ *
+ * <p>Opening a client connects to it through adb and sends the JDWP handshake, which blocks for a
+ * device round trip. This is done on a small pool of threads rather than on the selector thread, so
+ * that a slow device doesn't hold back the others. The updates of a given device are still applied
+ * one at a time, in order.
  */
 class DeviceClientMonitorTask implements Runnable {
 
+    /** Number of threads opening clients, whatever the number of devices. */
+    private static final int CLIENT_OPENER_THREAD_COUNT = 4;
+
+    /** Time to wait before reopening a dropped client, or it won't answer the second handshake. */
+    private static final long REOPEN_DELAY_MILLIS = 1000;
+
     // Every times the selector triggers, we read as much as possible from the socket and hand it
     // over to the Processor associated with it.
     private final ByteBuffer mBuffer = ByteBuffer.allocate(1 << 16);
@@ -86,10 +103,56 @@ class DeviceClientMonitorTask implements Runnable {
     // Therefore, make sure atomic operations are done via that extended API.
     private final ConcurrentHashMap<SocketChannel, TrackServiceProcessor> mChannelsToRegister =
             new ConcurrentHashMap<>();
-    private final Set<ClientImpl> mClientsToReopen = new HashSet<>();
+    // Clients dropped and waiting to be reopened, which track updates should not open again.
+    private final Set<ClientImpl> mClientsToReopen = ConcurrentHashMap.newKeySet();
+    @NonNull private final ScheduledThreadPoolExecutor mClientOpener;
+
+    // Executors running the client updates of each device in order on mClientOpener. Guarded by
+    // itself.
+    @NonNull private final Map<DeviceImpl, Executor> mDeviceExecutors = new WeakHashMap<>();
+
+    @NonNull private final LatencyHistogram mClientReadyLatency = new LatencyHistogram();
 
     DeviceClientMonitorTask() throws IOException {
         mSelector = Selector.open();
+        mClientOpener =
+                new ScheduledThreadPoolExecutor(
+                        CLIENT_OPENER_THREAD_COUNT,
+                        new ThreadFactoryBuilder()
+                                .setNameFormat("Device Client Opener-%d")
+                                .setDaemon(true)
+                                .build());
+    }
+
+    /**
+     * Returns the time from when a debuggable process is known, either because the device has
+     * just been registered or because adb reported a new pid, to when its client is ready.
+     */
+    @NonNull
+    LatencyHistogram getClientReadyLatency() {
+        return mClientReadyLatency;
+    }
+
+    /** Runs a task after the previous tasks of the same device, on the client opener threads. */
+    private void executeForDevice(@NonNull DeviceImpl device, @NonNull Runnable task) {
+        Executor executor;
+        synchronized (mDeviceExecutors) {
+            executor =
+                    mDeviceExecutors.computeIfAbsent(
+                            device, d -> MoreExecutors.newSequentialExecutor(mClientOpener));
+        }
+        try {
+            executor.execute(
+                    () -> {
+                        try {
+                            task.run();
+                        } catch (RuntimeException e) {
+                            Log.e("DeviceClientMonitorTask", e);
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            // stop() has been called.
+        }
     }
 
     /**
@@ -168,37 +231,39 @@ class DeviceClientMonitorTask implements Runnable {
     }
 
     void registerClientToDropAndReopen(ClientImpl client) {
-        synchronized (mClientsToReopen) {
-            Log.d(
-              "DeviceClientMonitorTask",
-              "Adding " + client + " to list of client to reopen (" + client.getDebuggerListenPort() + ").");
-            mClientsToReopen.add(client);
-        }
-        mSelector.wakeup();
+        Log.d(
+          "DeviceClientMonitorTask",
+          "Adding " + client + " to list of client to reopen (" + client.getDebuggerListenPort() + ").");
+        DeviceImpl device = (DeviceImpl) client.getDevice();
+        executeForDevice(
+                device,
+                () -> {
+                    MonitorThread monitorThread = MonitorThread.getInstance();
+                    mClientsToReopen.add(client);
+                    monitorThread.dropClient(client, false /* notify */);
+                    int pid = client.getClientData().getPid();
+
+                    // If we don't wait a bit, the client will never answer the second handshake.
+                    // Schedule the reopening rather than sleeping so other devices are not held.
+                    mClientOpener.schedule(
+                            () ->
+                                    executeForDevice(
+                                            device,
+                                            () -> {
+                                                mClientsToReopen.remove(client);
+                                                Log.d(
+                                                        "DeviceClientMonitorTask",
+                                                        "Reopening " + client);
+                                                openClient(device, pid, monitorThread);
+                                                device.update(IDevice.CHANGE_CLIENT_LIST);
+                                            }),
+                            REOPEN_DELAY_MILLIS,
+                            TimeUnit.MILLISECONDS);
+                });
     }
 
     void free(@NonNull ClientImpl client) { }
 
-    private void processDropAndReopenClients() {
-        synchronized (mClientsToReopen) {
-            MonitorThread monitorThread = MonitorThread.getInstance();
-            for (ClientImpl client : mClientsToReopen) {
-                DeviceImpl device = (DeviceImpl) client.getDevice();
-                int pid = client.getClientData().getPid();
-
-                monitorThread.dropClient(client, false /* notify */);
-
-                // This is kinda bad, but if we don't wait a bit, the client
-                // will never answer the second handshake!
-                Uninterruptibles.sleepUninterruptibly(1, TimeUnit.SECONDS);
-                Log.d("DeviceClientMonitorTask", "Reopening " + client);
-                openClient(device, pid, monitorThread);
-                device.update(IDevice.CHANGE_CLIENT_LIST);
-            }
-            mClientsToReopen.clear();
-        }
-    }
-
     /** Registers track-jdwp key with the corresponding device's socket channel's selector. */
     void processChannelsToRegister() {
         List<SocketChannel> channels = Collections.list(mChannelsToRegister.keys());
@@ -237,7 +302,6 @@ class DeviceClientMonitorTask implements Runnable {
             }
 
             processChannelsToRegister();
-            processDropAndReopenClients();
 
             if (count == 0) {
                 continue;
@@ -311,6 +375,7 @@ class DeviceClientMonitorTask implements Runnable {
         mQuit = true;
         // wake up the secondary loop by closing the selector.
         mSelector.wakeup();
+        mClientOpener.shutdownNow();
     }
 
     private boolean sendDeviceMonitoringRequest(
@@ -337,7 +402,22 @@ class DeviceClientMonitorTask implements Runnable {
         }
     }
 
-    private void updateJdwpClients(@NonNull DeviceImpl device, @NonNull Set<Integer> newPids) {
+    /**
+     * Updates the clients of a device from the pids of its debuggable processes. This runs on the
+     * device executor as opening clients blocks.
+     *
+     * @param knownSinceNanos {@link System#nanoTime()} when the pids became known
+     */
+    private void updateJdwpClientsAsync(
+            @NonNull DeviceImpl device, @NonNull Set<Integer> newPids, long knownSinceNanos) {
+        executeForDevice(device, () -> updateJdwpClients(device, newPids, knownSinceNanos));
+    }
+
+    private void updateJdwpClients(
+            @NonNull DeviceImpl device, @NonNull Set<Integer> newPids, long knownSinceNanos) {
+        if (mQuit) {
+            return;
+        }
         MonitorThread monitorThread = MonitorThread.getInstance();
 
         List<ClientImpl> clients = device.getClientList();
@@ -358,11 +438,19 @@ class DeviceClientMonitorTask implements Runnable {
 
         Set<Integer> pidsToAdd = new HashSet<Integer>(newPids);
         pidsToAdd.removeAll(existingClients.keySet());
+        for (ClientImpl client : mClientsToReopen) {
+            if (client.getDevice() == device) {
+                pidsToAdd.remove(client.getClientData().getPid());
+            }
+        }
         monitorThread.dropClients(clientsToRemove, false);
 
         // at this point whatever pid is left in the list needs to be converted into Clients.
         for (int newPid : pidsToAdd) {
-            openClient(device, newPid, monitorThread);
+            if (openClient(device, newPid, monitorThread)) {
+                mClientReadyLatency.record(
+                        System.nanoTime() - knownSinceNanos, TimeUnit.NANOSECONDS);
+            }
         }
 
         if (!pidsToAdd.isEmpty() || !clientsToRemove.isEmpty()) {
@@ -370,8 +458,8 @@ class DeviceClientMonitorTask implements Runnable {
         }
     }
 
-    /** Opens and creates a new client. */
-    private static void openClient(
+    /** Opens and creates a new client. Returns whether the client was added to the device. */
+    private static boolean openClient(
             @NonNull DeviceImpl device, int pid, @NonNull MonitorThread monitorThread) {
 
         SocketChannel clientSocket;
@@ -396,27 +484,27 @@ class DeviceClientMonitorTask implements Runnable {
             clientSocket.configureBlocking(false);
         } catch (UnknownHostException uhe) {
             Log.d("DeviceClientMonitorTask", "Unknown Jdwp pid: " + pid);
-            return;
+            return false;
         } catch (TimeoutException e) {
             Log.w("DeviceClientMonitorTask", "Failed to connect to client '" + pid + "': timeout");
-            return;
+            return false;
         } catch (AdbCommandRejectedException e) {
             Log.d(
                     "DeviceClientMonitorTask",
                     "Adb rejected connection to client '" + pid + "': " + e.getMessage());
-            return;
+            return false;
         } catch (IOException ioe) {
             Log.w(
                     "DeviceClientMonitorTask",
                     "Failed to connect to client '" + pid + "': " + ioe.getMessage());
-            return;
+            return false;
         }
 
-        createClient(device, pid, clientSocket, monitorThread);
+        return createClient(device, pid, clientSocket, monitorThread);
     }
 
     /** Creates a client and register it to the monitor thread */
-    private static void createClient(
+    private static boolean createClient(
             @NonNull DeviceImpl device,
             int pid,
             @NonNull SocketChannel socket,
@@ -461,7 +549,9 @@ class DeviceClientMonitorTask implements Runnable {
         if (client.isValid()) {
             device.addClient(client);
             monitorThread.addClient(client);
+            return true;
         }
+        return false;
     }
 
     private static boolean isDeviceVersionAtLeastS(@NonNull DeviceImpl device) {
@@ -524,10 +614,26 @@ class DeviceClientMonitorTask implements Runnable {
 
         private static final int HEADER_SIZE = 4;
 
+        private boolean mFirstMessage = true;
+
+        private final long mRegisteredNanos = System.nanoTime();
+
         TrackServiceProcessor(@NonNull DeviceImpl device) {
             super(device);
         }
 
+        /**
+         * Returns when the pids of the message being processed became known: when the device was
+         * registered for the processes it reports first, otherwise now.
+         */
+        protected long getPidsKnownSinceNanos() {
+            if (mFirstMessage) {
+                mFirstMessage = false;
+                return mRegisteredNanos;
+            }
+            return System.nanoTime();
+        }
+
         @Override
         protected Optional<ByteBuffer> parseMessage() throws IOException {
             if (mStream.size() < HEADER_SIZE) {
@@ -606,7 +712,7 @@ class DeviceClientMonitorTask implements Runnable {
                 }
             }
 
-            updateJdwpClients(getDevice(), newJdwpPids);
+            updateJdwpClientsAsync(getDevice(), newJdwpPids, getPidsKnownSinceNanos());
             updateProfileableClients(getDevice(), newProfileable);
         }
 
@@ -725,7 +831,7 @@ class DeviceClientMonitorTask implements Runnable {
                             // looks like this pid is not really a number. Lets ignore it.
                         }
                 }
-                updateJdwpClients(getDevice(), newPids);
+                updateJdwpClientsAsync(getDevice(), newPids, getPidsKnownSinceNanos());
         }
     }
 
@@ -27,6 +27,7 @@ import com.android.ddmlib.ClientData;
 import com.android.ddmlib.ClientTracker;
 import com.android.ddmlib.CollectingOutputReceiver;
 import com.android.ddmlib.DdmPreferences;
+import com.android.ddmlib.DeviceSnapshotFetcher;
 import com.android.ddmlib.FileListingService;
 import com.android.ddmlib.IDevice;
 import com.android.ddmlib.IShellOutputReceiver;
@@ -108,6 +109,8 @@ public final class DeviceImpl implements IDevice {
 
     private final BatteryFetcher mBatteryFetcher = new BatteryFetcher(this);
 
+    private final DeviceSnapshotFetcher mSnapshotFetcher = new DeviceSnapshotFetcher(this);
+
     @GuardedBy("mClients")
     private final List<ClientImpl> mClients = new ArrayList<>();
 
@@ -1524,6 +1527,20 @@ public final class DeviceImpl implements IDevice {
         return mBatteryFetcher.getBattery(freshnessTime, timeUnit);
     }
 
+    /**
+     * Returns a snapshot of the given device state, fetched with a single shell command for all
+     * the sections not cached within {@code maxAge}.
+     *
+     * @see DeviceSnapshotFetcher#getSnapshot(Set, long, TimeUnit)
+     */
+    @NonNull
+    public ListenableFuture<DeviceSnapshotFetcher.Snapshot> getSnapshot(
+            @NonNull Set<DeviceSnapshotFetcher.Section> sections,
+            long maxAge,
+            @NonNull TimeUnit unit) {
+        return mSnapshotFetcher.getSnapshot(sections, maxAge, unit);
+    }
+
     @NonNull
     @Override
     public List<String> getAbis() {
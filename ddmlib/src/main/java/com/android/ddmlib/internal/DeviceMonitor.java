@@ -28,6 +28,7 @@ import com.android.ddmlib.DdmPreferences;
 import com.android.ddmlib.EmulatorConsole;
 import com.android.ddmlib.IDevice;
 import com.android.ddmlib.IDevice.DeviceState;
+import com.android.ddmlib.LatencyHistogram;
 import com.android.ddmlib.Log;
 import com.android.ddmlib.clientmanager.DeviceClientManager;
 import com.android.ddmlib.clientmanager.DeviceClientManagerUtils;
@@ -60,6 +61,7 @@ import java.util.function.Function;
  * a socket connection to the adb host per registered device and issues a {@link DeviceClientMonitorTask.ADB_TRACK_JDWP_COMMAND}.
  * On this connection, it monitors active clients on the device. Note: a single thread monitors jdwp connections from all devices.
  * The different socket connections to adb (one per device) are multiplexed over a single selector.
+ * The clients themselves are opened on a bounded pool of threads shared by all devices.
  */
 public final class DeviceMonitor implements ClientTracker {
     private final AndroidDebugBridge mServer;
@@ -184,6 +186,16 @@ public final class DeviceMonitor implements ClientTracker {
         return mDeviceListMonitorTask == null ? 0 : mDeviceListMonitorTask.getRestartAttemptCount();
     }
 
+    /**
+     * Returns the time it takes for the clients of debuggable processes to be ready once they are
+     * known, or null if clients are not monitored.
+     */
+    @Nullable
+    public LatencyHistogram getClientReadyLatency() {
+        DeviceClientMonitorTask task = myDeviceClientMonitorTask;
+        return task == null ? null : task.getClientReadyLatency();
+    }
+
     public boolean hasInitialDeviceList() {
         return mDeviceListMonitorTask != null && mDeviceListMonitorTask.hasInitialDeviceList();
     }
@@ -17,9 +17,9 @@
 package com.android.ddmlib.log;
 
 import com.android.annotations.NonNull;
+import com.android.ddmlib.ByteLineReceiver;
 import com.android.ddmlib.IDevice;
 import com.android.ddmlib.Log;
-import com.android.ddmlib.MultiLineReceiver;
 import com.android.ddmlib.log.EventContainer.EventValueType;
 import com.android.ddmlib.log.EventValueDescription.ValueType;
 import com.android.ddmlib.log.LogReceiver.LogEntry;
@@ -87,11 +87,14 @@ public final class EventLogParser {
         try {
             device.executeShellCommand(
                     "cat " + EVENT_TAG_MAP_FILE, //$NON-NLS-1$
-                    new MultiLineReceiver() {
+                    new ByteLineReceiver() {
                         @Override
-                        public void processNewLines(@NonNull String[] lines) {
-                            for (String line : lines) {
-                                processTagLine(line);
+                        protected void processLine(
+                                @NonNull byte[] data, int offset, int length) {
+                            // skip empty lines and comment lines without decoding them
+                            if (length > 0 && data[offset] != '#') {
+                                processTagLine(
+                                        new String(data, offset, length, Charsets.UTF_8));
                             }
                         }
 
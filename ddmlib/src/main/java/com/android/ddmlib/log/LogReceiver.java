@@ -85,6 +85,8 @@ public final class LogReceiver {
     private int mEntryHeaderOffset = 0;
     /** Offset in the partial entry data */
     private int mEntryDataOffset = 0;
+    /** Bytes of the current entry header past {@link #ENTRY_HEADER_SIZE} still to be skipped */
+    private int mEntryHeaderSkip = 0;
     
     /** Listener waiting for receive fully read {@link LogEntry} objects */
     private ILogListener mListener;
@@ -136,6 +138,7 @@ public final class LogReceiver {
                         
                         // create the entry from the header buffer
                         mCurrentEntry = createEntry(mEntryHeaderBuffer, 0);
+                        mEntryHeaderSkip = getExtraHeaderSize(mEntryHeaderBuffer, 0);
     
                         // since we used the whole entry header buffer, we reset  the offset
                         mEntryHeaderOffset = 0;
@@ -147,6 +150,7 @@ public final class LogReceiver {
                     } else {
                         // create the entry directly from the data array
                         mCurrentEntry = createEntry(data, offset);
+                        mEntryHeaderSkip = getExtraHeaderSize(data, offset);
                         
                         // adjust current offset and remaining length to the beginning
                         // of the entry data
@@ -156,6 +160,17 @@ public final class LogReceiver {
                 }
             }
             
+            // skip the fields newer headers have after the ones we read.
+            if (mEntryHeaderSkip > 0) {
+                int size = Math.min(mEntryHeaderSkip, length);
+                mEntryHeaderSkip -= size;
+                offset += size;
+                length -= size;
+                if (mEntryHeaderSkip > 0) {
+                    return;
+                }
+            }
+
             // at this point, we have an entry, and offset/length have been updated to skip
             // the entry header.
     
@@ -208,6 +223,17 @@ public final class LogReceiver {
         mIsCancelled = true;
     }
     
+    /**
+     * Returns the size of the entry header fields past the first {@link #ENTRY_HEADER_SIZE} bytes.
+     * Version 1 entries have a 16 bit padding after the length, newer versions (as written by
+     * <code>logcat -B</code>) store the header size there and may append fields such as the log id
+     * and uid.
+     */
+    private static int getExtraHeaderSize(byte[] data, int offset) {
+        int headerSize = ArrayHelper.swapU16bitFromArray(data, offset + 2);
+        return headerSize > ENTRY_HEADER_SIZE ? headerSize - ENTRY_HEADER_SIZE : 0;
+    }
+
     /**
      * Creates a {@link LogEntry} from the array of bytes. This expects the data buffer size
      * to be at least <code>offset + {@link #ENTRY_HEADER_SIZE}</code>.
@@ -225,8 +251,8 @@ public final class LogReceiver {
         LogEntry entry = new LogEntry();
         entry.len = ArrayHelper.swapU16bitFromArray(data, offset);
         
-        // we've read only 16 bits, but since there's also a 16 bit padding,
-        // we can skip right over both.
+        // we've read only 16 bits, but since there's also a 16 bit padding (or header size,
+        // see getExtraHeaderSize), we can skip right over both.
         offset += 4;
         
         entry.pid = ArrayHelper.swap32bitFromArray(data, offset);
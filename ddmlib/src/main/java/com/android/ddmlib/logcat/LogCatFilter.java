@@ -16,6 +16,7 @@
 package com.android.ddmlib.logcat;
 
 import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
 import com.android.ddmlib.Log.LogLevel;
 import java.util.ArrayList;
 import java.util.List;
@@ -185,6 +186,24 @@ public final class LogCatFilter {
         return mLogLevel;
     }
 
+    /** Returns the compiled app name regex, or null if the app name is not checked. */
+    @Nullable
+    Pattern getAppNamePattern() {
+        return mCheckAppName ? mAppNamePattern : null;
+    }
+
+    /** Returns the compiled tag regex, or null if the tag is not checked. */
+    @Nullable
+    Pattern getTagPattern() {
+        return mCheckTag ? mTagPattern : null;
+    }
+
+    /** Returns the compiled text regex, or null if the text is not checked. */
+    @Nullable
+    Pattern getTextPattern() {
+        return mCheckText ? mTextPattern : null;
+    }
+
     /**
      * Check whether a given message will make it through this filter.
      *
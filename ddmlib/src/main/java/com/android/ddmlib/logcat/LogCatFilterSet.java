@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ddmlib.logcat;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.android.ddmlib.Log.LogLevel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A list of {@link LogCatFilter} objects compiled to be evaluated together.
+ *
+ * <p>Calling {@link LogCatFilter#matches(LogCatMessage)} on each filter runs every regex of every
+ * filter on each message. Instead, this class looks up the pid in a map and searches for all the
+ * tag, app name and text regexes of the filters with a {@link LogCatPatternSet} per field, so
+ * each field of a message is scanned once whatever the number of filters.
+ *
+ * <p>Instances are immutable and can be shared between threads.
+ */
+public final class LogCatFilterSet {
+
+    @NonNull private final List<LogCatFilter> mFilters;
+
+    /** Filters accepting each {@link LogLevel}, by ordinal. */
+    @NonNull private final BitSet[] mLevelMasks;
+
+    @NonNull private final BitSet mPidChecked = new BitSet();
+
+    @NonNull private final Map<Integer, BitSet> mPids = new HashMap<>();
+
+    @NonNull private final BitSet mAppNameChecked = new BitSet();
+
+    @NonNull private final LogCatPatternSet mAppNames;
+
+    @NonNull private final BitSet mTagChecked = new BitSet();
+
+    @NonNull private final LogCatPatternSet mTags;
+
+    @NonNull private final BitSet mTextChecked = new BitSet();
+
+    @NonNull private final LogCatPatternSet mTexts;
+
+    public LogCatFilterSet(@NonNull List<LogCatFilter> filters) {
+        mFilters = Collections.unmodifiableList(new ArrayList<>(filters));
+
+        LogLevel[] levels = LogLevel.values();
+        mLevelMasks = new BitSet[levels.length];
+        for (LogLevel level : levels) {
+            BitSet mask = new BitSet();
+            for (int i = 0; i < mFilters.size(); i++) {
+                if (level.getPriority() >= mFilters.get(i).getLogLevel().getPriority()) {
+                    mask.set(i);
+                }
+            }
+            mLevelMasks[level.ordinal()] = mask;
+        }
+
+        List<Pattern> appNames = new ArrayList<>();
+        List<Pattern> tags = new ArrayList<>();
+        List<Pattern> texts = new ArrayList<>();
+        for (int i = 0; i < mFilters.size(); i++) {
+            LogCatFilter filter = mFilters.get(i);
+            String pid = filter.getPid();
+            if (!pid.isEmpty()) {
+                mPidChecked.set(i);
+                Integer value = parsePid(pid);
+                if (value != null) {
+                    mPids.computeIfAbsent(value, k -> new BitSet()).set(i);
+                }
+            }
+            addPattern(filter.getAppNamePattern(), i, appNames, mAppNameChecked);
+            addPattern(filter.getTagPattern(), i, tags, mTagChecked);
+            addPattern(filter.getTextPattern(), i, texts, mTextChecked);
+        }
+        mAppNames = new LogCatPatternSet(appNames);
+        mTags = new LogCatPatternSet(tags);
+        mTexts = new LogCatPatternSet(texts);
+    }
+
+    private static void addPattern(
+            @Nullable Pattern pattern,
+            int index,
+            @NonNull List<Pattern> patterns,
+            @NonNull BitSet checked) {
+        patterns.add(pattern);
+        if (pattern != null) {
+            checked.set(index);
+        }
+    }
+
+    /**
+     * {@link LogCatFilter} compares the pid as a string, so only filters holding the canonical
+     * string of an int can match.
+     */
+    @Nullable
+    private static Integer parsePid(@NonNull String pid) {
+        try {
+            int value = Integer.parseInt(pid);
+            return Integer.toString(value).equals(pid) ? value : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @NonNull
+    public List<LogCatFilter> getFilters() {
+        return mFilters;
+    }
+
+    /**
+     * Checks a message against all the filters.
+     *
+     * @param message message to check
+     * @return a bit set where bit {@code i} is set if {@code getFilters().get(i)} matches the
+     *     message, like {@link LogCatFilter#matches(LogCatMessage)} would.
+     */
+    @NonNull
+    public BitSet matches(@NonNull LogCatMessage message) {
+        LogCatHeader header = message.getHeader();
+        BitSet result = (BitSet) mLevelMasks[header.getLogLevel().ordinal()].clone();
+
+        // Fields are only looked at if a filter still in the running checks them.
+        if (result.intersects(mPidChecked)) {
+            filter(result, mPidChecked, mPids.get(header.getPid()));
+        }
+        if (result.intersects(mAppNameChecked)) {
+            filter(result, mAppNameChecked, find(mAppNames, header.getAppName()));
+        }
+        if (result.intersects(mTagChecked)) {
+            filter(result, mTagChecked, find(mTags, header.getTag()));
+        }
+        if (result.intersects(mTextChecked)) {
+            filter(result, mTextChecked, find(mTexts, message.getMessage()));
+        }
+        return result;
+    }
+
+    @NonNull
+    private static BitSet find(@NonNull LogCatPatternSet patterns, @NonNull String value) {
+        BitSet found = new BitSet();
+        patterns.find(value, found);
+        return found;
+    }
+
+    /** Clears from {@code result} the filters that check a field but don't accept its value. */
+    private static void filter(
+            @NonNull BitSet result, @NonNull BitSet checked, @Nullable BitSet accepted) {
+        BitSet rejected = (BitSet) checked.clone();
+        if (accepted != null) {
+            rejected.andNot(accepted);
+        }
+        result.andNot(rejected);
+    }
+}
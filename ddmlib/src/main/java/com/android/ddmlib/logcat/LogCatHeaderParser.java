@@ -97,6 +97,154 @@ public class LogCatHeaderParser {
      */
     @Nullable
     public LogCatHeader parseHeader(String line, PidToPackageName pidToPackageName) {
+        int length = line.length();
+        if (length < 2 || line.charAt(0) != '[' || line.charAt(length - 1) != ']') {
+            // Cannot match HEADER. This is what most message lines look like.
+            return null;
+        }
+        LogCatHeader header = parseHeaderFast(line, pidToPackageName);
+        if (header != null) {
+            return header;
+        }
+        return parseHeaderWithPattern(line, pidToPackageName);
+    }
+
+    /**
+     * Single pass parser for the common shapes of the header. Returns `null` when the line is not
+     * exactly what `logcat -v long` or `logcat -v long,epoch` usually prints, in which case the
+     * caller falls back to [HEADER], so this never needs to handle the unusual cases itself.
+     */
+    @Nullable
+    private LogCatHeader parseHeaderFast(String line, PidToPackageName pidToPackageName) {
+        int end = line.length() - 1; // index of the closing ']'
+        int i = skipSpaces(line, 1, end);
+        if (i == 1) {
+            return null;
+        }
+
+        // Timestamp fields, the Instant is only built once the whole line is known to be a header
+        long epochSec = 0;
+        int month = -1, day = 0, hour = 0, min = 0, sec = 0, milli;
+        int numberStart = i;
+        i = skipDigits(line, i, end);
+        if (i == end) {
+            return null;
+        }
+        char separator = line.charAt(i);
+        if (separator == '-' && i - numberStart == 2) {
+            month = parseDigits(line, numberStart, 2);
+            day = parseDigits(line, i + 1, 2);
+            int timeStart = skipSpaces(line, i + 3, end);
+            if (day < 0 || timeStart == i + 3 || timeStart + 12 > end) {
+                return null;
+            }
+            hour = parseDigits(line, timeStart, 2);
+            min = parseDigits(line, timeStart + 3, 2);
+            sec = parseDigits(line, timeStart + 6, 2);
+            milli = parseDigits(line, timeStart + 9, 3);
+            if (hour < 0
+                    || min < 0
+                    || sec < 0
+                    || milli < 0
+                    || line.charAt(timeStart + 2) != ':'
+                    || line.charAt(timeStart + 5) != ':'
+                    || line.charAt(timeStart + 8) != '.') {
+                return null;
+            }
+            i = timeStart + 12;
+        } else if (separator == '.' && i > numberStart && i - numberStart <= 18) {
+            // Longer epochs may overflow, leave them to parseEpochSeconds
+            epochSec = parseLongDigits(line, numberStart, i);
+            milli = i + 4 <= end ? parseDigits(line, i + 1, 3) : -1;
+            if (milli < 0) {
+                return null;
+            }
+            i += 4;
+        } else {
+            return null;
+        }
+
+        int pidStart = skipSpaces(line, i, end);
+        if (pidStart == i) {
+            return null;
+        }
+        i = skipDigits(line, pidStart, end);
+        // Longer pids may overflow, leave them to parsePid
+        if (pidStart == i || i - pidStart > 9 || line.charAt(i) != ':') {
+            return null;
+        }
+        int pid = (int) parseLongDigits(line, pidStart, i);
+
+        int tidStart = skipSpaces(line, i + 1, end);
+        i = tidStart;
+        while (i < end && isWordChar(line.charAt(i))) {
+            i++;
+        }
+        if (tidStart == i) {
+            return null;
+        }
+        int tid;
+        if (skipDigits(line, tidStart, i) == i
+                && i - tidStart <= 9
+                && (line.charAt(tidStart) != '0' || i - tidStart == 1)) {
+            tid = (int) parseLongDigits(line, tidStart, i);
+        } else {
+            // Hexadecimal or octal, see parseThreadId
+            tid = parseThreadId(line.substring(tidStart, i));
+        }
+
+        int priorityIndex = skipSpaces(line, i, end);
+        if (priorityIndex == i
+                || priorityIndex + 1 >= end
+                || line.charAt(priorityIndex + 1) != '/') {
+            return null;
+        }
+        Log.LogLevel priority = parsePriority(line.charAt(priorityIndex));
+        if (priority == null) {
+            return null;
+        }
+
+        int tagStart = priorityIndex + 2;
+        int tagEnd = end;
+        while (tagEnd > tagStart && line.charAt(tagEnd - 1) == ' ') {
+            tagEnd--;
+        }
+        if (tagEnd == end) {
+            return null;
+        }
+        for (int j = tagStart; j < tagEnd; j++) {
+            if (isLineTerminator(line.charAt(j))) {
+                return null;
+            }
+        }
+
+        Instant timestamp;
+        if (month < 0) {
+            timestamp = Instant.ofEpochSecond(epochSec, MILLISECONDS.toNanos(milli));
+        } else {
+            timestamp =
+                    Instant.from(
+                            ZonedDateTime.of(
+                                    defaultYear,
+                                    month,
+                                    day,
+                                    hour,
+                                    min,
+                                    sec,
+                                    (int) MILLISECONDS.toNanos(milli),
+                                    defaultZoneId));
+        }
+        return new LogCatHeader(
+                priority,
+                pid,
+                tid,
+                pidToPackageName.apply(pid),
+                line.substring(tagStart, tagEnd),
+                timestamp);
+    }
+
+    @Nullable
+    private LogCatHeader parseHeaderWithPattern(String line, PidToPackageName pidToPackageName) {
         Matcher m = HEADER.matcher(line);
         if (!m.matches()) {
             return null;
@@ -133,6 +281,79 @@ public class LogCatHeaderParser {
                 timestamp);
     }
 
+    private static int skipSpaces(String line, int from, int end) {
+        while (from < end && line.charAt(from) == ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private static int skipDigits(String line, int from, int end) {
+        while (from < end && isDigit(line.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    // Returns -1 if the `count` chars at `from` are not all digits
+    private static int parseDigits(String line, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = line.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // Caller checks that the range only holds digits and is short enough not to overflow
+    private static long parseLongDigits(String line, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 10 + (line.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    // Same as `\d` in HEADER
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // Same as `\w` in HEADER
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c) || c == '_';
+    }
+
+    // Chars not matched by `.` in HEADER
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    // Same letters as `PRIORITY`, or null
+    @Nullable
+    private static Log.LogLevel parsePriority(char c) {
+        switch (c) {
+            case 'V':
+                return Log.LogLevel.VERBOSE;
+            case 'D':
+                return Log.LogLevel.DEBUG;
+            case 'I':
+                return Log.LogLevel.INFO;
+            case 'W':
+                return Log.LogLevel.WARN;
+            case 'E':
+                return Log.LogLevel.ERROR;
+            case 'A':
+            case 'F':
+                return Log.LogLevel.ASSERT;
+            default:
+                return null;
+        }
+    }
+
     /**
      * Parses the [priority part of a logcat message header:](https://developer.android.com/studio/command-line/logcat.html)
      * , the "I" in
@@ -183,7 +404,7 @@ public class LogCatHeaderParser {
         }
     }
 
-    private String getPackageName(IDevice device, int pid) {
+    static String getPackageName(@Nullable IDevice device, int pid) {
         if (device == null) {
             return UNKNOWN_APP_NAME;
         }
@@ -16,7 +16,9 @@
 package com.android.ddmlib.logcat;
 
 import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 
 public class LogCatMessage {
@@ -24,12 +26,34 @@ public class LogCatMessage {
     @NonNull
     private final LogCatHeader header;
 
-    @NonNull
-    private final String message;
+    @Nullable
+    private volatile String message;
+
+    /** UTF-8 bytes of the message, decoded into {@link #message} when first read. */
+    @Nullable
+    private final byte[] messageData;
+
+    private final int messageOffset;
+
+    private final int messageLength;
 
     public LogCatMessage(@NonNull LogCatHeader header, @NonNull String message) {
         this.header = header;
         this.message = message;
+        this.messageData = null;
+        this.messageOffset = 0;
+        this.messageLength = 0;
+    }
+
+    /**
+     * Creates a message whose text is only decoded when {@link #getMessage()} is first called.
+     * The range of {@code data} must not be modified afterwards.
+     */
+    LogCatMessage(@NonNull LogCatHeader header, @NonNull byte[] data, int offset, int length) {
+        this.header = header;
+        this.messageData = data;
+        this.messageOffset = offset;
+        this.messageLength = length;
     }
 
     @NonNull
@@ -39,17 +63,23 @@ public class LogCatMessage {
 
     @NonNull
     public String getMessage() {
-        return message;
+        String result = message;
+        if (result == null) {
+            // Racing threads decode the same text, whichever write wins is fine.
+            result = new String(messageData, messageOffset, messageLength, StandardCharsets.UTF_8);
+            message = result;
+        }
+        return result;
     }
 
     @Override
     public String toString() {
-        return String.format("%s: %s", header, message);
+        return String.format("%s: %s", header, getMessage());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(header, message);
+        return Objects.hash(header, getMessage());
     }
 
     @Override
@@ -59,6 +89,6 @@ public class LogCatMessage {
         }
         LogCatMessage other = (LogCatMessage)obj;
         return Objects.equals(header, other.header) &&
-               Objects.equals(message, other.message);
+               Objects.equals(getMessage(), other.getMessage());
     }
 }
@@ -19,14 +19,19 @@ package com.android.ddmlib.logcat;
 import com.android.annotations.NonNull;
 import com.android.annotations.Nullable;
 import com.android.ddmlib.IDevice;
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.log.LogReceiver.LogEntry;
 import com.google.common.annotations.VisibleForTesting;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Class to parse raw output of {@code adb logcat -v long} to {@link LogCatMessage} objects.
+ * Class to parse raw output of {@code adb logcat -v long}, or entries of {@code adb logcat -B}, to
+ * {@link LogCatMessage} objects.
  *
  * <p>TODO(187522636): Remove this class?
  */
@@ -79,25 +84,122 @@ public class LogCatMessageParser {
         List<LogCatMessage> messages = new ArrayList<>(lines.length);
 
         for (String line : lines) {
-            if (line.isEmpty()) {
-                continue;
+            LogCatMessage message = processLogLine(line, device);
+            if (message != null) {
+                messages.add(message);
             }
+        }
+
+        return messages;
+    }
+
+    /**
+     * Parse a single line obtained from logcat -v long. Like {@link #processLogLines(String[],
+     * IDevice)}, this updates the last seen header when given a header line.
+     *
+     * @param line raw line obtained from logcat -v long
+     * @param device device from which this log message has been received
+     * @return the message if the line is a message line, or {@code null} if it is a header line or
+     *     has no header to go with
+     */
+    @Nullable
+    public LogCatMessage processLogLine(@NonNull String line, @Nullable IDevice device) {
+        if (line.isEmpty()) {
+            return null;
+        }
+
+        if (processLogHeader(line, device) != null) {
+            return null;
+        }
+
+        // If not a header line, this is a message line
+        if (mPrevHeader == null) {
+            // If we are fed a log line without a header, there's nothing we can do with
+            // it - the header metadata is very important! So, we have no choice but to drop
+            // this line.
+            //
+            // This should rarely happen, if ever - for example, perhaps we're running over
+            // old logs where some earlier lines have been truncated.
+            return null;
+        }
+        return new LogCatMessage(mPrevHeader, line);
+    }
 
-            if (processLogHeader(line, device) == null) {
-                // If not a header line, this is a message line
-                if (mPrevHeader == null) {
-                    // If we are fed a log line without a header, there's nothing we can do with
-                    // it - the header metadata is very important! So, we have no choice but to drop
-                    // this line.
-                    //
-                    // This should rarely happen, if ever - for example, perhaps we're running over
-                    // old logs where some earlier lines have been truncated.
-                    continue;
-                }
-                messages.add(new LogCatMessage(mPrevHeader, line));
+    /**
+     * Converts an entry of a text log buffer, as output by {@code logcat -B}, into {@link
+     * LogCatMessage} objects. Like {@code logcat -v long}, this creates a message per non empty
+     * line. The text of the messages is only decoded from {@link LogEntry#data} when they are read,
+     * so the entry data must not be modified afterwards.
+     *
+     * @param entry the entry read by a {@link com.android.ddmlib.log.LogReceiver}
+     * @param device device from which this entry has been received
+     * @param messages list the new messages are added to
+     */
+    public void processLogEntry(
+            @NonNull LogEntry entry,
+            @Nullable IDevice device,
+            @NonNull List<LogCatMessage> messages) {
+        // The payload is the priority, then the tag and the message each terminated by a '\0'.
+        byte[] data = entry.data;
+        int end = entry.len;
+        if (end < 1) {
+            return;
+        }
+        int tagEnd = indexOf(data, (byte) 0, 1, end);
+        int messageEnd = tagEnd < end ? indexOf(data, (byte) 0, tagEnd + 1, end) : end;
+
+        LogCatHeader header =
+                new LogCatHeader(
+                        getLogLevel(data[0]),
+                        entry.pid,
+                        entry.tid,
+                        LogCatHeaderParser.getPackageName(device, entry.pid),
+                        new String(data, 1, tagEnd - 1, StandardCharsets.UTF_8),
+                        Instant.ofEpochSecond(
+                                Integer.toUnsignedLong(entry.sec),
+                                Integer.toUnsignedLong(entry.nsec)));
+        mPrevHeader = header;
+
+        int lineStart = Math.min(tagEnd + 1, messageEnd);
+        while (lineStart < messageEnd) {
+            int lineEnd = indexOf(data, (byte) '\n', lineStart, messageEnd);
+            if (lineEnd > lineStart) {
+                messages.add(new LogCatMessage(header, data, lineStart, lineEnd - lineStart));
             }
+            lineStart = lineEnd + 1;
         }
+    }
 
-        return messages;
+    private static int indexOf(@NonNull byte[] data, byte value, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Maps an android_LogPriority to a log level. Unexpected values map to {@link LogLevel#WARN},
+     * like unexpected letters in text headers.
+     */
+    @NonNull
+    private static LogLevel getLogLevel(byte priority) {
+        switch (priority) {
+            case 2:
+                return LogLevel.VERBOSE;
+            case 3:
+                return LogLevel.DEBUG;
+            case 4:
+                return LogLevel.INFO;
+            case 5:
+                return LogLevel.WARN;
+            case 6:
+                return LogLevel.ERROR;
+            case 7: // ANDROID_LOG_FATAL
+                return LogLevel.ASSERT;
+            default:
+                return LogLevel.WARN;
+        }
     }
 }
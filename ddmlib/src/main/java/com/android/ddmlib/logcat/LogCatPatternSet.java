@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ddmlib.logcat;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A set of patterns searched for in a string all at once, with the semantics of {@link
+ * java.util.regex.Matcher#find()}.
+ *
+ * <p>Identical patterns are only searched for once. Patterns without any regex syntax are found
+ * with a single pass over the string, and patterns of the form {@code ^literal$} with a hash
+ * lookup. Only the remaining patterns are run through {@link Pattern}.
+ *
+ * <p>The only flag supported is {@link Pattern#CASE_INSENSITIVE}, which is what {@link
+ * LogCatFilter} uses. Other patterns are always run through {@link Pattern}.
+ */
+final class LogCatPatternSet {
+
+    private static final String REGEX_SYNTAX = "\\^$.|?*+()[]{}";
+
+    /** Patterns that equal the whole string, by the (folded) string. */
+    private final Map<String, int[]> mExact = new HashMap<>();
+
+    private final Map<String, int[]> mExactIgnoreCase = new HashMap<>();
+
+    @Nullable private final Automaton mLiterals;
+
+    @Nullable private final Automaton mLiteralsIgnoreCase;
+
+    private final List<Pattern> mPatterns = new ArrayList<>();
+
+    private final List<int[]> mPatternIndices = new ArrayList<>();
+
+    /**
+     * @param patterns the patterns to search for. A {@code null} entry is never found.
+     */
+    LogCatPatternSet(@NonNull List<Pattern> patterns) {
+        // Group identical patterns
+        Map<String, List<Integer>> indices = new LinkedHashMap<>();
+        Map<String, Pattern> distinct = new HashMap<>();
+        for (int i = 0; i < patterns.size(); i++) {
+            Pattern pattern = patterns.get(i);
+            if (pattern == null) {
+                continue;
+            }
+            String key = pattern.flags() + ":" + pattern.pattern();
+            distinct.putIfAbsent(key, pattern);
+            indices.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+        }
+
+        List<String> literals = new ArrayList<>();
+        List<int[]> literalIndices = new ArrayList<>();
+        List<String> literalsIgnoreCase = new ArrayList<>();
+        List<int[]> literalIndicesIgnoreCase = new ArrayList<>();
+        for (Map.Entry<String, List<Integer>> entry : indices.entrySet()) {
+            Pattern pattern = distinct.get(entry.getKey());
+            int[] patternIndices = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+            String regex = pattern.pattern();
+            int flags = pattern.flags();
+            if (flags != 0 && flags != Pattern.CASE_INSENSITIVE) {
+                mPatterns.add(pattern);
+                mPatternIndices.add(patternIndices);
+                continue;
+            }
+            boolean ignoreCase = flags == Pattern.CASE_INSENSITIVE;
+            if (regex.length() >= 2
+                    && regex.startsWith("^")
+                    && regex.endsWith("$")
+                    && isLiteral(regex, 1, regex.length() - 1)) {
+                String literal = regex.substring(1, regex.length() - 1);
+                if (ignoreCase) {
+                    mExactIgnoreCase.put(foldCase(literal), patternIndices);
+                } else {
+                    mExact.put(literal, patternIndices);
+                }
+            } else if (isLiteral(regex, 0, regex.length())) {
+                if (ignoreCase) {
+                    literalsIgnoreCase.add(foldCase(regex));
+                    literalIndicesIgnoreCase.add(patternIndices);
+                } else {
+                    literals.add(regex);
+                    literalIndices.add(patternIndices);
+                }
+            } else {
+                mPatterns.add(pattern);
+                mPatternIndices.add(patternIndices);
+            }
+        }
+        mLiterals = literals.isEmpty() ? null : new Automaton(literals, literalIndices, false);
+        mLiteralsIgnoreCase =
+                literalsIgnoreCase.isEmpty()
+                        ? null
+                        : new Automaton(literalsIgnoreCase, literalIndicesIgnoreCase, true);
+    }
+
+    /**
+     * Sets in {@code found} the index of every pattern that can be found in {@code value}.
+     */
+    void find(@NonNull String value, @NonNull BitSet found) {
+        if (!mExact.isEmpty()) {
+            findExact(mExact, value, found);
+        }
+        if (!mExactIgnoreCase.isEmpty()) {
+            findExact(mExactIgnoreCase, foldCase(value), found);
+        }
+        if (mLiterals != null) {
+            mLiterals.find(value, found);
+        }
+        if (mLiteralsIgnoreCase != null) {
+            mLiteralsIgnoreCase.find(value, found);
+        }
+        for (int i = 0; i < mPatterns.size(); i++) {
+            if (mPatterns.get(i).matcher(value).find()) {
+                set(found, mPatternIndices.get(i));
+            }
+        }
+    }
+
+    private static void findExact(
+            @NonNull Map<String, int[]> exact, @NonNull String value, @NonNull BitSet found) {
+        int[] indices = exact.get(value);
+        if (indices != null) {
+            set(found, indices);
+        }
+        // Without MULTILINE, '$' also matches before a line terminator at the end of the input.
+        int length = value.length();
+        if (length > 0 && isLineTerminator(value.charAt(length - 1))) {
+            int end = length - 1;
+            if (end > 0 && value.charAt(end) == '\n' && value.charAt(end - 1) == '\r') {
+                end--;
+            }
+            indices = exact.get(value.substring(0, end));
+            if (indices != null) {
+                set(found, indices);
+            }
+        }
+    }
+
+    private static void set(@NonNull BitSet found, @NonNull int[] indices) {
+        for (int index : indices) {
+            found.set(index);
+        }
+    }
+
+    private static boolean isLiteral(@NonNull String regex, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (REGEX_SYNTAX.indexOf(regex.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /** Case folding of {@link Pattern#CASE_INSENSITIVE}, which only applies to US-ASCII. */
+    private static char foldCase(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    @NonNull
+    private static String foldCase(@NonNull String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (foldCase(c) != c) {
+                char[] chars = s.toCharArray();
+                for (int j = i; j < chars.length; j++) {
+                    chars[j] = foldCase(chars[j]);
+                }
+                return new String(chars);
+            }
+        }
+        return s;
+    }
+
+    /** Aho-Corasick automaton finding all the literals in a single pass over the string. */
+    private static final class Automaton {
+
+        private final boolean mIgnoreCase;
+
+        /** Sorted characters of the outgoing edges of each state. */
+        private final char[][] mEdgeChars;
+
+        private final int[][] mEdgeTargets;
+
+        private final int[] mFailure;
+
+        /** Indices of the patterns found when reaching each state, or {@code null}. */
+        private final int[][] mOutputs;
+
+        Automaton(
+                @NonNull List<String> literals,
+                @NonNull List<int[]> indices,
+                boolean ignoreCase) {
+            mIgnoreCase = ignoreCase;
+
+            // Build the trie
+            List<Map<Character, Integer>> edges = new ArrayList<>();
+            List<int[]> outputs = new ArrayList<>();
+            edges.add(new HashMap<>());
+            outputs.add(null);
+            for (int i = 0; i < literals.size(); i++) {
+                String literal = literals.get(i);
+                int state = 0;
+                for (int j = 0; j < literal.length(); j++) {
+                    Integer next = edges.get(state).get(literal.charAt(j));
+                    if (next == null) {
+                        next = edges.size();
+                        edges.add(new HashMap<>());
+                        outputs.add(null);
+                        edges.get(state).put(literal.charAt(j), next);
+                    }
+                    state = next;
+                }
+                outputs.set(state, concat(outputs.get(state), indices.get(i)));
+            }
+
+            int stateCount = edges.size();
+            mEdgeChars = new char[stateCount][];
+            mEdgeTargets = new int[stateCount][];
+            for (int state = 0; state < stateCount; state++) {
+                Character[] chars = edges.get(state).keySet().toArray(new Character[0]);
+                Arrays.sort(chars);
+                mEdgeChars[state] = new char[chars.length];
+                mEdgeTargets[state] = new int[chars.length];
+                for (int i = 0; i < chars.length; i++) {
+                    mEdgeChars[state][i] = chars[i];
+                    mEdgeTargets[state][i] = edges.get(state).get(chars[i]);
+                }
+            }
+
+            // Compute failure links breadth first, so those of shorter prefixes are known
+            mFailure = new int[stateCount];
+            mOutputs = outputs.toArray(new int[0][]);
+            int[] queue = new int[stateCount];
+            int head = 0;
+            int tail = 0;
+            for (int target : mEdgeTargets[0]) {
+                queue[tail++] = target;
+            }
+            while (head < tail) {
+                int state = queue[head++];
+                for (int i = 0; i < mEdgeChars[state].length; i++) {
+                    char c = mEdgeChars[state][i];
+                    int target = mEdgeTargets[state][i];
+                    int failure = mFailure[state];
+                    while (failure != 0 && next(failure, c) < 0) {
+                        failure = mFailure[failure];
+                    }
+                    int next = next(failure, c);
+                    mFailure[target] = next >= 0 ? next : 0;
+                    mOutputs[target] = concat(mOutputs[target], mOutputs[mFailure[target]]);
+                    queue[tail++] = target;
+                }
+            }
+        }
+
+        void find(@NonNull String value, @NonNull BitSet found) {
+            // Empty literals are found in any string
+            if (mOutputs[0] != null) {
+                set(found, mOutputs[0]);
+            }
+            int state = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char c = mIgnoreCase ? foldCase(value.charAt(i)) : value.charAt(i);
+                int next = next(state, c);
+                while (next < 0 && state != 0) {
+                    state = mFailure[state];
+                    next = next(state, c);
+                }
+                state = next >= 0 ? next : 0;
+                if (mOutputs[state] != null) {
+                    set(found, mOutputs[state]);
+                }
+            }
+        }
+
+        private int next(int state, char c) {
+            int i = Arrays.binarySearch(mEdgeChars[state], c);
+            return i >= 0 ? mEdgeTargets[state][i] : -1;
+        }
+
+        @Nullable
+        private static int[] concat(@Nullable int[] a, @Nullable int[] b) {
+            if (a == null) {
+                return b;
+            }
+            if (b == null) {
+                return a;
+            }
+            int[] result = Arrays.copyOf(a, a.length + b.length);
+            System.arraycopy(b, 0, result, a.length, b.length);
+            return result;
+        }
+    }
+}
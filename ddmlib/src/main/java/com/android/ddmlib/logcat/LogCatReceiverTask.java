@@ -22,12 +22,17 @@ import static java.time.Instant.EPOCH;
 import com.android.annotations.NonNull;
 import com.android.annotations.concurrency.GuardedBy;
 import com.android.ddmlib.AdbCommandRejectedException;
+import com.android.ddmlib.ByteLineReceiver;
 import com.android.ddmlib.IDevice;
 import com.android.ddmlib.IShellOutputReceiver;
-import com.android.ddmlib.MultiLineReceiver;
 import com.android.ddmlib.ShellCommandUnresponsiveException;
 import com.android.ddmlib.TimeoutException;
+import com.android.ddmlib.log.LogReceiver;
+import com.android.ddmlib.log.LogReceiver.LogEntry;
+import com.android.sdklib.AndroidVersion;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -38,6 +43,8 @@ public class LogCatReceiverTask implements Runnable {
 
     private static final String LOGCAT_COMMAND = "logcat -v long"; //$NON-NLS-1$
 
+    private static final String BINARY_LOGCAT_COMMAND = "logcat -B"; //$NON-NLS-1$
+
     private static final int DEVICE_POLL_INTERVAL_MSEC = 1000;
 
     private static final LogCatMessage sDeviceDisconnectedMsg =
@@ -51,7 +58,7 @@ public class LogCatReceiverTask implements Runnable {
 
     private final IDevice mDevice;
 
-    private final LogCatOutputReceiver mReceiver;
+    private final boolean mBinary;
 
     private final LogCatMessageParser mParser;
 
@@ -61,9 +68,20 @@ public class LogCatReceiverTask implements Runnable {
     private final Set<LogCatListener> mListeners = new HashSet<LogCatListener>();
 
     public LogCatReceiverTask(@NonNull IDevice device) {
+        this(device, false);
+    }
+
+    /**
+     * Creates a task receiving the logs of {@code device}.
+     *
+     * @param binary whether to read the binary output of {@code logcat -B} rather than text. This
+     *     saves formatting the messages on the device and parsing them on the host. It is only used
+     *     with devices running API 24 or later, as older ones don't pass shell output through as is.
+     */
+    public LogCatReceiverTask(@NonNull IDevice device, boolean binary) {
         mDevice = device;
+        mBinary = binary;
 
-        mReceiver = new LogCatOutputReceiver();
         mParser = new LogCatMessageParser();
         mCancelled = new AtomicBoolean();
     }
@@ -79,8 +97,13 @@ public class LogCatReceiverTask implements Runnable {
             }
         }
 
+        boolean binary =
+                mBinary && mDevice.getVersion().getApiLevel() >= AndroidVersion.VersionCodes.N;
+        String command = binary ? BINARY_LOGCAT_COMMAND : LOGCAT_COMMAND;
+        IShellOutputReceiver receiver =
+                binary ? new LogCatBinaryOutputReceiver() : new LogCatOutputReceiver();
         try {
-            mDevice.executeShellCommand(LOGCAT_COMMAND, mReceiver, 0);
+            mDevice.executeShellCommand(command, receiver, 0);
         } catch (TimeoutException e) {
             notifyListeners(Collections.singletonList(sConnectionTimeoutMsg));
         } catch (AdbCommandRejectedException ignored) {
@@ -98,7 +121,9 @@ public class LogCatReceiverTask implements Runnable {
         mCancelled.set(true);
     }
 
-    private class LogCatOutputReceiver extends MultiLineReceiver {
+    private class LogCatOutputReceiver extends ByteLineReceiver {
+
+        private List<LogCatMessage> mNewMessages = new ArrayList<>();
 
         public LogCatOutputReceiver() {
             setTrimLine(false);
@@ -111,18 +136,69 @@ public class LogCatReceiverTask implements Runnable {
         }
 
         @Override
-        public void processNewLines(@NonNull String[] lines) {
-            if (!mCancelled.get()) {
-                processLogLines(lines);
+        protected void processLine(@NonNull byte[] data, int offset, int length) {
+            // logcat -v long separates messages with empty lines, skip them before decoding.
+            if (length == 0 || mCancelled.get()) {
+                return;
+            }
+            String line = new String(data, offset, length, StandardCharsets.UTF_8);
+            LogCatMessage message = mParser.processLogLine(line, mDevice);
+            if (message != null) {
+                mNewMessages.add(message);
+            }
+        }
+
+        @Override
+        protected void linesProcessed() {
+            if (!mNewMessages.isEmpty()) {
+                // Listeners may keep the list, so start a new one.
+                List<LogCatMessage> newMessages = mNewMessages;
+                mNewMessages = new ArrayList<>();
+                notifyListeners(newMessages);
             }
         }
+    }
 
-        private void processLogLines(String[] lines) {
-            List<LogCatMessage> newMessages = mParser.processLogLines(lines, mDevice);
-            if (!newMessages.isEmpty()) {
+    /** Receives the output of {@code logcat -B} and converts each entry without going to text. */
+    private class LogCatBinaryOutputReceiver
+            implements IShellOutputReceiver, LogReceiver.ILogListener {
+
+        private final LogReceiver mLogReceiver = new LogReceiver(this);
+
+        private List<LogCatMessage> mNewMessages = new ArrayList<>();
+
+        @Override
+        public void addOutput(byte[] data, int offset, int length) {
+            if (mCancelled.get()) {
+                return;
+            }
+            mLogReceiver.parseNewData(data, offset, length);
+            if (!mNewMessages.isEmpty()) {
+                // Listeners may keep the list, so start a new one.
+                List<LogCatMessage> newMessages = mNewMessages;
+                mNewMessages = new ArrayList<>();
                 notifyListeners(newMessages);
             }
         }
+
+        @Override
+        public void flush() {}
+
+        /** Implements {@link IShellOutputReceiver#isCancelled() }. */
+        @Override
+        public boolean isCancelled() {
+            return mCancelled.get();
+        }
+
+        @Override
+        public void newEntry(LogEntry entry) {
+            mParser.processLogEntry(entry, mDevice, mNewMessages);
+        }
+
+        @Override
+        public void newData(byte[] data, int offset, int length) {
+            // only complete entries are used.
+        }
     }
 
     public synchronized void addLogCatListener(LogCatListener l) {
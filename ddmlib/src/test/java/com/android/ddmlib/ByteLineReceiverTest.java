@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ddmlib;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class ByteLineReceiverTest {
+
+    @Test
+    public void splitsLines() {
+        RecordingReceiver receiver = new RecordingReceiver();
+        send(receiver, "first\nsecond\r\n  third  \n\nlast", 1000);
+
+        assertThat(receiver.lines).containsExactly("first", "second", "third", "").inOrder();
+        assertThat(receiver.batches).isEqualTo(1);
+        receiver.flush();
+        assertThat(receiver.lines).containsExactly("first", "second", "third", "", "last").inOrder();
+        assertThat(receiver.batches).isEqualTo(2);
+        assertThat(receiver.done).isTrue();
+    }
+
+    @Test
+    public void splitsLinesAcrossPackets() {
+        String text = "\u00e9 line one\r\nline \u20ac two\n\ud83d\ude00 three\r\n";
+        for (int packetSize = 1; packetSize < 8; packetSize++) {
+            RecordingReceiver receiver = new RecordingReceiver();
+            receiver.setTrimLine(false);
+            send(receiver, text, packetSize);
+            receiver.flush();
+
+            assertThat(receiver.lines)
+                    .containsExactly("\u00e9 line one", "line \u20ac two", "\ud83d\ude00 three")
+                    .inOrder();
+        }
+    }
+
+    @Test
+    public void growsLineBuffer() {
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            longLine.append(i % 10);
+        }
+        RecordingReceiver receiver = new RecordingReceiver();
+        send(receiver, longLine + "\nshort\n", 7);
+
+        assertThat(receiver.lines).containsExactly(longLine.toString(), "short").inOrder();
+    }
+
+    @Test
+    public void ignoresOutputWhenCancelled() {
+        RecordingReceiver receiver = new RecordingReceiver();
+        receiver.cancelled = true;
+        send(receiver, "line\n", 1000);
+
+        assertThat(receiver.lines).isEmpty();
+    }
+
+    private static void send(ByteLineReceiver receiver, String text, int packetSize) {
+        // Pad the packets to check that offsets are honoured.
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        for (int start = 0; start < bytes.length; start += packetSize) {
+            int length = Math.min(packetSize, bytes.length - start);
+            byte[] packet = new byte[length + 2];
+            System.arraycopy(bytes, start, packet, 1, length);
+            receiver.addOutput(packet, 1, length);
+        }
+    }
+
+    private static class RecordingReceiver extends ByteLineReceiver {
+        final List<String> lines = new ArrayList<>();
+        int batches;
+        boolean done;
+        boolean cancelled;
+
+        @Override
+        protected void processLine(CharSequence line) {
+            lines.add(line.toString());
+        }
+
+        @Override
+        protected void linesProcessed() {
+            batches++;
+        }
+
+        @Override
+        public void done() {
+            done = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
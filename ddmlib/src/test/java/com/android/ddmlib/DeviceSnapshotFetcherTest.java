@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ddmlib;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+
+import com.android.ddmlib.DeviceSnapshotFetcher.Section;
+import com.android.ddmlib.DeviceSnapshotFetcher.Snapshot;
+import com.android.ddmlib.DeviceSnapshotFetcher.SnapshotReceiver;
+import com.android.ddmlib.internal.DeviceTest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/** Unit tests for {@link DeviceSnapshotFetcher}. */
+public class DeviceSnapshotFetcherTest extends TestCase {
+    private static final String MARKER = "@@ddmlib-snapshot@@ ";
+
+    private static final String PROPERTIES_OUTPUT =
+            MARKER + "PROPERTIES\n"
+                    + "[ro.sf.lcd_density]: [480]\n"
+                    + "[persist.history]: [a\n"
+                    + "b]\r\n";
+
+    private static final String SYSFS_BATTERY_OUTPUT = MARKER + "BATTERY\n87\n";
+
+    private static final String DUMPSYS_BATTERY_OUTPUT =
+            MARKER + "BATTERY\n"
+                    + "Current Battery Service state:\n"
+                    + "  AC powered: false\n"
+                    + "  level: 50\n"
+                    + "  scale: 200\n";
+
+    private static final String FEATURES_OUTPUT =
+            MARKER + "FEATURES\n"
+                    + "feature:android.hardware.camera\n"
+                    + "feature:reqGlEsVersion=0x30002\n";
+
+    private static final String PACKAGES_OUTPUT =
+            MARKER + "PACKAGES\npackage:com.example.a\npackage:com.example.b\n";
+
+    public void testGetCommand() {
+        assertEquals(
+                "echo '" + MARKER + "PROPERTIES'; getprop; "
+                        + "echo '" + MARKER + "PACKAGES'; pm list packages",
+                DeviceSnapshotFetcher.getCommand(
+                        EnumSet.of(Section.PACKAGES, Section.PROPERTIES)));
+    }
+
+    public void testSnapshotReceiver() {
+        SnapshotReceiver receiver = new SnapshotReceiver();
+        // Output cut in the middle of lines, including a multi-line property
+        String output = PROPERTIES_OUTPUT + SYSFS_BATTERY_OUTPUT + FEATURES_OUTPUT + PACKAGES_OUTPUT;
+        int[] cuts = {0, 60, 70, output.length()};
+        for (int i = 1; i < cuts.length; i++) {
+            byte[] bytes = output.substring(cuts[i - 1], cuts[i]).getBytes();
+            receiver.addOutput(bytes, 0, bytes.length);
+        }
+        receiver.flush();
+
+        Map<Section, Object> values = receiver.getValues();
+        @SuppressWarnings("unchecked")
+        Map<String, String> properties = (Map<String, String>) values.get(Section.PROPERTIES);
+        assertEquals("480", properties.get("ro.sf.lcd_density"));
+        assertEquals("a\nb", properties.get("persist.history"));
+        assertEquals(87, values.get(Section.BATTERY));
+        assertEquals(
+                Arrays.asList("android.hardware.camera", "reqGlEsVersion=0x30002"),
+                new ArrayList<>((Collection<?>) values.get(Section.FEATURES)));
+        assertEquals(
+                new HashSet<>(Arrays.asList("com.example.a", "com.example.b")),
+                values.get(Section.PACKAGES));
+    }
+
+    public void testSnapshotReceiver_dumpsysBattery() {
+        SnapshotReceiver receiver = new SnapshotReceiver();
+        byte[] bytes = DUMPSYS_BATTERY_OUTPUT.getBytes();
+        receiver.addOutput(bytes, 0, bytes.length);
+        receiver.flush();
+
+        assertEquals(25, receiver.getValues().get(Section.BATTERY));
+    }
+
+    public void testGetSnapshot() throws Exception {
+        IDevice mockDevice = DeviceTest.createMockDevice2();
+        List<String> commands = Collections.synchronizedList(new ArrayList<>());
+        injectShellResponse(
+                mockDevice, commands, null, PROPERTIES_OUTPUT + SYSFS_BATTERY_OUTPUT);
+
+        DeviceSnapshotFetcher fetcher = new DeviceSnapshotFetcher(mockDevice);
+        Snapshot snapshot =
+                fetcher.getSnapshot(
+                                EnumSet.of(Section.PROPERTIES, Section.BATTERY),
+                                1,
+                                TimeUnit.MINUTES)
+                        .get(2, TimeUnit.SECONDS);
+        assertEquals("480", snapshot.getProperties().get("ro.sf.lcd_density"));
+        assertEquals(Integer.valueOf(87), snapshot.getBatteryLevel());
+        assertFalse(snapshot.has(Section.PACKAGES));
+        assertNull(snapshot.getPackages());
+
+        // Cached sections are returned without querying the device again
+        Future<Snapshot> cached =
+                fetcher.getSnapshot(EnumSet.of(Section.BATTERY), 1, TimeUnit.MINUTES);
+        assertTrue(cached.isDone());
+        assertEquals(Integer.valueOf(87), cached.get().getBatteryLevel());
+        assertNull(cached.get().getProperties());
+        assertEquals(1, commands.size());
+    }
+
+    public void testGetSnapshot_coalesced() throws Exception {
+        IDevice mockDevice = DeviceTest.createMockDevice2();
+        List<String> commands = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(1);
+        injectShellResponse(
+                mockDevice,
+                commands,
+                latch,
+                PROPERTIES_OUTPUT + SYSFS_BATTERY_OUTPUT,
+                FEATURES_OUTPUT + PACKAGES_OUTPUT);
+
+        DeviceSnapshotFetcher fetcher = new DeviceSnapshotFetcher(mockDevice);
+        Future<Snapshot> first =
+                fetcher.getSnapshot(
+                        EnumSet.of(Section.PROPERTIES, Section.BATTERY), 1, TimeUnit.MINUTES);
+        // Covered by the running query
+        Future<Snapshot> second =
+                fetcher.getSnapshot(EnumSet.of(Section.BATTERY), 1, TimeUnit.MINUTES);
+        // Not covered, both are fetched by a single query once the first one is done
+        Future<Snapshot> third =
+                fetcher.getSnapshot(
+                        EnumSet.of(Section.BATTERY, Section.FEATURES), 1, TimeUnit.MINUTES);
+        Future<Snapshot> fourth =
+                fetcher.getSnapshot(EnumSet.of(Section.PACKAGES), 1, TimeUnit.MINUTES);
+        latch.countDown();
+
+        assertEquals(Integer.valueOf(87), first.get(2, TimeUnit.SECONDS).getBatteryLevel());
+        assertEquals(Integer.valueOf(87), second.get(2, TimeUnit.SECONDS).getBatteryLevel());
+        Snapshot thirdSnapshot = third.get(2, TimeUnit.SECONDS);
+        assertEquals(Integer.valueOf(87), thirdSnapshot.getBatteryLevel());
+        assertTrue(thirdSnapshot.getFeatures().contains("android.hardware.camera"));
+        assertTrue(fourth.get(2, TimeUnit.SECONDS).getPackages().contains("com.example.b"));
+
+        assertEquals(2, commands.size());
+        assertEquals(
+                DeviceSnapshotFetcher.getCommand(EnumSet.of(Section.FEATURES, Section.PACKAGES)),
+                commands.get(1));
+    }
+
+    public void testGetSnapshot_expired() throws Exception {
+        IDevice mockDevice = DeviceTest.createMockDevice2();
+        List<String> commands = Collections.synchronizedList(new ArrayList<>());
+        injectShellResponse(
+                mockDevice, commands, null, SYSFS_BATTERY_OUTPUT, DUMPSYS_BATTERY_OUTPUT);
+
+        DeviceSnapshotFetcher fetcher = new DeviceSnapshotFetcher(mockDevice);
+        Snapshot snapshot =
+                fetcher.getSnapshot(EnumSet.of(Section.BATTERY), 0, TimeUnit.MILLISECONDS)
+                        .get(2, TimeUnit.SECONDS);
+        assertEquals(Integer.valueOf(87), snapshot.getBatteryLevel());
+        Thread.sleep(5);
+        snapshot =
+                fetcher.getSnapshot(EnumSet.of(Section.BATTERY), 0, TimeUnit.MILLISECONDS)
+                        .get(2, TimeUnit.SECONDS);
+        assertEquals(Integer.valueOf(25), snapshot.getBatteryLevel());
+        assertEquals(2, commands.size());
+    }
+
+    public void testGetSnapshot_shellException() throws Exception {
+        IDevice mockDevice = DeviceTest.createMockDevice2();
+        DeviceTest.injectShellResponse2(
+                mockDevice, 10, new ShellCommandUnresponsiveException(), SYSFS_BATTERY_OUTPUT);
+
+        DeviceSnapshotFetcher fetcher = new DeviceSnapshotFetcher(mockDevice);
+        try {
+            fetcher.getSnapshot(EnumSet.of(Section.BATTERY), 1, TimeUnit.MINUTES)
+                    .get(2, TimeUnit.SECONDS);
+            fail("ExecutionException not thrown");
+        } catch (ExecutionException e) {
+            // expected
+            assertTrue(e.getCause() instanceof ShellCommandUnresponsiveException);
+        }
+
+        Snapshot snapshot =
+                fetcher.getSnapshot(EnumSet.of(Section.BATTERY), 1, TimeUnit.MINUTES)
+                        .get(2, TimeUnit.SECONDS);
+        assertEquals(Integer.valueOf(87), snapshot.getBatteryLevel());
+    }
+
+    /**
+     * Sets the mock device to return the given responses in order, recording the commands. The
+     * first response is delayed until {@code latch} is released, if any.
+     */
+    private static void injectShellResponse(
+            IDevice mockDevice, List<String> commands, CountDownLatch latch, String... responses)
+            throws Exception {
+        doAnswer(
+                        (invocation) -> {
+                            if (latch != null) {
+                                latch.await();
+                            }
+                            commands.add(invocation.getArgument(0));
+                            IShellOutputReceiver receiver = invocation.getArgument(1);
+                            String response =
+                                    responses[Math.min(commands.size(), responses.length) - 1];
+                            byte[] bytes = response.getBytes();
+                            receiver.addOutput(bytes, 0, bytes.length);
+                            receiver.flush();
+                            return null;
+                        })
+                .when(mockDevice)
+                .executeShellCommand(any(), any(), anyLong(), any());
+    }
+}
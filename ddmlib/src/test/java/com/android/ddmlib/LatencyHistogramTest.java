@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ddmlib;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void recordsInPowerOfTwoBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(500, TimeUnit.MICROSECONDS);
+        histogram.record(1, TimeUnit.MILLISECONDS);
+        histogram.record(3, TimeUnit.MILLISECONDS);
+        histogram.record(4, TimeUnit.MILLISECONDS);
+        histogram.record(-1, TimeUnit.MILLISECONDS);
+        histogram.record(1, TimeUnit.DAYS);
+
+        assertThat(histogram.getCount()).isEqualTo(6);
+        assertThat(histogram.getBucketCount(0)).isEqualTo(2);
+        assertThat(histogram.getBucketCount(1)).isEqualTo(1);
+        assertThat(histogram.getBucketCount(2)).isEqualTo(1);
+        assertThat(histogram.getBucketCount(3)).isEqualTo(1);
+        assertThat(histogram.getBucketCount(LatencyHistogram.BUCKET_COUNT - 1)).isEqualTo(1);
+        assertThat(histogram.toString())
+                .isEqualTo("LatencyHistogram{<1ms: 2, <2ms: 1, <4ms: 1, <8ms: 1, >=262144ms: 1}");
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.getPercentileUpperBoundMillis(50)).isEqualTo(0);
+
+        for (int i = 0; i < 90; i++) {
+            histogram.record(10, TimeUnit.MILLISECONDS);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(1000, TimeUnit.MILLISECONDS);
+        }
+
+        assertThat(histogram.getPercentileUpperBoundMillis(0)).isEqualTo(16);
+        assertThat(histogram.getPercentileUpperBoundMillis(50)).isEqualTo(16);
+        assertThat(histogram.getPercentileUpperBoundMillis(90)).isEqualTo(16);
+        assertThat(histogram.getPercentileUpperBoundMillis(99)).isEqualTo(1024);
+    }
+}
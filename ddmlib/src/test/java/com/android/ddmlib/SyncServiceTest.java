@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ddmlib;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.android.ddmlib.internal.FakeAdbTestRule;
+import com.android.fakeadbserver.DeviceFileState;
+import com.android.fakeadbserver.DeviceState;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SyncServiceTest {
+    public @Rule FakeAdbTestRule myFakeAdb = new FakeAdbTestRule();
+    public @Rule TemporaryFolder myTemp = new TemporaryFolder();
+
+    // More than SyncService.MAX_PENDING_FILES, some over SYNC_DATA_MAX.
+    private static final int FILE_COUNT = 300;
+
+    @Test
+    public void pushAndPullFiles() throws Exception {
+        DeviceState state = myFakeAdb.connectAndWaitForDevice();
+        IDevice device = AndroidDebugBridge.getBridge().getDevices()[0];
+
+        Random random = new Random(1);
+        String[] local = new String[FILE_COUNT];
+        String[] remote = new String[FILE_COUNT];
+        long totalSize = 0;
+        for (int i = 0; i < FILE_COUNT; i++) {
+            byte[] content = new byte[i % 50 == 0 ? 100_000 : random.nextInt(500)];
+            random.nextBytes(content);
+            File file = myTemp.newFile("file" + i);
+            Files.write(file.toPath(), content);
+            local[i] = file.getPath();
+            remote[i] = "/data/local/tmp/file" + i;
+            totalSize += content.length;
+        }
+
+        RecordingMonitor monitor = new RecordingMonitor();
+        try (SyncService sync = device.getSyncService()) {
+            sync.pushFiles(local, remote, monitor);
+        }
+        assertThat(monitor.files).isEqualTo(FILE_COUNT);
+        assertThat(monitor.bytes).isEqualTo(totalSize);
+        for (int i = 0; i < FILE_COUNT; i++) {
+            DeviceFileState file = state.getFile(remote[i]);
+            assertThat(file).isNotNull();
+            assertThat(file.getBytes()).isEqualTo(Files.readAllBytes(new File(local[i]).toPath()));
+        }
+
+        String[] pulled = new String[FILE_COUNT];
+        for (int i = 0; i < FILE_COUNT; i++) {
+            pulled[i] = new File(myTemp.getRoot(), "pulled" + i).getPath();
+        }
+        monitor = new RecordingMonitor();
+        try (SyncService sync = device.getSyncService()) {
+            sync.pullFiles(remote, pulled, monitor);
+        }
+        assertThat(monitor.files).isEqualTo(FILE_COUNT);
+        assertThat(monitor.bytes).isEqualTo(totalSize);
+        for (int i = 0; i < FILE_COUNT; i++) {
+            assertThat(Files.readAllBytes(new File(pulled[i]).toPath()))
+                    .isEqualTo(Files.readAllBytes(new File(local[i]).toPath()));
+        }
+    }
+
+    @Test
+    public void pullFilesFailure() throws Exception {
+        DeviceState state = myFakeAdb.connectAndWaitForDevice();
+        IDevice device = AndroidDebugBridge.getBridge().getDevices()[0];
+        state.createFile(new DeviceFileState("/data/local/tmp/a", 0644, 0, new byte[] {1, 2}));
+
+        String[] remote = {"/data/local/tmp/a", "/data/local/tmp/missing"};
+        String[] local = {
+            new File(myTemp.getRoot(), "a").getPath(), new File(myTemp.getRoot(), "b").getPath()
+        };
+        try (SyncService sync = device.getSyncService()) {
+            sync.pullFiles(remote, local, SyncService.getNullProgressMonitor());
+            fail();
+        } catch (SyncException e) {
+            assertThat(e.getErrorCode()).isEqualTo(SyncException.SyncError.TRANSFER_PROTOCOL_ERROR);
+        }
+        assertThat(Files.readAllBytes(new File(local[0]).toPath())).isEqualTo(new byte[] {1, 2});
+    }
+
+    private static class RecordingMonitor implements SyncService.ISyncProgressMonitor {
+        int files;
+        long bytes;
+
+        @Override
+        public void start(int totalWork) {}
+
+        @Override
+        public void stop() {}
+
+        @Override
+        public boolean isCanceled() {
+            return false;
+        }
+
+        @Override
+        public void startSubTask(String name) {}
+
+        @Override
+        public void advance(int work) {}
+
+        @Override
+        public void batchProgress(int files, long bytes, long elapsedNanos) {
+            assertThat(files).isEqualTo(this.files + 1);
+            this.files = files;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -18,6 +18,8 @@ package com.android.ddmlib.logcat;
 import com.android.annotations.NonNull;
 import com.android.ddmlib.Log.LogLevel;
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import junit.framework.TestCase;
 
@@ -138,6 +140,52 @@ public class LogCatFilterTest extends TestCase {
         return true;
     }
 
+    public void testFilterSet() {
+        List<LogCatFilter> filters =
+                Arrays.asList(
+                        new LogCatFilter("", "tag", "", "", "", LogLevel.VERBOSE),
+                        new LogCatFilter("", "^Tag$", "", "", "", LogLevel.VERBOSE),
+                        new LogCatFilter("", "t.g", "", "123", "", LogLevel.VERBOSE),
+                        new LogCatFilter("", "", "text", "", "app", LogLevel.ERROR),
+                        new LogCatFilter("", "", "", "0123", "", LogLevel.VERBOSE),
+                        new LogCatFilter("", "tag", "[", "", "", LogLevel.VERBOSE));
+        LogCatFilterSet filterSet = new LogCatFilterSet(filters);
+
+        List<LogCatMessage> messages =
+                Arrays.asList(
+                        new MessageBuilder().setTag("MyTag").setPid(123).build(),
+                        new MessageBuilder().setTag("Tag").build(),
+                        new MessageBuilder().setTag("Tag\n").setPid(123).build(),
+                        new MessageBuilder()
+                                .setLevel(LogLevel.ERROR)
+                                .setAppName("com.example.App")
+                                .setMessage("Some Text")
+                                .build(),
+                        new MessageBuilder()
+                                .setLevel(LogLevel.WARN)
+                                .setAppName("app")
+                                .setMessage("text")
+                                .build());
+        for (LogCatMessage message : messages) {
+            BitSet matches = filterSet.matches(message);
+            for (int i = 0; i < filters.size(); i++) {
+                assertEquals(filters.get(i).matches(message), matches.get(i));
+            }
+        }
+
+        BitSet expected = new BitSet();
+        expected.set(0);
+        expected.set(2);
+        expected.set(5);
+        assertEquals(expected, filterSet.matches(messages.get(0)));
+    }
+
+    public void testEmptyFilterSet() {
+        LogCatFilterSet filterSet = new LogCatFilterSet(LogCatFilter.fromString("", LogLevel.WARN));
+        assertTrue(filterSet.matches(new MessageBuilder().setLevel(LogLevel.WARN).build()).get(0));
+        assertTrue(filterSet.matches(new MessageBuilder().build()).isEmpty());
+    }
+
     private static class MessageBuilder {
 
         @NonNull private LogLevel mLevel = LogLevel.VERBOSE;
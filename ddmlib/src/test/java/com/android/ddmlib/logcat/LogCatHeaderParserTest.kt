@@ -16,9 +16,11 @@
 package com.android.ddmlib.logcat
 
 import com.android.ddmlib.IDevice
+import com.android.ddmlib.Log.LogLevel.ASSERT
 import com.android.ddmlib.Log.LogLevel.INFO
 import com.android.testutils.MockitoKt.whenever
 import com.google.common.truth.Truth.assertThat
+import com.google.common.truth.Truth.assertWithMessage
 import org.junit.Before
 import org.junit.Rule
 import org.junit.Test
@@ -229,4 +231,71 @@ class LogCatHeaderParserTest {
             )
         )
     }
+
+    @Test
+    fun parseHeader_withSpacesInTag() {
+        assertThat(
+            logCatHeaderParser.parseHeader(
+                "[ $EPOCH_SEC.$EPOCH_MILLI $PID_UNKNOWN:$TID ${INFO.priorityLetter}/A [tag] ]",
+                mockDevice
+            )
+        ).isEqualTo(
+            LogCatHeader(
+                INFO,
+                PID_UNKNOWN,
+                TID,
+                APP_UNKNOWN,
+                "A [tag]",
+                Instant.ofEpochSecond(EPOCH_SEC, MILLISECONDS.toNanos(EPOCH_MILLI))
+            )
+        )
+    }
+
+    @Test
+    fun parseHeader_withFatalPriority() {
+        assertThat(
+            logCatHeaderParser.parseHeader(
+                "[ $EPOCH_SEC.$EPOCH_MILLI $PID_UNKNOWN:$TID F/$TAG ]",
+                mockDevice
+            )
+        ).isEqualTo(
+            LogCatHeader(
+                ASSERT,
+                PID_UNKNOWN,
+                TID,
+                APP_UNKNOWN,
+                TAG,
+                Instant.ofEpochSecond(EPOCH_SEC, MILLISECONDS.toNanos(EPOCH_MILLI))
+            )
+        )
+    }
+
+    @Test
+    fun parseHeader_withOctalTid() {
+        assertThat(
+            logCatHeaderParser.parseHeader(
+                "[ $EPOCH_SEC.$EPOCH_MILLI $PID_UNKNOWN:010 ${INFO.priorityLetter}/$TAG ]",
+                mockDevice
+            )?.tid
+        ).isEqualTo(8)
+    }
+
+    @Test
+    fun parseHeader_notHeader() {
+        val lines = listOf(
+            "",
+            "Message",
+            "[ Message ]",
+            "[$EPOCH_SEC.$EPOCH_MILLI $PID_UNKNOWN:$TID ${INFO.priorityLetter}/$TAG ]",
+            "[ $EPOCH_SEC.$EPOCH_MILLI $PID_UNKNOWN:$TID ${INFO.priorityLetter}/$TAG]",
+            "[ $EPOCH_SEC.$EPOCH_MILLI $PID_UNKNOWN:$TID X/$TAG ]",
+            "[ $EPOCH_SEC.${EPOCH_MILLI}0 $PID_UNKNOWN:$TID ${INFO.priorityLetter}/$TAG ]",
+            "[ $MONTH-$DAY $HOUR:$MIN:$SEC $PID_UNKNOWN:$TID ${INFO.priorityLetter}/$TAG ]",
+            "[ $EPOCH_SEC.$EPOCH_MILLI $PID_UNKNOWN $TID ${INFO.priorityLetter}/$TAG ]",
+            "[ $EPOCH_SEC.$EPOCH_MILLI $PID_UNKNOWN:$TID ${INFO.priorityLetter}/$TAG ] ",
+        )
+        for (line in lines) {
+            assertWithMessage(line).that(logCatHeaderParser.parseHeader(line, mockDevice)).isNull()
+        }
+    }
 }
@@ -22,10 +22,17 @@ import static org.mockito.Mockito.when;
 import com.android.annotations.NonNull;
 import com.android.ddmlib.IDevice;
 import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.log.LogReceiver;
+import com.android.ddmlib.log.LogReceiver.LogEntry;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
 import junit.framework.TestCase;
 
@@ -177,6 +184,74 @@ public final class LogCatMessageParserTest extends TestCase {
         assertEquals("Log[1] logline1", mParsedMessages.get(0).getMessage());
     }
 
+    public void testLogEntries() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeLogEntry(out, 20, 495, 234, 6, "etag", "error message\n");
+        writeLogEntry(out, 28, 540, 540, 7, "wtftag", "line1\n\nline2");
+        writeLogEntry(out, 24, 524, 524, 3, "", "");
+        byte[] data = out.toByteArray();
+
+        LogCatMessageParser parser = new LogCatMessageParser();
+        List<LogCatMessage> messages = new ArrayList<>();
+        LogReceiver receiver =
+                new LogReceiver(
+                        new LogReceiver.ILogListener() {
+                            @Override
+                            public void newEntry(LogEntry entry) {
+                                parser.processLogEntry(entry, null, messages);
+                            }
+
+                            @Override
+                            public void newData(byte[] data, int offset, int length) {}
+                        });
+        // Feed the data in small packets to split headers and payloads.
+        for (int offset = 0; offset < data.length; offset += 7) {
+            receiver.parseNewData(data, offset, Math.min(7, data.length - offset));
+        }
+
+        assertEquals(3, messages.size());
+        LogCatHeader header = messages.get(0).getHeader();
+        assertEquals(LogLevel.ERROR, header.getLogLevel());
+        assertEquals(495, header.getPid());
+        assertEquals(234, header.getTid());
+        assertEquals("?", header.getAppName());
+        assertEquals("etag", header.getTag());
+        assertEquals(Instant.ofEpochSecond(1517266949L, 472_000_001L), header.getTimestamp());
+        assertEquals("error message", messages.get(0).getMessage());
+        assertEquals(LogLevel.ASSERT, messages.get(1).getHeader().getLogLevel());
+        assertEquals("wtftag", messages.get(1).getHeader().getTag());
+        assertEquals("line1", messages.get(1).getMessage());
+        assertEquals("line2", messages.get(2).getMessage());
+        assertEquals(524, parser.mPrevHeader.getPid());
+    }
+
+    private static void writeLogEntry(
+            @NonNull ByteArrayOutputStream out,
+            int headerSize,
+            int pid,
+            int tid,
+            int priority,
+            @NonNull String tag,
+            @NonNull String message) {
+        byte[] tagBytes = tag.getBytes(StandardCharsets.UTF_8);
+        byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + tagBytes.length + 1 + messageBytes.length + 1;
+        ByteBuffer buffer = ByteBuffer.allocate(headerSize + length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putShort((short) length);
+        buffer.putShort((short) headerSize);
+        buffer.putInt(pid);
+        buffer.putInt(tid);
+        buffer.putInt(1517266949);
+        buffer.putInt(472_000_001);
+        buffer.position(headerSize);
+        buffer.put((byte) priority);
+        buffer.put(tagBytes);
+        buffer.put((byte) 0);
+        buffer.put(messageBytes);
+        buffer.put((byte) 0);
+        out.write(buffer.array(), 0, buffer.capacity());
+    }
+
     @NonNull
     private static String formatTimestamp(@NonNull Instant timestamp) {
         return DATE_TIME_FORMATTER.format(LocalDateTime.ofInstant(timestamp, ZONE_ID));
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.deployer;
+
+import com.android.tools.deployer.model.Apk;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * In memory cache of the content-defined chunks of the APKs a {@link PatchGenerator} generated
+ * patches for, by APK checksum.
+ *
+ * <p>The device only sends the central directory of its APKs, so the host cannot diff the content
+ * of a changed entry. However, once a patch is applied, the local APK becomes the remote APK of
+ * the next deployment. Remembering its chunks allows the next patch to skip the unchanged parts
+ * of changed entries.
+ */
+public class ApkChunkCache {
+
+    public static final int DEFAULT_SIZE = 25; // max number of cached APKs.
+
+    private final Cache<String, ApkChunker.Chunks> cache;
+
+    public ApkChunkCache() {
+        this(DEFAULT_SIZE);
+    }
+
+    public ApkChunkCache(int size) {
+        cache = CacheBuilder.newBuilder().maximumSize(size).build();
+    }
+
+    /** Chunks the given local APK, and remembers its chunks. */
+    public void add(Apk apk) throws IOException {
+        get(apk);
+    }
+
+    /** Returns the chunks of the given local APK, computing them if they are not cached. */
+    ApkChunker.Chunks get(Apk apk) throws IOException {
+        ApkChunker.Chunks chunks = cache.getIfPresent(apk.checksum);
+        if (chunks == null) {
+            chunks = ApkChunker.chunk(Paths.get(apk.path));
+            cache.put(apk.checksum, chunks);
+        }
+        return chunks;
+    }
+
+    /** Returns the chunks of an APK, if it was added to this cache. */
+    ApkChunker.Chunks getIfPresent(Apk apk) {
+        return cache.getIfPresent(apk.checksum);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.deployer;
+
+import com.android.SdkConstants;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Splits a file into content-defined chunks, using a gear rolling hash.
+ *
+ * <p>A chunk ends where the rolling hash of the last bytes matches a mask, so the boundaries only
+ * depend on the surrounding content: a change inside a file only changes the chunks around it.
+ */
+class ApkChunker {
+
+    static final int MIN_CHUNK_SIZE = 2 * 1024;
+    static final int MAX_CHUNK_SIZE = 64 * 1024;
+
+    // 13 bits set for an average chunk size of 8 KiB above the minimum. The highest bits of the
+    // gear hash depend on the last 64 bytes, the lowest ones only on the last few.
+    private static final long BOUNDARY_MASK = 0xFFF8000000000000L;
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // Fixed seed: the chunks of two files can only be compared if they use the same table.
+        Random random = new Random(0x5EEDL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    /** The chunks of a file, indexed by offset. */
+    static class Chunks {
+        private final Map<Long, Chunk> chunks = new HashMap<>();
+        private final List<Chunk> ordered;
+
+        Chunks(List<Chunk> ordered) {
+            this.ordered = ordered;
+            for (Chunk chunk : ordered) {
+                chunks.put(chunk.start, chunk);
+            }
+        }
+
+        /** Chunks sorted by offset. */
+        List<Chunk> getChunks() {
+            return ordered;
+        }
+
+        /** Returns true if the same bytes are found at the same offset in this file. */
+        boolean contains(Chunk chunk) {
+            Chunk other = chunks.get(chunk.start);
+            return other != null && other.equals(chunk);
+        }
+    }
+
+    static class Chunk {
+        final long start;
+        final int size;
+        final HashCode hash;
+
+        Chunk(long start, int size, HashCode hash) {
+            this.start = start;
+            this.size = size;
+            this.hash = hash;
+        }
+
+        long end() {
+            return start + size - 1;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Chunk)) {
+                return false;
+            }
+            Chunk other = (Chunk) o;
+            return start == other.start && size == other.size && hash.equals(other.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash.hashCode();
+        }
+    }
+
+    static Chunks chunk(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<Chunk> chunks = new ArrayList<>();
+            // Read windows of up to 1 GiB, restarting the chunking at each window.
+            long windowStart = 0;
+            while (windowStart < size) {
+                long windowSize = Math.min(size - windowStart, 1L << 30);
+                chunk(readWindow(channel, windowStart, windowSize), windowStart, chunks);
+                windowStart += windowSize;
+            }
+            return new Chunks(chunks);
+        }
+    }
+
+    private static ByteBuffer readWindow(FileChannel channel, long start, long size)
+            throws IOException {
+        // There is no method to unmap a MappedByteBuffer, and a mapping would keep the local apk
+        // from being overwritten by the next build on Windows.
+        if (SdkConstants.currentPlatform() != SdkConstants.PLATFORM_WINDOWS) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(size));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    static void chunk(ByteBuffer buffer, long offset, List<Chunk> chunks) {
+        int limit = buffer.limit();
+        int start = 0;
+        while (start < limit) {
+            int end = findBoundary(buffer, start, limit);
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(start).limit(end);
+            chunks.add(new Chunk(offset + start, end - start, HASH.hashBytes(slice)));
+            start = end;
+        }
+    }
+
+    /** Returns the exclusive end of the chunk beginning at {@code start}. */
+    private static int findBoundary(ByteBuffer buffer, int start, int limit) {
+        int min = start + MIN_CHUNK_SIZE;
+        int max = (int) Math.min((long) start + MAX_CHUNK_SIZE, limit);
+        if (min >= max) {
+            return max;
+        }
+        long hash = 0;
+        // Prime the rolling hash with the bytes skipped by the minimum size.
+        for (int i = Math.max(start, min - 64); i < min; i++) {
+            hash = (hash << 1) + GEAR[buffer.get(i) & 0xFF];
+        }
+        for (int i = min; i < max; i++) {
+            hash = (hash << 1) + GEAR[buffer.get(i) & 0xFF];
+            if ((hash & BOUNDARY_MASK) == 0) {
+                return i + 1;
+            }
+        }
+        return max;
+    }
+}
@@ -17,9 +17,18 @@ package com.android.tools.deployer;
 
 import com.android.tools.deployer.model.ApkEntry;
 import com.android.tools.deployer.model.DexClass;
+import com.android.tools.tracer.Trace;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Predicate;
 
 public class CachedDexSplitter implements DexSplitter {
@@ -38,15 +47,84 @@ public class CachedDexSplitter implements DexSplitter {
         // Try a cached version
         Collection<DexClass> classes = db.getClasses(dex);
         if (classes.isEmpty() || keepCode != null) {
-            // TODO: Calling CacheDexSplitter.split() on a remote APK is fine but actually calling the real splitter on an remote
-            // APK is going to crash. Checking path == null isn't going to work as that gives the remote path of the APK.
-            // The File.exists() check is a temp fix. See b/135202430.
-            if (dex.getApk().path == null || Files.notExists(Paths.get(dex.getApk().path))) {
-                throw DeployerException.remoteApkNotFound();
-            }
+            checkLocal(dex);
             classes = splitter.split(dex, keepCode);
             db.addClasses(classes);
         }
         return classes;
     }
+
+    /**
+     * Splits the dex files missing from the cache in parallel, and adds all of them to the cache
+     * at once.
+     */
+    @Override
+    public Map<ApkEntry, Collection<DexClass>> splitAll(List<ApkEntry> dexes)
+            throws DeployerException {
+        Map<ApkEntry, Collection<DexClass>> classes = new LinkedHashMap<>();
+        List<ApkEntry> missing = new ArrayList<>();
+        for (ApkEntry dex : dexes) {
+            Collection<DexClass> cached = db.getClasses(dex);
+            classes.put(dex, cached);
+            if (cached.isEmpty()) {
+                checkLocal(dex);
+                missing.add(dex);
+            }
+        }
+        if (missing.isEmpty()) {
+            return classes;
+        }
+
+        try (Trace ignored = Trace.begin("splitAll " + missing.size() + " dex files")) {
+            int threads = Math.min(missing.size(), Runtime.getRuntime().availableProcessors());
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Collection<DexClass>>> futures = new ArrayList<>();
+                for (ApkEntry dex : missing) {
+                    futures.add(executor.submit(() -> splitter.split(dex, null)));
+                }
+                List<DexClass> all = new ArrayList<>();
+                for (int i = 0; i < missing.size(); i++) {
+                    Collection<DexClass> split = getSplit(futures.get(i));
+                    classes.put(missing.get(i), split);
+                    all.addAll(split);
+                }
+                db.addClasses(all);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        return classes;
+    }
+
+    private static Collection<DexClass> getSplit(Future<Collection<DexClass>> future)
+            throws DeployerException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DeployerException) {
+                throw (DeployerException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private static void checkLocal(ApkEntry dex) throws DeployerException {
+        // TODO: Calling CacheDexSplitter.split() on a remote APK is fine but actually calling the real splitter on an remote
+        // APK is going to crash. Checking path == null isn't going to work as that gives the remote path of the APK.
+        // The File.exists() check is a temp fix. See b/135202430.
+        if (dex.getApk().path == null || Files.notExists(Paths.get(dex.getApk().path))) {
+            throw DeployerException.remoteApkNotFound();
+        }
+    }
 }
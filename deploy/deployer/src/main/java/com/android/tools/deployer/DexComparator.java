@@ -16,6 +16,7 @@
 package com.android.tools.deployer;
 
 import com.android.annotations.Trace;
+import com.android.tools.deployer.model.ApkEntry;
 import com.android.tools.deployer.model.DexClass;
 import com.android.tools.deployer.model.FileDiff;
 import java.util.ArrayList;
@@ -64,13 +65,15 @@ public class DexComparator {
         // received
 
         // Flatten the list of old files.
-        Map<String, Long> oldChecksums = new HashMap<>();
+        List<ApkEntry> oldFiles = new ArrayList<>();
         for (FileDiff diff : dexDiffs) {
             // If the dex is new, there is no old dex to open.
-            if (diff.status == FileDiff.Status.CREATED) {
-                continue;
+            if (diff.status != FileDiff.Status.CREATED) {
+                oldFiles.add(diff.oldFile);
             }
-            Collection<DexClass> klasses = splitter.split(diff.oldFile, null);
+        }
+        Map<String, Long> oldChecksums = new HashMap<>();
+        for (Collection<DexClass> klasses : splitter.splitAll(oldFiles).values()) {
             for (DexClass clz : klasses) {
                 // split() can return multiple entries but with the most recent ones first. Duplicated entries with
                 // We are going to assume the classes are actually the most recent one.
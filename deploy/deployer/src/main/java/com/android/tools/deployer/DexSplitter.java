@@ -18,21 +18,40 @@ package com.android.tools.deployer;
 import com.android.tools.deployer.model.Apk;
 import com.android.tools.deployer.model.ApkEntry;
 import com.android.tools.deployer.model.DexClass;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Predicate;
 
 public interface DexSplitter {
     Collection<DexClass> split(ApkEntry dex, Predicate<DexClass> keepCode) throws DeployerException;
 
+    /**
+     * Splits several dex files without keeping any code.
+     *
+     * @return the classes of each dex, in the order of {@code dexes}.
+     */
+    default Map<ApkEntry, Collection<DexClass>> splitAll(List<ApkEntry> dexes)
+            throws DeployerException {
+        Map<ApkEntry, Collection<DexClass>> classes = new LinkedHashMap<>();
+        for (ApkEntry dex : dexes) {
+            classes.put(dex, split(dex, null));
+        }
+        return classes;
+    }
+
     default boolean cache(List<Apk> apks) throws DeployerException {
+        List<ApkEntry> dexes = new ArrayList<>();
         for (Apk apk : apks) {
             for (ApkEntry file : apk.apkEntries.values()) {
                 if (file.getName().endsWith(".dex")) {
-                    split(file, null);
+                    dexes.add(file);
                 }
             }
         }
+        splitAll(dexes);
         return true;
     }
 }
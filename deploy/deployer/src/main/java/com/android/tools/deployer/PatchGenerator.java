@@ -26,8 +26,10 @@ import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class PatchGenerator {
 
@@ -62,9 +64,20 @@ public class PatchGenerator {
     }
 
     private ILogger logger;
+    private final ApkChunkCache chunkCache;
 
     public PatchGenerator(ILogger logger) {
+        this(logger, null);
+    }
+
+    /**
+     * @param chunkCache if not null, the content of the changed entries is diffed with the chunks
+     *     of the remote apk if they are known, and the chunks of the local apk are recorded for
+     *     the next patch.
+     */
+    public PatchGenerator(ILogger logger, ApkChunkCache chunkCache) {
         this.logger = logger;
+        this.chunkCache = chunkCache;
     }
 
     /**
@@ -83,6 +96,9 @@ public class PatchGenerator {
 
         // Generate maps from each apk, based on the content directory.
         List<ApkMap.Area> dirtyAreas = generateDirtyMap(remoteApk, localApk);
+        if (chunkCache != null) {
+            dirtyAreas = refineDirtyMap(dirtyAreas, remoteApk, localApk);
+        }
 
         // Use the map of what is dirty and what is clean in the archive to build the patching
         // instruction.
@@ -124,6 +140,63 @@ public class PatchGenerator {
         return new Patch(null, null, sourcePath, destinationSize);
     }
 
+    /**
+     * Marks clean the chunks of the dirty areas that are identical in the remote apk, at the same
+     * offset.
+     *
+     * <p>The device rebuilds the apk by copying the clean areas from the same offset in the remote
+     * apk, so a chunk that moved within the file cannot be reused.
+     */
+    private List<ApkMap.Area> refineDirtyMap(
+            List<ApkMap.Area> dirtyAreas, Apk remoteApk, Apk localApk) throws IOException {
+        long startNanos = System.nanoTime();
+        List<ApkMap.Area> refined = new ArrayList<>();
+        long before = 0;
+        long after = 0;
+        try (Trace ignored = Trace.begin("chunking")) {
+            ApkChunker.Chunks remoteChunks = chunkCache.getIfPresent(remoteApk);
+            ApkChunker.Chunks localChunks = chunkCache.get(localApk);
+            if (remoteChunks == null) {
+                return dirtyAreas;
+            }
+
+            List<ApkChunker.Chunk> chunks = localChunks.getChunks();
+            int chunkIndex = 0;
+            for (ApkMap.Area dirtyArea : dirtyAreas) {
+                before += dirtyArea.size();
+                while (chunkIndex < chunks.size()
+                        && chunks.get(chunkIndex).start < dirtyArea.start) {
+                    chunkIndex++;
+                }
+                // Split the area around the clean chunks it fully contains.
+                long dirtyStart = dirtyArea.start;
+                for (int i = chunkIndex;
+                        i < chunks.size() && chunks.get(i).end() <= dirtyArea.end;
+                        i++) {
+                    ApkChunker.Chunk chunk = chunks.get(i);
+                    if (remoteChunks.contains(chunk)) {
+                        if (chunk.start > dirtyStart) {
+                            refined.add(new ApkMap.Area(dirtyStart, chunk.start - 1));
+                        }
+                        dirtyStart = chunk.end() + 1;
+                    }
+                }
+                if (dirtyStart <= dirtyArea.end) {
+                    refined.add(new ApkMap.Area(dirtyStart, dirtyArea.end));
+                }
+            }
+            for (ApkMap.Area area : refined) {
+                after += area.size();
+            }
+        }
+        logger.info(
+                "Chunked diff reduced dirty bytes from %d to %d in %d ms",
+                before,
+                after,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        return refined;
+    }
+
     private List<ApkMap.Area> generateDirtyMap(Apk remoteApk, Apk localApk) throws IOException {
         Trace.begin("marking dirty");
         ApkMap dirtyMap = new ApkMap(Files.size(Paths.get(localApk.path)));
@@ -37,6 +37,7 @@ public class PatchSetGenerator {
 
     private ILogger logger;
     private final WhenNoChanges whenNoChanges;
+    private final ApkChunkCache chunkCache;
 
     public enum WhenNoChanges {
         GENERATE_PATCH_ANYWAY, // This results in an apk patch containing the CD/EOCD.
@@ -44,8 +45,15 @@ public class PatchSetGenerator {
     }
 
     public PatchSetGenerator(WhenNoChanges whenNoChanges, ILogger logger) {
+        this(whenNoChanges, logger, null);
+    }
+
+    /** @param chunkCache if not null, used to diff the content of changed APK entries. */
+    public PatchSetGenerator(
+            WhenNoChanges whenNoChanges, ILogger logger, ApkChunkCache chunkCache) {
         this.logger = logger;
         this.whenNoChanges = whenNoChanges;
+        this.chunkCache = chunkCache;
     }
 
     public PatchSet generateFromApks(List<Apk> localApks, List<Apk> remoteApks) {
@@ -114,9 +122,12 @@ public class PatchSetGenerator {
                 // will have holes due to "extra" fields and gaps between ZIP entries. This allows
                 // to skip feeding the APK altogether on the device by using install-create -p.
                 instruction = generateCleanPatch(remoteApk, localApk);
+                if (chunkCache != null) {
+                    chunkCache.add(localApk);
+                }
             } else {
                 PatchGenerator.Patch patch =
-                        new PatchGenerator(logger).generate(remoteApk, localApk);
+                        new PatchGenerator(logger, chunkCache).generate(remoteApk, localApk);
                 switch (patch.status) {
                     case SizeThresholdExceeded:
                         return PatchSet.SIZE_THRESHOLD_EXCEEDED;
@@ -28,6 +28,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -37,7 +38,6 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 public class SqlApkFileDatabase {
     // The SQLite use this property to determine where to temporary extract the .so / .dll during init.
@@ -54,7 +54,8 @@ public class SqlApkFileDatabase {
     //  0.3 - Take into account of dex splitter version.
     //  1.0 - D8 Checksum support (Note: No database table scheme was changed, just changing checksum computation)
     //  1.1 - A bug was introduced where db entries where growing at 2^N rate and we are dropping everyone's DB.
-    private static final String CURRENT_SCHEMA_VERSION_NUMBER = "1.1";
+    //  1.2 - Dex file sizes, to reuse the classes of renamed dex files.
+    private static final String CURRENT_SCHEMA_VERSION_NUMBER = "1.2";
     private static final String CURRENT_CHECKSUM_TOOL_VERSION = Version.getVersionString();
     private static final String CURRENT_DATABASE_VERSION_STRING =
             CURRENT_SCHEMA_VERSION_NUMBER + "|" + CURRENT_CHECKSUM_TOOL_VERSION;
@@ -187,7 +188,7 @@ public class SqlApkFileDatabase {
                 "INSERT INTO metadata (name, value) values (\"schema-version\", \""
                         + databaseVersion
                         + "\");",
-                "CREATE TABLE dexfiles (id INTEGER PRIMARY KEY AUTOINCREMENT, name VARCHAR(255) NOT NULL, checksum LONG NOT NULL);",
+                "CREATE TABLE dexfiles (id INTEGER PRIMARY KEY AUTOINCREMENT, name VARCHAR(255) NOT NULL, checksum LONG NOT NULL, size LONG NOT NULL);",
                 "CREATE INDEX dexfiles_checksum_index ON dexfiles(checksum);",
                 "CREATE TABLE archives (dexfileId INTEGER, checksum VARCHAR(255), "
                         + "CONSTRAINT fk_archives_dexfileId FOREIGN KEY(dexfileId) REFERENCES dexfiles(id) ON DELETE CASCADE);",
@@ -230,21 +231,51 @@ public class SqlApkFileDatabase {
         }
     }
 
-    public List<DexClass> getClasses(ApkEntry dex) throws DeployerException {
+    /**
+     * Returns the cached classes of a dex file. If the dex file is not cached under its name, the
+     * classes of a dex file with the same CRC and size but another name are returned, since the
+     * class checksums only depend on the content of the dex.
+     */
+    public synchronized List<DexClass> getClasses(ApkEntry dex) throws DeployerException {
         initializeIfNeeded();
-        try (Trace ignored = Trace.begin("SqlApkFileDatabase.getClasses");
-                Statement s = connection.createStatement();
-                ResultSet result =
-                        s.executeQuery(
+        try (Trace ignored = Trace.begin("SqlApkFileDatabase.getClasses")) {
+            List<DexClass> classes =
+                    getClasses(
+                            dex,
+                            "SELECT classes.name as name, classes.checksum as checksum"
+                                    + "  FROM dexfiles"
+                                    + "  INNER JOIN archives on archives.dexfileId = dexfiles.id"
+                                    + "  INNER JOIN classes on classes.dexfileId = dexfiles.id"
+                                    + "  WHERE dexfiles.name = \""
+                                    + dex.getName()
+                                    + "\" AND dexfiles.checksum = "
+                                    + dex.getChecksum()
+                                    + " ORDER BY id DESC");
+            // A CRC alone collides too easily to identify a dex of another name.
+            if (classes.isEmpty() && dex.getSize() != ApkEntry.UNKNOWN_SIZE) {
+                classes =
+                        getClasses(
+                                dex,
                                 "SELECT classes.name as name, classes.checksum as checksum"
-                                        + "  FROM dexfiles"
-                                        + "  INNER JOIN archives on archives.dexfileId = dexfiles.id"
-                                        + "  INNER JOIN classes on classes.dexfileId = dexfiles.id"
-                                        + "  WHERE dexfiles.name = \""
-                                        + dex.getName()
-                                        + "\" AND dexfiles.checksum = "
+                                        + "  FROM classes"
+                                        + "  WHERE classes.dexfileId = (SELECT MAX(dexfiles.id)"
+                                        + "    FROM dexfiles"
+                                        + "    INNER JOIN archives on archives.dexfileId = dexfiles.id"
+                                        + "    WHERE dexfiles.checksum = "
                                         + dex.getChecksum()
-                                        + " ORDER BY id DESC")) {
+                                        + "    AND dexfiles.size = "
+                                        + dex.getSize()
+                                        + ")");
+            }
+            return classes;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private List<DexClass> getClasses(ApkEntry dex, String query) throws SQLException {
+        try (Statement s = connection.createStatement();
+                ResultSet result = s.executeQuery(query)) {
             List<DexClass> classes = new ArrayList<>();
             while (result.next()) {
                 String name = result.getString("name");
@@ -252,15 +283,18 @@ public class SqlApkFileDatabase {
                 classes.add(new DexClass(name, checksum, null, dex));
             }
             return classes;
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
         }
     }
 
-    public void addClasses(Collection<DexClass> allClasses) throws DeployerException {
+    /**
+     * Adds classes to the cache. All the rows are written with prepared statements in a single
+     * transaction, so that caching the dozens of dex files of a large app only syncs the database
+     * file once.
+     */
+    public synchronized void addClasses(Collection<DexClass> allClasses) throws DeployerException {
         initializeIfNeeded();
         int numDex = 0;
-        try {
+        try (Trace ignored = Trace.begin("SqlApkFileDatabase.addClasses")) {
             Map<Apk, Multimap<ApkEntry, DexClass>> map = new HashMap<>();
             for (DexClass clazz : allClasses) {
                 Multimap<ApkEntry, DexClass> multimap = map.get(clazz.dex.getApk());
@@ -270,65 +304,57 @@ public class SqlApkFileDatabase {
                 }
                 multimap.put(clazz.dex, clazz);
             }
-            for (Map.Entry<Apk, Multimap<ApkEntry, DexClass>> entry : map.entrySet()) {
-                Multimap<ApkEntry, DexClass> classes = entry.getValue();
-                List<Integer> ids = new ArrayList<>();
-                for (ApkEntry dex : classes.keySet()) {
-                    numDex++;
-                    int id = addDexFile(dex.getChecksum(), dex.getName());
-                    ids.add(id);
-                    // TODO: Verify if writing all the classses in one go would help
-                    addClasses(id, classes.get(dex));
+            connection.setAutoCommit(false);
+            try (PreparedStatement addDexFile =
+                            connection.prepareStatement(
+                                    "INSERT INTO dexfiles(name, checksum, size) VALUES (?, ?, ?);");
+                    PreparedStatement addClass =
+                            connection.prepareStatement(
+                                    "INSERT INTO classes (dexfileId, name, checksum) VALUES (?, ?, ?);");
+                    PreparedStatement addArchive =
+                            connection.prepareStatement(
+                                    "INSERT INTO archives (dexfileId, checksum) VALUES (?, ?);")) {
+                for (Map.Entry<Apk, Multimap<ApkEntry, DexClass>> entry : map.entrySet()) {
+                    Multimap<ApkEntry, DexClass> classes = entry.getValue();
+                    for (ApkEntry dex : classes.keySet()) {
+                        numDex++;
+                        int id = addDexFile(addDexFile, dex);
+                        for (DexClass clazz : classes.get(dex)) {
+                            addClass.setInt(1, id);
+                            addClass.setString(2, clazz.name);
+                            addClass.setLong(3, clazz.checksum);
+                            addClass.addBatch();
+                        }
+                        addArchive.setInt(1, id);
+                        addArchive.setString(2, entry.getKey().checksum);
+                        addArchive.addBatch();
+                    }
                 }
-                addDexFiles(entry.getKey().checksum, ids);
+                addClass.executeBatch();
+                addArchive.executeBatch();
+                flushOldCache(numDex);
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
             }
-            flushOldCache(numDex);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private int addDexFile(long checksum, String name) throws SQLException {
-        String insert =
-                String.format(
-                        "INSERT INTO dexfiles(name, checksum) VALUES (\"%s\", %d);",
-                        name, checksum);
-        try (Statement s = connection.createStatement()) {
-            int updated = s.executeUpdate(insert);
-            assert updated == 1;
-            try (ResultSet set = s.executeQuery("SELECT LAST_INSERT_ROWID();")) {
-                return set.getInt(1);
-            }
-        }
-    }
-
-    private void addClasses(int dexId, Collection<DexClass> classes) throws SQLException {
-        if (classes.isEmpty()) {
-            return;
-        }
-        String values =
-                classes.stream()
-                        .map(e -> String.format("(%d, \"%s\", %d)", dexId, e.name, e.checksum))
-                        .collect(Collectors.joining(","));
-        String insert =
-                String.format("INSERT INTO classes (dexfileId, name, checksum) VALUES %s;", values);
-        int updated = executeUpdate(insert);
-        assert updated == classes.size();
-    }
-
-    private void addDexFiles(String archiveChecksum, List<Integer> files) throws SQLException {
-        if (files.isEmpty()) {
-            return;
+    private int addDexFile(PreparedStatement insert, ApkEntry dex) throws SQLException {
+        insert.setString(1, dex.getName());
+        insert.setLong(2, dex.getChecksum());
+        insert.setLong(3, dex.getSize());
+        int updated = insert.executeUpdate();
+        assert updated == 1;
+        try (Statement s = connection.createStatement();
+                ResultSet set = s.executeQuery("SELECT LAST_INSERT_ROWID();")) {
+            return set.getInt(1);
         }
-
-        String values =
-                files.stream()
-                        .map(e -> String.format("(%d, \"%s\")", e, archiveChecksum))
-                        .collect(Collectors.joining(","));
-        String insert =
-                String.format("INSERT INTO archives (dexfileId, checksum) VALUES %s;", values);
-        int updated = executeUpdate(insert);
-        assert updated == files.size();
     }
 
     @VisibleForTesting
@@ -387,14 +413,19 @@ public class SqlApkFileDatabase {
         try (Statement s = connection.createStatement();
                 ResultSet result =
                         s.executeQuery(
-                                "SELECT dexfiles.name as name, dexfiles.checksum as checksum FROM dexfiles"
+                                "SELECT dexfiles.name as name, dexfiles.checksum as checksum, dexfiles.size as size FROM dexfiles"
                                         + "  INNER JOIN archives on archives.dexfileId = dexfiles.id"
                                         + "  WHERE archives.checksum = \""
                                         + apk.checksum
                                         + "\"")) {
             List<ApkEntry> files = new ArrayList<>();
             while (result.next()) {
-                files.add(new ApkEntry(result.getString("name"), result.getLong("checksum"), apk));
+                files.add(
+                        new ApkEntry(
+                                result.getString("name"),
+                                result.getLong("checksum"),
+                                result.getLong("size"),
+                                apk));
             }
             return files;
         } catch (SQLException e) {
@@ -40,6 +40,7 @@ public class ZipUtils {
     public static class ZipEntry implements Serializable {
         public final long crc;
         public final String name;
+        public final long size; // Uncompressed size of the entry
         public final long start; // Offset in the archive to the Local File Header location
 
         // Offset in the archive to the last byte of the payload we know of.
@@ -52,9 +53,16 @@ public class ZipUtils {
         // Array with all attributes of an entry in the Local File Header. Used for deltaPushing.
         public final byte[] localFileHeader;
 
-        ZipEntry(long crc, String name, long start, long approx_end, byte[] localFileHeader) {
+        ZipEntry(
+                long crc,
+                String name,
+                long size,
+                long start,
+                long approx_end,
+                byte[] localFileHeader) {
             this.crc = crc;
             this.name = name;
+            this.size = size;
             this.start = start;
             this.approx_end = approx_end;
             this.localFileHeader = localFileHeader;
@@ -118,7 +126,8 @@ public class ZipUtils {
             // the last byte.
             long approx_end = start + LOCAL_DIRECTORY_FILE_HEADER_SIZE + pathLength - 1;
             approx_end += compression == 0 ? decompressedSize : compressedSize;
-            ZipEntry entry = new ZipEntry(crc, name, start, approx_end, localFileHeader);
+            ZipEntry entry =
+                    new ZipEntry(crc, name, decompressedSize, start, approx_end, localFileHeader);
             entries.add(entry);
         }
         return entries;
@@ -20,21 +20,31 @@ import com.google.common.annotations.VisibleForTesting;
 import java.io.Serializable;
 
 public class ApkEntry implements Serializable {
+    public static final long UNKNOWN_SIZE = -1;
+
     private final String name;
     private final long checksum;
+    private final long size;
     private final ZipUtils.ZipEntry entry;
     private Apk apk;
 
     ApkEntry(ZipUtils.ZipEntry entry) {
         this.name = entry.name;
         this.checksum = entry.crc;
+        this.size = entry.size;
         this.entry = entry;
     }
 
     @VisibleForTesting
     public ApkEntry(String name, long checksum, Apk apk) {
+        this(name, checksum, UNKNOWN_SIZE, apk);
+    }
+
+    @VisibleForTesting
+    public ApkEntry(String name, long checksum, long size, Apk apk) {
         this.name = name;
         this.checksum = checksum;
+        this.size = size;
         this.entry = null;
         this.apk = apk;
     }
@@ -47,6 +57,11 @@ public class ApkEntry implements Serializable {
         return checksum;
     }
 
+    /** Returns the uncompressed size of the entry, or {@link #UNKNOWN_SIZE}. */
+    public long getSize() {
+        return size;
+    }
+
     public ZipUtils.ZipEntry getZipEntry() {
         return entry;
     }
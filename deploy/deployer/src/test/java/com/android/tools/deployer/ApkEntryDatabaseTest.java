@@ -68,6 +68,45 @@ public class ApkEntryDatabaseTest {
         Assert.assertFalse(db.hasDuplicates());
     }
 
+    @Test
+    public void testSameContentDifferentName() throws Exception {
+        SqlApkFileDatabase db = createTestDb("1.0", 10);
+
+        ApkEntry classes01 = new ApkEntry("01.dex", 1234, 5000, apk);
+        DexClass c1 = new DexClass("A.1", 0xA1, null, classes01);
+        DexClass c2 = new DexClass("B.1", 0xB1, null, classes01);
+        db.addClasses(ImmutableList.of(c1, c2));
+
+        // The dex got renamed in a new build, but its content is the same.
+        Apk newApk = Apk.builder().setName("a.apk").setChecksum("EFGH").build();
+        ApkEntry renamed = new ApkEntry("02.dex", 1234, 5000, newApk);
+        List<DexClass> classes = db.getClasses(renamed);
+        Assert.assertEquals(2, classes.size());
+        for (DexClass clazz : classes) {
+            Assert.assertEquals(renamed, clazz.dex);
+        }
+
+        Assert.assertTrue(db.getClasses(new ApkEntry("01.dex", 4321, 5000, apk)).isEmpty());
+    }
+
+    @Test
+    public void testSameChecksumDifferentContent() throws Exception {
+        SqlApkFileDatabase db = createTestDb("1.0", 10);
+
+        ApkEntry classes01 = new ApkEntry("01.dex", 1234, 5000, apk);
+        db.addClasses(ImmutableList.of(new DexClass("A.1", 0xA1, null, classes01)));
+
+        // Another dex with a colliding CRC, its classes must not be taken from 01.dex.
+        Apk newApk = Apk.builder().setName("a.apk").setChecksum("EFGH").build();
+        Assert.assertTrue(db.getClasses(new ApkEntry("02.dex", 1234, 6000, newApk)).isEmpty());
+
+        // Nor when the size is not known.
+        Assert.assertTrue(db.getClasses(new ApkEntry("02.dex", 1234, newApk)).isEmpty());
+
+        // The dex of the same name is still found.
+        Assert.assertEquals(1, db.getClasses(new ApkEntry("01.dex", 1234, 5000, apk)).size());
+    }
+
     @Test
     public void testOutdatedSchema() throws Exception {
         TemporaryFolder tmdir = new TemporaryFolder();
@@ -24,11 +24,16 @@ import com.android.utils.NullLogger;
 import com.android.utils.PathUtils;
 import com.android.zipflinger.BytesSource;
 import com.android.zipflinger.ZipArchive;
+import com.google.common.hash.HashCode;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
 import java.util.zip.Deflater;
 import org.junit.After;
 import org.junit.Assert;
@@ -167,4 +172,67 @@ public class PatchTest {
                 PatchGenerator.Patch.Status.SizeThresholdExceeded,
                 patch.status);
     }
+
+    @Test
+    public void testChunkedPatchIsSmaller() throws IOException, DeployerException {
+        byte[] bytes = new byte[4 * 1024 * 1024];
+        new Random(1).nextBytes(bytes);
+        Path remote = tempDirectory.resolve("remote.apk");
+        createSimpleZip(remote, bytes, "f");
+
+        // Small in-place edit in the middle of a large entry.
+        bytes[bytes.length / 2] ^= 1;
+        bytes[bytes.length / 2 + 100] ^= 1;
+        Path local = tempDirectory.resolve("local.apk");
+        createSimpleZip(local, bytes, "f");
+
+        ApkParser apkParser = new ApkParser();
+        Apk remoteApk =
+                apkParser.parsePaths(singletonList(remote.toAbsolutePath().toString())).get(0);
+        Apk localApk =
+                apkParser.parsePaths(singletonList(local.toAbsolutePath().toString())).get(0);
+
+        PatchGenerator.Patch entryPatch =
+                new PatchGenerator(new NullLogger()).generate(remoteApk, localApk);
+
+        ApkChunkCache cache = new ApkChunkCache();
+        // The remote apk was the local apk of the previous deployment.
+        cache.add(remoteApk);
+        PatchGenerator.Patch chunkedPatch =
+                new PatchGenerator(new NullLogger(), cache).generate(remoteApk, localApk);
+
+        Assert.assertTrue(entryPatch.data.limit() > bytes.length);
+        Assert.assertTrue(chunkedPatch.data.limit() < 4 * ApkChunker.MAX_CHUNK_SIZE);
+
+        Path patched = tempDirectory.resolve("patched.apk");
+        new Patcher().apply(chunkedPatch, patched.toFile());
+        Assert.assertArrayEquals(Files.readAllBytes(local), Files.readAllBytes(patched));
+    }
+
+    @Test
+    public void testChunkerBoundariesFollowContent() {
+        byte[] bytes = new byte[1024 * 1024];
+        new Random(2).nextBytes(bytes);
+        List<ApkChunker.Chunk> chunks = new ArrayList<>();
+        ApkChunker.chunk(ByteBuffer.wrap(bytes), 0, chunks);
+
+        // Inserting a byte at the beginning only changes the first chunks.
+        byte[] shifted = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, shifted, 1, bytes.length);
+        List<ApkChunker.Chunk> shiftedChunks = new ArrayList<>();
+        ApkChunker.chunk(ByteBuffer.wrap(shifted), 0, shiftedChunks);
+
+        Set<HashCode> hashes = new HashSet<>();
+        for (ApkChunker.Chunk chunk : chunks) {
+            Assert.assertTrue(chunk.size <= ApkChunker.MAX_CHUNK_SIZE);
+            hashes.add(chunk.hash);
+        }
+        int shared = 0;
+        for (ApkChunker.Chunk chunk : shiftedChunks) {
+            if (hashes.contains(chunk.hash)) {
+                shared++;
+            }
+        }
+        Assert.assertTrue(shared >= chunks.size() - 2);
+    }
 }
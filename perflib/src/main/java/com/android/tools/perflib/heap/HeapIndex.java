@@ -0,0 +1,547 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.perflib.heap;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.android.tools.perflib.captures.DataBuffer;
+import com.android.tools.perflib.heap.analysis.IntGraph;
+import com.android.tools.perflib.heap.analysis.LinkEvalDominators;
+import gnu.trove.TIntArrayList;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A columnar index of all instances and arrays of a heap dump, sorted by id.
+ *
+ * <p>Built by {@link Snapshot#createIndexedSnapshot} instead of creating one {@link Instance} per
+ * object. Each object costs a few primitive array slots (~40 bytes) instead of an object graph
+ * entry, and {@link Instance}s are only materialized on demand from the offset of their values in
+ * the {@link com.android.tools.perflib.captures.DataBuffer}.
+ *
+ * <p>Materialized instances are not cached: two lookups of the same id return two different (but
+ * equivalent) objects.
+ *
+ * <p>{@link #computeRetainedSizes()} computes the reference graph, dominator tree and retained
+ * sizes directly from the buffer. Their nodes are the entries of this index followed by all
+ * classes, see {@link #nodeOf(long)}.
+ */
+public class HeapIndex {
+
+    /** Immediate dominator of nodes only dominated by the GC roots. */
+    public static final int DOMINATED_BY_ROOTS = -1;
+
+    /** Immediate dominator of nodes not reachable from the GC roots. */
+    public static final int UNREACHABLE = -2;
+
+    // Kind of an object, arrays use the typeId of their element type.
+    private static final byte KIND_INSTANCE = 0;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    @NonNull private final Snapshot mSnapshot;
+
+    private int mCount;
+
+    private boolean mSorted = true;
+
+    @NonNull private long[] mIds = new long[INITIAL_CAPACITY];
+
+    // Id of the ClassObj for instances and object arrays, 0 for primitive arrays.
+    @NonNull private long[] mClassIds = new long[INITIAL_CAPACITY];
+
+    // Position of the first field/element value in the buffer.
+    @NonNull private long[] mOffsets = new long[INITIAL_CAPACITY];
+
+    // Shallow size for instances (resolved once classes are known), element count for arrays.
+    @NonNull private int[] mSizesOrLengths = new int[INITIAL_CAPACITY];
+
+    @NonNull private int[] mStackSerials = new int[INITIAL_CAPACITY];
+
+    @NonNull private byte[] mKinds = new byte[INITIAL_CAPACITY];
+
+    // Index of the heap in Snapshot.heapList.
+    @NonNull private byte[] mHeaps = new byte[INITIAL_CAPACITY];
+
+    // Set if the index was read from an HprofIndexCache, in which case the parser only needs to
+    // load classes, roots and stack traces and entries are not added again.
+    private boolean mRestored;
+
+    // The fields below are only set once retained sizes are computed.
+
+    // Ids of the classes, sorted, which follow the entries in the node numbering.
+    @Nullable private long[] mClassNodeIds;
+
+    @Nullable private IntGraph mGraph;
+
+    // Node of the immediate dominator of each node, or DOMINATED_BY_ROOTS or UNREACHABLE.
+    @Nullable private int[] mDominators;
+
+    // Summed over all heaps.
+    @Nullable private long[] mRetainedSizes;
+
+    HeapIndex(@NonNull Snapshot snapshot) {
+        mSnapshot = snapshot;
+    }
+
+    void addInstance(long id, int stackSerial, long classId, long offset, @NonNull Heap heap) {
+        add(id, stackSerial, classId, offset, 0, KIND_INSTANCE, heap);
+    }
+
+    void addArray(
+            long id,
+            int stackSerial,
+            long classId,
+            @NonNull Type type,
+            int length,
+            long offset,
+            @NonNull Heap heap) {
+        add(id, stackSerial, classId, offset, length, (byte) type.getTypeId(), heap);
+    }
+
+    private void add(
+            long id,
+            int stackSerial,
+            long classId,
+            long offset,
+            int sizeOrLength,
+            byte kind,
+            @NonNull Heap heap) {
+        if (mRestored) {
+            return;
+        }
+        if (mCount == mIds.length) {
+            grow();
+        }
+        if (mCount > 0 && mIds[mCount - 1] >= id) {
+            mSorted = false;
+        }
+        int heapIndex = mSnapshot.getHeapIndex(heap);
+        if (heapIndex > Byte.MAX_VALUE) {
+            throw new IllegalStateException("Too many heaps: " + heapIndex);
+        }
+        mIds[mCount] = id;
+        mStackSerials[mCount] = stackSerial;
+        mClassIds[mCount] = classId;
+        mOffsets[mCount] = offset;
+        mSizesOrLengths[mCount] = sizeOrLength;
+        mKinds[mCount] = kind;
+        mHeaps[mCount] = (byte) heapIndex;
+        mCount++;
+    }
+
+    private void grow() {
+        int capacity = mIds.length + (mIds.length >> 1);
+        mIds = Arrays.copyOf(mIds, capacity);
+        mStackSerials = Arrays.copyOf(mStackSerials, capacity);
+        mClassIds = Arrays.copyOf(mClassIds, capacity);
+        mOffsets = Arrays.copyOf(mOffsets, capacity);
+        mSizesOrLengths = Arrays.copyOf(mSizesOrLengths, capacity);
+        mKinds = Arrays.copyOf(mKinds, capacity);
+        mHeaps = Arrays.copyOf(mHeaps, capacity);
+    }
+
+    /** Sorts the columns by id, trims them, and resolves instance sizes now classes are known. */
+    void finish() {
+        if (mRestored) {
+            return;
+        }
+        if (!mSorted) {
+            sort(0, mCount - 1);
+            mSorted = true;
+        }
+        mIds = Arrays.copyOf(mIds, mCount);
+        mStackSerials = Arrays.copyOf(mStackSerials, mCount);
+        mClassIds = Arrays.copyOf(mClassIds, mCount);
+        mOffsets = Arrays.copyOf(mOffsets, mCount);
+        mSizesOrLengths = Arrays.copyOf(mSizesOrLengths, mCount);
+        mKinds = Arrays.copyOf(mKinds, mCount);
+        mHeaps = Arrays.copyOf(mHeaps, mCount);
+
+        for (int i = 0; i < mCount; i++) {
+            if (mKinds[i] == KIND_INSTANCE) {
+                ClassObj classObj = mSnapshot.findClass(mClassIds[i]);
+                mSizesOrLengths[i] = classObj == null ? 0 : classObj.getInstanceSize();
+            }
+        }
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    /** Returns the position of {@code id} in this index, or a negative value if absent. */
+    public int indexOf(long id) {
+        return Arrays.binarySearch(mIds, 0, mCount, id);
+    }
+
+    public long getId(int index) {
+        return mIds[index];
+    }
+
+    public long getClassId(int index) {
+        return mClassIds[index];
+    }
+
+    public boolean isArray(int index) {
+        return mKinds[index] != KIND_INSTANCE;
+    }
+
+    /** Returns the element type of the array at {@code index}, null for instances. */
+    @Nullable
+    public Type getArrayType(int index) {
+        return isArray(index) ? Type.getType(mKinds[index]) : null;
+    }
+
+    /** Same as {@link Instance#getSize()} of the materialized instance. */
+    public int getShallowSize(int index) {
+        if (isArray(index)) {
+            return mSizesOrLengths[index] * mSnapshot.getTypeSize(getArrayType(index));
+        }
+        return mSizesOrLengths[index];
+    }
+
+    @NonNull
+    public Heap getHeap(int index) {
+        return mSnapshot.heapList.get(mHeaps[index]);
+    }
+
+    /** Creates the Instance with the given id, or returns null if it is not in this index. */
+    @Nullable
+    public Instance getInstance(long id) {
+        int index = indexOf(id);
+        return index < 0 ? null : getInstanceAt(index);
+    }
+
+    @NonNull
+    public Instance getInstanceAt(int index) {
+        StackTrace stack = mSnapshot.getStackTrace(mStackSerials[index]);
+        Instance instance;
+        if (isArray(index)) {
+            instance =
+                    new ArrayInstance(
+                            mIds[index],
+                            stack,
+                            getArrayType(index),
+                            mSizesOrLengths[index],
+                            mOffsets[index]);
+        } else {
+            instance = new ClassInstance(mIds[index], stack, mOffsets[index]);
+            instance.setSize(mSizesOrLengths[index]);
+        }
+        instance.setClassId(mClassIds[index]);
+        instance.setHeap(getHeap(index));
+        return instance;
+    }
+
+    /** Returns true if this index was read from a cache instead of being built by parsing. */
+    public boolean isRestored() {
+        return mRestored;
+    }
+
+    public boolean hasRetainedSizes() {
+        return mRetainedSizes != null;
+    }
+
+    /**
+     * Computes the reference graph, the dominator tree and the retained sizes of all nodes, if not
+     * done yet. Soft references are not followed, as in {@link Snapshot#computeRetainedSizes()}.
+     *
+     * <p>References are read from the buffer without materializing instances. Native sizes are not
+     * accounted for since post processors are not run on indexed snapshots.
+     */
+    public void computeRetainedSizes() {
+        if (mRetainedSizes != null) {
+            return;
+        }
+        List<ClassObj> classes = new ArrayList<>();
+        for (Heap heap : mSnapshot.heapList) {
+            classes.addAll(heap.getClasses());
+        }
+        classes.sort(Comparator.comparingLong(Instance::getId));
+        mClassNodeIds = new long[classes.size()];
+        for (int i = 0; i < mClassNodeIds.length; i++) {
+            mClassNodeIds[i] = classes.get(i).getId();
+        }
+
+        mGraph = readReferenceGraph(classes);
+        int nodeCount = getNodeCount();
+
+        boolean[] isRoot = new boolean[nodeCount];
+        int rootCount = 0;
+        for (RootObj root : mSnapshot.getGcRoots()) {
+            int node = nodeOf(root.getId());
+            if (node >= 0 && !isRoot[node]) {
+                isRoot[node] = true;
+                rootCount++;
+            }
+        }
+        int[] roots = new int[rootCount];
+        for (int node = 0, i = 0; node < nodeCount; node++) {
+            if (isRoot[node]) {
+                roots[i++] = node;
+            }
+        }
+        LinkEvalDominators.IntResult dominators =
+                LinkEvalDominators.INSTANCE.computeDominators(mGraph, roots);
+        int[] order = dominators.getOrder();
+        int[] immediateDominators = dominators.getImmediateDominator();
+
+        int[] dominatorNodes = new int[nodeCount];
+        Arrays.fill(dominatorNodes, UNREACHABLE);
+        long[] retainedSizes = new long[nodeCount];
+        for (int node = 0; node < mCount; node++) {
+            retainedSizes[node] = getShallowSize(node);
+        }
+        for (int i = 0; i < classes.size(); i++) {
+            retainedSizes[mCount + i] = classes.get(i).getSize();
+        }
+        // A dominator always has a smaller DFS index than the nodes it dominates.
+        for (int i = order.length - 1; i > 0; i--) {
+            int dominator = immediateDominators[i];
+            if (dominator == 0) {
+                dominatorNodes[order[i]] = DOMINATED_BY_ROOTS;
+            } else {
+                dominatorNodes[order[i]] = order[dominator];
+                retainedSizes[order[dominator]] += retainedSizes[order[i]];
+            }
+        }
+        mDominators = dominatorNodes;
+        mRetainedSizes = retainedSizes;
+    }
+
+    // The buffer has a single position, so the graph is read sequentially in CSR order.
+    @NonNull
+    private IntGraph readReferenceGraph(@NonNull List<ClassObj> classes) {
+        DataBuffer buffer = mSnapshot.getBuffer();
+        int idSize = mSnapshot.getTypeSize(Type.OBJECT);
+        int[] offsets = new int[mCount + classes.size() + 1];
+        TIntArrayList targets = new TIntArrayList(mCount);
+        for (int node = 0; node < mCount; node++) {
+            buffer.setPosition(mOffsets[node]);
+            if (mKinds[node] == KIND_INSTANCE) {
+                ClassObj classObj = mSnapshot.findClass(mClassIds[node]);
+                boolean isSoftReference = classObj != null && classObj.isSoftReference();
+                for (ClassObj cl = classObj; cl != null; cl = cl.getSuperClassObj()) {
+                    for (Field field : cl.getFields()) {
+                        if (field.getType() != Type.OBJECT) {
+                            buffer.setPosition(
+                                    buffer.position() + mSnapshot.getTypeSize(field.getType()));
+                            continue;
+                        }
+                        int target = nodeOf(readId(buffer, idSize));
+                        if (target >= 0
+                                && !(isSoftReference && "referent".equals(field.getName()))) {
+                            targets.add(target);
+                        }
+                    }
+                }
+            } else if (mKinds[node] == Type.OBJECT.getTypeId()) {
+                for (int i = 0; i < mSizesOrLengths[node]; i++) {
+                    int target = nodeOf(readId(buffer, idSize));
+                    if (target >= 0) {
+                        targets.add(target);
+                    }
+                }
+            }
+            offsets[node + 1] = targets.size();
+        }
+        for (int i = 0; i < classes.size(); i++) {
+            for (Object value : classes.get(i).getStaticFieldValues().values()) {
+                int target = value instanceof Instance ? nodeOf(((Instance) value).getId()) : -1;
+                if (target >= 0) {
+                    targets.add(target);
+                }
+            }
+            offsets[mCount + i + 1] = targets.size();
+        }
+        return new IntGraph(offsets, targets.toNativeArray());
+    }
+
+    private static long readId(@NonNull DataBuffer buffer, int idSize) {
+        switch (idSize) {
+            case 1:
+                return buffer.readByte();
+            case 2:
+                return buffer.readShort();
+            case 4:
+                return buffer.readInt();
+            case 8:
+                return buffer.readLong();
+            default:
+                return 0;
+        }
+    }
+
+    /** The number of nodes of the reference graph, this index entries followed by classes. */
+    public int getNodeCount() {
+        return mCount + (mClassNodeIds == null ? 0 : mClassNodeIds.length);
+    }
+
+    /**
+     * Returns the node with the given id: its position in this index for instances and arrays,
+     * {@link #getCount()} plus its position among classes for classes, or -1 if absent.
+     */
+    public int nodeOf(long id) {
+        int index = indexOf(id);
+        if (index >= 0) {
+            return index;
+        }
+        if (mClassNodeIds != null) {
+            index = Arrays.binarySearch(mClassNodeIds, id);
+            if (index >= 0) {
+                return mCount + index;
+            }
+        }
+        return -1;
+    }
+
+    public long getNodeId(int node) {
+        return node < mCount ? mIds[node] : mClassNodeIds[node - mCount];
+    }
+
+    /** Returns the graph of hard references, or null if retained sizes are not computed. */
+    @Nullable
+    public IntGraph getReferenceGraph() {
+        return mGraph;
+    }
+
+    /** Returns the node immediately dominating {@code node}, or one of the constants above. */
+    public int getImmediateDominator(int node) {
+        return checkComputed(mDominators)[node];
+    }
+
+    /** Returns the retained size of {@code node}, summed over all heaps. */
+    public long getRetainedSize(int node) {
+        return checkComputed(mRetainedSizes)[node];
+    }
+
+    @NonNull
+    private static <T> T checkComputed(@Nullable T values) {
+        if (values == null) {
+            throw new IllegalStateException("Retained sizes are not computed");
+        }
+        return values;
+    }
+
+    /** Writes this index, which must have its retained sizes computed, to {@code out}. */
+    void write(@NonNull HprofIndexCache.Writer out) throws IOException {
+        checkComputed(mRetainedSizes);
+        out.writeInt(mCount);
+        out.writeInt(mClassNodeIds.length);
+        out.writeInt(mGraph.getEdgeCount());
+        out.writeLongs(mIds);
+        out.writeLongs(mClassIds);
+        out.writeLongs(mOffsets);
+        out.writeLongs(mClassNodeIds);
+        out.writeInts(mSizesOrLengths);
+        out.writeInts(mStackSerials);
+        out.writeBytes(mKinds);
+        out.writeBytes(mHeaps);
+        out.writeInts(mGraph.getOffsets());
+        out.writeInts(mGraph.getTargets());
+        out.writeInts(mDominators);
+        out.writeLongs(mRetainedSizes);
+    }
+
+    /** Reads an index written by {@link #write}. */
+    @NonNull
+    static HeapIndex read(@NonNull Snapshot snapshot, @NonNull HprofIndexCache.Reader in)
+            throws IOException {
+        HeapIndex index = new HeapIndex(snapshot);
+        int count = in.readInt();
+        int classCount = in.readInt();
+        int edgeCount = in.readInt();
+        if (count < 0 || classCount < 0 || edgeCount < 0) {
+            throw new IOException("Corrupt HPROF index cache");
+        }
+        index.mCount = count;
+        index.mIds = in.readLongs(count);
+        index.mClassIds = in.readLongs(count);
+        index.mOffsets = in.readLongs(count);
+        index.mClassNodeIds = in.readLongs(classCount);
+        index.mSizesOrLengths = in.readInts(count);
+        index.mStackSerials = in.readInts(count);
+        index.mKinds = in.readBytes(count);
+        index.mHeaps = in.readBytes(count);
+        index.mGraph = new IntGraph(in.readInts(count + classCount + 1), in.readInts(edgeCount));
+        index.mDominators = in.readInts(count + classCount);
+        index.mRetainedSizes = in.readLongs(count + classCount);
+        index.mRestored = true;
+        return index;
+    }
+
+    // Ids are mostly increasing in a dump, but there is no guarantee. Sort all columns together
+    // in place to avoid needing a permutation array as large as the index.
+    private void sort(int lo, int hi) {
+        while (hi - lo > 16) {
+            int mid = (lo + hi) >>> 1;
+            // Median of three as pivot, moved to hi.
+            if (mIds[mid] < mIds[lo]) swap(mid, lo);
+            if (mIds[hi] < mIds[lo]) swap(hi, lo);
+            if (mIds[mid] < mIds[hi]) swap(mid, hi);
+            long pivot = mIds[hi];
+            int store = lo;
+            for (int i = lo; i < hi; i++) {
+                if (mIds[i] < pivot) {
+                    swap(i, store++);
+                }
+            }
+            swap(store, hi);
+            // Recurse on the smaller half to bound the stack depth.
+            if (store - lo < hi - store) {
+                sort(lo, store - 1);
+                lo = store + 1;
+            } else {
+                sort(store + 1, hi);
+                hi = store - 1;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && mIds[j - 1] > mIds[j]; j--) {
+                swap(j, j - 1);
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        long id = mIds[i];
+        mIds[i] = mIds[j];
+        mIds[j] = id;
+        int stackSerial = mStackSerials[i];
+        mStackSerials[i] = mStackSerials[j];
+        mStackSerials[j] = stackSerial;
+        long classId = mClassIds[i];
+        mClassIds[i] = mClassIds[j];
+        mClassIds[j] = classId;
+        long offset = mOffsets[i];
+        mOffsets[i] = mOffsets[j];
+        mOffsets[j] = offset;
+        int sizeOrLength = mSizesOrLengths[i];
+        mSizesOrLengths[i] = mSizesOrLengths[j];
+        mSizesOrLengths[j] = sizeOrLength;
+        byte kind = mKinds[i];
+        mKinds[i] = mKinds[j];
+        mKinds[j] = kind;
+        byte heap = mHeaps[i];
+        mHeaps[i] = mHeaps[j];
+        mHeaps[j] = heap;
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.perflib.heap;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A sidecar file holding a {@link HeapIndex} with its reference graph, dominator tree and retained
+ * sizes, so reopening the same HPROF file does not need to index instances or compute dominators
+ * again.
+ *
+ * <p>The file is a header followed by the raw columns of the index, big-endian and 8-byte aligned.
+ * Columns are read back by memory-mapping the file. The header holds a {@link Key} of the HPROF
+ * file, the cache is ignored if it does not match.
+ */
+final class HprofIndexCache {
+
+    private static final int MAGIC = 0x50494458; // "PIDX"
+
+    // Bump when the format of the file or of HeapIndex.write() changes.
+    private static final int VERSION = 1;
+
+    // Largest mapping used to read a column.
+    private static final int MAX_MAPPING_SIZE = 1 << 30;
+
+    private HprofIndexCache() {}
+
+    @NonNull
+    static File getDefaultCacheFile(@NonNull File hprof) {
+        return new File(hprof.getPath() + ".index");
+    }
+
+    /**
+     * Returns the index stored in {@code cacheFile}, or null if it is absent or out of date.
+     *
+     * @throws IOException if the file can't be read, or is truncated or corrupt
+     */
+    @Nullable
+    static HeapIndex read(@NonNull File cacheFile, @NonNull Key key, @NonNull Snapshot snapshot)
+            throws IOException {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            Reader in = new Reader(channel);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !key.equals(Key.read(in))) {
+                return null;
+            }
+            return HeapIndex.read(snapshot, in);
+        } catch (IllegalArgumentException
+                | IndexOutOfBoundsException
+                | BufferUnderflowException
+                | NegativeArraySizeException e) {
+            // Inconsistent counts, or columns the reference graph rejects.
+            throw new IOException("Corrupt HPROF index cache", e);
+        }
+    }
+
+    /** Writes {@code index}, which must have its retained sizes computed, to {@code cacheFile}. */
+    static void write(@NonNull File cacheFile, @NonNull Key key, @NonNull HeapIndex index)
+            throws IOException {
+        // Write to a temporary file first so readers never see a partial cache.
+        Path target = cacheFile.toPath().toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), cacheFile.getName(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                Writer out = new Writer(channel);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                key.write(out);
+                index.write(out);
+                out.flush();
+            }
+            Files.move(
+                    temp,
+                    target,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Identifies the content of an HPROF file by its size, modification time and a hash of its
+     * first and last bytes. Hashing the whole file would cost as much as parsing it.
+     */
+    static final class Key {
+
+        private static final int SAMPLE_SIZE = 1 << 20;
+
+        private final long mSize;
+
+        private final long mLastModified;
+
+        private final long mHash;
+
+        private Key(long size, long lastModified, long hash) {
+            mSize = size;
+            mLastModified = lastModified;
+            mHash = hash;
+        }
+
+        @NonNull
+        static Key of(@NonNull File hprof) throws IOException {
+            try (FileChannel channel = FileChannel.open(hprof.toPath(), StandardOpenOption.READ)) {
+                long size = channel.size();
+                Hasher hasher = Hashing.murmur3_128().newHasher();
+                hasher.putLong(size);
+                hash(channel, 0, Math.min(size, SAMPLE_SIZE), hasher);
+                long tail = Math.max(SAMPLE_SIZE, size - SAMPLE_SIZE);
+                hash(channel, tail, size - tail, hasher);
+                return new Key(size, hprof.lastModified(), hasher.hash().asLong());
+            }
+        }
+
+        private static void hash(
+                @NonNull FileChannel channel, long position, long size, @NonNull Hasher hasher)
+                throws IOException {
+            if (size <= 0) {
+                return;
+            }
+            ByteBuffer bytes = ByteBuffer.allocate((int) size);
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, position + bytes.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+            bytes.flip();
+            hasher.putBytes(bytes);
+        }
+
+        @NonNull
+        private static Key read(@NonNull Reader in) throws IOException {
+            return new Key(in.readLong(), in.readLong(), in.readLong());
+        }
+
+        private void write(@NonNull Writer out) throws IOException {
+            out.writeLong(mSize);
+            out.writeLong(mLastModified);
+            out.writeLong(mHash);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return mSize == other.mSize
+                    && mLastModified == other.mLastModified
+                    && mHash == other.mHash;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(mHash);
+        }
+    }
+
+    /** Sequential writer of the cache file. Arrays start on an 8-byte boundary. */
+    static final class Writer {
+
+        @NonNull private final FileChannel mChannel;
+
+        @NonNull private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(1 << 16);
+
+        private long mPosition;
+
+        private Writer(@NonNull FileChannel channel) {
+            mChannel = channel;
+        }
+
+        void writeInt(int value) throws IOException {
+            ensureRemaining(4).putInt(value);
+            mPosition += 4;
+        }
+
+        void writeLong(long value) throws IOException {
+            ensureRemaining(8).putLong(value);
+            mPosition += 8;
+        }
+
+        void writeLongs(@NonNull long[] values) throws IOException {
+            align();
+            for (long value : values) {
+                writeLong(value);
+            }
+        }
+
+        void writeInts(@NonNull int[] values) throws IOException {
+            align();
+            for (int value : values) {
+                writeInt(value);
+            }
+        }
+
+        void writeBytes(@NonNull byte[] values) throws IOException {
+            align();
+            for (byte value : values) {
+                ensureRemaining(1).put(value);
+                mPosition++;
+            }
+        }
+
+        private void align() throws IOException {
+            while (mPosition % 8 != 0) {
+                ensureRemaining(1).put((byte) 0);
+                mPosition++;
+            }
+        }
+
+        @NonNull
+        private ByteBuffer ensureRemaining(int size) throws IOException {
+            if (mBuffer.remaining() < size) {
+                flush();
+            }
+            return mBuffer;
+        }
+
+        private void flush() throws IOException {
+            mBuffer.flip();
+            while (mBuffer.hasRemaining()) {
+                mChannel.write(mBuffer);
+            }
+            mBuffer.clear();
+        }
+    }
+
+    /** Reads back what a {@link Writer} wrote, mapping the file one column at a time. */
+    static final class Reader {
+
+        @NonNull private final FileChannel mChannel;
+
+        private long mPosition;
+
+        private Reader(@NonNull FileChannel channel) {
+            mChannel = channel;
+        }
+
+        int readInt() throws IOException {
+            return map(4).getInt();
+        }
+
+        long readLong() throws IOException {
+            return map(8).getLong();
+        }
+
+        @NonNull
+        long[] readLongs(int count) throws IOException {
+            align();
+            long[] values = new long[count];
+            for (int i = 0; i < count; ) {
+                int length = Math.min(count - i, MAX_MAPPING_SIZE / 8);
+                map(length * 8L).asLongBuffer().get(values, i, length);
+                i += length;
+            }
+            return values;
+        }
+
+        @NonNull
+        int[] readInts(int count) throws IOException {
+            align();
+            int[] values = new int[count];
+            for (int i = 0; i < count; ) {
+                int length = Math.min(count - i, MAX_MAPPING_SIZE / 4);
+                map(length * 4L).asIntBuffer().get(values, i, length);
+                i += length;
+            }
+            return values;
+        }
+
+        @NonNull
+        byte[] readBytes(int count) throws IOException {
+            align();
+            byte[] values = new byte[count];
+            for (int i = 0; i < count; ) {
+                int length = Math.min(count - i, MAX_MAPPING_SIZE);
+                map(length).get(values, i, length);
+                i += length;
+            }
+            return values;
+        }
+
+        private void align() {
+            mPosition = (mPosition + 7) & ~7L;
+        }
+
+        @NonNull
+        private ByteBuffer map(long size) throws IOException {
+            if (mPosition + size > mChannel.size()) {
+                throw new EOFException("Truncated HPROF index cache");
+            }
+            ByteBuffer buffer = mChannel.map(FileChannel.MapMode.READ_ONLY, mPosition, size);
+            mPosition += size;
+            return buffer;
+        }
+    }
+}
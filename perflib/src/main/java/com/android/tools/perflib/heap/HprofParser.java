@@ -17,6 +17,7 @@
 package com.android.tools.perflib.heap;
 
 import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
 import com.android.tools.perflib.captures.DataBuffer;
 import com.android.tools.proguard.ProguardMap;
 import com.google.common.primitives.UnsignedBytes;
@@ -129,6 +130,14 @@ class HprofParser {
     @NonNull
     private final ProguardMap mProguardMap;
 
+    // When set, instances and arrays are recorded in this index instead of being created.
+    @Nullable
+    private final HeapIndex mIndex;
+
+    // The heap objects currently being loaded belong to.
+    @NonNull
+    private Heap mCurrentHeap;
+
     /*
      * These are only needed while parsing so are not kept as part of the
      * heap data.
@@ -143,13 +152,36 @@ class HprofParser {
     TIntObjectHashMap<String> mClassNamesBySerial = new TIntObjectHashMap<String>();
 
     static void parseBuffer(@NonNull Snapshot snapshot, @NonNull DataBuffer buffer, @NonNull ProguardMap map) {
-        new HprofParser(snapshot, buffer, map).parse();
+        new HprofParser(snapshot, buffer, map, null).parse();
+    }
+
+    /**
+     * Parses the buffer in a single pass, only creating objects for classes, roots and stack
+     * traces. Instances and arrays are recorded in the returned index.
+     */
+    @NonNull
+    static HeapIndex indexBuffer(@NonNull Snapshot snapshot, @NonNull DataBuffer buffer, @NonNull ProguardMap map) {
+        HeapIndex index = new HeapIndex(snapshot);
+        new HprofParser(snapshot, buffer, map, index).parse();
+        return index;
     }
 
-    private HprofParser(@NonNull Snapshot snapshot, @NonNull DataBuffer buffer, @NonNull ProguardMap map) {
+    /**
+     * Same as {@link #indexBuffer(Snapshot, DataBuffer, ProguardMap)}, but with an index restored
+     * from an {@link HprofIndexCache}: only classes, roots and stack traces are loaded.
+     */
+    static void indexBuffer(@NonNull Snapshot snapshot, @NonNull DataBuffer buffer, @NonNull ProguardMap map,
+            @NonNull HeapIndex restoredIndex) {
+        new HprofParser(snapshot, buffer, map, restoredIndex).parse();
+    }
+
+    private HprofParser(@NonNull Snapshot snapshot, @NonNull DataBuffer buffer, @NonNull ProguardMap map,
+            @Nullable HeapIndex index) {
         mInput = buffer;
         mSnapshot = snapshot;
         mProguardMap = map;
+        mIndex = index;
+        mCurrentHeap = snapshot.setToDefaultHeap();
     }
 
     private void parse() {
@@ -187,12 +219,12 @@ class HprofParser {
 
                         case HEAP_DUMP:
                             loadHeapDump(length);
-                            mSnapshot.setToDefaultHeap();
+                            mCurrentHeap = mSnapshot.setToDefaultHeap();
                             break;
 
                         case HEAP_DUMP_SEGMENT:
                             loadHeapDump(length);
-                            mSnapshot.setToDefaultHeap();
+                            mCurrentHeap = mSnapshot.setToDefaultHeap();
                             break;
 
                         default:
@@ -205,6 +237,9 @@ class HprofParser {
             }
             mSnapshot.resolveClasses();
             mSnapshot.identifySoftReferences();
+            if (mIndex != null) {
+                mIndex.finish();
+            }
             // TODO: enable this after the dominators computation is also optimized.
             // mSnapshot.computeRetainedSizes();
         } catch (Exception e) {
@@ -383,7 +418,7 @@ class HprofParser {
                     long heapNameId = readId();
                     String heapName = mStrings.get(heapNameId);
 
-                    mSnapshot.setHeapTo(heapId, heapName);
+                    mCurrentHeap = mSnapshot.setHeapTo(heapId, heapName);
                     length -= 4 + mIdSize;
                     break;
 
@@ -571,14 +606,18 @@ class HprofParser {
     private int loadInstanceDump() throws IOException {
         long id = readId();
         int stackId = mInput.readInt();
-        StackTrace stack = mSnapshot.getStackTrace(stackId);
         long classId = readId();
         int remaining = mInput.readInt();
 
         long position = mInput.position();
-        ClassInstance instance = new ClassInstance(id, stack, position);
-        instance.setClassId(classId);
-        mSnapshot.addInstance(id, instance);
+        if (mIndex != null) {
+            mIndex.addInstance(id, stackId, classId, position, mCurrentHeap);
+        } else {
+            StackTrace stack = mSnapshot.getStackTrace(stackId);
+            ClassInstance instance = new ClassInstance(id, stack, position);
+            instance.setClassId(classId);
+            mSnapshot.addInstance(id, instance);
+        }
 
         skipFully(remaining);
         return mIdSize + 4 + mIdSize + 4 + remaining;
@@ -587,13 +626,18 @@ class HprofParser {
     private int loadObjectArrayDump() throws IOException {
         final long id = readId();
         int stackId = mInput.readInt();
-        StackTrace stack = mSnapshot.getStackTrace(stackId);
         int numElements = mInput.readInt();
         long classId = readId();
-        ArrayInstance array =
-                new ArrayInstance(id, stack, Type.OBJECT, numElements, mInput.position());
-        array.setClassId(classId);
-        mSnapshot.addInstance(id, array);
+        if (mIndex != null) {
+            mIndex.addArray(id, stackId, classId, Type.OBJECT, numElements, mInput.position(),
+                    mCurrentHeap);
+        } else {
+            StackTrace stack = mSnapshot.getStackTrace(stackId);
+            ArrayInstance array =
+                    new ArrayInstance(id, stack, Type.OBJECT, numElements, mInput.position());
+            array.setClassId(classId);
+            mSnapshot.addInstance(id, array);
+        }
 
         int remaining = numElements * mIdSize;
         skipFully(remaining);
@@ -603,12 +647,16 @@ class HprofParser {
     private int loadPrimitiveArrayDump() throws IOException {
         long id = readId();
         int stackId = mInput.readInt();
-        StackTrace stack = mSnapshot.getStackTrace(stackId);
         int numElements = mInput.readInt();
         Type type = Type.getType(readUnsignedByte());
         int size = mSnapshot.getTypeSize(type);
-        ArrayInstance array = new ArrayInstance(id, stack, type, numElements, mInput.position());
-        mSnapshot.addInstance(id, array);
+        if (mIndex != null) {
+            mIndex.addArray(id, stackId, 0, type, numElements, mInput.position(), mCurrentHeap);
+        } else {
+            StackTrace stack = mSnapshot.getStackTrace(stackId);
+            ArrayInstance array = new ArrayInstance(id, stack, type, numElements, mInput.position());
+            mSnapshot.addInstance(id, array);
+        }
 
         int remaining = numElements * size;
         skipFully(remaining);
@@ -18,6 +18,8 @@ package com.android.tools.perflib.heap
 import com.google.common.annotations.VisibleForTesting
 import com.android.tools.perflib.analyzer.Capture
 import com.android.tools.perflib.captures.DataBuffer
+import com.android.tools.perflib.captures.MemoryMappedFileBuffer
+import com.android.tools.perflib.heap.analysis.IntGraph
 import com.android.tools.perflib.heap.analysis.LinkEvalDominators
 import com.android.tools.perflib.heap.analysis.ShortestDistanceVisitor
 import com.android.tools.perflib.heap.ext.NativeRegistryPostProcessor
@@ -26,7 +28,10 @@ import com.android.tools.proguard.ProguardMap
 import gnu.trove.THashSet
 import gnu.trove.TIntObjectHashMap
 import gnu.trove.TLongObjectHashMap
-import kotlin.streams.asStream
+import java.io.File
+import java.io.IOException
+import java.util.Arrays
+import java.util.stream.IntStream
 
 /*
  * A snapshot of all of the heaps, and related meta-data, for the runtime at a given instant.
@@ -56,6 +61,11 @@ class Snapshot @VisibleForTesting constructor(val buffer: DataBuffer) : Capture(
         private set
 
     val heaps: Collection<Heap> get() = heapList
+
+    //  Only set for snapshots created by createIndexedSnapshot. Instances and arrays then live in
+    //  this index instead of the heaps, and are materialized on demand by findInstance.
+    var heapIndex: HeapIndex? = null
+        private set
     val gcRoots: Collection<RootObj> get() = roots
 
     init {
@@ -125,6 +135,7 @@ class Snapshot @VisibleForTesting constructor(val buffer: DataBuffer) : Capture(
 
     fun findInstance(id: Long): Instance? =
         heapList.firstNotNullOfOrNull { it.getInstance(id) } ?:
+        heapIndex?.getInstance(id) ?:
         //  Couldn't find an instance of a class, look for a class object
         findClass(id)
 
@@ -238,16 +249,99 @@ class Snapshot @VisibleForTesting constructor(val buffer: DataBuffer) : Capture(
     }
 
     private fun doComputeRetainedSizes() {
-        val (instances, immDom) = LinkEvalDominators.computeDominators(
-            gcRoots.mapNotNullTo(mutableSetOf(), RootObj::referredInstance),
-            { it.hardForwardReferences.asStream() },
-        )
-
-        // We only update the retained sizes of objects in the dominator tree (i.e. reachable).
-        // It's important to traverse in reverse topological order
-        for (i in instances.indices.reversed()) {
-            immDom[i]?.addRetainedSizes(instances[i]!!)
+        // Number all instances and classes by id so the reference graph can be built with ints.
+        val nodes = ArrayList<Instance>()
+        for (heap in heaps) {
+            nodes.addAll(heap.classes)
+            heap.forEachInstance {
+                nodes.add(it)
+                true
+            }
+        }
+        val sortedNodes = nodes.toTypedArray()
+        Arrays.parallelSort(sortedNodes) { a, b -> java.lang.Long.compare(a.id, b.id) }
+        val ids = LongArray(sortedNodes.size) { sortedNodes[it].id }
+        fun indexOf(instance: Instance): Int {
+            var index = Arrays.binarySearch(ids, instance.id)
+            if (index < 0) {
+                return -1
+            }
+            // Ids are not guaranteed to be unique across heaps, find the instance itself.
+            while (index > 0 && ids[index - 1] == instance.id) index--
+            while (index < ids.size && ids[index] == instance.id) {
+                if (sortedNodes[index] === instance) {
+                    return index
+                }
+                index++
+            }
+            return -1
+        }
+
+        val graph = IntGraph.build(sortedNodes.size) { node, sink ->
+            sortedNodes[node].hardForwardReferences.forEach { sink(indexOf(it)) }
+        }
+        val roots = gcRoots.asSequence()
+            .mapNotNull { it.referredInstance }
+            .map(::indexOf)
+            .filter { it >= 0 }
+            .distinct()
+            .toList()
+            .toIntArray()
+        val dominators = LinkEvalDominators.computeDominators(graph, roots)
+        val order = dominators.order
+        val immDom = dominators.immediateDominator
+        val count = order.size
+
+        // We only update the retained sizes of objects in the dominator tree (i.e. reachable),
+        // bottom-up. Nodes at the same depth dominate disjoint sets of nodes, so each level can be
+        // processed in parallel once the level below it is done.
+        val depths = IntArray(count)
+        var maxDepth = 0
+        for (i in 1 until count) {
+            depths[i] = depths[immDom[i]] + 1 // A dominator has a smaller DFS index.
+            maxDepth = maxOf(maxDepth, depths[i])
+        }
+        val childOffsets = groupOffsets(count, count) { immDom[it] }
+        val children = IntArray(count)
+        val levelOffsets = groupOffsets(count, maxDepth + 1) { depths[it] }
+        val levels = IntArray(count)
+        run {
+            val childCursors = childOffsets.copyOf(count)
+            val levelCursors = levelOffsets.copyOf(maxDepth + 1)
+            for (i in 1 until count) {
+                children[childCursors[immDom[i]]++] = i
+                levels[levelCursors[depths[i]]++] = i
+            }
+        }
+        // Nodes at depth 1 are dominated by the auxiliary root, which has no retained size.
+        for (depth in maxDepth - 1 downTo 1) {
+            val accumulate = { level: Int ->
+                val node = levels[level]
+                val instance = sortedNodes[order[node]]
+                for (child in childOffsets[node] until childOffsets[node + 1]) {
+                    instance.addRetainedSizes(sortedNodes[order[children[child]]])
+                }
+            }
+            val start = levelOffsets[depth]
+            val end = levelOffsets[depth + 1]
+            if (end - start >= PARALLEL_LEVEL_SIZE) {
+                IntStream.range(start, end).parallel().forEach(accumulate)
+            } else {
+                for (level in start until end) accumulate(level)
+            }
+        }
+    }
+
+    // Offsets of the groups of 1 until count, when grouped by groupOf, in CSR form.
+    private inline fun groupOffsets(count: Int, groups: Int, groupOf: (Int) -> Int): IntArray {
+        val offsets = IntArray(groups + 1)
+        for (i in 1 until count) {
+            offsets[groupOf(i) + 1]++
+        }
+        for (group in 0 until groups) {
+            offsets[group + 1] += offsets[group]
         }
+        return offsets
     }
 
     private inline fun forEachReachableInstance(crossinline visit: (Instance) -> Unit) =
@@ -280,6 +374,9 @@ class Snapshot @VisibleForTesting constructor(val buffer: DataBuffer) : Capture(
         @JvmField val SENTINEL_ROOT: Instance = RootObj(RootType.UNKNOWN)
         private const val DEFAULT_HEAP_ID = 0
 
+        // Below this many nodes, a level of the dominator tree is not worth splitting.
+        private const val PARALLEL_LEVEL_SIZE = 4096
+
         @JvmOverloads @JvmStatic
         fun createSnapshot(
             buffer: DataBuffer,
@@ -295,5 +392,72 @@ class Snapshot @VisibleForTesting constructor(val buffer: DataBuffer) : Capture(
                 buffer.dispose()
                 throw e
             }
+
+        /**
+         * Creates a snapshot in index-only mode: classes, roots and stack traces are loaded as
+         * usual, but instances and arrays are only recorded in [heapIndex] and materialized on
+         * demand. This needs a fraction of the memory of [createSnapshot] for large dumps.
+         *
+         * Heaps and classes do not track their instances in this mode, and post processors are
+         * not run since they expect them to.
+         */
+        @JvmOverloads @JvmStatic
+        fun createIndexedSnapshot(buffer: DataBuffer, map: ProguardMap = ProguardMap()): Snapshot =
+            try {
+                Snapshot(buffer).also { snapshot ->
+                    snapshot.heapIndex = HprofParser.indexBuffer(snapshot, buffer, map)
+                }
+            } catch (e: RuntimeException) {
+                buffer.dispose()
+                throw e
+            }
+
+        /**
+         * Creates an indexed snapshot of [hprof], see [createIndexedSnapshot], with the retained
+         * sizes of its [heapIndex] computed.
+         *
+         * The index, reference graph, dominator tree and retained sizes are saved to [cacheFile].
+         * Opening the same file again reads them back from there and only parses classes, roots
+         * and stack traces. The cache is ignored if [hprof] changed since it was written, and
+         * replaced if it can't be read.
+         */
+        @JvmOverloads @JvmStatic @Throws(IOException::class)
+        fun openIndexedSnapshot(
+            hprof: File,
+            map: ProguardMap = ProguardMap(),
+            cacheFile: File = HprofIndexCache.getDefaultCacheFile(hprof)
+        ): Snapshot {
+            val key = HprofIndexCache.Key.of(hprof)
+            val buffer = MemoryMappedFileBuffer(hprof)
+            return try {
+                Snapshot(buffer).also { snapshot ->
+                    val restored = try {
+                        HprofIndexCache.read(cacheFile, key, snapshot)
+                    } catch (e: IOException) {
+                        // Truncated or corrupt, remove it so that it is written again.
+                        cacheFile.delete()
+                        null
+                    }
+                    if (restored != null) {
+                        HprofParser.indexBuffer(snapshot, buffer, map, restored)
+                        snapshot.heapIndex = restored
+                    } else {
+                        val index = HprofParser.indexBuffer(snapshot, buffer, map)
+                        // Set first, static fields are resolved through the snapshot.
+                        snapshot.heapIndex = index
+                        index.computeRetainedSizes()
+                        try {
+                            HprofIndexCache.write(cacheFile, key, index)
+                        } catch (e: IOException) {
+                            // The cache is only an optimization, e.g. the directory may be
+                            // read-only.
+                        }
+                    }
+                }
+            } catch (e: RuntimeException) {
+                buffer.dispose()
+                throw e
+            }
+        }
     }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.perflib.heap.analysis
+
+import java.util.stream.IntStream
+
+/**
+ * A directed graph over the nodes `0 until nodeCount`, in compressed sparse row form: the
+ * successors of node `i` are `targets[offsets[i] until offsets[i + 1]]`.
+ */
+class IntGraph(val offsets: IntArray, val targets: IntArray) {
+    init {
+        require(offsets.isNotEmpty() && offsets.last() == targets.size)
+    }
+
+    val nodeCount: Int get() = offsets.size - 1
+    val edgeCount: Int get() = targets.size
+
+    inline fun forEachSuccessor(node: Int, action: (Int) -> Unit) {
+        for (edge in offsets[node] until offsets[node + 1]) {
+            action(targets[edge])
+        }
+    }
+
+    companion object {
+        /**
+         * Builds a graph by querying the successors of all nodes in parallel. [successors] is
+         * called twice per node (once to count, once to fill) and must report the same successors,
+         * in the same order, each time. Negative successors are dropped.
+         */
+        @JvmStatic
+        fun build(nodeCount: Int, successors: (node: Int, sink: (Int) -> Unit) -> Unit): IntGraph {
+            val offsets = IntArray(nodeCount + 1)
+            IntStream.range(0, nodeCount).parallel().forEach { node ->
+                var count = 0
+                successors(node) { if (it >= 0) count++ }
+                offsets[node + 1] = count
+            }
+            for (node in 0 until nodeCount) {
+                offsets[node + 1] += offsets[node]
+            }
+            val targets = IntArray(offsets[nodeCount])
+            IntStream.range(0, nodeCount).parallel().forEach { node ->
+                var edge = offsets[node]
+                successors(node) { if (it >= 0) targets[edge++] = it }
+            }
+            return IntGraph(offsets, targets)
+        }
+    }
+}
@@ -116,6 +116,161 @@ object LinkEvalDominators {
         return DFSResult(instances.map { it?.content }, parentIndices, predIndices)
     }
     data class Result<T>(val topoOrder: List<T?>, val immediateDominator: List<T?>)
+
+    /**
+     * Same as [computeDominators] over a primitive graph, without any per-node object.
+     *
+     * @return the nodes in DFS order and the DFS index of their immediate dominator. Index 0 is
+     *         the auxiliary root, which dominates the roots and nodes reachable from several of
+     *         them. Since a dominator is a DFS ancestor, it always has a smaller index.
+     */
+    fun computeDominators(graph: IntGraph, roots: IntArray): IntResult {
+        // Step 1 of paper.
+        val dfs = computeIndicesAndParents(graph, roots)
+        val count = dfs.order.size
+        val parents = dfs.parents
+        val predOffsets = dfs.predOffsets
+        val preds = dfs.preds
+
+        val semis = IntArray(count) { it }
+        // Buckets as singly linked lists: each node only ever gets into one bucket.
+        val bucketHeads = IntArray(count) { INVALID_ANCESTOR }
+        val bucketNext = IntArray(count)
+        val doms = IntArray(count)
+        val ancestors = IntArray(count) { INVALID_ANCESTOR }
+        val labels = IntArray(count) { it }
+        val compressStack = IntArray(count)
+        for (currentNode in count - 1 downTo 1) {
+            // Step 2 of paper.
+            for (i in predOffsets[currentNode] until predOffsets[currentNode + 1]) {
+                val evaledPredecessor = eval(ancestors, labels, semis, preds[i], compressStack)
+                if (semis[evaledPredecessor] < semis[currentNode]) {
+                    semis[currentNode] = semis[evaledPredecessor]
+                }
+            }
+            bucketNext[currentNode] = bucketHeads[semis[currentNode]]
+            bucketHeads[semis[currentNode]] = currentNode
+            val parent = parents[currentNode]
+            ancestors[currentNode] = parent
+
+            // Step 3 of paper.
+            var node = bucketHeads[parent]
+            while (node != INVALID_ANCESTOR) {
+                val nodeEvaled = eval(ancestors, labels, semis, node, compressStack)
+                doms[node] = if (semis[nodeEvaled] < semis[node]) nodeEvaled else parent
+                node = bucketNext[node]
+            }
+            bucketHeads[parent] = INVALID_ANCESTOR
+        }
+
+        // Step 4 of paper.
+        for (currentNode in 1 until count) {
+            if (doms[currentNode] != semis[currentNode]) {
+                doms[currentNode] = doms[doms[currentNode]]
+            }
+        }
+        return IntResult(dfs.order, doms)
+    }
+
+    /** Traverse the graph depth-first from the auxiliary root, see [computeIndicesAndParents]. */
+    private fun computeIndicesAndParents(graph: IntGraph, roots: IntArray): IntDFSResult {
+        val nodeCount = graph.nodeCount
+        val indices = IntArray(nodeCount) { -1 }
+        // Like the generic version, the DFS parent of a node is the last one to push it.
+        val pushedBy = IntArray(nodeCount)
+        val order = TIntArrayList(nodeCount + 1)
+        val parents = TIntArrayList(nodeCount + 1)
+        val stack = TIntArrayList()
+        order.add(-1) // auxiliary root at 0
+        parents.add(0)
+        for (root in roots) {
+            pushedBy[root] = 0
+            stack.add(root)
+        }
+        while (!stack.isEmpty()) {
+            val node = stack.remove(stack.size() - 1)
+            if (indices[node] < 0) {
+                val index = order.size()
+                indices[node] = index
+                order.add(node)
+                parents.add(pushedBy[node])
+                graph.forEachSuccessor(node) { succ ->
+                    if (indices[succ] < 0) {
+                        pushedBy[succ] = index
+                        stack.add(succ)
+                    }
+                }
+            }
+        }
+
+        // Predecessors, by DFS index, of the reachable nodes.
+        val count = order.size()
+        val predOffsets = IntArray(count + 1)
+        for (root in roots) {
+            predOffsets[indices[root] + 1]++
+        }
+        for (index in 1 until count) {
+            graph.forEachSuccessor(order[index]) { predOffsets[indices[it] + 1]++ }
+        }
+        for (index in 0 until count) {
+            predOffsets[index + 1] += predOffsets[index]
+        }
+        val preds = IntArray(predOffsets[count])
+        val cursors = predOffsets.copyOf(count)
+        for (root in roots) {
+            preds[cursors[indices[root]]++] = 0
+        }
+        for (index in 1 until count) {
+            graph.forEachSuccessor(order[index]) { preds[cursors[indices[it]]++] = index }
+        }
+        return IntDFSResult(order.toNativeArray(), parents.toNativeArray(), predOffsets, preds)
+    }
+
+    /**
+     * @property order the node at each DFS index, -1 for the auxiliary root at 0.
+     * @property immediateDominator the DFS index of the immediate dominator at each DFS index.
+     */
+    class IntResult(val order: IntArray, val immediateDominator: IntArray)
+}
+
+private class IntDFSResult(
+    val order: IntArray,
+    val parents: IntArray,
+    val predOffsets: IntArray,
+    val preds: IntArray
+)
+
+private fun eval(ancestors: IntArray, labels: IntArray, semis: IntArray, node: Int, stack: IntArray) =
+    when (ancestors[node]) {
+        INVALID_ANCESTOR -> node
+        else -> compress(ancestors, labels, semis, node, stack)
+    }
+
+/**
+ *  Same as [compress], using a preallocated stack.
+ */
+private fun compress(
+    ancestors: IntArray,
+    labels: IntArray,
+    semis: IntArray,
+    node: Int,
+    stack: IntArray
+): Int {
+    var size = 0
+    var n = node
+    while (ancestors[ancestors[n]] != INVALID_ANCESTOR) {
+        stack[size++] = n
+        n = ancestors[n]
+    }
+    for (i in size - 1 downTo 0) {
+        val toCompress = stack[i]
+        val ancestor = ancestors[toCompress]
+        if (semis[labels[ancestor]] < semis[labels[toCompress]]) {
+            labels[toCompress] = labels[ancestor]
+        }
+        ancestors[toCompress] = ancestors[ancestor]
+    }
+    return labels[node]
 }
 
 private data class DFSResult<T>(
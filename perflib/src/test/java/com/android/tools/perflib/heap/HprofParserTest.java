@@ -42,16 +42,22 @@ import com.google.common.io.ByteStreams;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.io.StringReader;
+import java.nio.file.Files;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import junit.framework.TestCase;
 import kotlin.sequences.SequencesKt;
 
 public class HprofParserTest extends TestCase {
+    // In the index cache, after the magic, version, key, instance count and class count.
+    private static final int EDGE_COUNT_OFFSET = 4 + 4 + 3 * 8 + 4 + 4;
+
     private static final String TEST_MAP =
             "class.that.is.Empty -> a:\n"
                     + "class.that.is.Empty$subclass -> b:\n"
@@ -150,6 +156,133 @@ public class HprofParserTest extends TestCase {
         assertEquals(1396, stringArray.getInstancesList().size());
     }
 
+    public void testIndexedSnapshot() throws IOException {
+        File file = TestResources.getFile(getClass(), "/dialer.android-hprof");
+        Snapshot indexed = Snapshot.createIndexedSnapshot(new MemoryMappedFileBuffer(file));
+        try {
+            HeapIndex index = indexed.getHeapIndex();
+            assertNotNull(index);
+
+            int instanceCount = 0;
+            for (Heap heap : mSnapshot.getHeaps()) {
+                instanceCount += heap.getInstancesCount();
+                // Instances are only in the index.
+                assertEquals(0, indexed.getHeap(heap.getId()).getInstancesCount());
+            }
+            assertEquals(instanceCount, index.getCount());
+            for (int i = 1; i < index.getCount(); i++) {
+                assertTrue(index.getId(i - 1) < index.getId(i));
+            }
+
+            ArrayInstance byteArray = (ArrayInstance) indexed.findInstance(0xB0D60401);
+            assertEquals(Type.BYTE, byteArray.getArrayType());
+            assertEquals("byte[]", byteArray.getClassObj().getClassName());
+            assertEquals(43224, byteArray.getSize());
+            assertEquals(43224, index.getShallowSize(index.indexOf(0xB0D60401)));
+
+            ClassObj clazz = indexed.findClass("java.lang.Thread$State");
+            ClassInstance instance = (ClassInstance) clazz.getStaticField(Type.OBJECT, "NEW");
+            assertEquals(clazz.getInstanceSize(), instance.getSize());
+            assertSame(clazz, instance.getClassObj());
+            ClassInstance name = (ClassInstance) instance.getFields("name").get(0).getValue();
+            assertEquals("NEW", name.getAsString());
+
+            Instance expected = mSnapshot.findInstance(name.getId());
+            assertEquals(expected.getHeap().getName(), name.getHeap().getName());
+            assertEquals(expected.getSize(), name.getSize());
+        } finally {
+            indexed.dispose();
+        }
+    }
+
+    public void testIndexedSnapshotCache() throws IOException {
+        File dir = Files.createTempDirectory("hprof").toFile();
+        File file = new File(dir, "dialer.android-hprof");
+        Files.copy(
+                TestResources.getFile(getClass(), "/dialer.android-hprof").toPath(),
+                file.toPath());
+        File cacheFile = new File(dir, "dialer.android-hprof.index");
+
+        Snapshot full =
+                Snapshot.createSnapshot(
+                        new MemoryMappedFileBuffer(file),
+                        new ProguardMap(),
+                        Collections.emptyList());
+        full.computeRetainedSizes();
+        try {
+            Snapshot cold = Snapshot.openIndexedSnapshot(file);
+            assertFalse(cold.getHeapIndex().isRestored());
+            assertTrue(cacheFile.isFile());
+            assertSameRetainedSizes(full, cold.getHeapIndex());
+            cold.dispose();
+
+            Snapshot warm = Snapshot.openIndexedSnapshot(file);
+            HeapIndex index = warm.getHeapIndex();
+            assertTrue(index.isRestored());
+            assertSameRetainedSizes(full, index);
+            assertEquals(cold.getHeapIndex().getCount(), index.getCount());
+            ClassObj clazz = warm.findClass("java.lang.Thread$State");
+            ClassInstance instance = (ClassInstance) clazz.getStaticField(Type.OBJECT, "NEW");
+            ClassInstance name = (ClassInstance) instance.getFields("name").get(0).getValue();
+            assertEquals("NEW", name.getAsString());
+            int classNode = index.nodeOf(clazz.getId());
+            assertEquals(clazz.getId(), index.getNodeId(classNode));
+            assertEquals(HeapIndex.DOMINATED_BY_ROOTS, index.getImmediateDominator(classNode));
+            for (int node = 0; node < index.getNodeCount(); node++) {
+                int dominator = index.getImmediateDominator(node);
+                if (dominator >= 0) {
+                    assertTrue(index.getRetainedSize(dominator) >= index.getRetainedSize(node));
+                }
+            }
+            warm.dispose();
+
+            // A corrupt cache is replaced. One edge less leaves the reference graph inconsistent.
+            try (RandomAccessFile raf = new RandomAccessFile(cacheFile, "rw")) {
+                raf.seek(EDGE_COUNT_OFFSET);
+                int edgeCount = raf.readInt();
+                raf.seek(EDGE_COUNT_OFFSET);
+                raf.writeInt(edgeCount - 1);
+            }
+            Snapshot corrupt = Snapshot.openIndexedSnapshot(file);
+            assertFalse(corrupt.getHeapIndex().isRestored());
+            assertSameRetainedSizes(full, corrupt.getHeapIndex());
+            corrupt.dispose();
+            Snapshot rewritten = Snapshot.openIndexedSnapshot(file);
+            assertTrue(rewritten.getHeapIndex().isRestored());
+            rewritten.dispose();
+
+            // The cache is not used once the file changes.
+            assertTrue(file.setLastModified(file.lastModified() + 1000));
+            Snapshot changed = Snapshot.openIndexedSnapshot(file);
+            assertFalse(changed.getHeapIndex().isRestored());
+            changed.dispose();
+        } finally {
+            full.dispose();
+            cacheFile.delete();
+            file.delete();
+            dir.delete();
+        }
+    }
+
+    private static void assertSameRetainedSizes(Snapshot expected, HeapIndex index) {
+        for (Heap heap : expected.getHeaps()) {
+            for (ClassObj classObj : heap.getClasses()) {
+                assertEquals(
+                        classObj.getTotalRetainedSize(),
+                        index.getRetainedSize(index.nodeOf(classObj.getId())));
+            }
+            heap.forEachInstance(
+                    instance -> {
+                        int node = index.nodeOf(instance.getId());
+                        assertEquals(instance.getTotalRetainedSize(), index.getRetainedSize(node));
+                        assertEquals(
+                                instance.isReachable(),
+                                index.getImmediateDominator(node) != HeapIndex.UNREACHABLE);
+                        return true;
+                    });
+        }
+    }
+
     /**
      * Tests the creation of an Enum class which covers static values, fields of type references,
      * strings and primitive values.
@@ -17,6 +17,7 @@ package com.android.tools.perflib.heap.analysis
 
 import junit.framework.Assert.assertEquals
 import junit.framework.TestCase
+import java.util.Random
 import java.util.stream.Stream
 
 class LinkEvalDominatorsTest: TestCase() {
@@ -75,6 +76,47 @@ class LinkEvalDominatorsTest: TestCase() {
         assertEquals(4, getImmDom(6))
     }
 
+    fun testIntGraphMatchesGeneric() {
+        val random = Random(42)
+        repeat(20) {
+            val nodeCount = 1 + random.nextInt(300)
+            val successors = Array(nodeCount) {
+                IntArray(random.nextInt(4)) { random.nextInt(nodeCount) }.distinct().toIntArray()
+            }
+            val roots = IntArray(1 + random.nextInt(3)) { random.nextInt(nodeCount) }.distinct()
+
+            // The generic version tracks nodes by identity, so don't use boxed ints as nodes.
+            val nodes = Array(nodeCount) { "n$it" }
+            val generic = LinkEvalDominators.computeDominators(roots.map { nodes[it] }.toSet()) {
+                successors[it.substring(1).toInt()].map { s -> nodes[s] }.stream()
+            }
+            val graph = IntGraph.build(nodeCount) { node, sink -> successors[node].forEach(sink) }
+            val primitive = LinkEvalDominators.computeDominators(graph, roots.toIntArray())
+
+            assertEquals(generic.countReachable(), primitive.order.size - 1)
+            for (index in 1 until primitive.order.size) {
+                val node = primitive.order[index]
+                val dominator = primitive.immediateDominator[index]
+                val expected = if (dominator == 0) null else nodes[primitive.order[dominator]]
+                assertEquals(expected, generic.getImmDom(nodes[node]))
+            }
+        }
+    }
+
+    fun testIntGraph() {
+        val graph = IntGraph.build(4) { node, sink ->
+            when (node) {
+                0 -> { sink(1); sink(-1); sink(2) }
+                2 -> sink(3)
+            }
+        }
+        assertEquals(4, graph.nodeCount)
+        assertEquals(3, graph.edgeCount)
+        assertEquals(listOf(1, 2), graph.successorsOf(0))
+        assertEquals(listOf(3), graph.successorsOf(2))
+        assertEquals(emptyList<Int>(), graph.successorsOf(3))
+    }
+
     private inline fun<reified T: Any> compute(g: Graph.Builder<T>) = with(g.build()) {
         LinkEvalDominators.computeDominators(roots, next)
     }
@@ -95,6 +137,9 @@ class Graph<T>(val roots: Set<T>, val next: (T) -> Stream<T>) {
     }
 }
 
+private fun IntGraph.successorsOf(node: Int) =
+    mutableListOf<Int>().also { list -> forEachSuccessor(node) { list.add(it) } }
+
 private fun<T> LinkEvalDominators.Result<T>.countReachable() = topoOrder.count { it != null }
 private fun<T> LinkEvalDominators.Result<T>.indexOf(node: T) = topoOrder.indexOf(node)
 private fun<T> LinkEvalDominators.Result<T>.getImmDom(node: T) = immediateDominator[indexOf(node)]
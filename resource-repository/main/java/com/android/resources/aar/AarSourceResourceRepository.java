@@ -147,7 +147,23 @@ public class AarSourceResourceRepository extends AbstractAarResourceRepository {
   @NotNull
   public static AarSourceResourceRepository create(@NotNull Path resourceDirectoryOrFile, @NotNull String libraryName,
                                                    @Nullable CachingData cachingData) {
-    return create(resourceDirectoryOrFile, null, ResourceNamespace.RES_AUTO, libraryName, cachingData);
+    return create(resourceDirectoryOrFile, null, ResourceNamespace.RES_AUTO, libraryName, cachingData, null);
+  }
+
+  /**
+   * Creates and loads a resource repository, parsing resource files in parallel. Consider calling
+   * AarResourceRepositoryCache.getSourceRepository instead of this method.
+   *
+   * @param resourceDirectoryOrFile the res directory or an AAR file containing resources
+   * @param libraryName the name of the library
+   * @param cachingData data used to validate and create a persistent cache file
+   * @param parsingExecutor the executor used to parse resource files, or null to parse them on the calling thread
+   * @return the created resource repository
+   */
+  @NotNull
+  public static AarSourceResourceRepository create(@NotNull Path resourceDirectoryOrFile, @NotNull String libraryName,
+                                                   @Nullable CachingData cachingData, @Nullable Executor parsingExecutor) {
+    return create(resourceDirectoryOrFile, null, ResourceNamespace.RES_AUTO, libraryName, cachingData, parsingExecutor);
   }
 
   /**
@@ -169,7 +185,7 @@ public class AarSourceResourceRepository extends AbstractAarResourceRepository {
                                                    @Nullable CachingData cachingData) {
     Path resDir = resourceFolderRoot.toPath();
     Preconditions.checkArgument(resDir != null);
-    return create(resDir, resourceFolderResources, ResourceNamespace.RES_AUTO, libraryName, cachingData);
+    return create(resDir, resourceFolderResources, ResourceNamespace.RES_AUTO, libraryName, cachingData, null);
   }
 
   @NotNull
@@ -177,8 +193,10 @@ public class AarSourceResourceRepository extends AbstractAarResourceRepository {
                                                     @Nullable Collection<PathString> resourceFilesAndFolders,
                                                     @NotNull ResourceNamespace namespace,
                                                     @NotNull String libraryName,
-                                                    @Nullable CachingData cachingData) {
+                                                    @Nullable CachingData cachingData,
+                                                    @Nullable Executor parsingExecutor) {
     Loader loader = new Loader(resourceDirectoryOrFile, resourceFilesAndFolders, namespace);
+    loader.setParsingExecutor(parsingExecutor);
     AarSourceResourceRepository repository = new AarSourceResourceRepository(loader, libraryName);
 
     // If loading from an AAR file, try to load from a cache file first.
@@ -210,7 +228,7 @@ public class AarSourceResourceRepository extends AbstractAarResourceRepository {
   @NotNull
   public static AarSourceResourceRepository createForTest(
       @NotNull Path resourceDirectoryOrFile, @NotNull ResourceNamespace namespace, @NotNull String libraryName) {
-    return create(resourceDirectoryOrFile, null, namespace, libraryName, null);
+    return create(resourceDirectoryOrFile, null, namespace, libraryName, null, null);
   }
 
   @Override
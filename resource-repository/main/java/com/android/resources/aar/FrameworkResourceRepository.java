@@ -109,10 +109,28 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
   @NotNull
   public static FrameworkResourceRepository create(@NotNull Path resourceDirectoryOrFile, @Nullable Set<String> languagesToLoad,
                                                    @Nullable CachingData cachingData, boolean useCompiled9Patches) {
+    return create(resourceDirectoryOrFile, languagesToLoad, cachingData, useCompiled9Patches, null);
+  }
+
+  /**
+   * Creates an Android framework resource repository, parsing resource files in parallel when loading from a res directory.
+   *
+   * @param resourceDirectoryOrFile the res directory or a jar file containing resources of the Android framework
+   * @param languagesToLoad the set of ISO 639 language codes, or null to load all available languages
+   * @param cachingData data used to validate and create a persistent cache file
+   * @param useCompiled9Patches whether to provide the compiled or non-compiled version of the framework 9-patches
+   * @param parsingExecutor the executor used to parse resource files, or null to parse them on the calling thread
+   * @return the created resource repository
+   */
+  @NotNull
+  public static FrameworkResourceRepository create(@NotNull Path resourceDirectoryOrFile, @Nullable Set<String> languagesToLoad,
+                                                   @Nullable CachingData cachingData, boolean useCompiled9Patches,
+                                                   @Nullable Executor parsingExecutor) {
     long start = LOG.isDebugEnabled() ? System.currentTimeMillis() : 0;
     Set<String> languageGroups = languagesToLoad == null ? null : getLanguageGroups(languagesToLoad);
 
     Loader loader = new Loader(resourceDirectoryOrFile, languageGroups);
+    loader.setParsingExecutor(parsingExecutor);
     FrameworkResourceRepository repository = new FrameworkResourceRepository(loader, useCompiled9Patches);
 
     repository.load(null, cachingData, loader, languageGroups, loader.myLoadedLanguageGroups);
@@ -78,10 +78,12 @@ import com.android.resources.ResourceVisibility;
 import com.android.utils.SdkUtils;
 import com.android.utils.XmlUtils;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Table;
@@ -114,6 +116,9 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import org.jetbrains.annotations.NotNull;
@@ -124,6 +129,8 @@ import org.xmlpull.v1.XmlPullParserException;
 
 public abstract class RepositoryLoader<T extends LoadableResourceRepository> implements FileFilter {
   private static final Logger LOG = Logger.getInstance(RepositoryLoader.class);
+  /** Minimal number of files parsed by a single task when loading in parallel. */
+  private static final int FILES_PER_PARSING_TASK = 20;
   /** The set of attribute formats that is used when no formats are explicitly specified and the attribute is not a flag or enum. */
   private final Set<AttributeFormat> DEFAULT_ATTR_FORMATS = Sets.immutableEnumSet(
       AttributeFormat.BOOLEAN,
@@ -145,12 +152,7 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
   /** Cache of FolderConfiguration instances, keyed by qualifier strings (see {@link FolderConfiguration#getQualifierString()}). */
   @NotNull protected final Map<String, FolderConfiguration> myFolderConfigCache = new HashMap<>();
   @NotNull private final Map<FolderConfiguration, RepositoryConfiguration> myConfigCache = new HashMap<>();
-  @NotNull private final ValueResourceXmlParser myParser = new ValueResourceXmlParser();
-  @NotNull private final XmlTextExtractor myTextExtractor = new XmlTextExtractor();
-  @NotNull private final ResourceUrlParser myUrlParser = new ResourceUrlParser();
-  // Used to keep track of resources defined in the current value resource file.
-  @NotNull private final Table<ResourceType, String, BasicValueResourceItemBase> myValueFileResources =
-      Tables.newCustomTable(new EnumMap<>(ResourceType.class), LinkedHashMap::new);
+  @NotNull private final ResourceFileParser myMainParser = new ResourceFileParser(null);
   @NotNull protected final Path myResourceDirectoryOrFile;
   @NotNull private final PathString myResourceDirectoryOrFilePath;
   private final boolean myLoadingFromZipArchive;
@@ -158,6 +160,7 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
   @NotNull private final ResourceNamespace myNamespace;
   @Nullable private final Collection<PathString> myResourceFilesAndFolders;
   @Nullable protected ZipFile myZipFile;
+  @Nullable private Executor myParsingExecutor;
 
   public RepositoryLoader(@NotNull Path resourceDirectoryOrFile, @Nullable Collection<PathString> resourceFilesAndFolders,
                           @NotNull ResourceNamespace namespace) {
@@ -182,6 +185,14 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
     return myNamespace;
   }
 
+  /**
+   * Sets the executor used to parse resource files in parallel, or null to parse them on the thread loading the repository.
+   * The loaded resources are the same in both cases.
+   */
+  public final void setParsingExecutor(@Nullable Executor executor) {
+    myParsingExecutor = executor;
+  }
+
   public void loadRepositoryContents(@NotNull T repository) {
     if (myLoadingFromZipArchive) {
       loadFromZip(repository);
@@ -201,12 +212,13 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
       loadPublicResourceNames();
       boolean shouldParseResourceIds = !loadIdsFromRTxt();
 
+      List<PathString> resourceFiles = new ArrayList<>();
       zipFile.stream().forEach(zipEntry -> {
         if (!zipEntry.isDirectory()) {
-          PathString path = new PathString(zipEntry.getName());
-          loadResourceFile(path, repository, shouldParseResourceIds);
+          resourceFiles.add(new PathString(zipEntry.getName()));
         }
       });
+      loadResourceFiles(resourceFiles, repository, shouldParseResourceIds);
     }
     catch (ProcessCanceledException e) {
       throw e;
@@ -234,9 +246,7 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
                                          ImmutableList.of(myResourceDirectoryOrFile) :
                                          ContainerUtil.map(myResourceFilesAndFolders, PathString::toPath);
       List<PathString> resourceFiles = findResourceFiles(sourceFilesAndFolders);
-      for (PathString file : resourceFiles) {
-        loadResourceFile(file, repository, shouldParseResourceIds);
-      }
+      loadResourceFiles(resourceFiles, repository, shouldParseResourceIds);
     }
     catch (ProcessCanceledException e) {
       throw e;
@@ -254,7 +264,67 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
       FolderInfo folderInfo = FolderInfo.create(folderName, myFolderConfigCache);
       if (folderInfo != null) {
         RepositoryConfiguration configuration = getConfiguration(repository, folderInfo.configuration);
-        loadResourceFile(file, folderInfo, configuration, shouldParseResourceIds);
+        myMainParser.loadResourceFile(file, folderInfo, configuration, shouldParseResourceIds);
+      }
+    }
+  }
+
+  /**
+   * Loads the given resource files, in parallel if a parsing executor was set by {@link #setParsingExecutor}.
+   */
+  protected final void loadResourceFiles(@NotNull List<PathString> files, @NotNull T repository, boolean shouldParseResourceIds) {
+    Executor executor = myParsingExecutor;
+    if (executor == null || files.size() <= FILES_PER_PARSING_TASK) {
+      for (PathString file : files) {
+        loadResourceFile(file, repository, shouldParseResourceIds);
+      }
+      return;
+    }
+
+    // Folder and repository configurations are cached in maps that are not thread safe, so they are obtained upfront.
+    List<FileToLoad> filesToLoad = new ArrayList<>(files.size());
+    for (PathString file : files) {
+      String folderName = file.getParentFileName();
+      if (folderName != null) {
+        FolderInfo folderInfo = FolderInfo.create(folderName, myFolderConfigCache);
+        if (folderInfo != null) {
+          filesToLoad.add(new FileToLoad(file, folderInfo, getConfiguration(repository, folderInfo.configuration)));
+        }
+      }
+    }
+
+    List<CompletableFuture<List<Runnable>>> tasks = new ArrayList<>();
+    for (List<FileToLoad> batch : Lists.partition(filesToLoad, FILES_PER_PARSING_TASK)) {
+      tasks.add(CompletableFuture.supplyAsync(() -> {
+        List<Runnable> deferredActions = new ArrayList<>();
+        ResourceFileParser parser = new ResourceFileParser(deferredActions);
+        for (FileToLoad file : batch) {
+          parser.loadResourceFile(file.file, file.folderInfo, file.configuration, shouldParseResourceIds);
+        }
+        return deferredActions;
+      }, executor));
+    }
+
+    try {
+      // Add the resources in the order of the files, exactly as if the files were loaded sequentially.
+      for (CompletableFuture<List<Runnable>> task : tasks) {
+        ProgressManager.checkCanceled();
+        for (Runnable action : task.get()) {
+          action.run();
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ProcessCanceledException();
+    }
+    catch (ExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    }
+    finally {
+      for (CompletableFuture<List<Runnable>> task : tasks) {
+        task.cancel(false); // Tasks that are not done yet are not needed anymore.
       }
     }
   }
@@ -463,23 +533,6 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
     return repositoryConfiguration;
   }
 
-  private void loadResourceFile(@NotNull PathString file, @NotNull FolderInfo folderInfo, @NotNull RepositoryConfiguration configuration,
-                                boolean shouldParseResourceIds) {
-    if (folderInfo.resourceType == null) {
-      if (isXmlFile(file)) {
-        parseValueResourceFile(file, configuration);
-      }
-    }
-    else {
-      if (shouldParseResourceIds && folderInfo.isIdGenerating && isXmlFile(file)) {
-        parseIdGeneratingResourceFile(file, configuration);
-      }
-
-      BasicFileResourceItem item = createFileResourceItem(file, folderInfo.resourceType, configuration);
-      addResourceItem(item);
-    }
-  }
-
   protected static boolean isXmlFile(@NotNull PathString file) {
     return isXmlFile(file.getFileName());
   }
@@ -496,54 +549,7 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
   protected abstract void addResourceItem(@NotNull BasicResourceItem item, @NotNull T repository);
 
   protected final void parseValueResourceFile(@NotNull PathString file, @NotNull RepositoryConfiguration configuration) {
-    try (InputStream stream = getInputStream(file)) {
-      ResourceSourceFile sourceFile = createResourceSourceFile(file, configuration);
-      myParser.setInput(stream, null);
-
-      int event;
-      do {
-        event = myParser.nextToken();
-        int depth = myParser.getDepth();
-        if (event == XmlPullParser.START_TAG) {
-          if (myParser.getPrefix() != null) {
-            continue;
-          }
-          String tagName = myParser.getName();
-          assert depth <= 2; // Deeper tags should be consumed by the createResourceItem method.
-          if (depth == 1) {
-            if (!tagName.equals(TAG_RESOURCES)) {
-              break;
-            }
-          }
-          else if (depth > 1) {
-            ResourceType resourceType = getResourceType(tagName, file);
-            if (resourceType != null && resourceType != ResourceType.PUBLIC) {
-              String resourceName = myParser.getAttributeValue(null, ATTR_NAME);
-              if (resourceName != null) {
-                validateResourceName(resourceName, resourceType, file);
-                BasicValueResourceItemBase item = createResourceItem(resourceType, resourceName, sourceFile);
-                addValueResourceItem(item);
-              } else {
-                // Skip the subtags when the tag of a valid resource type doesn't have a name.
-                skipSubTags();
-              }
-            }
-            else {
-              skipSubTags();
-            }
-          }
-        }
-      } while (event != XmlPullParser.END_DOCUMENT);
-    }
-    catch (ProcessCanceledException e) {
-      throw e;
-    }
-    // KXmlParser throws RuntimeException for an undefined prefix and an illegal attribute name.
-    catch (IOException | XmlPullParserException | XmlSyntaxException | RuntimeException e) {
-      handleParsingError(file, e);
-    }
-
-    addValueFileResources();
+    myMainParser.parseValueResourceFile(file, configuration);
   }
 
   @NotNull
@@ -551,62 +557,12 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
     return new ResourceSourceFileImpl(getResRelativePath(file), configuration);
   }
 
-  private void addValueResourceItem(@NotNull BasicValueResourceItemBase item) {
-    ResourceType resourceType = item.getType();
-    // Add attr and styleable resources to intermediate maps to post-process them in the processAttrsAndStyleables
-    // method after all resources are loaded.
-    if (resourceType == ResourceType.ATTR) {
-      addAttr((BasicAttrResourceItem)item, myAttrs);
-    }
-    else if (resourceType == ResourceType.STYLEABLE) {
-      myStyleables.put(item.getName(), (BasicStyleableResourceItem)item);
-    }
-    else {
-      // For compatibility with resource merger code we add value resources first to a file-specific map,
-      // then move them to the global resource table. In case when there are multiple definitions of
-      // the same resource in a single XML file, this algorithm preserves only the last definition.
-      myValueFileResources.put(resourceType, item.getName(), item);
-    }
-  }
-
   protected final void addValueFileResources() {
-    for (BasicValueResourceItemBase item : myValueFileResources.values()) {
-      addResourceItem(item);
-    }
-    myValueFileResources.clear();
+    myMainParser.addValueFileResources();
   }
 
   protected final void parseIdGeneratingResourceFile(@NotNull PathString file, @NotNull RepositoryConfiguration configuration) {
-    try (InputStream stream = getInputStream(file)) {
-      ResourceSourceFile sourceFile = createResourceSourceFile(file, configuration);
-      XmlPullParser parser = new KXmlParser();
-      parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
-      parser.setInput(stream, null);
-
-      int event;
-      do {
-        event = parser.nextToken();
-        if (event == XmlPullParser.START_TAG) {
-          int numAttributes = parser.getAttributeCount();
-          for (int i = 0; i < numAttributes; i++) {
-            String idValue = parser.getAttributeValue(i);
-            if (idValue.startsWith(NEW_ID_PREFIX) && idValue.length() > NEW_ID_PREFIX.length()) {
-              String resourceName = idValue.substring(NEW_ID_PREFIX.length());
-              addIdResourceItem(resourceName, sourceFile);
-            }
-          }
-        }
-      } while (event != XmlPullParser.END_DOCUMENT);
-    }
-    catch (ProcessCanceledException e) {
-      throw e;
-    }
-    // KXmlParser throws RuntimeException for an undefined prefix and an illegal attribute name.
-    catch (IOException | XmlPullParserException | RuntimeException e) {
-      handleParsingError(file, e);
-    }
-
-    addValueFileResources();
+    myMainParser.parseIdGeneratingResourceFile(file, configuration);
   }
 
   protected void handleParsingError(@NotNull PathString file, @NotNull Exception e) {
@@ -631,11 +587,7 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
   }
 
   protected final void addIdResourceItem(@NotNull String resourceName, @NotNull ResourceSourceFile sourceFile) {
-    ResourceVisibility visibility = getVisibility(ResourceType.ID, resourceName);
-    BasicValueResourceItem item = new BasicValueResourceItem(ResourceType.ID, resourceName, sourceFile, visibility, null);
-    if (!resourceAlreadyDefined(item)) { // Don't create duplicate ID resources.
-      addValueResourceItem(item);
-    }
+    myMainParser.addIdResourceItem(resourceName, sourceFile);
   }
 
   @NotNull
@@ -666,249 +618,6 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
            new BasicDensityBasedFileResourceItem(type, name, configuration, visibility, relativePath, density);
   }
 
-  @NotNull
-  private BasicValueResourceItemBase createResourceItem(
-      @NotNull ResourceType type, @NotNull String name, @NotNull ResourceSourceFile sourceFile)
-      throws IOException, XmlPullParserException, XmlSyntaxException {
-    switch (type) {
-      case ARRAY:
-        return createArrayItem(name, sourceFile);
-
-      case ATTR:
-        return createAttrItem(name, sourceFile);
-
-      case PLURALS:
-        return createPluralsItem(name, sourceFile);
-
-      case STRING:
-        return createStringItem(type, name, sourceFile, true);
-
-      case STYLE:
-        return createStyleItem(name, sourceFile);
-
-      case STYLEABLE:
-        return createStyleableItem(name, sourceFile);
-
-      case ANIMATOR:
-      case DRAWABLE:
-      case INTERPOLATOR:
-      case LAYOUT:
-      case MENU:
-      case MIPMAP:
-      case TRANSITION:
-        return createFileReferenceItem(type, name, sourceFile);
-
-      default:
-        return createStringItem(type, name, sourceFile, false);
-    }
-  }
-
-  @NotNull
-  private BasicArrayResourceItem createArrayItem(@NotNull String name, @NotNull ResourceSourceFile sourceFile)
-      throws IOException, XmlPullParserException, XmlSyntaxException {
-    String indexValue = myParser.getAttributeValue(TOOLS_URI, ATTR_INDEX);
-    ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
-    List<String> values = new ArrayList<>();
-    forSubTags(TAG_ITEM, () -> {
-      String text = myTextExtractor.extractText(myParser, false);
-      values.add(text);
-    });
-    int index = 0;
-    if (indexValue != null) {
-      try {
-        index = Integer.parseUnsignedInt(indexValue);
-      }
-      catch (NumberFormatException e) {
-        throw new XmlSyntaxException(
-            "The value of the " + namespaceResolver.prefixToUri(TOOLS_URI) + ':' + ATTR_INDEX + " attribute is not a valid number.",
-            myParser, getDisplayName(sourceFile));
-      }
-      if (index >= values.size()) {
-        throw new XmlSyntaxException(
-            "The value of the " + namespaceResolver.prefixToUri(TOOLS_URI) + ':' + ATTR_INDEX + " attribute is out of bounds.",
-            myParser, getDisplayName(sourceFile));
-      }
-    }
-    ResourceVisibility visibility = getVisibility(ResourceType.ARRAY, name);
-    BasicArrayResourceItem item = new BasicArrayResourceItem(name, sourceFile, visibility, values, index);
-    item.setNamespaceResolver(namespaceResolver);
-    return item;
-  }
-
-  @NotNull
-  private BasicAttrResourceItem createAttrItem(@NotNull String name, @NotNull ResourceSourceFile sourceFile)
-      throws IOException, XmlPullParserException, XmlSyntaxException {
-    ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
-    ResourceNamespace attrNamespace;
-    myUrlParser.parseResourceUrl(name);
-    if (myUrlParser.hasNamespacePrefix(ANDROID_NS_NAME)) {
-      attrNamespace = ResourceNamespace.ANDROID;
-    } else {
-      String prefix = myUrlParser.getNamespacePrefix();
-      attrNamespace = ResourceNamespace.fromNamespacePrefix(prefix, myNamespace, myParser.getNamespaceResolver());
-      if (attrNamespace == null) {
-        throw new XmlSyntaxException("Undefined prefix of attr resource name \"" + name + "\"", myParser, getDisplayName(sourceFile));
-      }
-    }
-    name = myUrlParser.getName();
-
-    String description = myParser.getLastComment();
-    String groupName = myParser.getAttrGroupComment();
-    String formatString = myParser.getAttributeValue(null, ATTR_FORMAT);
-    Set<AttributeFormat> formats =
-      StringUtil.isEmpty(formatString) ? EnumSet.noneOf(AttributeFormat.class) : AttributeFormat.parse(formatString);
-
-    // The average number of enum or flag values is 7 for Android framework, so start with small maps.
-    Map<String, Integer> valueMap = Maps.newHashMapWithExpectedSize(8);
-    Map<String, String> descriptionMap = Maps.newHashMapWithExpectedSize(8);
-    forSubTags(null, () -> {
-      if (myParser.getPrefix() == null) {
-        String tagName = myParser.getName();
-        AttributeFormat format =
-            tagName.equals(TAG_ENUM) ? AttributeFormat.ENUM : tagName.equals(TAG_FLAG) ? AttributeFormat.FLAGS : null;
-        if (format != null) {
-          formats.add(format);
-          String valueName = myParser.getAttributeValue(null, ATTR_NAME);
-          if (valueName != null) {
-            String valueDescription = myParser.getLastComment();
-            if (valueDescription != null) {
-              descriptionMap.put(valueName, valueDescription);
-            }
-            String value = myParser.getAttributeValue(null, ATTR_VALUE);
-            Integer numericValue = null;
-            if (value != null) {
-              try {
-                // Integer.decode/parseInt can't deal with hex value > 0x7FFFFFFF so we use Long.decode instead.
-                numericValue = Long.decode(value).intValue();
-              }
-              catch (NumberFormatException ignored) {
-              }
-            }
-            valueMap.put(valueName, numericValue);
-          }
-        }
-      }
-    });
-
-    BasicAttrResourceItem item;
-    if (attrNamespace.equals(myNamespace)) {
-      ResourceVisibility visibility = getVisibility(ResourceType.ATTR, name);
-      item = new BasicAttrResourceItem(name, sourceFile, visibility, description, groupName, formats, valueMap, descriptionMap);
-    }
-    else {
-      item = new BasicForeignAttrResourceItem(attrNamespace, name, sourceFile, description, groupName, formats, valueMap, descriptionMap);
-    }
-
-    item.setNamespaceResolver(namespaceResolver);
-    return item;
-  }
-
-  @NotNull
-  private BasicPluralsResourceItem createPluralsItem(@NotNull String name, @NotNull ResourceSourceFile sourceFile)
-      throws IOException, XmlPullParserException, XmlSyntaxException {
-    String defaultQuantity = myParser.getAttributeValue(TOOLS_URI, ATTR_QUANTITY);
-    ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
-    EnumMap<Arity, String> values = new EnumMap<>(Arity.class);
-    forSubTags(TAG_ITEM, () -> {
-      String quantityValue = myParser.getAttributeValue(null, ATTR_QUANTITY);
-      if (quantityValue != null) {
-        Arity quantity = Arity.getEnum(quantityValue);
-        if (quantity != null) {
-          String text = myTextExtractor.extractText(myParser, false);
-          values.put(quantity, text);
-        }
-      }
-    });
-    Arity defaultArity = null;
-    if (defaultQuantity != null) {
-      defaultArity = Arity.getEnum(defaultQuantity);
-      if (defaultArity == null || !values.containsKey(defaultArity)) {
-        throw new XmlSyntaxException(
-            "Invalid value of the " + namespaceResolver.prefixToUri(TOOLS_URI) + ':' + ATTR_QUANTITY + " attribute.", myParser,
-            getDisplayName(sourceFile));
-      }
-    }
-    ResourceVisibility visibility = getVisibility(ResourceType.PLURALS, name);
-    BasicPluralsResourceItem item = new BasicPluralsResourceItem(name, sourceFile, visibility, values, defaultArity);
-    item.setNamespaceResolver(namespaceResolver);
-    return item;
-  }
-
-  @NotNull
-  private BasicValueResourceItem createStringItem(
-      @NotNull ResourceType type, @NotNull String name, @NotNull ResourceSourceFile sourceFile, boolean withRowXml)
-      throws IOException, XmlPullParserException {
-    ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
-    String text = type == ResourceType.ID ? null : myTextExtractor.extractText(myParser, withRowXml);
-    String rawXml = type == ResourceType.ID ? null : myTextExtractor.getRawXml();
-    assert withRowXml || rawXml == null; // Text extractor doesn't extract raw XML unless asked to do it.
-    ResourceVisibility visibility = getVisibility(type, name);
-    BasicValueResourceItem item = rawXml == null ?
-                                  new BasicValueResourceItem(type, name, sourceFile, visibility, text) :
-                                  new BasicTextValueResourceItem(type, name, sourceFile, visibility, text, rawXml);
-    item.setNamespaceResolver(namespaceResolver);
-    return item;
-  }
-
-  @NotNull
-  private BasicStyleResourceItem createStyleItem(@NotNull String name, @NotNull ResourceSourceFile sourceFile)
-      throws IOException, XmlPullParserException {
-    ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
-    String parentStyle = myParser.getAttributeValue(null, ATTR_PARENT);
-    if (parentStyle != null && !parentStyle.isEmpty()) {
-      myUrlParser.parseResourceUrl(parentStyle);
-      parentStyle = myUrlParser.getQualifiedName();
-    }
-    List<StyleItemResourceValue> styleItems = new ArrayList<>();
-    forSubTags(TAG_ITEM, () -> {
-      ResourceNamespace.Resolver itemNamespaceResolver = myParser.getNamespaceResolver();
-      String itemName = myParser.getAttributeValue(null, ATTR_NAME);
-      if (itemName != null) {
-        String text = myTextExtractor.extractText(myParser, false);
-        StyleItemResourceValueImpl styleItem =
-            new StyleItemResourceValueImpl(myNamespace, itemName, text, sourceFile.getRepository().getLibraryName());
-        styleItem.setNamespaceResolver(itemNamespaceResolver);
-        styleItems.add(styleItem);
-      }
-    });
-    ResourceVisibility visibility = getVisibility(ResourceType.STYLE, name);
-    BasicStyleResourceItem item = new BasicStyleResourceItem(name, sourceFile, visibility, parentStyle, styleItems);
-    item.setNamespaceResolver(namespaceResolver);
-    return item;
-  }
-
-  @NotNull
-  private BasicStyleableResourceItem createStyleableItem(@NotNull String name, @NotNull ResourceSourceFile sourceFile)
-      throws IOException, XmlPullParserException {
-    ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
-    List<AttrResourceValue> attrs = new ArrayList<>();
-    forSubTags(TAG_ATTR, () -> {
-      String attrName = myParser.getAttributeValue(null, ATTR_NAME);
-      if (attrName != null) {
-        try {
-          BasicAttrResourceItem attr = createAttrItem(attrName, sourceFile);
-          // Mimic behavior of AAPT2 and put an attr reference inside a styleable resource.
-          attrs.add(attr.getFormats().isEmpty() ? attr : attr.createReference());
-
-          // Don't create top-level attr resources in a foreign namespace, or for attr references in the res-auto namespace.
-          // The second condition is determined by the fact that the attr in the res-auto namespace may have an explicit definition
-          // outside of this resource repository.
-          if (attr.getNamespace().equals(myNamespace) && (myNamespace != ResourceNamespace.RES_AUTO || !attr.getFormats().isEmpty())) {
-            addAttr(attr, myAttrCandidates);
-          }
-        }
-        catch (XmlSyntaxException e) {
-          LOG.error(e);
-        }
-      }
-    });
-    // AAPT2 treats all styleable resources as public.
-    // See https://android.googlesource.com/platform/frameworks/base/+/master/tools/aapt2/ResourceParser.cpp#1539
-    BasicStyleableResourceItem item = new BasicStyleableResourceItem(name, sourceFile, ResourceVisibility.PUBLIC, attrs);
-    item.setNamespaceResolver(namespaceResolver);
-    return item;
-  }
-
   private static void addAttr(@NotNull BasicAttrResourceItem attr, @NotNull ListMultimap<String, BasicAttrResourceItem> map) {
     List<BasicAttrResourceItem> attrs = map.get(attr.getName());
     int i = findResourceWithSameNameAndConfiguration(attr, attrs);
@@ -1034,91 +743,6 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
     return -1;
   }
 
-  @NotNull
-  private BasicValueResourceItem createFileReferenceItem(
-      @NotNull ResourceType type, @NotNull String name, @NotNull ResourceSourceFile sourceFile)
-      throws IOException, XmlPullParserException {
-    ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
-    String text = myTextExtractor.extractText(myParser, false).trim();
-    if (!text.isEmpty() && !text.startsWith(PREFIX_RESOURCE_REF) && !text.startsWith(PREFIX_THEME_REF)) {
-      text = text.replace('/', File.separatorChar);
-    }
-    ResourceVisibility visibility = getVisibility(type, name);
-    BasicValueResourceItem item = new BasicValueResourceItem(type, name, sourceFile, visibility, text);
-    item.setNamespaceResolver(namespaceResolver);
-    return item;
-  }
-
-  @Nullable
-  private ResourceType getResourceType(@NotNull String tagName, @NotNull PathString file) throws XmlSyntaxException {
-    ResourceType type = ResourceType.fromXmlTagName(tagName);
-
-    if (type == null) {
-      if (TAG_EAT_COMMENT.equals(tagName) || TAG_SKIP.equals(tagName)) {
-        return null;
-      }
-
-      if (TAG_JAVA_SYMBOL.equals(tagName)) {
-        // java-symbol is only used within framework and does not provide any public
-        // information so we can safely ignore it.
-        return null;
-      }
-
-      if (tagName.equals(TAG_ITEM)) {
-        String typeAttr = myParser.getAttributeValue(null, ATTR_TYPE);
-        if (typeAttr != null) {
-          type = ResourceType.fromClassName(typeAttr);
-          if (type != null) {
-            return type;
-          }
-
-          LOG.warn("Unrecognized type attribute \"" + typeAttr + "\" at " + getDisplayName(file) + " line " + myParser.getLineNumber());
-        }
-      }
-      else {
-        LOG.warn("Unrecognized tag name \"" + tagName + "\" at " + getDisplayName(file) + " line " + myParser.getLineNumber());
-      }
-    }
-
-    return type;
-  }
-
-  /**
-   * If {@code tagName} is null, calls {@code subtagVisitor.visitTag()} for every subtag of the current tag.
-   * If {@code tagName} is not null, calls {@code subtagVisitor.visitTag()} for every subtag of the current tag
-   * which name doesn't have a prefix and matches {@code tagName}.
-   */
-  private void forSubTags(@Nullable String tagName, @NotNull XmlTagVisitor subtagVisitor) throws IOException, XmlPullParserException {
-    int elementDepth = myParser.getDepth();
-    int event;
-    do {
-      event = myParser.nextToken();
-      if (event == XmlPullParser.START_TAG && (tagName == null || tagName.equals(myParser.getName()) && myParser.getPrefix() == null)) {
-        subtagVisitor.visitTag();
-      }
-    } while (event != XmlPullParser.END_DOCUMENT && (event != XmlPullParser.END_TAG || myParser.getDepth() > elementDepth));
-  }
-
-  /**
-   * Skips all subtags of the current tag. When the method returns, the parser is positioned at the end tag
-   * of the current element.
-   */
-  private void skipSubTags() throws IOException, XmlPullParserException {
-    int elementDepth = myParser.getDepth();
-    int event;
-    do {
-      event = myParser.nextToken();
-    } while (event != XmlPullParser.END_DOCUMENT && (event != XmlPullParser.END_TAG || myParser.getDepth() > elementDepth));
-  }
-
-  private void validateResourceName(@NotNull String resourceName, @NotNull ResourceType resourceType, @NotNull PathString file)
-      throws XmlSyntaxException {
-    String error = ValueResourceNameValidator.getErrorText(resourceName, resourceType);
-    if (error != null) {
-      throw new XmlSyntaxException(error, myParser, getDisplayName(file));
-    }
-  }
-
   @NotNull
   private String getDisplayName(@NotNull PathString file) {
     return file.isAbsolute() ? file.getNativePath() : file.getPortablePath() + " in " + myResourceDirectoryOrFile.toString();
@@ -1170,6 +794,513 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
     return fileName.replace(File.separatorChar, '/');
   }
 
+  /**
+   * Parses resource files. Value resource parsing is stateful, so threads parsing files in parallel each use their own instance.
+   * The instance used by the loading thread adds resources to the repository as they are parsed. Other instances record
+   * the additions instead, to be replayed by the loading thread in the same order as sequential loading would do them.
+   */
+  private class ResourceFileParser {
+    @NotNull private final ValueResourceXmlParser myParser = new ValueResourceXmlParser();
+    @NotNull private final XmlTextExtractor myTextExtractor = new XmlTextExtractor();
+    @NotNull private final ResourceUrlParser myUrlParser = new ResourceUrlParser();
+    // Used to keep track of resources defined in the current value resource file.
+    @NotNull private final Table<ResourceType, String, BasicValueResourceItemBase> myValueFileResources =
+        Tables.newCustomTable(new EnumMap<>(ResourceType.class), LinkedHashMap::new);
+    // ID resources that have to be checked for duplicates when they are added to the repository.
+    @NotNull private final Set<BasicValueResourceItemBase> myUncheckedIds = Sets.newIdentityHashSet();
+    /** Additions to the repository and to the intermediate attr and styleable maps, or null if they are not deferred. */
+    @Nullable private final List<Runnable> myDeferredActions;
+
+    ResourceFileParser(@Nullable List<Runnable> deferredActions) {
+      myDeferredActions = deferredActions;
+    }
+
+    private void runOrDefer(@NotNull Runnable action) {
+      if (myDeferredActions == null) {
+        action.run();
+      }
+      else {
+        myDeferredActions.add(action);
+      }
+    }
+
+    void loadResourceFile(@NotNull PathString file, @NotNull FolderInfo folderInfo, @NotNull RepositoryConfiguration configuration,
+                          boolean shouldParseResourceIds) {
+      if (folderInfo.resourceType == null) {
+        if (isXmlFile(file)) {
+          parseValueResourceFile(file, configuration);
+        }
+      }
+      else {
+        if (shouldParseResourceIds && folderInfo.isIdGenerating && isXmlFile(file)) {
+          parseIdGeneratingResourceFile(file, configuration);
+        }
+
+        BasicFileResourceItem item = createFileResourceItem(file, folderInfo.resourceType, configuration);
+        runOrDefer(() -> addResourceItem(item));
+      }
+    }
+
+    void parseValueResourceFile(@NotNull PathString file, @NotNull RepositoryConfiguration configuration) {
+      try (InputStream stream = getInputStream(file)) {
+        ResourceSourceFile sourceFile = createResourceSourceFile(file, configuration);
+        myParser.setInput(stream, null);
+
+        int event;
+        do {
+          event = myParser.nextToken();
+          int depth = myParser.getDepth();
+          if (event == XmlPullParser.START_TAG) {
+            if (myParser.getPrefix() != null) {
+              continue;
+            }
+            String tagName = myParser.getName();
+            assert depth <= 2; // Deeper tags should be consumed by the createResourceItem method.
+            if (depth == 1) {
+              if (!tagName.equals(TAG_RESOURCES)) {
+                break;
+              }
+            }
+            else if (depth > 1) {
+              ResourceType resourceType = getResourceType(tagName, file);
+              if (resourceType != null && resourceType != ResourceType.PUBLIC) {
+                String resourceName = myParser.getAttributeValue(null, ATTR_NAME);
+                if (resourceName != null) {
+                  validateResourceName(resourceName, resourceType, file);
+                  BasicValueResourceItemBase item = createResourceItem(resourceType, resourceName, sourceFile);
+                  addValueResourceItem(item);
+                } else {
+                  // Skip the subtags when the tag of a valid resource type doesn't have a name.
+                  skipSubTags();
+                }
+              }
+              else {
+                skipSubTags();
+              }
+            }
+          }
+        } while (event != XmlPullParser.END_DOCUMENT);
+      }
+      catch (ProcessCanceledException e) {
+        throw e;
+      }
+      // KXmlParser throws RuntimeException for an undefined prefix and an illegal attribute name.
+      catch (IOException | XmlPullParserException | XmlSyntaxException | RuntimeException e) {
+        handleParsingError(file, e);
+      }
+
+      addValueFileResources();
+    }
+
+    private void addValueResourceItem(@NotNull BasicValueResourceItemBase item) {
+      ResourceType resourceType = item.getType();
+      // Add attr and styleable resources to intermediate maps to post-process them in the processAttrsAndStyleables
+      // method after all resources are loaded.
+      if (resourceType == ResourceType.ATTR) {
+        runOrDefer(() -> addAttr((BasicAttrResourceItem)item, myAttrs));
+      }
+      else if (resourceType == ResourceType.STYLEABLE) {
+        runOrDefer(() -> myStyleables.put(item.getName(), (BasicStyleableResourceItem)item));
+      }
+      else {
+        // For compatibility with resource merger code we add value resources first to a file-specific map,
+        // then move them to the global resource table. In case when there are multiple definitions of
+        // the same resource in a single XML file, this algorithm preserves only the last definition.
+        myValueFileResources.put(resourceType, item.getName(), item);
+      }
+    }
+
+    void addValueFileResources() {
+      for (BasicValueResourceItemBase item : myValueFileResources.values()) {
+        if (myUncheckedIds.remove(item)) {
+          runOrDefer(() -> {
+            if (!resourceAlreadyDefined(item)) {
+              addResourceItem(item);
+            }
+          });
+        }
+        else {
+          runOrDefer(() -> addResourceItem(item));
+        }
+      }
+      myValueFileResources.clear();
+    }
+
+    void parseIdGeneratingResourceFile(@NotNull PathString file, @NotNull RepositoryConfiguration configuration) {
+      try (InputStream stream = getInputStream(file)) {
+        ResourceSourceFile sourceFile = createResourceSourceFile(file, configuration);
+        XmlPullParser parser = new KXmlParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setInput(stream, null);
+
+        int event;
+        do {
+          event = parser.nextToken();
+          if (event == XmlPullParser.START_TAG) {
+            int numAttributes = parser.getAttributeCount();
+            for (int i = 0; i < numAttributes; i++) {
+              String idValue = parser.getAttributeValue(i);
+              if (idValue.startsWith(NEW_ID_PREFIX) && idValue.length() > NEW_ID_PREFIX.length()) {
+                String resourceName = idValue.substring(NEW_ID_PREFIX.length());
+                addIdResourceItem(resourceName, sourceFile);
+              }
+            }
+          }
+        } while (event != XmlPullParser.END_DOCUMENT);
+      }
+      catch (ProcessCanceledException e) {
+        throw e;
+      }
+      // KXmlParser throws RuntimeException for an undefined prefix and an illegal attribute name.
+      catch (IOException | XmlPullParserException | RuntimeException e) {
+        handleParsingError(file, e);
+      }
+
+      addValueFileResources();
+    }
+
+    void addIdResourceItem(@NotNull String resourceName, @NotNull ResourceSourceFile sourceFile) {
+      ResourceVisibility visibility = getVisibility(ResourceType.ID, resourceName);
+      BasicValueResourceItem item = new BasicValueResourceItem(ResourceType.ID, resourceName, sourceFile, visibility, null);
+      if (myDeferredActions != null) {
+        // The repository doesn't contain the resources of the preceding files yet, check for a duplicate when adding the ID.
+        myUncheckedIds.add(item);
+        addValueResourceItem(item);
+      }
+      else if (!resourceAlreadyDefined(item)) { // Don't create duplicate ID resources.
+        addValueResourceItem(item);
+      }
+    }
+
+    @NotNull
+    private BasicValueResourceItemBase createResourceItem(
+        @NotNull ResourceType type, @NotNull String name, @NotNull ResourceSourceFile sourceFile)
+        throws IOException, XmlPullParserException, XmlSyntaxException {
+      switch (type) {
+        case ARRAY:
+          return createArrayItem(name, sourceFile);
+
+        case ATTR:
+          return createAttrItem(name, sourceFile);
+
+        case PLURALS:
+          return createPluralsItem(name, sourceFile);
+
+        case STRING:
+          return createStringItem(type, name, sourceFile, true);
+
+        case STYLE:
+          return createStyleItem(name, sourceFile);
+
+        case STYLEABLE:
+          return createStyleableItem(name, sourceFile);
+
+        case ANIMATOR:
+        case DRAWABLE:
+        case INTERPOLATOR:
+        case LAYOUT:
+        case MENU:
+        case MIPMAP:
+        case TRANSITION:
+          return createFileReferenceItem(type, name, sourceFile);
+
+        default:
+          return createStringItem(type, name, sourceFile, false);
+      }
+    }
+
+    @NotNull
+    private BasicArrayResourceItem createArrayItem(@NotNull String name, @NotNull ResourceSourceFile sourceFile)
+        throws IOException, XmlPullParserException, XmlSyntaxException {
+      String indexValue = myParser.getAttributeValue(TOOLS_URI, ATTR_INDEX);
+      ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
+      List<String> values = new ArrayList<>();
+      forSubTags(TAG_ITEM, () -> {
+        String text = myTextExtractor.extractText(myParser, false);
+        values.add(text);
+      });
+      int index = 0;
+      if (indexValue != null) {
+        try {
+          index = Integer.parseUnsignedInt(indexValue);
+        }
+        catch (NumberFormatException e) {
+          throw new XmlSyntaxException(
+              "The value of the " + namespaceResolver.prefixToUri(TOOLS_URI) + ':' + ATTR_INDEX + " attribute is not a valid number.",
+              myParser, getDisplayName(sourceFile));
+        }
+        if (index >= values.size()) {
+          throw new XmlSyntaxException(
+              "The value of the " + namespaceResolver.prefixToUri(TOOLS_URI) + ':' + ATTR_INDEX + " attribute is out of bounds.",
+              myParser, getDisplayName(sourceFile));
+        }
+      }
+      ResourceVisibility visibility = getVisibility(ResourceType.ARRAY, name);
+      BasicArrayResourceItem item = new BasicArrayResourceItem(name, sourceFile, visibility, values, index);
+      item.setNamespaceResolver(namespaceResolver);
+      return item;
+    }
+
+    @NotNull
+    private BasicAttrResourceItem createAttrItem(@NotNull String name, @NotNull ResourceSourceFile sourceFile)
+        throws IOException, XmlPullParserException, XmlSyntaxException {
+      ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
+      ResourceNamespace attrNamespace;
+      myUrlParser.parseResourceUrl(name);
+      if (myUrlParser.hasNamespacePrefix(ANDROID_NS_NAME)) {
+        attrNamespace = ResourceNamespace.ANDROID;
+      } else {
+        String prefix = myUrlParser.getNamespacePrefix();
+        attrNamespace = ResourceNamespace.fromNamespacePrefix(prefix, myNamespace, myParser.getNamespaceResolver());
+        if (attrNamespace == null) {
+          throw new XmlSyntaxException("Undefined prefix of attr resource name \"" + name + "\"", myParser, getDisplayName(sourceFile));
+        }
+      }
+      name = myUrlParser.getName();
+
+      String description = myParser.getLastComment();
+      String groupName = myParser.getAttrGroupComment();
+      String formatString = myParser.getAttributeValue(null, ATTR_FORMAT);
+      Set<AttributeFormat> formats =
+        StringUtil.isEmpty(formatString) ? EnumSet.noneOf(AttributeFormat.class) : AttributeFormat.parse(formatString);
+
+      // The average number of enum or flag values is 7 for Android framework, so start with small maps.
+      Map<String, Integer> valueMap = Maps.newHashMapWithExpectedSize(8);
+      Map<String, String> descriptionMap = Maps.newHashMapWithExpectedSize(8);
+      forSubTags(null, () -> {
+        if (myParser.getPrefix() == null) {
+          String tagName = myParser.getName();
+          AttributeFormat format =
+              tagName.equals(TAG_ENUM) ? AttributeFormat.ENUM : tagName.equals(TAG_FLAG) ? AttributeFormat.FLAGS : null;
+          if (format != null) {
+            formats.add(format);
+            String valueName = myParser.getAttributeValue(null, ATTR_NAME);
+            if (valueName != null) {
+              String valueDescription = myParser.getLastComment();
+              if (valueDescription != null) {
+                descriptionMap.put(valueName, valueDescription);
+              }
+              String value = myParser.getAttributeValue(null, ATTR_VALUE);
+              Integer numericValue = null;
+              if (value != null) {
+                try {
+                  // Integer.decode/parseInt can't deal with hex value > 0x7FFFFFFF so we use Long.decode instead.
+                  numericValue = Long.decode(value).intValue();
+                }
+                catch (NumberFormatException ignored) {
+                }
+              }
+              valueMap.put(valueName, numericValue);
+            }
+          }
+        }
+      });
+
+      BasicAttrResourceItem item;
+      if (attrNamespace.equals(myNamespace)) {
+        ResourceVisibility visibility = getVisibility(ResourceType.ATTR, name);
+        item = new BasicAttrResourceItem(name, sourceFile, visibility, description, groupName, formats, valueMap, descriptionMap);
+      }
+      else {
+        item = new BasicForeignAttrResourceItem(attrNamespace, name, sourceFile, description, groupName, formats, valueMap, descriptionMap);
+      }
+
+      item.setNamespaceResolver(namespaceResolver);
+      return item;
+    }
+
+    @NotNull
+    private BasicPluralsResourceItem createPluralsItem(@NotNull String name, @NotNull ResourceSourceFile sourceFile)
+        throws IOException, XmlPullParserException, XmlSyntaxException {
+      String defaultQuantity = myParser.getAttributeValue(TOOLS_URI, ATTR_QUANTITY);
+      ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
+      EnumMap<Arity, String> values = new EnumMap<>(Arity.class);
+      forSubTags(TAG_ITEM, () -> {
+        String quantityValue = myParser.getAttributeValue(null, ATTR_QUANTITY);
+        if (quantityValue != null) {
+          Arity quantity = Arity.getEnum(quantityValue);
+          if (quantity != null) {
+            String text = myTextExtractor.extractText(myParser, false);
+            values.put(quantity, text);
+          }
+        }
+      });
+      Arity defaultArity = null;
+      if (defaultQuantity != null) {
+        defaultArity = Arity.getEnum(defaultQuantity);
+        if (defaultArity == null || !values.containsKey(defaultArity)) {
+          throw new XmlSyntaxException(
+              "Invalid value of the " + namespaceResolver.prefixToUri(TOOLS_URI) + ':' + ATTR_QUANTITY + " attribute.", myParser,
+              getDisplayName(sourceFile));
+        }
+      }
+      ResourceVisibility visibility = getVisibility(ResourceType.PLURALS, name);
+      BasicPluralsResourceItem item = new BasicPluralsResourceItem(name, sourceFile, visibility, values, defaultArity);
+      item.setNamespaceResolver(namespaceResolver);
+      return item;
+    }
+
+    @NotNull
+    private BasicValueResourceItem createStringItem(
+        @NotNull ResourceType type, @NotNull String name, @NotNull ResourceSourceFile sourceFile, boolean withRowXml)
+        throws IOException, XmlPullParserException {
+      ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
+      String text = type == ResourceType.ID ? null : myTextExtractor.extractText(myParser, withRowXml);
+      String rawXml = type == ResourceType.ID ? null : myTextExtractor.getRawXml();
+      assert withRowXml || rawXml == null; // Text extractor doesn't extract raw XML unless asked to do it.
+      ResourceVisibility visibility = getVisibility(type, name);
+      BasicValueResourceItem item = rawXml == null ?
+                                    new BasicValueResourceItem(type, name, sourceFile, visibility, text) :
+                                    new BasicTextValueResourceItem(type, name, sourceFile, visibility, text, rawXml);
+      item.setNamespaceResolver(namespaceResolver);
+      return item;
+    }
+
+    @NotNull
+    private BasicStyleResourceItem createStyleItem(@NotNull String name, @NotNull ResourceSourceFile sourceFile)
+        throws IOException, XmlPullParserException {
+      ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
+      String parentStyle = myParser.getAttributeValue(null, ATTR_PARENT);
+      if (parentStyle != null && !parentStyle.isEmpty()) {
+        myUrlParser.parseResourceUrl(parentStyle);
+        parentStyle = myUrlParser.getQualifiedName();
+      }
+      List<StyleItemResourceValue> styleItems = new ArrayList<>();
+      forSubTags(TAG_ITEM, () -> {
+        ResourceNamespace.Resolver itemNamespaceResolver = myParser.getNamespaceResolver();
+        String itemName = myParser.getAttributeValue(null, ATTR_NAME);
+        if (itemName != null) {
+          String text = myTextExtractor.extractText(myParser, false);
+          StyleItemResourceValueImpl styleItem =
+              new StyleItemResourceValueImpl(myNamespace, itemName, text, sourceFile.getRepository().getLibraryName());
+          styleItem.setNamespaceResolver(itemNamespaceResolver);
+          styleItems.add(styleItem);
+        }
+      });
+      ResourceVisibility visibility = getVisibility(ResourceType.STYLE, name);
+      BasicStyleResourceItem item = new BasicStyleResourceItem(name, sourceFile, visibility, parentStyle, styleItems);
+      item.setNamespaceResolver(namespaceResolver);
+      return item;
+    }
+
+    @NotNull
+    private BasicStyleableResourceItem createStyleableItem(@NotNull String name, @NotNull ResourceSourceFile sourceFile)
+        throws IOException, XmlPullParserException {
+      ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
+      List<AttrResourceValue> attrs = new ArrayList<>();
+      forSubTags(TAG_ATTR, () -> {
+        String attrName = myParser.getAttributeValue(null, ATTR_NAME);
+        if (attrName != null) {
+          try {
+            BasicAttrResourceItem attr = createAttrItem(attrName, sourceFile);
+            // Mimic behavior of AAPT2 and put an attr reference inside a styleable resource.
+            attrs.add(attr.getFormats().isEmpty() ? attr : attr.createReference());
+
+            // Don't create top-level attr resources in a foreign namespace, or for attr references in the res-auto namespace.
+            // The second condition is determined by the fact that the attr in the res-auto namespace may have an explicit definition
+            // outside of this resource repository.
+            if (attr.getNamespace().equals(myNamespace) && (myNamespace != ResourceNamespace.RES_AUTO || !attr.getFormats().isEmpty())) {
+              runOrDefer(() -> addAttr(attr, myAttrCandidates));
+            }
+          }
+          catch (XmlSyntaxException e) {
+            LOG.error(e);
+          }
+        }
+      });
+      // AAPT2 treats all styleable resources as public.
+      // See https://android.googlesource.com/platform/frameworks/base/+/master/tools/aapt2/ResourceParser.cpp#1539
+      BasicStyleableResourceItem item = new BasicStyleableResourceItem(name, sourceFile, ResourceVisibility.PUBLIC, attrs);
+      item.setNamespaceResolver(namespaceResolver);
+      return item;
+    }
+
+    @NotNull
+    private BasicValueResourceItem createFileReferenceItem(
+        @NotNull ResourceType type, @NotNull String name, @NotNull ResourceSourceFile sourceFile)
+        throws IOException, XmlPullParserException {
+      ResourceNamespace.Resolver namespaceResolver = myParser.getNamespaceResolver();
+      String text = myTextExtractor.extractText(myParser, false).trim();
+      if (!text.isEmpty() && !text.startsWith(PREFIX_RESOURCE_REF) && !text.startsWith(PREFIX_THEME_REF)) {
+        text = text.replace('/', File.separatorChar);
+      }
+      ResourceVisibility visibility = getVisibility(type, name);
+      BasicValueResourceItem item = new BasicValueResourceItem(type, name, sourceFile, visibility, text);
+      item.setNamespaceResolver(namespaceResolver);
+      return item;
+    }
+
+    @Nullable
+    private ResourceType getResourceType(@NotNull String tagName, @NotNull PathString file) throws XmlSyntaxException {
+      ResourceType type = ResourceType.fromXmlTagName(tagName);
+
+      if (type == null) {
+        if (TAG_EAT_COMMENT.equals(tagName) || TAG_SKIP.equals(tagName)) {
+          return null;
+        }
+
+        if (TAG_JAVA_SYMBOL.equals(tagName)) {
+          // java-symbol is only used within framework and does not provide any public
+          // information so we can safely ignore it.
+          return null;
+        }
+
+        if (tagName.equals(TAG_ITEM)) {
+          String typeAttr = myParser.getAttributeValue(null, ATTR_TYPE);
+          if (typeAttr != null) {
+            type = ResourceType.fromClassName(typeAttr);
+            if (type != null) {
+              return type;
+            }
+
+            LOG.warn("Unrecognized type attribute \"" + typeAttr + "\" at " + getDisplayName(file) + " line " + myParser.getLineNumber());
+          }
+        }
+        else {
+          LOG.warn("Unrecognized tag name \"" + tagName + "\" at " + getDisplayName(file) + " line " + myParser.getLineNumber());
+        }
+      }
+
+      return type;
+    }
+
+    /**
+     * If {@code tagName} is null, calls {@code subtagVisitor.visitTag()} for every subtag of the current tag.
+     * If {@code tagName} is not null, calls {@code subtagVisitor.visitTag()} for every subtag of the current tag
+     * which name doesn't have a prefix and matches {@code tagName}.
+     */
+    private void forSubTags(@Nullable String tagName, @NotNull XmlTagVisitor subtagVisitor) throws IOException, XmlPullParserException {
+      int elementDepth = myParser.getDepth();
+      int event;
+      do {
+        event = myParser.nextToken();
+        if (event == XmlPullParser.START_TAG && (tagName == null || tagName.equals(myParser.getName()) && myParser.getPrefix() == null)) {
+          subtagVisitor.visitTag();
+        }
+      } while (event != XmlPullParser.END_DOCUMENT && (event != XmlPullParser.END_TAG || myParser.getDepth() > elementDepth));
+    }
+
+    /**
+     * Skips all subtags of the current tag. When the method returns, the parser is positioned at the end tag
+     * of the current element.
+     */
+    private void skipSubTags() throws IOException, XmlPullParserException {
+      int elementDepth = myParser.getDepth();
+      int event;
+      do {
+        event = myParser.nextToken();
+      } while (event != XmlPullParser.END_DOCUMENT && (event != XmlPullParser.END_TAG || myParser.getDepth() > elementDepth));
+    }
+
+    private void validateResourceName(@NotNull String resourceName, @NotNull ResourceType resourceType, @NotNull PathString file)
+        throws XmlSyntaxException {
+      String error = ValueResourceNameValidator.getErrorText(resourceName, resourceType);
+      if (error != null) {
+        throw new XmlSyntaxException(error, myParser, getDisplayName(file));
+      }
+    }
+  }
+
   private interface XmlTagVisitor {
     /** Is called when the parser is positioned at a {@link XmlPullParser#START_TAG}. */
     void visitTag() throws IOException, XmlPullParserException;
@@ -1230,6 +1361,18 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
     }
   }
 
+  private static class FileToLoad {
+    @NotNull final PathString file;
+    @NotNull final FolderInfo folderInfo;
+    @NotNull final RepositoryConfiguration configuration;
+
+    FileToLoad(@NotNull PathString file, @NotNull FolderInfo folderInfo, @NotNull RepositoryConfiguration configuration) {
+      this.file = file;
+      this.folderInfo = folderInfo;
+      this.configuration = configuration;
+    }
+  }
+
   private static class ResourceFileCollector implements FileVisitor<Path> {
     @NotNull final List<PathString> resourceFiles = new ArrayList<>();
     @NotNull final List<IOException> ioErrors = new ArrayList<>();
@@ -45,6 +45,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 import static com.android.resources.ResourceAsserts.assertThat;
@@ -266,6 +268,29 @@ public class FrameworkResourceRepositoryTest {
     }
   }
 
+  @Test
+  public void testParallelLoadingFromSources() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Set<String> languages = ImmutableSet.of("fr", "it");
+      FrameworkResourceRepository sequential = FrameworkResourceRepository.create(myResourceFolder, languages, null, false);
+      // Create persistent cache while loading in parallel.
+      FrameworkResourceRepository parallel =
+          FrameworkResourceRepository.create(myResourceFolder, languages, createCachingData(directExecutor()), false, executor);
+      assertThat(parallel.isLoadedFromCache()).isFalse();
+      compareContents(sequential, parallel);
+      checkContents(parallel);
+
+      FrameworkResourceRepository fromCache =
+          FrameworkResourceRepository.create(myResourceFolder, languages, createCachingData(null), false, executor);
+      assertThat(fromCache.isLoadedFromCache()).isTrue();
+      compareContents(sequential, fromCache);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
   @Test
   public void testLoadingFromSourcesAndJar() throws Exception {
     Path frameworkResJar = getFrameworkResJar();
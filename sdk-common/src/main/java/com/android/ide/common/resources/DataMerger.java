@@ -38,6 +38,7 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
@@ -50,6 +51,7 @@ import org.xml.sax.SAXException;
 abstract class DataMerger<I extends DataItem<F>, F extends DataFile<I>, S extends DataSet<I, F>>
         implements DataMap<I> {
     static final String FN_MERGER_XML = "merger.xml";
+    static final String FN_MERGER_BIN = "merger.bin";
     static final String NODE_MERGER = "merger";
     static final String NODE_DATA_SET = "dataSet";
 
@@ -64,6 +66,9 @@ abstract class DataMerger<I extends DataItem<F>, F extends DataFile<I>, S extend
     /** All the DataSets. */
     private final List<S> mDataSets = new ArrayList<>();
 
+    /** Whether the blob is written in the binary format, or in the XML one. */
+    private boolean mBinaryBlob = true;
+
     public DataMerger() {
         mFactory = DocumentBuilderFactory.newInstance();
         mFactory.setNamespaceAware(true);
@@ -307,9 +312,20 @@ abstract class DataMerger<I extends DataItem<F>, F extends DataFile<I>, S extend
         }
     }
 
+    /**
+     * Sets whether {@link #writeBlobTo(File, MergeConsumer, boolean)} uses the binary format,
+     * which is faster to write and to load, or the XML one. Both formats can be loaded.
+     */
+    public void setBinaryBlob(boolean binaryBlob) {
+        mBinaryBlob = binaryBlob;
+    }
+
     /**
      * Writes a single blob file to store all that the DataMerger knows about.
      *
+     * <p>The blob is written in the binary format, unless disabled with {@link
+     * #setBinaryBlob(boolean)}.
+     *
      * @param blobRootFolder the root folder where blobs are store.
      * @param consumer the merge consumer that was used by the merge.
      * @param includeTimestamps true if the files should be tagged with lastModified timestamps
@@ -344,19 +360,37 @@ abstract class DataMerger<I extends DataItem<F>, F extends DataFile<I>, S extend
             // write merged items
             writeAdditionalData(document, rootNode);
 
-            String content = XmlUtils.toXml(document);
-
             try {
                 createDir(blobRootFolder);
             } catch (IOException ioe) {
                 throw MergingException.wrapException(ioe).withFile(blobRootFolder).build();
             }
-            File file = new File(blobRootFolder, FN_MERGER_XML);
+
+            File file = new File(blobRootFolder, mBinaryBlob ? FN_MERGER_BIN : FN_MERGER_XML);
             try {
-                Files.asCharSink(file, StandardCharsets.UTF_8).write(content);
+                if (mBinaryBlob) {
+                    List<Element> sections = new ArrayList<>();
+                    for (Node node = rootNode.getFirstChild();
+                            node != null;
+                            node = node.getNextSibling()) {
+                        if (node.getNodeType() == Node.ELEMENT_NODE) {
+                            sections.add((Element) node);
+                        }
+                    }
+                    MergerBlob.write(file, MERGE_BLOB_VERSION, sections);
+                } else {
+                    String content = XmlUtils.toXml(document);
+                    Files.asCharSink(file, StandardCharsets.UTF_8).write(content);
+                }
             } catch (IOException ioe) {
                 throw MergingException.wrapException(ioe).withFile(file).build();
             }
+
+            // Don't leave a blob of the other format behind, loadFromBlob could pick it.
+            File otherFile = new File(blobRootFolder, mBinaryBlob ? FN_MERGER_XML : FN_MERGER_BIN);
+            if (otherFile.isFile()) {
+                otherFile.delete();
+            }
         } catch (ParserConfigurationException e) {
             throw MergingException.wrapException(e).build();
         }
@@ -390,6 +424,8 @@ abstract class DataMerger<I extends DataItem<F>, F extends DataFile<I>, S extend
      * <p>If <code>false</code>, the items are marked as touched, and this can be used to feed a new
      * {@link ResourceRepository} object.
      *
+     * <p>The binary blob is loaded if there is one, otherwise the XML one.
+     *
      * @param blobRootFolder the folder containing the blob.
      * @param incrementalState whether to load into an incremental state or a new state.
      * @param aaptEnv the value of "ANDROID_AAPT_IGNORE" environment variable
@@ -400,6 +436,11 @@ abstract class DataMerger<I extends DataItem<F>, F extends DataFile<I>, S extend
     public boolean loadFromBlob(
             @NonNull File blobRootFolder, boolean incrementalState, @Nullable String aaptEnv)
             throws MergingException {
+        File binaryFile = new File(blobRootFolder, FN_MERGER_BIN);
+        if (binaryFile.isFile()) {
+            return loadFromBinaryBlob(binaryFile, incrementalState, aaptEnv);
+        }
+
         File file = new File(blobRootFolder, FN_MERGER_XML);
         if (!file.isFile()) {
             return false;
@@ -456,6 +497,41 @@ abstract class DataMerger<I extends DataItem<F>, F extends DataFile<I>, S extend
         }
     }
 
+    private boolean loadFromBinaryBlob(
+            @NonNull File file, boolean incrementalState, @Nullable String aaptEnv)
+            throws MergingException {
+        try {
+            Document document = mFactory.newDocumentBuilder().newDocument();
+            MergerBlob blob = MergerBlob.load(file, document, NODE_MERGER);
+            if (blob == null || !MERGE_BLOB_VERSION.equals(blob.getVersion())) {
+                return false;
+            }
+
+            // Only the sections that are needed are decoded.
+            for (int i = 0, n = blob.getSectionCount(); i < n; i++) {
+                String name = blob.getSectionName(i);
+                if (NODE_DATA_SET.equals(name)) {
+                    S dataSet = createFromXml(blob.getSection(i), aaptEnv);
+                    if (dataSet != null) {
+                        addDataSet(dataSet);
+                    }
+                } else if (incrementalState && getAdditionalDataTagName().equals(name)) {
+                    loadAdditionalData(blob.getSection(i), incrementalState);
+                }
+            }
+
+            if (incrementalState) {
+                setPostBlobLoadStateToWritten();
+            } else {
+                setPostBlobLoadStateToTouched();
+            }
+
+            return true;
+        } catch (IOException | ParserConfigurationException e) {
+            throw MergingException.wrapException(e).withFile(file).build();
+        }
+    }
+
     @NonNull
     protected String getAdditionalDataTagName() {
         // No tag can have an empty name, so mergers that store additional data, have to provide
@@ -473,9 +549,11 @@ abstract class DataMerger<I extends DataItem<F>, F extends DataFile<I>, S extend
     }
 
     public void cleanBlob(@NonNull File blobRootFolder) {
-        File file = new File(blobRootFolder, FN_MERGER_XML);
-        if (file.isFile()) {
-            file.delete();
+        for (String name : new String[] {FN_MERGER_BIN, FN_MERGER_XML}) {
+            File file = new File(blobRootFolder, name);
+            if (file.isFile()) {
+                file.delete();
+            }
         }
     }
 
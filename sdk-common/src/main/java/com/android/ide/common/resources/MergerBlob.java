@@ -0,0 +1,534 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.ide.common.resources;
+
+import static com.android.SdkConstants.PLATFORM_WINDOWS;
+
+import com.android.SdkConstants;
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.XMLConstants;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.ProcessingInstruction;
+
+/**
+ * Binary form of the merger blob.
+ *
+ * <p>It stores the same element trees as the XML blob, with one section per top level element
+ * (each {@link DataSet} and the additional data of the merger), and all the names, values and
+ * texts stored once in a string table. Reading maps the file and only decodes the sections and the
+ * strings that are asked for, building the DOM nodes directly rather than parsing XML.
+ *
+ * <p>Layout, with big-endian ints:
+ *
+ * <pre>
+ *   magic, format version, index of the blob version string,
+ *   string count, string table offset, section count,
+ *   offset of each section,
+ *   sections,
+ *   offset of each string, strings (varint length and UTF-8 bytes)
+ * </pre>
+ *
+ * <p>A section is an element, encoded as a tag byte, the name index, the attribute count followed
+ * by the name and value index of each attribute, and the child count followed by the children.
+ * Text, CDATA and comment nodes are a tag byte followed by the index of their content, and
+ * processing instructions a tag byte followed by the index of their target and data. Entity
+ * references are stored expanded, as their content. All indices and counts are varints.
+ *
+ * <p>Namespaces are resolved from the {@code xmlns} attributes when decoding, as a namespace aware
+ * parser would do when reading the XML blob, so both forms load to the same DOM.
+ */
+final class MergerBlob {
+
+    private static final int MAGIC = 0x414d5242; // "AMRB"
+    private static final int FORMAT_VERSION = 2;
+
+    private static final byte NODE_ELEMENT = 1;
+    private static final byte NODE_TEXT = 2;
+    private static final byte NODE_CDATA = 3;
+    private static final byte NODE_COMMENT = 4;
+    private static final byte NODE_PROCESSING_INSTRUCTION = 5;
+
+    private static final Map<String, String> DEFAULT_NAMESPACES = new HashMap<>();
+
+    static {
+        DEFAULT_NAMESPACES.put(XMLConstants.XML_NS_PREFIX, XMLConstants.XML_NS_URI);
+    }
+
+    @NonNull private final ByteBuffer mBuffer;
+    @NonNull private final Document mDocument;
+    @NonNull private final Element mRoot;
+    private final int mStringTableOffset;
+    @NonNull private final String[] mStrings;
+    @NonNull private final int[] mSectionOffsets;
+    private final int mVersionIndex;
+
+    private MergerBlob(
+            @NonNull ByteBuffer buffer,
+            @NonNull Document document,
+            @NonNull String rootName,
+            int versionIndex,
+            int stringCount,
+            int stringTableOffset,
+            @NonNull int[] sectionOffsets) {
+        mBuffer = buffer;
+        mDocument = document;
+        mRoot = document.createElementNS(null, rootName);
+        document.appendChild(mRoot);
+        mVersionIndex = versionIndex;
+        mStrings = new String[stringCount];
+        mStringTableOffset = stringTableOffset;
+        mSectionOffsets = sectionOffsets;
+    }
+
+    /**
+     * Opens a binary blob.
+     *
+     * @param file the blob file
+     * @param document the empty document the sections are decoded into
+     * @param rootName the name of the root element the sections are added to
+     * @return the blob, or null if the file is not a binary blob of the current format
+     */
+    @Nullable
+    static MergerBlob load(
+            @NonNull File file, @NonNull Document document, @NonNull String rootName)
+            throws IOException {
+        ByteBuffer buffer;
+        if (SdkConstants.currentPlatform() == PLATFORM_WINDOWS) {
+            // A mapped file cannot be replaced on Windows until the mapping is garbage collected,
+            // which would break the next write of the blob.
+            buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        } else {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            int versionIndex = buffer.getInt();
+            int stringCount = buffer.getInt();
+            int stringTableOffset = buffer.getInt();
+            int[] sectionOffsets = new int[buffer.getInt()];
+            for (int i = 0; i < sectionOffsets.length; i++) {
+                sectionOffsets[i] = buffer.getInt();
+            }
+            return new MergerBlob(
+                    buffer,
+                    document,
+                    rootName,
+                    versionIndex,
+                    stringCount,
+                    stringTableOffset,
+                    sectionOffsets);
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IOException("Corrupted merger blob", e);
+        }
+    }
+
+    /** Returns the version of the blob content, as written by {@link #write}. */
+    @NonNull
+    String getVersion() throws IOException {
+        return getString(mVersionIndex);
+    }
+
+    int getSectionCount() {
+        return mSectionOffsets.length;
+    }
+
+    /** Returns the local name of the element of a section, without decoding the section. */
+    @NonNull
+    String getSectionName(int section) throws IOException {
+        ByteBuffer buffer = sectionBuffer(section);
+        try {
+            if (buffer.get() != NODE_ELEMENT) {
+                throw new IOException("Corrupted merger blob");
+            }
+            String name = getString(readVarInt(buffer));
+            return name.substring(name.indexOf(':') + 1);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Corrupted merger blob", e);
+        }
+    }
+
+    /** Decodes the element of a section, and adds it to the root element of the document. */
+    @NonNull
+    Element getSection(int section) throws IOException {
+        ByteBuffer buffer = sectionBuffer(section);
+        try {
+            if (buffer.get() != NODE_ELEMENT) {
+                throw new IOException("Corrupted merger blob");
+            }
+            Element element = readElement(buffer, DEFAULT_NAMESPACES);
+            mRoot.appendChild(element);
+            return element;
+        } catch (BufferUnderflowException | IllegalArgumentException | DOMException e) {
+            throw new IOException("Corrupted merger blob", e);
+        }
+    }
+
+    @NonNull
+    private ByteBuffer sectionBuffer(int section) throws IOException {
+        ByteBuffer buffer = mBuffer.duplicate();
+        try {
+            buffer.position(mSectionOffsets[section]);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupted merger blob", e);
+        }
+        return buffer;
+    }
+
+    @NonNull
+    private Element readElement(@NonNull ByteBuffer buffer, @NonNull Map<String, String> namespaces)
+            throws IOException {
+        String name = getString(readVarInt(buffer));
+        int attributeCount = readVarInt(buffer);
+        String[] attributes = new String[attributeCount * 2];
+        for (int i = 0; i < attributes.length; i++) {
+            attributes[i] = getString(readVarInt(buffer));
+        }
+
+        // Namespace declarations apply to the element declaring them, whatever their position.
+        boolean copied = false;
+        for (int i = 0; i < attributes.length; i += 2) {
+            String attributeName = attributes[i];
+            if (isNamespaceDeclaration(attributeName)) {
+                if (!copied) {
+                    namespaces = new HashMap<>(namespaces);
+                    copied = true;
+                }
+                int colon = attributeName.indexOf(':');
+                String prefix = colon < 0 ? "" : attributeName.substring(colon + 1);
+                namespaces.put(prefix, attributes[i + 1]);
+            }
+        }
+
+        Element element = mDocument.createElementNS(getNamespace(name, namespaces, true), name);
+        for (int i = 0; i < attributes.length; i += 2) {
+            String attributeName = attributes[i];
+            String namespace =
+                    isNamespaceDeclaration(attributeName)
+                            ? XMLConstants.XMLNS_ATTRIBUTE_NS_URI
+                            : getNamespace(attributeName, namespaces, false);
+            element.setAttributeNS(namespace, attributeName, attributes[i + 1]);
+        }
+
+        int childCount = readVarInt(buffer);
+        for (int i = 0; i < childCount; i++) {
+            byte type = buffer.get();
+            switch (type) {
+                case NODE_ELEMENT:
+                    element.appendChild(readElement(buffer, namespaces));
+                    break;
+                case NODE_TEXT:
+                    element.appendChild(mDocument.createTextNode(getString(readVarInt(buffer))));
+                    break;
+                case NODE_CDATA:
+                    element.appendChild(
+                            mDocument.createCDATASection(getString(readVarInt(buffer))));
+                    break;
+                case NODE_COMMENT:
+                    element.appendChild(mDocument.createComment(getString(readVarInt(buffer))));
+                    break;
+                case NODE_PROCESSING_INSTRUCTION:
+                    {
+                        String target = getString(readVarInt(buffer));
+                        String data = getString(readVarInt(buffer));
+                        element.appendChild(mDocument.createProcessingInstruction(target, data));
+                        break;
+                    }
+                default:
+                    throw new IOException("Corrupted merger blob");
+            }
+        }
+        return element;
+    }
+
+    private static boolean isNamespaceDeclaration(@NonNull String attributeName) {
+        return attributeName.equals(XMLConstants.XMLNS_ATTRIBUTE)
+                || attributeName.startsWith(XMLConstants.XMLNS_ATTRIBUTE + ':');
+    }
+
+    @Nullable
+    private static String getNamespace(
+            @NonNull String name, @NonNull Map<String, String> namespaces, boolean isElement)
+            throws IOException {
+        int colon = name.indexOf(':');
+        if (colon < 0) {
+            // Unprefixed attributes are never in the default namespace.
+            String namespace = isElement ? namespaces.get("") : null;
+            return namespace == null || namespace.isEmpty() ? null : namespace;
+        }
+        String namespace = namespaces.get(name.substring(0, colon));
+        if (namespace == null || namespace.isEmpty()) {
+            throw new IOException("Unbound namespace prefix in merger blob: " + name);
+        }
+        return namespace;
+    }
+
+    @NonNull
+    private String getString(int index) throws IOException {
+        if (index < 0 || index >= mStrings.length) {
+            throw new IOException("Corrupted merger blob");
+        }
+        String string = mStrings[index];
+        if (string == null) {
+            try {
+                ByteBuffer buffer = mBuffer.duplicate();
+                buffer.position(mStringTableOffset + index * 4);
+                buffer.position(buffer.getInt());
+                byte[] bytes = new byte[readVarInt(buffer)];
+                buffer.get(bytes);
+                string = new String(bytes, StandardCharsets.UTF_8);
+            } catch (BufferUnderflowException
+                    | IllegalArgumentException
+                    | NegativeArraySizeException e) {
+                throw new IOException("Corrupted merger blob", e);
+            }
+            mStrings[index] = string;
+        }
+        return string;
+    }
+
+    private static int readVarInt(@NonNull ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupted merger blob");
+    }
+
+    /**
+     * Writes a binary blob.
+     *
+     * @param file the file to write
+     * @param version the version of the blob content
+     * @param sections the top level elements to store
+     */
+    static void write(
+            @NonNull File file, @NonNull String version, @NonNull List<Element> sections)
+            throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        int versionIndex = addString(strings, version);
+
+        List<byte[]> encodedSections = new ArrayList<>(sections.size());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Element section : sections) {
+            out.reset();
+            writeNode(out, section, strings);
+            encodedSections.add(out.toByteArray());
+        }
+
+        int offset = 6 * 4 + sections.size() * 4;
+        int[] sectionOffsets = new int[sections.size()];
+        for (int i = 0; i < sectionOffsets.length; i++) {
+            sectionOffsets[i] = offset;
+            offset += encodedSections.get(i).length;
+        }
+        int stringTableOffset = offset;
+
+        try (DataOutputStream stream =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            stream.writeInt(MAGIC);
+            stream.writeInt(FORMAT_VERSION);
+            stream.writeInt(versionIndex);
+            stream.writeInt(strings.size());
+            stream.writeInt(stringTableOffset);
+            stream.writeInt(sectionOffsets.length);
+            for (int sectionOffset : sectionOffsets) {
+                stream.writeInt(sectionOffset);
+            }
+            for (byte[] encodedSection : encodedSections) {
+                stream.write(encodedSection);
+            }
+
+            // The string offsets, then the strings.
+            List<byte[]> encodedStrings = new ArrayList<>(strings.size());
+            offset = stringTableOffset + strings.size() * 4;
+            for (String string : strings.keySet()) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                encodedStrings.add(bytes);
+                stream.writeInt(offset);
+                offset += varIntSize(bytes.length) + bytes.length;
+            }
+            for (byte[] bytes : encodedStrings) {
+                writeVarInt(stream, bytes.length);
+                stream.write(bytes);
+            }
+        }
+    }
+
+    /** Writes an element, or one of the children returned by {@link #getChildren}. */
+    private static void writeNode(
+            @NonNull ByteArrayOutputStream out,
+            @NonNull Node node,
+            @NonNull Map<String, Integer> strings) {
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                {
+                    out.write(NODE_ELEMENT);
+                    writeVarInt(out, addString(strings, ((Element) node).getTagName()));
+                    NamedNodeMap attributes = node.getAttributes();
+                    writeVarInt(out, attributes.getLength());
+                    for (int i = 0, n = attributes.getLength(); i < n; i++) {
+                        Node attribute = attributes.item(i);
+                        writeVarInt(out, addString(strings, attribute.getNodeName()));
+                        writeVarInt(out, addString(strings, attribute.getNodeValue()));
+                    }
+                    List<Node> children = getChildren(node);
+                    writeVarInt(out, children.size());
+                    for (Node child : children) {
+                        writeNode(out, child, strings);
+                    }
+                    break;
+                }
+            case Node.TEXT_NODE:
+                out.write(NODE_TEXT);
+                writeVarInt(out, addString(strings, node.getNodeValue()));
+                break;
+            case Node.CDATA_SECTION_NODE:
+                out.write(NODE_CDATA);
+                writeVarInt(out, addString(strings, node.getNodeValue()));
+                break;
+            case Node.COMMENT_NODE:
+                out.write(NODE_COMMENT);
+                writeVarInt(out, addString(strings, node.getNodeValue()));
+                break;
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                out.write(NODE_PROCESSING_INSTRUCTION);
+                writeVarInt(out, addString(strings, ((ProcessingInstruction) node).getTarget()));
+                writeVarInt(out, addString(strings, ((ProcessingInstruction) node).getData()));
+                break;
+        }
+    }
+
+    /**
+     * Returns the children of an element, with entity references replaced by their content,
+     * adjacent text nodes merged and empty ones dropped, as they would be after writing and parsing
+     * the XML blob.
+     */
+    @NonNull
+    private static List<Node> getChildren(@NonNull Node node) {
+        List<Node> children = new ArrayList<>();
+        addExpandedChildren(node, children);
+        List<Node> result = new ArrayList<>(children.size());
+        int i = 0;
+        int n = children.size();
+        while (i < n) {
+            Node child = children.get(i++);
+            if (child.getNodeType() != Node.TEXT_NODE) {
+                result.add(child);
+                continue;
+            }
+            if (i < n && children.get(i).getNodeType() == Node.TEXT_NODE) {
+                StringBuilder text = new StringBuilder(child.getNodeValue());
+                while (i < n && children.get(i).getNodeType() == Node.TEXT_NODE) {
+                    text.append(children.get(i++).getNodeValue());
+                }
+                child = node.getOwnerDocument().createTextNode(text.toString());
+            }
+            if (!child.getNodeValue().isEmpty()) {
+                result.add(child);
+            }
+        }
+        return result;
+    }
+
+    private static void addExpandedChildren(@NonNull Node node, @NonNull List<Node> result) {
+        NodeList children = node.getChildNodes();
+        for (int i = 0, n = children.getLength(); i < n; i++) {
+            Node child = children.item(i);
+            switch (child.getNodeType()) {
+                case Node.ELEMENT_NODE:
+                case Node.TEXT_NODE:
+                case Node.CDATA_SECTION_NODE:
+                case Node.COMMENT_NODE:
+                case Node.PROCESSING_INSTRUCTION_NODE:
+                    result.add(child);
+                    break;
+                case Node.ENTITY_REFERENCE_NODE:
+                    // Unknown entities have no content, and are dropped.
+                    addExpandedChildren(child, result);
+                    break;
+                default:
+                    // Other node types can't be children of an element.
+                    break;
+            }
+        }
+    }
+
+    private static int addString(@NonNull Map<String, Integer> strings, @NonNull String string) {
+        Integer index = strings.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.put(string, index);
+        }
+        return index;
+    }
+
+    private static void writeVarInt(@NonNull ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeVarInt(@NonNull DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+}
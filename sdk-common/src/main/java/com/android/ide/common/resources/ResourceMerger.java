@@ -28,6 +28,7 @@ import com.android.ide.common.rendering.api.ResourceNamespace;
 import com.android.ide.common.resources.configuration.FolderConfiguration;
 import com.android.ide.common.resources.configuration.ResourceQualifier;
 import com.android.resources.ResourceType;
+import com.android.utils.ILogger;
 import com.android.utils.Pair;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.HashBasedTable;
@@ -39,6 +40,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -379,6 +381,30 @@ public class ResourceMerger extends DataMerger<ResourceMergerItem, ResourceFile,
         super.addDataSet(resourceSet);
     }
 
+    /**
+     * Loads the given sets from their files and adds them to the merger, in order.
+     *
+     * <p>The files of all the sets are parsed concurrently on the given executor, see {@link
+     * ResourceSet#loadFromFiles(List, ILogger, DocumentBuilderFactory, Executor)}. The overrides
+     * between the sets are still resolved in the order of the sets by {@link
+     * #mergeData(MergeConsumer, boolean)}.
+     *
+     * @param resourceSets the sets to load and add
+     * @param logger logs errors
+     * @param executor the executor parsing the files
+     * @throws MergingException if something goes wrong
+     */
+    public void loadAndAddDataSets(
+            @NonNull List<ResourceSet> resourceSets,
+            @NonNull ILogger logger,
+            @NonNull Executor executor)
+            throws MergingException {
+        ResourceSet.loadFromFiles(resourceSets, logger, mFactory, executor);
+        for (ResourceSet resourceSet : resourceSets) {
+            addDataSet(resourceSet);
+        }
+    }
+
 
     /*
      * Overridden to clear the cache filter between runs. Building the cache is relatively cheap
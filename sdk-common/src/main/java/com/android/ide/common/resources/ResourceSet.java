@@ -32,6 +32,7 @@ import com.android.resources.ResourceType;
 import com.android.utils.ILogger;
 import com.android.utils.SdkUtils;
 import com.google.common.base.MoreObjects;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import java.io.File;
@@ -42,7 +43,12 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -269,27 +275,168 @@ public class ResourceSet extends DataSet<ResourceMergerItem, ResourceFile> {
         }
     }
 
+    @Override
+    public void loadFromFiles(ILogger logger, DocumentBuilderFactory factory)
+            throws MergingException {
+        addLoadedFiles(collectFilesToLoad(getSourceFiles()), logger, factory);
+    }
+
+    /**
+     * Loads several resource sets from their files, parsing the files of all the sets concurrently
+     * on the given executor.
+     *
+     * <p>This is equivalent to calling {@link #loadFromFiles(ILogger, DocumentBuilderFactory)} on
+     * each set in order: the parsed files are added to their set, and the errors reported, in the
+     * order of a sequential load, so the result does not depend on the scheduling of the parsing.
+     * The {@link ResourcePreprocessor} of the sets must be thread safe.
+     *
+     * @param resourceSets the sets to load
+     * @param logger logs errors
+     * @param factory the factory used to parse the XML files. It is shared by the parsing threads,
+     *     which don't use it concurrently
+     * @param executor the executor parsing the files
+     * @throws MergingException if something goes wrong
+     */
+    public static void loadFromFiles(
+            @NonNull List<ResourceSet> resourceSets,
+            @NonNull ILogger logger,
+            @NonNull DocumentBuilderFactory factory,
+            @NonNull Executor executor)
+            throws MergingException {
+        // JAXP factories are not thread safe.
+        DocumentBuilderFactory sharedFactory = new SynchronizedDocumentBuilderFactory(factory);
+        List<List<FileToLoad>> filesPerSet = new ArrayList<>(resourceSets.size());
+        try {
+            for (ResourceSet resourceSet : resourceSets) {
+                List<FileToLoad> files;
+                if (resourceSet instanceof GeneratedResourceSet) {
+                    // Generated sets are filled by their original set.
+                    files = Collections.emptyList();
+                } else {
+                    files = resourceSet.collectFilesToLoad(resourceSet.getSourceFiles());
+                    for (FileToLoad file : files) {
+                        file.startParsing(resourceSet, logger, sharedFactory, executor);
+                    }
+                }
+                filesPerSet.add(files);
+            }
+
+            for (int i = 0; i < resourceSets.size(); i++) {
+                if (!(resourceSets.get(i) instanceof GeneratedResourceSet)) {
+                    resourceSets.get(i).addLoadedFiles(filesPerSet.get(i), logger, sharedFactory);
+                }
+            }
+        } finally {
+            // Don't keep parsing files that won't be used after an error.
+            for (List<FileToLoad> files : filesPerSet) {
+                for (FileToLoad file : files) {
+                    file.cancel();
+                }
+            }
+        }
+    }
+
     @Override
     protected void readSourceFolder(
             File sourceFolder, ILogger logger, DocumentBuilderFactory factory)
             throws MergingException {
-        List<Message> errors = Lists.newArrayList();
-        File[] folders = sourceFolder.listFiles();
-        if (folders != null) {
-            for (File folder : folders) {
-                if (folder.isDirectory() && !isIgnored(folder)) {
-                    FolderData folderData = getFolderData(folder);
-                    if (folderData != null) {
-                        try {
-                            parseFolder(sourceFolder, folder, folderData, logger, factory);
-                        } catch (MergingException e) {
-                            errors.addAll(e.getMessages());
+        addLoadedFiles(
+                collectFilesToLoad(Collections.singletonList(sourceFolder)), logger, factory);
+    }
+
+    /**
+     * Lists the resource files of the given source folders and files, in the order they are
+     * loaded.
+     */
+    @NonNull
+    private List<FileToLoad> collectFilesToLoad(@NonNull List<File> sourceFiles) {
+        List<FileToLoad> result = new ArrayList<>();
+        for (File sourceFile : sourceFiles) {
+            if (sourceFile.isDirectory()) {
+                File[] folders = sourceFile.listFiles();
+                if (folders == null) {
+                    continue;
+                }
+                for (File folder : folders) {
+                    if (!folder.isDirectory() || isIgnored(folder)) {
+                        continue;
+                    }
+                    FolderData folderData;
+                    try {
+                        folderData = getFolderData(folder);
+                    } catch (MergingException e) {
+                        // The rest of the source folder is not loaded.
+                        result.add(new FileToLoad(sourceFile, null, null, null, e));
+                        break;
+                    }
+                    if (folderData == null) {
+                        continue;
+                    }
+                    File[] files = folder.listFiles();
+                    if (files == null) {
+                        continue;
+                    }
+                    for (File file : files) {
+                        if (file.isFile() && !isIgnored(file)) {
+                            result.add(new FileToLoad(sourceFile, folder, folderData, file, null));
                         }
                     }
                 }
+            } else if (sourceFile.isFile()) {
+                // TODO support resource bundle
+                result.add(new FileToLoad(sourceFile, null, null, sourceFile, null));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the parsed files to the set, in order.
+     *
+     * <p>As with a sequential load, a file that fails to load stops the loading of its folder, and
+     * the errors of all folders are reported together. A source file that fails to load is
+     * reported right away.
+     */
+    private void addLoadedFiles(
+            @NonNull List<FileToLoad> files,
+            @NonNull ILogger logger,
+            @NonNull DocumentBuilderFactory factory)
+            throws MergingException {
+        List<Message> errors = Lists.newArrayList();
+        File failedFolder = null;
+        for (FileToLoad file : files) {
+            if (file.error != null) {
+                errors.addAll(file.error.getMessages());
+                continue;
+            }
+            if (file.folder == null) {
+                processNewResourceFile(file.sourceFolder, file.getResult(this, logger, factory));
+                continue;
+            }
+            if (file.folder == failedFolder) {
+                continue;
+            }
+            try {
+                processNewResourceFile(file.sourceFolder, file.getResult(this, logger, factory));
+            } catch (MergingException e) {
+                errors.addAll(e.getMessages());
+                failedFolder = file.folder;
             }
         }
         MergingException.throwIfNonEmpty(errors);
+        checkItems();
+    }
+
+    @Nullable
+    private ResourceFile parseFile(
+            @NonNull FileToLoad file,
+            @NonNull ILogger logger,
+            @NonNull DocumentBuilderFactory factory)
+            throws MergingException {
+        if (file.folderData == null) {
+            return createFileAndItems(file.sourceFolder, file.file, logger, factory);
+        }
+        return createResourceFile(file.file, file.folderData, logger, factory);
     }
 
     @Override
@@ -460,36 +607,6 @@ public class ResourceSet extends DataSet<ResourceMergerItem, ResourceFile> {
         resourceFile.addItems(addedItems.values());
     }
 
-    /**
-     * Reads the content of a typed resource folder (sub folder to the root of res folder), and
-     * loads the resources from it.
-     *
-     * @param sourceFolder the main res folder
-     * @param folder the folder to read.
-     * @param folderData the folder Data
-     * @param logger a logger object
-     * @throws MergingException if something goes wrong
-     */
-    private void parseFolder(
-            File sourceFolder,
-            File folder,
-            FolderData folderData,
-            ILogger logger,
-            DocumentBuilderFactory factory)
-            throws MergingException {
-        File[] files = folder.listFiles();
-        if (files != null && files.length > 0) {
-            for (File file : files) {
-                if (!file.isFile() || isIgnored(file)) {
-                    continue;
-                }
-
-                ResourceFile resourceFile = createResourceFile(file, folderData, logger, factory);
-                processNewResourceFile(sourceFolder, resourceFile);
-            }
-        }
-    }
-
     private void processNewResourceFile(File sourceFolder, ResourceFile resourceFile)
             throws MergingException {
         if (resourceFile != null) {
@@ -626,6 +743,146 @@ public class ResourceSet extends DataSet<ResourceMergerItem, ResourceFile> {
         mIsFromDependency = fromDependency;
     }
 
+    /**
+     * A {@link DocumentBuilderFactory} that can be used by several threads at once, by serializing
+     * the calls to the factory it wraps. Only the creation of the builders is serialized, each
+     * builder is used by a single thread.
+     */
+    private static final class SynchronizedDocumentBuilderFactory extends DocumentBuilderFactory {
+        @NonNull private final DocumentBuilderFactory delegate;
+
+        SynchronizedDocumentBuilderFactory(@NonNull DocumentBuilderFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+            synchronized (delegate) {
+                return delegate.newDocumentBuilder();
+            }
+        }
+
+        @Override
+        public boolean isNamespaceAware() {
+            synchronized (delegate) {
+                return delegate.isNamespaceAware();
+            }
+        }
+
+        @Override
+        public boolean isValidating() {
+            synchronized (delegate) {
+                return delegate.isValidating();
+            }
+        }
+
+        @Override
+        public boolean isIgnoringComments() {
+            synchronized (delegate) {
+                return delegate.isIgnoringComments();
+            }
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            synchronized (delegate) {
+                delegate.setAttribute(name, value);
+            }
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            synchronized (delegate) {
+                return delegate.getAttribute(name);
+            }
+        }
+
+        @Override
+        public void setFeature(String name, boolean value) throws ParserConfigurationException {
+            synchronized (delegate) {
+                delegate.setFeature(name, value);
+            }
+        }
+
+        @Override
+        public boolean getFeature(String name) throws ParserConfigurationException {
+            synchronized (delegate) {
+                return delegate.getFeature(name);
+            }
+        }
+    }
+
+    /** A resource file to load, or an error found while listing the files of a source folder. */
+    private static final class FileToLoad {
+        @NonNull final File sourceFolder;
+        /** The resource folder containing the file, or null if it is a source file itself. */
+        @Nullable final File folder;
+        @Nullable final FolderData folderData;
+        @Nullable final File file;
+        @Nullable final MergingException error;
+        /** The parsing of the file running on an executor, if any. */
+        @Nullable private CompletableFuture<ResourceFile> parsing;
+
+        FileToLoad(
+                @NonNull File sourceFolder,
+                @Nullable File folder,
+                @Nullable FolderData folderData,
+                @Nullable File file,
+                @Nullable MergingException error) {
+            this.sourceFolder = sourceFolder;
+            this.folder = folder;
+            this.folderData = folderData;
+            this.file = file;
+            this.error = error;
+        }
+
+        void startParsing(
+                @NonNull ResourceSet resourceSet,
+                @NonNull ILogger logger,
+                @NonNull DocumentBuilderFactory factory,
+                @NonNull Executor executor) {
+            if (error != null) {
+                return;
+            }
+            parsing =
+                    CompletableFuture.supplyAsync(
+                            () -> {
+                                try {
+                                    return resourceSet.parseFile(this, logger, factory);
+                                } catch (MergingException e) {
+                                    throw new CompletionException(e);
+                                }
+                            },
+                            executor);
+        }
+
+        /** Returns the parsed file, parsing it on the calling thread if it was not started. */
+        @Nullable
+        ResourceFile getResult(
+                @NonNull ResourceSet resourceSet,
+                @NonNull ILogger logger,
+                @NonNull DocumentBuilderFactory factory)
+                throws MergingException {
+            if (parsing == null) {
+                return resourceSet.parseFile(this, logger, factory);
+            }
+            try {
+                return parsing.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                Throwables.throwIfInstanceOf(cause, MergingException.class);
+                Throwables.throwIfUnchecked(cause);
+                throw e;
+            }
+        }
+
+        void cancel() {
+            if (parsing != null) {
+                parsing.cancel(false);
+            }
+        }
+    }
+
     /**
      * temp structure containing a qualifier string and a {@link com.android.resources.ResourceType}.
      */
@@ -15,6 +15,7 @@
  */
 package com.android.ide.common.symbols;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.android.SdkConstants;
@@ -30,23 +31,28 @@ import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Interner;
 import com.google.common.collect.Interners;
+import com.google.common.io.ByteStreams;
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UncheckedIOException;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -161,7 +167,11 @@ public final class SymbolIo {
             @NonNull BufferedReader reader, @NonNull String filename, @Nullable String tablePackage)
             throws Exception {
         return new SymbolIo()
-                .read(reader.lines(), filename, tablePackage, ReadConfiguration.AAPT_NO_VALUES);
+                .read(
+                        reader.lines().iterator(),
+                        filename,
+                        tablePackage,
+                        ReadConfiguration.AAPT_NO_VALUES);
     }
 
     /**
@@ -184,9 +194,13 @@ public final class SymbolIo {
             @NonNull String fileName,
             @Nullable String tablePackage)
             throws Exception {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+        try (InputStream stream = inputStream) {
             return new SymbolIo()
-                    .read(reader.lines(), fileName, tablePackage, ReadConfiguration.PUBLIC_FILE);
+                    .read(
+                            new ByteLineIterator(ByteBuffer.wrap(ByteStreams.toByteArray(stream))),
+                            fileName,
+                            tablePackage,
+                            ReadConfiguration.PUBLIC_FILE);
         }
     }
 
@@ -196,20 +210,20 @@ public final class SymbolIo {
             @Nullable String tablePackage,
             @NonNull ReadConfiguration readConfiguration)
             throws Exception {
-        String filename = file.getAbsolutePath();
-        try (Stream<String> lines = Files.lines(file.toPath())) {
-            return read(lines, filename, tablePackage, readConfiguration);
-        }
+        return read(
+                new ByteLineIterator(readFile(file.toPath())),
+                file.getAbsolutePath(),
+                tablePackage,
+                readConfiguration);
     }
 
     @NonNull
     private SymbolTable read(
-            @NonNull Stream<String> lines,
+            @NonNull Iterator<? extends CharSequence> linesIterator,
             @NonNull String filename,
             @Nullable String tablePackage,
             @NonNull ReadConfiguration readConfiguration)
             throws Exception {
-        Iterator<String> linesIterator = lines.iterator();
         int startLine = checkFileTypeHeader(linesIterator, readConfiguration, filename);
         SymbolTable.FastBuilder table =
                 new SymbolLineReader(
@@ -243,10 +257,10 @@ public final class SymbolIo {
      */
     @NonNull
     public SymbolTable readSymbolListWithPackageName(@NonNull Path file) throws IOException {
-        try (Stream<String> lines = Files.lines(file, UTF_8)) {
-            return readWithPackage(
-                    lines, file.toString(), ReadConfiguration.SYMBOL_LIST_WITH_PACKAGE);
-        }
+        return readWithPackage(
+                new ByteLineIterator(readFile(file)),
+                file.toString(),
+                ReadConfiguration.SYMBOL_LIST_WITH_PACKAGE);
     }
 
     /**
@@ -258,9 +272,11 @@ public final class SymbolIo {
      */
     @NonNull
     public static SymbolTable readRDef(@NonNull Path file) throws IOException {
-        try (Stream<String> lines = Files.lines(file, UTF_8)) {
-            return new SymbolIo().readWithPackage(lines, file.toString(), ReadConfiguration.R_DEF);
-        }
+        return new SymbolIo()
+                .readWithPackage(
+                        new ByteLineIterator(readFile(file)),
+                        file.toString(),
+                        ReadConfiguration.R_DEF);
     }
 
     /**
@@ -298,31 +314,27 @@ public final class SymbolIo {
     @NonNull
     public static SymbolTable readRDefFromInputStream(
             @NonNull String filePath, @NonNull InputStream fileInputStream) throws IOException {
-        try (BufferedReader reader =
-                new BufferedReader(
-                        new InputStreamReader(
-                                NonClosingStreams.nonClosing(fileInputStream), UTF_8))) {
-            return new SymbolIo()
-                    .readWithPackage(reader.lines(), filePath, ReadConfiguration.R_DEF);
-        }
+        return new SymbolIo()
+                .readWithPackage(
+                        new ByteLineIterator(
+                                ByteBuffer.wrap(ByteStreams.toByteArray(fileInputStream))),
+                        filePath,
+                        ReadConfiguration.R_DEF);
     }
 
     @NonNull
     private SymbolTable readWithPackage(
-            @NonNull Stream<String> lines,
+            @NonNull Iterator<? extends CharSequence> linesIterator,
             @NonNull String filePath,
             @NonNull ReadConfiguration readConfiguration)
             throws IOException {
-
-        Iterator<String> linesIterator = lines.iterator();
-
         int startLine = checkFileTypeHeader(linesIterator, readConfiguration, filePath);
         if (!linesIterator.hasNext()) {
             throw new IOException(
                     "Internal error: Symbol file with package cannot be empty. File located at: "
                             + filePath);
         }
-        String tablePackage = linesIterator.next().trim();
+        String tablePackage = linesIterator.next().toString().trim();
         SymbolTable.FastBuilder table =
                 new SymbolLineReader(
                                 readConfiguration,
@@ -337,7 +349,7 @@ public final class SymbolIo {
     }
 
     private static int checkFileTypeHeader(
-            @NonNull Iterator<String> lines,
+            @NonNull Iterator<? extends CharSequence> lines,
             @NonNull ReadConfiguration readConfiguration,
             @NonNull String filename)
             throws IOException {
@@ -352,8 +364,8 @@ public final class SymbolIo {
                             + readConfiguration
                             + "'");
         }
-        String firstLine = lines.next();
-        if (!lines.hasNext() || !readConfiguration.fileTypeHeader.equals(firstLine)) {
+        CharSequence firstLine = lines.next();
+        if (!lines.hasNext() || !readConfiguration.fileTypeHeader.contentEquals(firstLine)) {
             throw new IOException(
                     "Internal Error: Invalid symbol file '"
                             + filename
@@ -371,20 +383,20 @@ public final class SymbolIo {
     private static class SymbolLineReader {
         @NonNull private final SymbolTable.FastBuilder table;
 
-        @NonNull private final Iterator<String> lines;
+        @NonNull private final Iterator<? extends CharSequence> lines;
         @NonNull private final String filename;
         @NonNull private final ReadConfiguration readConfiguration;
 
-        // Current line number and content
+        // Current line number and content, which may only be valid until the next line is read
         private int currentLineNumber;
-        @Nullable private String currentLineContent;
+        @Nullable private CharSequence currentLineContent;
 
         // Reuse list to avoid allocations.
         private final List<SymbolData> aaptStyleableChildrenCache = new ArrayList<>(10);
 
         SymbolLineReader(
                 @NonNull ReadConfiguration readConfiguration,
-                @NonNull Iterator<String> lines,
+                @NonNull Iterator<? extends CharSequence> lines,
                 @NonNull String filename,
                 @NonNull Interner<Symbol> symbolInterner,
                 int startLine) {
@@ -493,7 +505,8 @@ public final class SymbolIo {
                 return;
             }
             // Keep the current location to report if there is an error
-            String styleableLineContent = currentLineContent;
+            String styleableLineContent =
+                    currentLineContent != null ? currentLineContent.toString() : null;
             int styleableLineIndex = currentLineNumber;
             final String data_name = data.name + "_";
             aaptStyleableChildrenCache.clear();
@@ -625,118 +638,111 @@ public final class SymbolIo {
     }
 
     @NonNull
-    private static SymbolData readAaptLine(@NonNull String line) throws IOException {
+    private static SymbolData readAaptLine(@NonNull CharSequence line, boolean readValues)
+            throws IOException {
         // format is "<type> <class> <name> <value>"
         // don't want to split on space as value could contain spaces.
-        int pos = line.indexOf(' ');
-        String typeName = line.substring(0, pos);
-        SymbolJavaType type = SymbolJavaType.getEnum(typeName);
+        int pos = indexOf(line, ' ', 0);
+        SymbolJavaType type = getJavaType(line, 0, pos);
         if (type == null) {
-            throw new IOException("Invalid symbol type " + typeName);
+            throw new IOException("Invalid symbol type " + substring(line, 0, pos));
         }
 
-        int pos2 = line.indexOf(' ', pos + 1);
-        String className = line.substring(pos + 1, pos2);
-
-        ResourceType resourceType = ResourceType.fromClassName(className);
+        int pos2 = indexOf(line, ' ', pos + 1);
+        ResourceType resourceType = getResourceType(line, pos + 1, pos2);
         if (resourceType == null) {
-            throw new IOException("Invalid resource type " + className);
+            throw new IOException("Invalid resource type " + substring(line, pos + 1, pos2));
         }
 
-        int pos3 = line.indexOf(' ', pos2 + 1);
-        String name = line.substring(pos2 + 1, pos3);
-        String value = line.substring(pos3 + 1).trim();
+        int pos3 = indexOf(line, ' ', pos2 + 1);
+        String name = substring(line, pos2 + 1, pos3);
+        // The value is only used when the values are read, skip creating a string for it.
+        String value = readValues ? trim(line, pos3 + 1) : "";
 
         return new SymbolData(resourceType, name, type, value);
     }
 
     @NonNull
-    private static SymbolData readPartialRLine(@NonNull String line) throws IOException {
+    private static SymbolData readPartialRLine(@NonNull CharSequence line) throws IOException {
         // format is "<access qualifier> <type> <class> <name>"
-        int pos = line.indexOf(' ');
-        String accessName = line.substring(0, pos);
-        ResourceVisibility accessibility = ResourceVisibility.getEnum(accessName);
+        int pos = indexOf(line, ' ', 0);
+        ResourceVisibility accessibility = getVisibility(line, 0, pos);
         if (accessibility == null) {
-            throw new IOException("Invalid resource access qualifier " + accessName);
+            throw new IOException(
+                    "Invalid resource access qualifier " + substring(line, 0, pos));
         }
 
-        int pos2 = line.indexOf(' ', pos + 1);
-        String typeName = line.substring(pos + 1, pos2);
-        SymbolJavaType type = SymbolJavaType.getEnum(typeName);
+        int pos2 = indexOf(line, ' ', pos + 1);
+        SymbolJavaType type = getJavaType(line, pos + 1, pos2);
         if (type == null) {
-            throw new IOException("Invalid symbol type " + typeName);
+            throw new IOException("Invalid symbol type " + substring(line, pos + 1, pos2));
         }
 
-        int pos3 = line.indexOf(' ', pos2 + 1);
-        String className = line.substring(pos2 + 1, pos3);
-
-        ResourceType resourceType = ResourceType.fromClassName(className);
+        int pos3 = indexOf(line, ' ', pos2 + 1);
+        ResourceType resourceType = getResourceType(line, pos2 + 1, pos3);
         if (resourceType == null) {
-            throw new IOException("Invalid resource type " + className);
+            throw new IOException("Invalid resource type " + substring(line, pos2 + 1, pos3));
         }
 
-        String name = line.substring(pos3 + 1);
+        String name = substring(line, pos3 + 1, line.length());
 
         return new SymbolData(accessibility, resourceType, name, type, "");
     }
 
     @NonNull
-    private static SymbolData readPublicTxtLine(@NonNull String line) throws IOException {
+    private static SymbolData readPublicTxtLine(@NonNull CharSequence line) throws IOException {
         // format is "<class> <name>"
-        int pos = line.indexOf(' ');
-        String className = line.substring(0, pos);
-        ResourceType resourceType = ResourceType.fromClassName(className);
+        int pos = indexOf(line, ' ', 0);
+        ResourceType resourceType = getResourceType(line, 0, pos);
         if (resourceType == null) {
-            throw new IOException("Invalid resource type " + className);
+            throw new IOException("Invalid resource type " + substring(line, 0, pos));
         }
         // If it's a styleable it must be the parent. Styleable-children are only references to
         // attrs, if a child is to be public then the corresponding attr will be marked as public.
         // Styleable children (int styleable) should not be present in the public.txt.
-        String typeName = resourceType == ResourceType.STYLEABLE ? "int[]" : "int";
-        SymbolJavaType type = SymbolJavaType.getEnum(typeName);
-        if (type == null) {
-            throw new IOException("Invalid symbol type " + typeName);
-        }
+        SymbolJavaType type =
+                resourceType == ResourceType.STYLEABLE
+                        ? SymbolJavaType.INT_LIST
+                        : SymbolJavaType.INT;
 
-        String name = line.substring(pos + 1);
+        String name = substring(line, pos + 1, line.length());
         return new SymbolData(ResourceVisibility.PUBLIC, resourceType, name, type, "");
     }
 
     @NonNull
-    private static SymbolData readSymbolListWithPackageLine(@NonNull String line)
+    private static SymbolData readSymbolListWithPackageLine(@NonNull CharSequence line)
             throws IOException {
         // format is "<type> <name>[ <child>[ <child>[ ...]]]"
-        int startPos = line.indexOf(' ');
+        int startPos = indexOf(line, ' ', 0);
         boolean maybeDefinition = false;
-        String typeName = line.substring(0, startPos);
         ResourceType resourceType;
-        if (typeName.equals("attr?")) {
+        if (regionEquals(line, 0, startPos, "attr?")) {
             maybeDefinition = true;
             resourceType = ResourceType.ATTR;
         } else {
-            resourceType = ResourceType.fromClassName(typeName);
+            resourceType = getResourceType(line, 0, startPos);
         }
         if (resourceType == null) {
-            throw new IOException("Invalid symbol type " + typeName);
+            throw new IOException("Invalid symbol type " + substring(line, 0, startPos));
         }
-        int endPos = line.indexOf(' ', startPos + 1);
+        int endPos = indexOf(line, ' ', startPos + 1);
         // If styleable with children
         if (resourceType == ResourceType.STYLEABLE && endPos > 0) {
-            String name = line.substring(startPos + 1, endPos);
+            String name = substring(line, startPos + 1, endPos);
             startPos = endPos + 1;
             ImmutableList.Builder<String> children = ImmutableList.builder();
             while (true) {
-                endPos = line.indexOf(' ', startPos);
+                endPos = indexOf(line, ' ', startPos);
                 if (endPos == -1) {
-                    children.add(line.substring(startPos));
+                    children.add(substring(line, startPos, line.length()));
                     break;
                 }
-                children.add(line.substring(startPos, endPos));
+                children.add(substring(line, startPos, endPos));
                 startPos = endPos + 1;
             }
             return new SymbolData(name, children.build());
         } else {
-            String name = line.substring(startPos + 1);
+            String name = substring(line, startPos + 1, line.length());
             if (resourceType == ResourceType.ATTR) {
                 return new SymbolData(name, maybeDefinition);
             } else {
@@ -745,6 +751,236 @@ public final class SymbolIo {
         }
     }
 
+    // The lookups below match a range of a line without creating a string for it. Like
+    // String.substring, they throw IndexOutOfBoundsException for an invalid range, which is
+    // reported as a format error of the line.
+
+    private static final SymbolJavaType[] JAVA_TYPES = SymbolJavaType.values();
+
+    private static final ResourceVisibility[] VISIBILITIES = ResourceVisibility.values();
+
+    /** The resource types that {@link ResourceType#fromClassName} can return. */
+    private static final ResourceType[] CLASS_NAME_TYPES =
+            Arrays.stream(ResourceType.values())
+                    .filter(type -> ResourceType.fromClassName(type.getName()) == type)
+                    .toArray(ResourceType[]::new);
+
+    @Nullable
+    private static SymbolJavaType getJavaType(@NonNull CharSequence line, int start, int end) {
+        for (SymbolJavaType type : JAVA_TYPES) {
+            if (regionEquals(line, start, end, type.getTypeName())) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private static ResourceType getResourceType(@NonNull CharSequence line, int start, int end) {
+        for (ResourceType type : CLASS_NAME_TYPES) {
+            if (regionEquals(line, start, end, type.getName())) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private static ResourceVisibility getVisibility(
+            @NonNull CharSequence line, int start, int end) {
+        for (ResourceVisibility visibility : VISIBILITIES) {
+            if (regionEquals(line, start, end, visibility.getName())) {
+                return visibility;
+            }
+        }
+        return null;
+    }
+
+    private static boolean regionEquals(
+            @NonNull CharSequence line, int start, int end, @NonNull String expected) {
+        checkRange(line, start, end);
+        if (end - start != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (line.charAt(start + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(@NonNull CharSequence line, char c, int fromIndex) {
+        for (int i = fromIndex; i < line.length(); i++) {
+            if (line.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @NonNull
+    private static String substring(@NonNull CharSequence line, int start, int end) {
+        checkRange(line, start, end);
+        return line.subSequence(start, end).toString();
+    }
+
+    /** Returns the end of the line from {@code start}, trimmed like {@link String#trim()}. */
+    @NonNull
+    private static String trim(@NonNull CharSequence line, int start) {
+        int end = line.length();
+        checkRange(line, start, end);
+        while (start < end && line.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return line.subSequence(start, end).toString();
+    }
+
+    private static void checkRange(@NonNull CharSequence line, int start, int end) {
+        if (start < 0 || end < start || end > line.length()) {
+            throw new IndexOutOfBoundsException(
+                    "begin " + start + ", end " + end + ", length " + line.length());
+        }
+    }
+
+    /** Files from this size are memory mapped rather than read. */
+    private static final long MIN_MAPPED_FILE_SIZE = 64 * 1024;
+
+    @NonNull
+    private static ByteBuffer readFile(@NonNull Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            // A mapped file can't be deleted or replaced on Windows until the mapping is garbage
+            // collected, and small files are cheaper to read than to map.
+            if (size >= MIN_MAPPED_FILE_SIZE
+                    && SdkConstants.currentPlatform() != SdkConstants.PLATFORM_WINDOWS) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(size));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    /**
+     * Iterates over the lines of UTF-8 text held in a buffer, split like {@link
+     * BufferedReader#readLine()}.
+     *
+     * <p>To avoid creating a string for each line, ASCII lines are returned as a view of the buffer
+     * that is only valid until the next call to {@link #next()}. Strings are only created for the
+     * parts of the line that are kept. Lines with other characters are decoded to strings.
+     */
+    private static final class ByteLineIterator implements Iterator<CharSequence> {
+        @NonNull private final ByteBuffer buffer;
+        @NonNull private final AsciiLine line = new AsciiLine();
+        @NonNull private byte[] scratch = new byte[128];
+        private int position;
+
+        ByteLineIterator(@NonNull ByteBuffer buffer) {
+            this.buffer = buffer;
+            position = buffer.position();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < buffer.limit();
+        }
+
+        @NonNull
+        @Override
+        public CharSequence next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int limit = buffer.limit();
+            int start = position;
+            int end = start;
+            boolean ascii = true;
+            while (end < limit) {
+                byte b = buffer.get(end);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                ascii &= b >= 0;
+                end++;
+            }
+            position = end + 1;
+            if (end + 1 < limit && buffer.get(end) == '\r' && buffer.get(end + 1) == '\n') {
+                position++;
+            }
+
+            if (!ascii) {
+                return new String(copy(start, end - start), 0, end - start, UTF_8);
+            }
+            line.start = start;
+            line.length = end - start;
+            return line;
+        }
+
+        /** Returns an array starting with the given bytes, only valid until the next call. */
+        @NonNull
+        private byte[] copy(int start, int length) {
+            if (buffer.hasArray()) {
+                byte[] bytes = new byte[length];
+                System.arraycopy(buffer.array(), buffer.arrayOffset() + start, bytes, 0, length);
+                return bytes;
+            }
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, 2 * scratch.length)];
+            }
+            for (int i = 0; i < length; i++) {
+                scratch[i] = buffer.get(start + i);
+            }
+            return scratch;
+        }
+
+        private final class AsciiLine implements CharSequence {
+            private int start;
+            private int length;
+
+            @Override
+            public int length() {
+                return length;
+            }
+
+            @Override
+            public char charAt(int index) {
+                if (index < 0 || index >= length) {
+                    throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+                }
+                return (char) buffer.get(start + index);
+            }
+
+            @NonNull
+            @Override
+            public String subSequence(int begin, int end) {
+                checkRange(this, begin, end);
+                if (buffer.hasArray()) {
+                    return new String(
+                            buffer.array(),
+                            buffer.arrayOffset() + start + begin,
+                            end - begin,
+                            ISO_8859_1);
+                }
+                return new String(copy(start + begin, end - begin), 0, end - begin, ISO_8859_1);
+            }
+
+            @NonNull
+            @Override
+            public String toString() {
+                return subSequence(0, length);
+            }
+        }
+    }
+
     private static String computeItemName(@NonNull String prefix, @NonNull String name) {
         // tweak the name to remove the styleable prefix
         String indexName = name.substring(prefix.length());
@@ -763,42 +999,42 @@ public final class SymbolIo {
         AAPT(true, false) {
             @NonNull
             @Override
-            public SymbolData parseLine(@NonNull String line) throws IOException {
-                return readAaptLine(line);
+            public SymbolData parseLine(@NonNull CharSequence line) throws IOException {
+                return readAaptLine(line, readValues);
             }
         },
         AAPT_NO_VALUES(false, false, false, true, null) {
             @NonNull
             @Override
-            public SymbolData parseLine(@NonNull String line) throws IOException {
-                return readAaptLine(line);
+            public SymbolData parseLine(@NonNull CharSequence line) throws IOException {
+                return readAaptLine(line, readValues);
             }
         },
         SYMBOL_LIST_WITH_PACKAGE(false, true) {
             @NonNull
             @Override
-            public SymbolData parseLine(@NonNull String line) throws IOException {
+            public SymbolData parseLine(@NonNull CharSequence line) throws IOException {
                 return readSymbolListWithPackageLine(line);
             }
         },
         R_DEF(false, true, true, false, "R_DEF: Internal format may change without notice") {
             @NonNull
             @Override
-            public SymbolData parseLine(@NonNull String line) throws IOException {
+            public SymbolData parseLine(@NonNull CharSequence line) throws IOException {
                 return readSymbolListWithPackageLine(line);
             }
         },
         PARTIAL_FILE(false, false) {
             @NonNull
             @Override
-            public SymbolData parseLine(@NonNull String line) throws IOException {
+            public SymbolData parseLine(@NonNull CharSequence line) throws IOException {
                 return readPartialRLine(line);
             }
         },
         PUBLIC_FILE(false, true) {
             @NonNull
             @Override
-            public SymbolData parseLine(@NonNull String line) throws IOException {
+            public SymbolData parseLine(@NonNull CharSequence line) throws IOException {
                 return readPublicTxtLine(line);
             }
         };
@@ -827,7 +1063,7 @@ public final class SymbolIo {
         @Nullable final String fileTypeHeader;
 
         @NonNull
-        abstract SymbolData parseLine(@NonNull String line) throws IOException;
+        abstract SymbolData parseLine(@NonNull CharSequence line) throws IOException;
     }
 
     /**
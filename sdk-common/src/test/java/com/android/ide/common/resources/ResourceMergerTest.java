@@ -68,8 +68,10 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.w3c.dom.ProcessingInstruction;
 
 public class ResourceMergerTest extends BaseTestCase {
 
@@ -487,6 +489,77 @@ public class ResourceMergerTest extends BaseTestCase {
                      fromLoadedString.getValueText());
     }
 
+    @Test
+    public void testBinaryAndXmlBlobs() throws Exception {
+        ResourceMerger merger = getResourceMerger();
+
+        File binaryFolder = TestUtils.createTempDirDeletedOnExit().toFile();
+        merger.writeBlobTo(binaryFolder, getConsumer(), false);
+        assertTrue(new File(binaryFolder, DataMerger.FN_MERGER_BIN).isFile());
+        assertFalse(new File(binaryFolder, DataMerger.FN_MERGER_XML).exists());
+
+        File xmlFolder = TestUtils.createTempDirDeletedOnExit().toFile();
+        merger.setBinaryBlob(false);
+        merger.writeBlobTo(xmlFolder, getConsumer(), false);
+        assertTrue(new File(xmlFolder, DataMerger.FN_MERGER_XML).isFile());
+        assertFalse(new File(xmlFolder, DataMerger.FN_MERGER_BIN).exists());
+
+        ResourceMerger fromBinary = new ResourceMerger(0);
+        assertTrue(fromBinary.loadFromBlob(binaryFolder, true /*incrementalState*/, null));
+        ResourceMerger fromXml = new ResourceMerger(0);
+        assertTrue(fromXml.loadFromBlob(xmlFolder, true /*incrementalState*/, null));
+        compareResourceMaps(merger, fromBinary, true /*full compare*/);
+        compareResourceMaps(fromXml, fromBinary, true /*full compare*/);
+
+        // Both loaded states must be written back identically.
+        File binaryRoundTrip = TestUtils.createTempDirDeletedOnExit().toFile();
+        fromBinary.setBinaryBlob(false);
+        fromBinary.writeBlobTo(binaryRoundTrip, getConsumer(), false);
+        File xmlRoundTrip = TestUtils.createTempDirDeletedOnExit().toFile();
+        fromXml.setBinaryBlob(false);
+        fromXml.writeBlobTo(xmlRoundTrip, getConsumer(), false);
+        assertEquals(
+                Files.asCharSource(new File(xmlRoundTrip, DataMerger.FN_MERGER_XML), Charsets.UTF_8)
+                        .read(),
+                Files.asCharSource(
+                                new File(binaryRoundTrip, DataMerger.FN_MERGER_XML),
+                                Charsets.UTF_8)
+                        .read());
+
+        // Writing the other format replaces the blob.
+        fromXml.setBinaryBlob(true);
+        fromXml.writeBlobTo(xmlFolder, getConsumer(), false);
+        assertTrue(new File(xmlFolder, DataMerger.FN_MERGER_BIN).isFile());
+        assertFalse(new File(xmlFolder, DataMerger.FN_MERGER_XML).exists());
+    }
+
+    @Test
+    public void testBinaryBlobProcessingInstructionsAndEntities() throws Exception {
+        Document document =
+                DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        Element section = document.createElement("string");
+        section.appendChild(document.createTextNode("My "));
+        // Undeclared, so it has no content.
+        section.appendChild(document.createEntityReference("app"));
+        section.appendChild(document.createTextNode("name"));
+        section.appendChild(document.createProcessingInstruction("target", "some data"));
+
+        File file = new File(TestUtils.createTempDirDeletedOnExit().toFile(), "merger.bin");
+        MergerBlob.write(file, "1", Collections.singletonList(section));
+
+        Document loadedDocument =
+                DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        MergerBlob blob = MergerBlob.load(file, loadedDocument, "merger");
+        assertNotNull(blob);
+        NodeList children = blob.getSection(0).getChildNodes();
+        assertEquals(2, children.getLength());
+        assertEquals(Node.TEXT_NODE, children.item(0).getNodeType());
+        assertEquals("My name", children.item(0).getNodeValue());
+        ProcessingInstruction instruction = (ProcessingInstruction) children.item(1);
+        assertEquals("target", instruction.getTarget());
+        assertEquals("some data", instruction.getData());
+    }
+
     @Test
     public void testNamespaceRestored() throws Exception {
         File root =
@@ -1946,7 +2019,7 @@ public class ResourceMergerTest extends BaseTestCase {
         try {
             merger.writeBlobTo(folder, getConsumer(), false);
         } catch (MergingException e) {
-            File file = new File(folder, "merger.xml");
+            File file = new File(folder, DataMerger.FN_MERGER_BIN);
             assertEquals(file.getPath() + ": Error: (Permission denied)",
                     e.getMessage());
             return;
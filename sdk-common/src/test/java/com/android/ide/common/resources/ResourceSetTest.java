@@ -22,6 +22,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import com.android.annotations.NonNull;
 import com.android.ide.common.blame.SourceFilePosition;
@@ -30,10 +31,17 @@ import com.android.ide.common.rendering.api.ResourceNamespace;
 import com.android.testutils.TestResources;
 import com.android.utils.XmlUtils;
 import com.google.common.base.Charsets;
+import com.google.common.collect.ListMultimap;
 import com.google.common.io.Files;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.xml.parsers.DocumentBuilderFactory;
 import org.junit.Test;
 
 public class ResourceSetTest extends BaseTestCase {
@@ -129,6 +137,84 @@ public class ResourceSetTest extends BaseTestCase {
         assertThat(set.getDataMap().get("layout/main")).isNotEmpty();
     }
 
+    @Test
+    public void testLoadFromFilesInParallel() throws Exception {
+        List<ResourceSet> sequentialSets = createMergeSets();
+        for (ResourceSet set : sequentialSets) {
+            set.loadFromFiles(new RecordingLogger());
+        }
+
+        List<ResourceSet> parallelSets = createMergeSets();
+        RecordingLogger logger = new RecordingLogger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ResourceSet.loadFromFiles(
+                    parallelSets, logger, DocumentBuilderFactory.newInstance(), executor);
+        } finally {
+            executor.shutdown();
+        }
+        checkLogger(logger);
+
+        for (int i = 0; i < sequentialSets.size(); i++) {
+            ListMultimap<String, ResourceMergerItem> expected =
+                    sequentialSets.get(i).getDataMap();
+            ListMultimap<String, ResourceMergerItem> actual = parallelSets.get(i).getDataMap();
+            // Same items, added in the same order.
+            assertEquals(new ArrayList<>(expected.keys()), new ArrayList<>(actual.keys()));
+            for (String key : expected.keySet()) {
+                List<ResourceMergerItem> expectedItems = expected.get(key);
+                List<ResourceMergerItem> actualItems = actual.get(key);
+                for (int j = 0; j < expectedItems.size(); j++) {
+                    assertEquals(
+                            expectedItems.get(j).getSourceFile().getFile(),
+                            actualItems.get(j).getSourceFile().getFile());
+                    assertEquals(
+                            expectedItems.get(j).getValueText(),
+                            actualItems.get(j).getValueText());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLoadFromFilesInParallel_brokenSet() throws Exception {
+        File root = TestResources.getDirectory(getClass(), "/testData/resources/brokenSet");
+        ResourceSet set = createResourceSet();
+        set.addSource(root);
+
+        RecordingLogger logger = new RecordingLogger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ResourceSet.loadFromFiles(
+                    Collections.singletonList(set),
+                    logger,
+                    DocumentBuilderFactory.newInstance(),
+                    executor);
+            fail("ResourceSet processing should have failed, but didn't");
+        } catch (MergingException e) {
+            assertEquals(
+                    new File(root, "values" + separator + "dimens.xml").getAbsolutePath()
+                            + ":1:1: Error: Content is not allowed in prolog.",
+                    e.getMessage());
+        } finally {
+            executor.shutdown();
+        }
+        assertFalse(logger.getErrorMsgs().isEmpty());
+    }
+
+    @NonNull
+    private static List<ResourceSet> createMergeSets() {
+        ResourceSet baseSet = createResourceSet();
+        baseSet.addSource(
+                TestResources.getDirectory(ResourceSetTest.class, "/testData/resources/baseSet"));
+        ResourceSet overlaySet =
+                new ResourceSet("overlay", ResourceNamespace.RES_AUTO, null, true, null);
+        overlaySet.addSource(
+                TestResources.getDirectory(
+                        ResourceSetTest.class, "/testData/resources/baseMerge/overlay"));
+        return Arrays.asList(baseSet, overlaySet);
+    }
+
     @NonNull
     private static ResourceSet createResourceSet() {
         return new ResourceSet("main", ResourceNamespace.RES_AUTO, null, true, null);
@@ -1143,6 +1143,65 @@ public class SymbolIoTest {
         }
     }
 
+    @Test
+    public void testRDefFormatLineEndings() throws Exception {
+        Path rDefFile = mTemporaryFolder.newFile("outputRDef.txt").toPath();
+        java.nio.file.Files.write(
+                rDefFile,
+                ("R_DEF: Internal format may change without notice\r\n"
+                                + "foo.bar\r\n"
+                                + "string be.ep\r"
+                                + "styleable A.B a1 a2.f\n"
+                                + "attr? maybeAttr")
+                        .getBytes(StandardCharsets.UTF_8));
+
+        SymbolTable expected =
+                SymbolTable.builder()
+                        .tablePackage("foo.bar")
+                        .add(
+                                Symbol.normalSymbol(
+                                        ResourceType.STRING,
+                                        "be.ep",
+                                        0,
+                                        ResourceVisibility.UNDEFINED,
+                                        "be_ep"))
+                        .add(
+                                Symbol.styleableSymbol(
+                                        "A.B",
+                                        ImmutableList.of(),
+                                        ImmutableList.of("a1", "a2.f"),
+                                        ResourceVisibility.UNDEFINED,
+                                        "A_B"))
+                        .add(Symbol.attributeSymbol("maybeAttr", 0, true))
+                        .build();
+        assertThat(symbolIo.readRDef(rDefFile)).isEqualTo(expected);
+    }
+
+    @Test
+    public void testRDefFormatLargeFile() throws Exception {
+        // Large enough for the file to be memory mapped.
+        SymbolTable.Builder builder = SymbolTable.builder().tablePackage("foo.bar");
+        for (int i = 0; i < 5000; i++) {
+            builder.add(Symbol.normalSymbol(ResourceType.STRING, "string_" + i, 0));
+            builder.add(Symbol.attributeSymbol("attr_" + i, 0, i % 2 == 0));
+        }
+        builder.add(
+                Symbol.styleableSymbol(
+                        "Styleable",
+                        ImmutableList.of(),
+                        ImmutableList.of("attr_1", "attr_2")));
+        SymbolTable originalTable = builder.build();
+
+        Path rDefFile = mTemporaryFolder.newFile("outputRDef.txt").toPath();
+        SymbolIo.writeRDef(originalTable, rDefFile);
+        assertThat(java.nio.file.Files.size(rDefFile)).isGreaterThan(64 * 1024L);
+
+        SymbolTable tableLoadedFromFile = symbolIo.readRDef(rDefFile);
+
+        assertThat(tableLoadedFromFile).isEqualTo(originalTable);
+        assertCanonicalizationDoesNotProduceDuplicateStrings(tableLoadedFromFile);
+    }
+
     @Test
     public void readCorruptedIdAarRTxt() throws Exception {
         File corrupted = new File(mTemporaryFolder.newFolder(), "other R.txt");
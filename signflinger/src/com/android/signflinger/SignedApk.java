@@ -46,8 +46,12 @@ import java.security.SignatureException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 import java.util.zip.Deflater;
@@ -60,6 +64,9 @@ public class SignedApk implements Archive {
     private final ZipArchive archive;
     private final ApkSignerEngine signer;
     private final SignedApkOptions options;
+
+    // V1 entry digests running on options.v1Executor, by entry name.
+    private final Map<String, CompletableFuture<Void>> pendingDigests = new LinkedHashMap<>();
     static final String MANIFEST_ENTRY_NAME = "META-INF/MANIFEST.MF";
     static final String MANIFEST_CREATED_BY = "Created-By";
     static final String MANIFEST_BUILT_BY = "Built-By";
@@ -128,7 +135,7 @@ public class SignedApk implements Archive {
         filesToSign.removeAll(signedEntries);
         for (String entryName : filesToSign) {
             ApkSignerEngine.InspectJarEntryRequest req = signer.outputJarEntry(entryName);
-            processRequest(req);
+            inspect(req);
         }
 
         // Let the signer take a look the new manifest if the archive did not contain one.
@@ -169,7 +176,7 @@ public class SignedApk implements Archive {
         archive.add(source);
         if (options.v1Enabled) {
             ApkSignerEngine.InspectJarEntryRequest req = signer.outputJarEntry(source.getName());
-            processRequest(req);
+            inspect(req);
         }
     }
 
@@ -181,7 +188,7 @@ public class SignedApk implements Archive {
             for (Source source : sources.getSelectedEntries()) {
                 ApkSignerEngine.InspectJarEntryRequest req =
                         signer.outputJarEntry(source.getName());
-                processRequest(req);
+                inspect(req);
             }
         }
     }
@@ -189,6 +196,12 @@ public class SignedApk implements Archive {
     /** See Archive.delete documentation */
     @Override
     public void delete(@NonNull String name) {
+        // The space of a deleted entry may be reused, make sure nothing is still reading it.
+        // The digest of a deleted entry is discarded by the signer so its outcome is irrelevant.
+        CompletableFuture<Void> pending = pendingDigests.remove(name);
+        if (pending != null) {
+            pending.exceptionally(e -> null).join();
+        }
         archive.delete(name);
         if (options.v1Enabled) {
             signer.outputJarEntryRemoved(name);
@@ -212,6 +225,11 @@ public class SignedApk implements Archive {
             finishV1();
             finishV2andV3();
         } finally {
+            // Do not close the archive while workers are still reading from it.
+            for (CompletableFuture<Void> pending : pendingDigests.values()) {
+                pending.exceptionally(e -> null).join();
+            }
+            pendingDigests.clear();
             if (!archive.isClosed()) {
                 archive.close();
             }
@@ -265,18 +283,51 @@ public class SignedApk implements Archive {
 
     }
 
-    private void processRequest(@Nullable ApkSignerEngine.InspectJarEntryRequest req)
+    // Fulfill the request on the V1 executor if there is one, on the calling thread otherwise.
+    private void inspect(@Nullable ApkSignerEngine.InspectJarEntryRequest req)
             throws IOException {
         if (req == null) {
             return;
         }
         String name = req.getEntryName();
-        try (InputStream in = archive.getInputStream(name)) {
-            if (in == null) {
-                String err = String.format("Cannot find and therefore inspect entry %s.", name);
-                throw new IllegalStateException(err);
-            }
-            // Send the whole payload into the datasink
+        // The manifest request updates the signer state, it is always fulfilled synchronously.
+        if (options.v1Executor == null || name.equals(MANIFEST_ENTRY_NAME)) {
+            processRequest(req);
+            return;
+        }
+
+        // The stream is opened here since the archive Central Directory is not thread-safe.
+        // Once opened, it only does positional reads of an area which is not written to until
+        // the entry is deleted.
+        InputStream in = openEntry(name);
+        CompletableFuture<Void> future =
+                CompletableFuture.runAsync(() -> digest(req, in), options.v1Executor);
+        pendingDigests.put(name, future);
+    }
+
+    private void processRequest(@Nullable ApkSignerEngine.InspectJarEntryRequest req)
+            throws IOException {
+        if (req == null) {
+            return;
+        }
+        consume(req, openEntry(req.getEntryName()));
+    }
+
+    @NonNull
+    private InputStream openEntry(@NonNull String name) throws IOException {
+        InputStream in = archive.getInputStream(name);
+        if (in == null) {
+            String err = String.format("Cannot find and therefore inspect entry %s.", name);
+            throw new IllegalStateException(err);
+        }
+        return in;
+    }
+
+    // Send the whole payload into the datasink
+    private static void consume(
+            @NonNull ApkSignerEngine.InspectJarEntryRequest req, @NonNull InputStream stream)
+            throws IOException {
+        try (InputStream in = stream) {
             byte[] buffer = new byte[4096];
             int read;
             while ((read = in.read(buffer)) != -1) {
@@ -286,10 +337,43 @@ public class SignedApk implements Archive {
         }
     }
 
+    private static void digest(
+            @NonNull ApkSignerEngine.InspectJarEntryRequest req, @NonNull InputStream stream) {
+        try {
+            consume(req, stream);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    // Wait for all V1 digests. The signer requires all requests to be done before it generates
+    // MANIFEST.MF and the signature files.
+    private void waitForDigests() throws IOException {
+        try {
+            for (CompletableFuture<Void> pending : pendingDigests.values()) {
+                pending.join();
+            }
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+        pendingDigests.clear();
+    }
+
     private void finishV1() throws IOException {
         if (!options.v1Enabled) {
             return;
         }
+        waitForDigests();
 
         // Check whether we need to output additional JAR entries which comprise the v1 signature
         ApkSignerEngine.OutputJarSignatureRequest addV1SignatureRequest;
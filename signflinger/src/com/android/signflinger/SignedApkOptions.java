@@ -35,6 +35,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Executor;
 
 /**
  * Options for SignedApk.
@@ -56,6 +57,8 @@ public class SignedApkOptions {
 
     final RunnablesExecutor executor;
 
+    final Executor v1Executor;
+
     final boolean v1Enabled;
     final boolean v2Enabled;
 
@@ -77,6 +80,7 @@ public class SignedApkOptions {
             PrivateKey privateKey,
             List<X509Certificate> certificates,
             RunnablesExecutor executor,
+            Executor v1Executor,
             byte[] sdkDependencies,
             boolean v1Enabled,
             boolean v2Enabled,
@@ -92,6 +96,7 @@ public class SignedApkOptions {
         this.privateKey = privateKey;
         this.certificates = certificates;
         this.executor = executor;
+        this.v1Executor = v1Executor;
         this.sdkDependencies = sdkDependencies;
         this.v1Enabled = v1Enabled;
         this.v2Enabled = v2Enabled;
@@ -145,6 +150,7 @@ public class SignedApkOptions {
         PrivateKey privateKey;
         List<X509Certificate> certificates;
         RunnablesExecutor executor;
+        Executor v1Executor;
         byte[] sdkDependencies;
         boolean v1Enabled = false;
         boolean v2Enabled = true;
@@ -177,6 +183,16 @@ public class SignedApkOptions {
             return this;
         }
 
+        /**
+         * Digest entries for the V1 MANIFEST.MF on this executor, as they are added, instead of
+         * on the calling thread. Digests are all collected before MANIFEST.MF and the signature
+         * files are generated so their content does not depend on scheduling.
+         */
+        public Builder setV1Executor(@NonNull Executor v1Executor) {
+            this.v1Executor = v1Executor;
+            return this;
+        }
+
         public Builder setSdkDependencies(byte[] sdkDependencies) {
             this.sdkDependencies = sdkDependencies;
             return this;
@@ -240,6 +256,7 @@ public class SignedApkOptions {
                     privateKey,
                     certificates,
                     executor,
+                    v1Executor,
                     sdkDependencies,
                     v1Enabled,
                     v2Enabled,
@@ -26,6 +26,8 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
@@ -142,6 +144,49 @@ public class V1SigningTest extends BaseSigning {
         }
     }
 
+    @Test
+    public void parallelDigests() throws Exception {
+        File androidManifest = workspace.getDummyAndroidManifest();
+        File serial = workspace.createZip(400, 20000, "serialDigests.apk", androidManifest);
+        File parallel = workspace.createZip(400, 20000, "parallelDigests.apk", androidManifest);
+
+        SignerConfig signerConfig = Signers.getDefaultRSASigner(workspace);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            SignedApkOptions options =
+                    new SignedApkOptions.Builder()
+                            .setV2Enabled(false)
+                            .setV1Enabled(true)
+                            .setMinSdkVersion(21)
+                            .setPrivateKey(signerConfig.getPrivateKey())
+                            .setCertificates(signerConfig.getCertificates())
+                            .setV1Executor(executor)
+                            .build();
+            try (SignedApk signedApk = new SignedApk(parallel, options)) {
+                signedApk.add(new BytesSource(new byte[100_000], "a", 1));
+                signedApk.add(new BytesSource(new byte[100], "b", 0));
+                signedApk.delete("a");
+                signedApk.add(new BytesSource(new byte[1000], "a", 1));
+            }
+            Utils.verifyApk(parallel);
+        } finally {
+            executor.shutdown();
+        }
+
+        try (SignedApk signedApk = new SignedApk(serial, getOptions(signerConfig, false))) {
+            signedApk.add(new BytesSource(new byte[1000], "a", 1));
+            signedApk.add(new BytesSource(new byte[100], "b", 0));
+        }
+
+        // Digests are collected before MANIFEST.MF is generated, it must not depend on threading.
+        try (ZipArchive s = new ZipArchive(serial.toPath());
+                ZipArchive p = new ZipArchive(parallel.toPath())) {
+            Assert.assertEquals(
+                    s.getContent(SignedApk.MANIFEST_ENTRY_NAME),
+                    p.getContent(SignedApk.MANIFEST_ENTRY_NAME));
+        }
+    }
+
     @Test
     public void v1FilesAreCompressed() throws Exception {
         File androidManifest = workspace.getDummyAndroidManifest();
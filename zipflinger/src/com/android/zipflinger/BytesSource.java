@@ -93,7 +93,7 @@ public class BytesSource extends Source {
     }
 
     @Override
-    public void prepare() {}
+    public void prepare() throws IOException {}
 
     @Override
     public long writeTo(@NonNull ZipWriter writer) throws IOException {
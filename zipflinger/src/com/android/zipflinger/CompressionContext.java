@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.zipflinger;
+
+import com.android.annotations.NonNull;
+import java.util.ArrayDeque;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+ * A Deflater, an Inflater and scratch buffers which can be reused across Sources.
+ *
+ * Contexts are pooled per thread. A context may only be used by the thread which acquired it
+ * and must not be used after it has been released. Zlib native memory is released explicitly
+ * via end() when a context is evicted from the pool instead of being left to the finalizer.
+ */
+final class CompressionContext implements AutoCloseable {
+
+    static final int BUFFER_SIZE = 8192;
+
+    // Max number of idle contexts kept per thread. Nested usage (e.g: inflating while
+    // deflating) needs more than one.
+    private static final int MAX_POOLED = 4;
+
+    // Scratch output which grew above this size is not kept around.
+    private static final int MAX_POOLED_SCRATCH_SIZE = 1 << 20;
+
+    private static final ThreadLocal<ArrayDeque<CompressionContext>> pool =
+            ThreadLocal.withInitial(ArrayDeque::new);
+
+    private final Thread owner;
+    private Deflater deflater;
+    private Inflater inflater;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private NoCopyByteArrayOutputStream scratch;
+    private boolean released;
+
+    private CompressionContext() {
+        owner = Thread.currentThread();
+    }
+
+    @NonNull
+    static CompressionContext acquire() {
+        CompressionContext context = pool.get().pollFirst();
+        if (context == null) {
+            context = new CompressionContext();
+        }
+        context.released = false;
+        return context;
+    }
+
+    // Returns a raw (nowrap) Deflater, reset and set to the requested level.
+    @NonNull
+    Deflater deflater(int compressionLevel) {
+        ensureUsable();
+        if (deflater == null) {
+            deflater = new Deflater(compressionLevel, true);
+        } else {
+            deflater.reset();
+            deflater.setLevel(compressionLevel);
+        }
+        return deflater;
+    }
+
+    // Returns a raw (nowrap) Inflater, reset.
+    @NonNull
+    Inflater inflater() {
+        ensureUsable();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        } else {
+            inflater.reset();
+        }
+        return inflater;
+    }
+
+    // A BUFFER_SIZE bytes buffer with undefined content.
+    @NonNull
+    byte[] buffer() {
+        ensureUsable();
+        return buffer;
+    }
+
+    // An empty output stream. Its content is only valid until the context is released; callers
+    // must copy what they want to keep.
+    @NonNull
+    NoCopyByteArrayOutputStream scratch() {
+        ensureUsable();
+        if (scratch == null) {
+            scratch = new NoCopyByteArrayOutputStream(BUFFER_SIZE);
+        }
+        scratch.reset();
+        return scratch;
+    }
+
+    /**
+     * Returns this context to the pool of the current thread. If called from another thread, the
+     * context is not pooled and its native resources are released immediately.
+     */
+    @Override
+    public void close() {
+        if (released) {
+            return;
+        }
+        released = true;
+        if (Thread.currentThread() != owner) {
+            end();
+            return;
+        }
+        if (scratch != null && scratch.buf().length > MAX_POOLED_SCRATCH_SIZE) {
+            scratch = null;
+        }
+
+        ArrayDeque<CompressionContext> contexts = pool.get();
+        if (contexts.size() < MAX_POOLED) {
+            contexts.addFirst(this);
+        } else {
+            end();
+        }
+    }
+
+    private void end() {
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+        scratch = null;
+    }
+
+    private void ensureUsable() {
+        if (released) {
+            throw new IllegalStateException("CompressionContext used after release");
+        }
+        if (Thread.currentThread() != owner) {
+            String msg = String.format("CompressionContext owned by '%s'", owner.getName());
+            throw new IllegalStateException(msg);
+        }
+    }
+}
@@ -21,27 +21,34 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
-import java.util.zip.InflaterOutputStream;
+import java.util.zip.ZipException;
 
 public class Compressor {
 
     @NonNull
     public static ByteBuffer deflate(
             @NonNull byte[] bytes, int offset, int size, int compressionLevel) throws IOException {
-        NoCopyByteArrayOutputStream out = new NoCopyByteArrayOutputStream(size);
-
-        Deflater deflater = new Deflater(compressionLevel, true);
+        try (CompressionContext context = CompressionContext.acquire()) {
+            Deflater deflater = context.deflater(compressionLevel);
+            byte[] buffer = context.buffer();
+            NoCopyByteArrayOutputStream out = context.scratch();
+
+            deflater.setInput(bytes, offset, size);
+            deflater.finish();
+            while (!deflater.finished()) {
+                int deflated = deflater.deflate(buffer);
+                out.write(buffer, 0, deflated);
+            }
 
-        try (DeflaterOutputStream dout = new DeflaterOutputStream(out, deflater)) {
-            dout.write(bytes, offset, size);
-            dout.flush();
+            // The scratch stream belongs to the context, hand out an exact-size copy.
+            return ByteBuffer.wrap(Arrays.copyOf(out.buf(), out.getCount()));
         }
-
-        return out.getByteBuffer();
     }
 
     @NonNull
@@ -57,13 +64,35 @@ public class Compressor {
 
     @NonNull
     public static ByteBuffer inflate(@NonNull byte[] bytes, long expectedSize) throws IOException {
+        return inflate(ByteBuffer.wrap(bytes), expectedSize);
+    }
+
+    // Inflate the remaining bytes of input. Direct (e.g: memory-mapped) buffers are inflated in
+    // place without being copied onto the heap first.
+    @NonNull
+    public static ByteBuffer inflate(@NonNull ByteBuffer input, long expectedSize)
+            throws IOException {
         NoCopyByteArrayOutputStream out =
                 new NoCopyByteArrayOutputStream(Math.toIntExact(expectedSize));
-        Inflater inflater = new Inflater(true);
-
-        try (InflaterOutputStream dout = new InflaterOutputStream(out, inflater)) {
-            dout.write(bytes);
-            dout.flush();
+        try (CompressionContext context = CompressionContext.acquire()) {
+            Inflater inflater = context.inflater();
+            byte[] buffer = context.buffer();
+
+            inflater.setInput(input.duplicate());
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0) {
+                    if (inflater.needsDictionary()) {
+                        throw new ZipException("ZLIB dictionary missing");
+                    }
+                    if (inflater.needsInput()) {
+                        break;
+                    }
+                }
+                out.write(buffer, 0, inflated);
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage() != null ? e.getMessage() : "Invalid ZLIB data");
         }
 
         return out.getByteBuffer();
@@ -77,14 +106,16 @@ public class Compressor {
             boolean inDeflated,
             int outputCompression)
             throws IOException {
-
-        Inflater inflater = new Inflater(true);
-        Deflater deflater = new Deflater(outputCompression, true);
         boolean outDeflated = outputCompression != Deflater.NO_COMPRESSION;
 
-        try (InputStream ins = inDeflated ? new InflaterInputStream(in, inflater) : in;
-                OutputStream outs = outDeflated ? new DeflaterOutputStream(out, deflater) : out) {
-            byte[] buffer = new byte[8192];
+        try (CompressionContext context = CompressionContext.acquire();
+                InputStream ins =
+                        inDeflated ? new InflaterInputStream(in, context.inflater()) : in;
+                OutputStream outs =
+                        outDeflated
+                                ? new DeflaterOutputStream(out, context.deflater(outputCompression))
+                                : out) {
+            byte[] buffer = context.buffer();
             int read;
             while ((read = ins.read(buffer)) != -1) {
                 outs.write(buffer, 0, read);
@@ -92,16 +123,21 @@ public class Compressor {
         }
     }
 
-    // Is it the caller's responsibility to close() the returned InputStream.
+    // Is it the caller's responsibility to close() the returned InputStream. Closing it also
+    // releases the Inflater it uses. The stream must be closed on the thread which created it.
     @NonNull
     static InputStream wrapToInflate(@NonNull InputStream inputStream) {
-        Inflater inflater = new Inflater(true);
-        return new InflaterInputStream(inputStream, inflater);
-    }
-
-    @NonNull
-    static Deflater getDeflater(int compressionLevel) {
-        return new Deflater(compressionLevel, true);
+        CompressionContext context = CompressionContext.acquire();
+        return new InflaterInputStream(inputStream, context.inflater()) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    context.close();
+                }
+            }
+        };
     }
 
     private Compressor() {}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.zipflinger;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A BytesSource which does not read/crc/deflate its content until {@link #prepare()} is called.
+ * Used with {@link ZipArchive#add(java.util.List, java.util.concurrent.Executor)} to move the
+ * expensive part of building a source onto worker threads.
+ */
+public class DeferredBytesSource extends BytesSource {
+
+    @Nullable private byte[] bytes;
+    @Nullable private final Path file;
+    private final int compressionLevel;
+    private boolean prepared = false;
+
+    public DeferredBytesSource(@NonNull byte[] bytes, @NonNull String name, int compressionLevel) {
+        super(name);
+        this.bytes = bytes;
+        this.file = null;
+        this.compressionLevel = compressionLevel;
+    }
+
+    public DeferredBytesSource(@NonNull Path file, @NonNull String name, int compressionLevel) {
+        super(name);
+        this.bytes = null;
+        this.file = file;
+        this.compressionLevel = compressionLevel;
+    }
+
+    @Override
+    public void prepare() throws IOException {
+        if (prepared) {
+            return;
+        }
+        byte[] content = bytes != null ? bytes : Files.readAllBytes(file);
+        build(content, content.length, compressionLevel);
+        // Once built, the payload is owned by the parent BytesSource.
+        bytes = null;
+        prepared = true;
+    }
+}
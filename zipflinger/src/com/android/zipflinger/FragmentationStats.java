@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.zipflinger;
+
+/**
+ * A snapshot of the free space ("holes") left in the payload of an archive by deleted entries.
+ * Holes are filled with virtual entries when the archive is closed. Callers can use these numbers
+ * to decide when an archive has become fragmented enough to be worth rewriting from scratch.
+ */
+public class FragmentationStats {
+    private final long holes;
+    private final long freeBytes;
+    private final long largestHole;
+    private final long payloadSize;
+
+    FragmentationStats(long holes, long freeBytes, long largestHole, long payloadSize) {
+        this.holes = holes;
+        this.freeBytes = freeBytes;
+        this.largestHole = largestHole;
+        this.payloadSize = payloadSize;
+    }
+
+    /** Number of free zones within the payload. */
+    public long getHoles() {
+        return holes;
+    }
+
+    /** Total size of the free zones within the payload, in bytes. */
+    public long getFreeBytes() {
+        return freeBytes;
+    }
+
+    /** Size of the largest free zone within the payload, in bytes. */
+    public long getLargestHole() {
+        return largestHole;
+    }
+
+    /** Size of the payload (used and free space before the Central Directory), in bytes. */
+    public long getPayloadSize() {
+        return payloadSize;
+    }
+
+    /** The fraction [0, 1] of the payload which is free space. */
+    public double getFreeRatio() {
+        return payloadSize == 0 ? 0 : (double) freeBytes / payloadSize;
+    }
+
+    /**
+     * How scattered the free space is, in [0, 1]. 0 means all free space is in one hole, a value
+     * close to 1 means free space is spread across many small holes.
+     */
+    public double getFragmentation() {
+        return freeBytes == 0 ? 0 : 1 - (double) largestHole / freeBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "holes=%d, freeBytes=%d, largestHole=%d, payloadSize=%d",
+                holes, freeBytes, largestHole, payloadSize);
+    }
+}
@@ -18,103 +18,68 @@ package com.android.zipflinger;
 import com.android.annotations.NonNull;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 // This works like a memory allocator except it deals with file address space instead of
 // memory address space.
+//
+// Free zones are indexed twice: by offset (to coalesce on free and to walk zones in file order)
+// and by size (to find the best fit in O(log n)). Two consecutive zones are never contiguous which
+// mean that upon free, if two zones "touch" each others, they are merged together into a bigger
+// free zone. Used space is not tracked but inferred from each gap between free zones.
+//
+// The last zone always extends to the end of the file address space. Since it is the largest
+// zone, best-fit only allocates from it when no hole in the payload can accommodate a request.
 class FreeStore {
 
     static final long DEFAULT_ALIGNMENT = 4;
     static final long PAGE_ALIGNMENT = 4096;
 
-    private Zone head;
-
-    // A zone tracks the free file address space. Two consecutive zones are never contiguous which
-    // mean that upon modification, if two zone "touch" each others, they are merged together into
-    // a bigger free zone.
-    //
-    // Used space is not tracked but inferred from each gap between free zones.
-    protected static class Zone {
-        public Zone next;
-        public Zone prev;
-        public Location loc;
-
-        public Zone() {
-            this.next = null;
-            this.prev = null;
-        }
-
-        public void shrinkBy(long amount) {
-            assert loc.size() > amount;
-            loc = new Location(loc.first + amount, loc.size() - amount);
+    private static final Comparator<Location> BY_SIZE =
+            Comparator.comparingLong(Location::size).thenComparingLong(loc -> loc.first);
 
-            // If the zone is empty, remove it from the list.
-            if (loc.size() == 0) {
-                prev.next = next;
-                if (next != null) {
-                    next.prev = prev;
-                }
-            }
-        }
-    }
+    private final TreeMap<Long, Location> zonesByOffset = new TreeMap<>();
+    private final TreeSet<Location> zonesBySize = new TreeSet<>(BY_SIZE);
 
     FreeStore(@NonNull Map<String, Entry> zipEntries) {
-        // Create an immutable marker of unusable space which make "insert on head" ugly code go away.
-        head = new Zone();
-        head.loc = new Location(-1, 1);
-
-        // Use zip entries location (used space) to build the free zones list.
+        // Use zip entries location (used space) to build the free zones.
         List<Location> usedLocations = new ArrayList<>();
         for (Entry entry : zipEntries.values()) {
             usedLocations.add(entry.getLocation());
         }
-        Collections.sort(usedLocations);
+        Collections.sort(usedLocations, Comparator.comparingLong(loc -> loc.first));
 
-        Zone prevFreeZone = head;
-        Location prevUsedLoc = prevFreeZone.loc;
+        long prevUsedLast = -1;
         for (Location usedLoc : usedLocations) {
             // If there is a gap, mark is as FREE space.
-            long gap = usedLoc.first - prevUsedLoc.last - 1;
+            long gap = usedLoc.first - prevUsedLast - 1;
             if (gap > 0) {
-                Zone free = new Zone();
-                prevFreeZone.next = free;
-                free.prev = prevFreeZone;
-                free.loc = new Location(prevUsedLoc.last + 1, gap);
-                prevFreeZone = free;
+                addZone(new Location(prevUsedLast + 1, gap));
             }
-            prevUsedLoc = usedLoc;
+            prevUsedLast = usedLoc.last;
         }
 
         // Mark everything remaining as a free zone.
-        Zone remainingZone = new Zone();
-        remainingZone.prev = prevFreeZone;
-        remainingZone.next = null;
-        prevFreeZone.next = remainingZone;
-        remainingZone.loc =
-                new Location(prevUsedLoc.last + 1, Long.MAX_VALUE - 1 - prevUsedLoc.last);
+        addZone(new Location(prevUsedLast + 1, Long.MAX_VALUE - 1 - prevUsedLast));
     }
 
     // Performs unaligned allocation.
     @NonNull
     Location ualloc(long requestedSize) {
-        Zone cursor;
-        for (cursor = head.next; cursor != null; cursor = cursor.next) {
-            // We are searching for a block big enough to contain:
-            // - The requested size
-            // - Post-padding space for potentially needed virtual entry to fill holes.
-            if (cursor.loc.size() >= requestedSize + LocalFileHeader.VIRTUAL_HEADER_SIZE) {
-                break;
-            }
-        }
-
-        if (cursor == null) {
+        // We are searching for the smallest block big enough to contain:
+        // - The requested size
+        // - Post-padding space for potentially needed virtual entry to fill holes.
+        long minSize = requestedSize + LocalFileHeader.VIRTUAL_HEADER_SIZE;
+        Location zone = zonesBySize.ceiling(probe(minSize));
+        if (zone == null) {
             throw new IllegalStateException("Out of file address space.");
         }
 
-        Location allocated = new Location(cursor.loc.first, requestedSize);
-        cursor.shrinkBy(requestedSize);
-        return allocated;
+        return allocFrom(zone, requestedSize);
     }
 
     // Performs aligned allocation. The offset is necessary because what needs to be aligned is not
@@ -123,89 +88,102 @@ class FreeStore {
     // be consumed by an "extra" field.
     @NonNull
     Location alloc(long requestedSize, long payloadOffset, long alignment) {
-        Zone cursor;
-        for (cursor = head.next; cursor != null; cursor = cursor.next) {
-            long padding = padFor(cursor.loc.first, payloadOffset, alignment);
+        // Padding depends on where a zone starts. Walk candidates from the smallest one which could
+        // fit without padding until one can also accommodate its padding.
+        long minSize = requestedSize + LocalFileHeader.VIRTUAL_HEADER_SIZE;
+        for (Location zone : zonesBySize.tailSet(probe(minSize), true)) {
+            long padding = padFor(zone.first, payloadOffset, alignment);
             // We are searching for a block big enough to contain:
             // - The requested size
             // - Pre-padding space for extra field ALIGNMENT
             // - Post-padding space for potentially needed virtual entry to fill holes.
-            if (cursor.loc.size()
-                    >= requestedSize + padding + LocalFileHeader.VIRTUAL_HEADER_SIZE) {
-                requestedSize += padding;
-                break;
+            if (zone.size() >= minSize + padding) {
+                return allocFrom(zone, requestedSize + padding);
             }
         }
 
-        if (cursor == null) {
-            throw new IllegalStateException("Out of file address space.");
-        }
-
-        Location allocated = new Location(cursor.loc.first, requestedSize);
-        cursor.shrinkBy(requestedSize);
-        return allocated;
+        throw new IllegalStateException("Out of file address space.");
     }
 
     // Mark an area of the file available for allocation. This will merge up to two zones into one
     // if they touch each others.
     void free(@NonNull Location loc) {
-        Zone cursor = head.next;
-        while (cursor != null) {
-            if (loc.first > cursor.prev.loc.last && loc.last < cursor.loc.first) {
-                break;
-            }
-            cursor = cursor.next;
-        }
-
-        if (cursor == null) {
+        Map.Entry<Long, Location> prevEntry = zonesByOffset.floorEntry(loc.first);
+        Map.Entry<Long, Location> nextEntry = zonesByOffset.higherEntry(loc.first);
+        Location prev = prevEntry == null ? null : prevEntry.getValue();
+        Location next = nextEntry == null ? null : nextEntry.getValue();
+
+        // The freed area must be entirely within used space.
+        if (loc.first < 0
+                || (prev != null && prev.last >= loc.first)
+                || (next != null && next.first <= loc.last)) {
             throw new IllegalStateException("Double free");
         }
 
-        // Insert a free zone
-        Zone newFreeZone = new Zone();
-        newFreeZone.loc = loc;
-        newFreeZone.prev = cursor.prev;
-        newFreeZone.next = cursor;
-        cursor.prev.next = newFreeZone;
-        cursor.prev = newFreeZone;
-        cursor = newFreeZone;
+        Location merged = loc;
 
         // If previous zone is contiguous, merge this zone into previous.
-        if (cursor.prev.loc.last + 1 == cursor.loc.first && cursor.prev != head) {
-            Zone prev = cursor.prev;
-            prev.next = cursor.next;
-            cursor.next.prev = prev;
-            prev.loc = new Location(prev.loc.first, prev.loc.size() + cursor.loc.size());
-            cursor = prev;
+        if (prev != null && prev.last + 1 == merged.first) {
+            removeZone(prev);
+            merged = new Location(prev.first, prev.size() + merged.size());
         }
 
         // If next zone is contiguous, merge this zone into next.
-        if (cursor.next != null && cursor.next.loc.first - 1 == cursor.loc.last) {
-            Zone next = cursor.next;
-            next.prev = cursor.prev;
-            cursor.prev.next = next;
-            next.loc = new Location(cursor.loc.first, cursor.loc.size() + next.loc.size());
+        if (next != null && next.first - 1 == merged.last) {
+            removeZone(next);
+            merged = new Location(merged.first, merged.size() + next.size());
         }
+
+        addZone(merged);
     }
 
     @NonNull
     Location getLastFreeLocation() {
-        Zone zone = head.next;
-        while (zone.next != null) {
-            zone = zone.next;
-        }
-        return zone.loc;
+        return zonesByOffset.lastEntry().getValue();
     }
 
     @NonNull
     List<Location> getFreeLocations() {
-        List<Location> locs = new ArrayList<>();
-        Zone cursor = head.next;
-        while (cursor != null) {
-            locs.add(cursor.loc);
-            cursor = cursor.next;
+        return new ArrayList<>(zonesByOffset.values());
+    }
+
+    // Statistics about the holes in the payload (the last free zone, which extends to the end of
+    // the file address space, is not a hole).
+    @NonNull
+    FragmentationStats getFragmentationStats() {
+        Location last = getLastFreeLocation();
+        long freeBytes = 0;
+        for (Location zone : zonesByOffset.headMap(last.first, false).values()) {
+            freeBytes += zone.size();
         }
-        return locs;
+        Location largest = zonesBySize.lower(last);
+        long largestHole = largest == null ? 0 : largest.size();
+        return new FragmentationStats(zonesByOffset.size() - 1, freeBytes, largestHole, last.first);
+    }
+
+    @NonNull
+    private Location allocFrom(@NonNull Location zone, long size) {
+        removeZone(zone);
+        if (zone.size() > size) {
+            addZone(new Location(zone.first + size, zone.size() - size));
+        }
+        return new Location(zone.first, size);
+    }
+
+    private void addZone(@NonNull Location zone) {
+        zonesByOffset.put(zone.first, zone);
+        zonesBySize.add(zone);
+    }
+
+    private void removeZone(@NonNull Location zone) {
+        zonesByOffset.remove(zone.first);
+        zonesBySize.remove(zone);
+    }
+
+    // A location which sorts before every zone of at least this size.
+    @NonNull
+    private static Location probe(long size) {
+        return new Location(Long.MIN_VALUE, size);
     }
 
     // How much padding is needed if this address+offset is not aligned (a.k.a: An extra field will
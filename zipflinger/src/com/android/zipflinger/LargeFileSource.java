@@ -92,11 +92,13 @@ public class LargeFileSource extends Source {
     }
 
     private void buildStored(@NonNull InputStream in) throws IOException {
-        byte[] buffer = new byte[4096];
         long inputSize = 0;
-        int read;
-        while ((read = in.read(buffer)) != -1) {
-            inputSize += read;
+        try (CompressionContext context = CompressionContext.acquire()) {
+            byte[] buffer = context.buffer();
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                inputSize += read;
+            }
         }
         compressedSize = inputSize;
         uncompressedSize = compressedSize;
@@ -112,22 +114,24 @@ public class LargeFileSource extends Source {
         }
 
         // Pipe the src into the tmp compressed file.
-        Deflater deflater = Compressor.getDeflater(compressionLevel);
-        try (DeflaterOutputStream out =
-                new DeflaterOutputStream(
-                        Files.newOutputStream(tmp, StandardOpenOption.CREATE_NEW), deflater)) {
-
-            // Just in case we crash before writeTo is called, attempt to clean up on VM exit.
-            tmp.toFile().deleteOnExit();
-
-            int read;
-            byte[] buffer = new byte[4096];
-            while ((read = in.read(buffer)) != -1) {
-                out.write(buffer, 0, read);
+        try (CompressionContext context = CompressionContext.acquire()) {
+            Deflater deflater = context.deflater(compressionLevel);
+            try (DeflaterOutputStream out =
+                    new DeflaterOutputStream(
+                            Files.newOutputStream(tmp, StandardOpenOption.CREATE_NEW), deflater)) {
+
+                // Just in case we crash before writeTo is called, attempt to clean up on VM exit.
+                tmp.toFile().deleteOnExit();
+
+                int read;
+                byte[] buffer = context.buffer();
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
             }
+            compressedSize = deflater.getBytesWritten();
+            uncompressedSize = deflater.getBytesRead();
         }
-        compressedSize = deflater.getBytesWritten();
-        uncompressedSize = deflater.getBytesRead();
         compressionFlag = LocalFileHeader.COMPRESSION_DEFLATE;
     }
 
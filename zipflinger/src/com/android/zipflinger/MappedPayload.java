@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.zipflinger;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * A read-only memory mapping of the payload region of a zip archive (everything before the
+ * Central Directory). Entries located in the mapping can be returned as views without copying
+ * them onto the heap.
+ *
+ * The views returned are only valid as long as the underlying file is not truncated.
+ */
+final class MappedPayload {
+
+    // A mapped file cannot be truncated or replaced on Windows until the mapping is garbage
+    // collected, and there is no method to unmap a MappedByteBuffer.
+    private static final boolean IS_WINDOWS =
+            System.getProperty("os.name", "").startsWith("Windows");
+
+    private final MappedByteBuffer buffer;
+    private final Location location;
+
+    private MappedPayload(@NonNull MappedByteBuffer buffer, @NonNull Location location) {
+        this.buffer = buffer;
+        this.location = location;
+    }
+
+    // Returns null if the payload cannot be mapped as a single buffer (empty or over 2GiB), or on
+    // Windows, in which case callers read entries onto the heap.
+    @Nullable
+    static MappedPayload map(@NonNull FileChannel channel, @NonNull Location payloadLocation)
+            throws IOException {
+        if (IS_WINDOWS
+                || !payloadLocation.isValid()
+                || payloadLocation.size() <= 0
+                || payloadLocation.size() > Integer.MAX_VALUE) {
+            return null;
+        }
+        MappedByteBuffer buffer =
+                channel.map(
+                        FileChannel.MapMode.READ_ONLY,
+                        payloadLocation.first,
+                        payloadLocation.size());
+        return new MappedPayload(buffer, payloadLocation);
+    }
+
+    boolean contains(@NonNull Location loc) {
+        return loc.first >= location.first && loc.last <= location.last;
+    }
+
+    // Returns a read-only view of the bytes at loc. loc must be contained in the mapping.
+    @NonNull
+    ByteBuffer slice(@NonNull Location loc) {
+        if (!contains(loc)) {
+            String msg = String.format("Location %s not within mapped payload %s", loc, location);
+            throw new IllegalStateException(msg);
+        }
+        int offset = Math.toIntExact(loc.first - location.first);
+        int size = Math.toIntExact(loc.size());
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + size);
+        return view.slice().asReadOnlyBuffer();
+    }
+}
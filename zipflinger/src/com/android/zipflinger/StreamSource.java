@@ -51,10 +51,11 @@ class StreamSource extends Source {
 
 
         long bytesRead = 0;
-        try (CheckedInputStream in = new CheckedInputStream(src, new CRC32());
-                OutputStream out = getOutput(compressionLevel)) {
+        try (CompressionContext context = CompressionContext.acquire();
+                CheckedInputStream in = new CheckedInputStream(src, new CRC32());
+                OutputStream out = getOutput(context, compressionLevel)) {
             int read;
-            byte[] bytes = new byte[TMP_BUFFER_SIZE];
+            byte[] bytes = context.buffer();
             while ((read = in.read(bytes)) != -1) {
                 out.write(bytes, 0, read);
                 bytesRead += read;
@@ -97,11 +98,11 @@ class StreamSource extends Source {
         }
     }
 
-    private OutputStream getOutput(int compressionLevel) {
+    private OutputStream getOutput(@NonNull CompressionContext context, int compressionLevel) {
         if (compressionLevel == Deflater.NO_COMPRESSION) {
             return buffer;
         } else {
-            Deflater deflater = Compressor.getDeflater(compressionLevel);
+            Deflater deflater = context.deflater(compressionLevel);
             return new DeflaterOutputStream(buffer, deflater);
         }
     }
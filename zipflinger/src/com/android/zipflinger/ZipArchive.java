@@ -24,9 +24,13 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 public class ZipArchive implements Archive {
     private final FreeStore freestore;
@@ -39,6 +43,10 @@ public class ZipArchive implements Archive {
     private ZipInfo zipInfo;
     private boolean modified;
 
+    // Opt-in memory mapping of the payload, established lazily on the first read.
+    private final boolean mapPayload;
+    @Nullable private MappedPayload mappedPayload;
+
     // The comment to append at the end of the EOCD.
     @NonNull private byte[] comment;
 
@@ -52,8 +60,25 @@ public class ZipArchive implements Archive {
      * @param file the file object
      */
     public ZipArchive(@NonNull Path file, Zip64.Policy policy) throws IOException {
+        this(file, policy, false);
+    }
+
+    /**
+     * The object used to manipulate a zip archive.
+     *
+     * @param file the file object
+     * @param mapPayload if true, {@link #getContent(String)} reads entries from a read-only memory
+     *     mapping of the payload region of the archive as it was when opened. Stored entries are
+     *     returned as views into the mapping. Once the archive has been modified, reads fall back
+     *     to copying from the file. Views must not be accessed once the archive is closed since
+     *     closing may truncate the file. Ignored on Windows, where a live mapping would prevent
+     *     closing from truncating the file.
+     */
+    public ZipArchive(@NonNull Path file, Zip64.Policy policy, boolean mapPayload)
+            throws IOException {
         this.file = file;
         this.policy = policy;
+        this.mapPayload = mapPayload;
         if (Files.exists(file)) {
             ZipMap map = ZipMap.from(file, true, policy);
             zipInfo = new ZipInfo(map.getPayloadLocation(), map.getCdLoc(), map.getEocdLoc());
@@ -117,6 +142,15 @@ public class ZipArchive implements Archive {
             return null;
         }
         Location loc = extractInfo.getLocation();
+        MappedPayload mapped = getMappedPayload();
+        if (mapped != null && mapped.contains(loc)) {
+            ByteBuffer payload = mapped.slice(loc);
+            if (extractInfo.isCompressed()) {
+                return Compressor.inflate(payload, extractInfo.getUnCompressedSize());
+            }
+            return payload;
+        }
+
         ByteBuffer payloadByteBuffer = ByteBuffer.allocate(Math.toIntExact(loc.size()));
         reader.read(payloadByteBuffer, loc.first);
         if (extractInfo.isCompressed()) {
@@ -126,6 +160,19 @@ public class ZipArchive implements Archive {
         }
     }
 
+    @Nullable
+    private MappedPayload getMappedPayload() throws IOException {
+        // Space freed by deletes may be reused by added entries, the mapping cannot be trusted
+        // once the archive has been modified.
+        if (!mapPayload || modified) {
+            return null;
+        }
+        if (mappedPayload == null) {
+            mappedPayload = MappedPayload.map(reader.getChannel(), zipInfo.payload);
+        }
+        return mappedPayload;
+    }
+
     @Nullable
     public InputStream getInputStream(@NonNull String name) throws IOException {
         ExtractionInfo extractInfo = cd.getExtractionInfo(name);
@@ -146,7 +193,7 @@ public class ZipArchive implements Archive {
             throw new IllegalStateException(
                     String.format("Cannot add source to closed archive %s", file));
         }
-        writeSource(source);
+        writeSource(source, true);
     }
 
     /** See Archive.add documentation */
@@ -160,13 +207,75 @@ public class ZipArchive implements Archive {
         try {
             sources.open();
             for (Source source : sources.getSelectedEntries()) {
-                writeSource(source);
+                writeSource(source, true);
             }
         } finally {
             sources.close();
         }
     }
 
+    /**
+     * Add a batch of sources to the archive. The sources are prepared (e.g: read, crc-ed and
+     * deflated for a {@link DeferredBytesSource}) concurrently on the provided executor but they
+     * are written to the archive in list order. The resulting archive is identical to the one
+     * obtained by calling {@link #add(Source)} on each source, in order.
+     *
+     * @param sources The sources to add to this zip archive.
+     * @param executor The executor used to prepare the sources.
+     * @throws IllegalStateException if an entry name already exists in the archive.
+     * @throws IOException if preparing a source or writing to the zip archive fails.
+     */
+    public void add(@NonNull List<? extends Source> sources, @NonNull Executor executor)
+            throws IOException {
+        if (closed) {
+            throw new IllegalStateException(
+                    String.format("Cannot add sources to closed archive %s", file));
+        }
+
+        List<CompletableFuture<Void>> preparations = new ArrayList<>(sources.size());
+        for (Source source : sources) {
+            preparations.add(CompletableFuture.runAsync(() -> prepare(source), executor));
+        }
+
+        try {
+            for (int i = 0; i < sources.size(); i++) {
+                join(preparations.get(i));
+                writeSource(sources.get(i), false);
+            }
+        } finally {
+            // Do not leave workers running against an archive which failed to be written.
+            for (CompletableFuture<Void> preparation : preparations) {
+                preparation.cancel(false);
+            }
+        }
+    }
+
+    private static void prepare(@NonNull Source source) {
+        try {
+            source.prepare();
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static void join(@NonNull CompletableFuture<Void> future) throws IOException {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
     /** See Archive.delete documentation */
     @Override
     public void delete(@NonNull String name) {
@@ -204,6 +313,15 @@ public class ZipArchive implements Archive {
         return zipInfo;
     }
 
+    /**
+     * Returns statistics about the free space left in the payload by deleted entries which have not
+     * been reused by added entries.
+     */
+    @NonNull
+    public FragmentationStats getFragmentationStats() {
+        return freestore.getFragmentationStats();
+    }
+
     @NonNull
     public Path getPath() {
         return file;
@@ -292,7 +410,7 @@ public class ZipArchive implements Archive {
         }
     }
 
-    private void writeSource(@NonNull Source source) throws IOException {
+    private void writeSource(@NonNull Source source, boolean prepare) throws IOException {
         // If this is a directory and it is already in the archive, just no-op.
         if (Source.isNameDirectory(source.getName()) && cd.contains(source.getName())) {
             return;
@@ -300,7 +418,9 @@ public class ZipArchive implements Archive {
 
         modified = true;
         validateName(source);
-        source.prepare();
+        if (prepare) {
+            source.prepare();
+        }
 
         // Calculate the size we need (header + payload)
         LocalFileHeader lfh = new LocalFileHeader(source);
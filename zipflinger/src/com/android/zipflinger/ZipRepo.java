@@ -16,6 +16,7 @@
 package com.android.zipflinger;
 
 import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
@@ -30,6 +31,7 @@ public class ZipRepo implements Closeable {
     private final ZipMap zipMap;
     private final FileChannel channel;
     private final Path file;
+    @Nullable private final MappedPayload mappedPayload;
 
     public ZipRepo(@NonNull String filePath) throws IOException {
         this(ZipMap.from(Paths.get(filePath), false, Zip64.Policy.ALLOW));
@@ -40,9 +42,25 @@ public class ZipRepo implements Closeable {
     }
 
     public ZipRepo(@NonNull ZipMap zipMap) throws IOException {
+        this(zipMap, false);
+    }
+
+    /**
+     * @param path the zip archive to read from.
+     * @param mapped if true, the payload region of the archive is memory-mapped once and {@link
+     *     #getContent(String)} returns read-only views into the mapping for stored entries.
+     *     Ignored on Windows, where the mapping would lock the file until garbage collected.
+     */
+    public ZipRepo(@NonNull Path path, boolean mapped) throws IOException {
+        this(ZipMap.from(path, false, Zip64.Policy.ALLOW), mapped);
+    }
+
+    public ZipRepo(@NonNull ZipMap zipMap, boolean mapped) throws IOException {
         this.zipMap = zipMap;
         this.channel = FileChannel.open(zipMap.getPath(), StandardOpenOption.READ);
         this.file = zipMap.getPath();
+        this.mappedPayload =
+                mapped ? MappedPayload.map(channel, zipMap.getPayloadLocation()) : null;
     }
 
     @NonNull
@@ -88,10 +106,20 @@ public class ZipRepo implements Closeable {
         return Compressor.wrapToInflate(inputStream);
     }
 
+    // If this repo is mapped, stored entries are returned as read-only views into the mapping and
+    // deflated entries are inflated directly from it.
     @NonNull
     public ByteBuffer getContent(@NonNull String entryName) throws IOException {
         Entry entry = getEntry(entryName);
         Location payloadLocation = entry.getPayloadLocation();
+        if (mappedPayload != null && mappedPayload.contains(payloadLocation)) {
+            ByteBuffer payload = mappedPayload.slice(payloadLocation);
+            if (entry.isCompressed()) {
+                return Compressor.inflate(payload, entry.getUncompressedSize());
+            }
+            return payload;
+        }
+
         ByteBuffer payloadByteBuffer = ByteBuffer.allocate(Math.toIntExact(payloadLocation.size()));
         channel.read(payloadByteBuffer, payloadLocation.first);
         payloadByteBuffer.rewind();
@@ -55,7 +55,7 @@ class ZipSourceEntryPipe extends Source {
 
         FileChannel channel = zipSource.getChannel();
         Location loc = entry.getPayloadLocation();
-        try (NoCopyByteArrayOutputStream out = new NoCopyByteArrayOutputStream(8192);
+        try (NoCopyByteArrayOutputStream out = new NoCopyByteArrayOutputStream(outputSizeHint());
                 InputStream in = new PayloadInputStream(channel, loc)) {
 
             Compressor.pipe(in, out, entry.isCompressed(), compressionLevel);
@@ -64,6 +64,20 @@ class ZipSourceEntryPipe extends Source {
         }
     }
 
+    // The output buffer is kept as the payload. Size it as close as possible to its final size
+    // to avoid re-growing it.
+    private int outputSizeHint() {
+        long hint;
+        if (compressionLevel == Deflater.NO_COMPRESSION) {
+            hint = entry.getUncompressedSize();
+        } else if (entry.isCompressed()) {
+            hint = entry.getCompressedSize();
+        } else {
+            hint = CompressionContext.BUFFER_SIZE;
+        }
+        return (int) Math.min(Math.max(hint, 32), Sources.LARGE_LIMIT);
+    }
+
     @Override
     public long writeTo(@NonNull ZipWriter writer) throws IOException {
         return writer.write(byteBuffer);
@@ -48,4 +48,50 @@ public class CompressorTest extends AbstractZipflingerTest {
                 "Inflated length is equal to original length", uncompressedSize, inflatedLength);
         Assert.assertArrayEquals("Before/After bytes", uncompressed, inflated);
     }
+
+    @Test
+    public void testContextReuseAcrossLevels() throws IOException {
+        Path src = getPath("file4.txt");
+        byte[] uncompressed = Files.readAllBytes(src);
+
+        // Deflating with a reused Deflater must produce the same bytes as a fresh one.
+        ByteBuffer fast = Compressor.deflate(uncompressed, Deflater.BEST_SPEED);
+        ByteBuffer best = Compressor.deflate(uncompressed, Deflater.BEST_COMPRESSION);
+        ByteBuffer fastAgain = Compressor.deflate(uncompressed, Deflater.BEST_SPEED);
+        Assert.assertEquals("Deterministic deflate", fast, fastAgain);
+
+        Assert.assertArrayEquals(
+                "Round trip fast",
+                uncompressed,
+                toByteArray(Compressor.inflate(toByteArray(fast), uncompressed.length)));
+        Assert.assertArrayEquals(
+                "Round trip best",
+                uncompressed,
+                toByteArray(Compressor.inflate(toByteArray(best), uncompressed.length)));
+    }
+
+    @Test
+    public void testContextPooling() {
+        CompressionContext first = CompressionContext.acquire();
+        first.close();
+        try (CompressionContext second = CompressionContext.acquire()) {
+            Assert.assertSame("Released context is reused", first, second);
+            try (CompressionContext nested = CompressionContext.acquire()) {
+                Assert.assertNotSame("Nested context is not shared", second, nested);
+            }
+        }
+    }
+
+    @Test
+    public void testContextUseAfterRelease() {
+        CompressionContext context = CompressionContext.acquire();
+        context.close();
+        boolean exceptionCaught = false;
+        try {
+            context.deflater(Deflater.BEST_SPEED);
+        } catch (IllegalStateException e) {
+            exceptionCaught = true;
+        }
+        Assert.assertTrue("Released context cannot be used", exceptionCaught);
+    }
 }
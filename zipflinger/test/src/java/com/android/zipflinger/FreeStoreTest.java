@@ -268,4 +268,94 @@ public class FreeStoreTest extends AbstractZipflingerTest {
             }
         }
     }
+
+    @Test
+    public void testBestFit() {
+        long header = LocalFileHeader.VIRTUAL_HEADER_SIZE;
+        FreeStore store = new FreeStore(new HashMap<>());
+        store.ualloc(1000);
+        // Two holes, the first one bigger than the second one.
+        store.free(new Location(100, 300));
+        store.free(new Location(600, 100));
+
+        // Best fit should pick the second (smaller) hole.
+        Location allocated = store.ualloc(100 - header);
+        Assert.assertEquals("Best fit location", new Location(600, 100 - header), allocated);
+
+        // Too big for the second hole remainder, fits in the first one.
+        allocated = store.ualloc(200);
+        Assert.assertEquals("Second fit location", new Location(100, 200), allocated);
+
+        List<Location> freeLocations = store.getFreeLocations();
+        Assert.assertEquals("Num free zones", 3, freeLocations.size());
+        Assert.assertEquals("First Location", new Location(300, 100), freeLocations.get(0));
+        Assert.assertEquals(
+                "Second Location", new Location(600 + 100 - header, header), freeLocations.get(1));
+    }
+
+    @Test
+    public void testBestFitAligned() {
+        long header = LocalFileHeader.VIRTUAL_HEADER_SIZE;
+        long alignment = FreeStore.PAGE_ALIGNMENT;
+        FreeStore store = new FreeStore(new HashMap<>());
+        store.ualloc(alignment * 8);
+        // A small unaligned hole, and a big one starting on a page boundary.
+        store.free(new Location(1, 200));
+        store.free(new Location(alignment * 2, alignment * 2));
+
+        // The small hole would be the best fit but cannot accommodate padding.
+        Location allocated = store.alloc(100, 0, alignment);
+        Assert.assertEquals("Aligned location", new Location(alignment * 2, 100), allocated);
+
+        // Unaligned requests still go to the small hole.
+        allocated = store.ualloc(200 - header);
+        Assert.assertEquals("Unaligned location", new Location(1, 200 - header), allocated);
+    }
+
+    @Test
+    public void testManyHoles() {
+        int numHoles = 10_000;
+        long holeSize = 100;
+        FreeStore store = new FreeStore(new HashMap<>());
+        store.ualloc(numHoles * holeSize * 2);
+        for (int i = 0; i < numHoles; i++) {
+            store.free(new Location(i * holeSize * 2, holeSize));
+        }
+        Assert.assertEquals("Num free zones", numHoles + 1, store.getFreeLocations().size());
+
+        // Re-fill every hole. The tail must never be used.
+        long tailStart = store.getLastFreeLocation().first;
+        for (int i = 0; i < numHoles; i++) {
+            Location allocated = store.ualloc(holeSize - LocalFileHeader.VIRTUAL_HEADER_SIZE);
+            Assert.assertTrue("Allocated in a hole", allocated.last < tailStart);
+        }
+        Assert.assertEquals("Tail untouched", tailStart, store.getLastFreeLocation().first);
+    }
+
+    @Test
+    public void testFragmentationStats() {
+        FreeStore store = new FreeStore(new HashMap<>());
+        store.ualloc(1000);
+
+        FragmentationStats stats = store.getFragmentationStats();
+        Assert.assertEquals("No holes", 0, stats.getHoles());
+        Assert.assertEquals("No free bytes", 0, stats.getFreeBytes());
+        Assert.assertEquals("Payload size", 1000, stats.getPayloadSize());
+        Assert.assertEquals("No fragmentation", 0, stats.getFragmentation(), 0);
+
+        store.free(new Location(0, 100));
+        store.free(new Location(200, 300));
+        stats = store.getFragmentationStats();
+        Assert.assertEquals("Two holes", 2, stats.getHoles());
+        Assert.assertEquals("Free bytes", 400, stats.getFreeBytes());
+        Assert.assertEquals("Largest hole", 300, stats.getLargestHole());
+        Assert.assertEquals("Free ratio", 0.4, stats.getFreeRatio(), 0.0001);
+        Assert.assertEquals("Fragmentation", 0.25, stats.getFragmentation(), 0.0001);
+
+        // Freeing the end of the payload shrinks it instead of creating a hole.
+        store.free(new Location(900, 100));
+        stats = store.getFragmentationStats();
+        Assert.assertEquals("Two holes", 2, stats.getHoles());
+        Assert.assertEquals("Payload size", 900, stats.getPayloadSize());
+    }
 }
@@ -80,6 +80,63 @@ public class RepoTest extends AbstractZipflingerTest {
         }
     }
 
+    @Test
+    public void testGetMappedContent() throws Exception {
+        byte[][] files = new byte[2][1024];
+
+        Random r = new Random(0);
+        for (byte[] bytes : files) {
+            r.nextBytes(bytes);
+        }
+
+        Path file = getTestPath("testGetMappedContent.zip");
+        try (ZipArchive archive = new ZipArchive(file)) {
+            for (int i = 0; i < files.length; i++) {
+                archive.add(
+                        new BytesSource(
+                                files[i], Integer.toString(i), Deflater.NO_COMPRESSION + i));
+            }
+        }
+
+        try (ZipRepo repo = new ZipRepo(file, true)) {
+            for (int i = 0; i < files.length; i++) {
+                String entryName = Integer.toString(i);
+                ByteBuffer content = repo.getContent(entryName);
+                Assert.assertArrayEquals("Content does not match", files[i], toByteArray(content));
+            }
+            // Stored entries are views into the mapping.
+            Assert.assertTrue("Stored entry is read-only", repo.getContent("0").isReadOnly());
+            Assert.assertTrue("Stored entry is direct", repo.getContent("0").isDirect());
+        }
+    }
+
+    @Test
+    public void testArchiveGetMappedContent() throws Exception {
+        byte[] bytes = new byte[1024];
+        new Random(0).nextBytes(bytes);
+
+        Path file = getTestPath("testArchiveGetMappedContent.zip");
+        try (ZipArchive archive = new ZipArchive(file)) {
+            archive.add(new BytesSource(bytes, "stored", Deflater.NO_COMPRESSION));
+            archive.add(new BytesSource(bytes, "deflated", Deflater.BEST_SPEED));
+        }
+
+        try (ZipArchive archive = new ZipArchive(file, Zip64.Policy.ALLOW, true)) {
+            ByteBuffer stored = archive.getContent("stored");
+            Assert.assertTrue("Stored entry is direct", stored.isDirect());
+            Assert.assertArrayEquals("Stored content", bytes, toByteArray(stored));
+            Assert.assertArrayEquals(
+                    "Deflated content", bytes, toByteArray(archive.getContent("deflated")));
+
+            // Once modified, reads no longer come from the mapping.
+            archive.delete("stored");
+            archive.add(new BytesSource(bytes, "stored2", Deflater.NO_COMPRESSION));
+            ByteBuffer stored2 = archive.getContent("stored2");
+            Assert.assertFalse("Modified archive is not mapped", stored2.isDirect());
+            Assert.assertArrayEquals("Stored2 content", bytes, toByteArray(stored2));
+        }
+    }
+
     private void assertZipEntryMatch(InputStream inputStream, byte[] content) throws IOException {
         NoCopyByteArrayOutputStream outputStream = new NoCopyByteArrayOutputStream(content.length);
         byte[] buffer = new byte[8192];
@@ -28,9 +28,12 @@ import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.zip.Deflater;
 import org.junit.Assert;
 import org.junit.Test;
@@ -1192,4 +1195,63 @@ public class ZipFlingerTest extends AbstractZipflingerTest {
             Assert.assertEquals("", Source.PERMISSION_DIR_DEFAULT, dir.getExternalAttributes());
         }
     }
+
+    @Test
+    public void testParallelAdd() throws Exception {
+        Random random = new Random(0);
+        List<byte[]> payloads = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            byte[] bytes = new byte[1_000 + random.nextInt(10_000)];
+            // Keep the content compressible so deflated and stored sizes differ.
+            for (int j = 0; j < bytes.length; j++) {
+                bytes[j] = (byte) ('a' + random.nextInt(4));
+            }
+            payloads.add(bytes);
+        }
+
+        Path sequential = getTestPath("testParallelAddSequential.zip");
+        try (ZipArchive archive = new ZipArchive(sequential)) {
+            for (int i = 0; i < payloads.size(); i++) {
+                int level = i % 2 == 0 ? COMP_SPED : COMP_NONE;
+                archive.add(new BytesSource(payloads.get(i), "file" + i, level));
+            }
+        }
+
+        Path parallel = getTestPath("testParallelAddParallel.zip");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (ZipArchive archive = new ZipArchive(parallel)) {
+            List<Source> sources = new ArrayList<>();
+            for (int i = 0; i < payloads.size(); i++) {
+                int level = i % 2 == 0 ? COMP_SPED : COMP_NONE;
+                sources.add(new DeferredBytesSource(payloads.get(i), "file" + i, level));
+            }
+            archive.add(sources, executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        verifyArchive(parallel);
+        Assert.assertArrayEquals(
+                "Parallel and sequential archives differ",
+                Files.readAllBytes(sequential),
+                Files.readAllBytes(parallel));
+    }
+
+    @Test
+    public void testParallelAddDuplicate() throws Exception {
+        Path archPath = getTestPath("testParallelAddDuplicate.zip");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        boolean exceptionCaught = false;
+        try (ZipArchive archive = new ZipArchive(archPath)) {
+            List<Source> sources = new ArrayList<>();
+            sources.add(new DeferredBytesSource(new byte[10], "a", COMP_SPED));
+            sources.add(new DeferredBytesSource(new byte[10], "a", COMP_SPED));
+            archive.add(sources, executor);
+        } catch (IllegalStateException e) {
+            exceptionCaught = true;
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertTrue("Duplicate entry in batch detected", exceptionCaught);
+    }
 }